@@ -0,0 +1,79 @@
+package com.fsck.k9.mail;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fsck.k9.mail.benchmark.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Measures parsing address headers and converting address lists to and from the packed format stored in the
+ * database. Scores are per address list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AddressBenchmark {
+    private static final int LIST_COUNT = 1000;
+
+
+    private List<String> headerValues;
+    private List<Address[]> addressLists;
+    private List<String> packedLists;
+
+
+    @Setup
+    public void setUp() {
+        headerValues = SyntheticCorpus.addressLists(LIST_COUNT);
+        addressLists = new ArrayList<Address[]>(LIST_COUNT);
+        packedLists = new ArrayList<String>(LIST_COUNT);
+        for (String headerValue : headerValues) {
+            Address[] addresses = Address.parse(headerValue);
+            addressLists.add(addresses);
+            packedLists.add(Address.pack(addresses));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LIST_COUNT)
+    public void parse(Blackhole blackhole) {
+        for (String headerValue : headerValues) {
+            blackhole.consume(Address.parse(headerValue));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LIST_COUNT)
+    public void pack(Blackhole blackhole) {
+        for (Address[] addresses : addressLists) {
+            blackhole.consume(Address.pack(addresses));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LIST_COUNT)
+    public void unpack(Blackhole blackhole) {
+        for (String packed : packedLists) {
+            blackhole.consume(Address.unpack(packed));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LIST_COUNT)
+    public void unpackInterned(Blackhole blackhole) {
+        for (String packed : packedLists) {
+            blackhole.consume(Address.unpackInterned(packed));
+        }
+    }
+}
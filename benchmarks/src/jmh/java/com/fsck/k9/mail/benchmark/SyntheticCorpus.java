@@ -0,0 +1,481 @@
+package com.fsck.k9.mail.benchmark;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.fsck.k9.mail.filter.Base64;
+import org.apache.commons.io.FileUtils;
+
+
+/**
+ * Generates the input data used by the benchmarks: IMAP server transcripts, MIME messages, encoded header values,
+ * address lists and message bodies.
+ * <p>
+ * All data is derived from a {@link Random} with a fixed seed, so every run (and every release) measures the exact
+ * same input. To look at the data, or to feed it to other tools, write it to a directory with:
+ * </p>
+ * <pre>
+ * java -cp &lt;benchmark classpath&gt; com.fsck.k9.mail.benchmark.SyntheticCorpus &lt;directory&gt;
+ * </pre>
+ */
+public final class SyntheticCorpus {
+    public static final long SEED = 0x4b39L;
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] FIRST_NAMES = {
+            "Alice", "Bob", "Carol", "Dave", "Erin", "Frank", "Grace", "Heidi", "Ivan", "Judy", "Mallory", "Oscar"
+    };
+    private static final String[] NON_ASCII_NAMES = {
+            "J\u00f6rg M\u00fcller",
+            "Zo\u00eb Ren\u00e9e",
+            "\u674e\u96f7",
+            "\u0410\u043d\u043d\u0430 \u041f\u0435\u0442\u0440\u043e\u0432\u0430",
+            "Fran\u00e7ois L\u00e9vesque",
+            "\u5c71\u7530 \u592a\u90ce"
+    };
+    private static final String[] LAST_NAMES = {
+            "Smith", "Jones", "Taylor", "Brown", "Williams", "Wilson", "Johnson", "Davies", "Robinson", "Wright"
+    };
+    private static final String[] DOMAINS = {
+            "example.com", "example.org", "example.net", "mail.example.com", "lists.example.org"
+    };
+    private static final String[] WORDS = {
+            "the", "project", "meeting", "update", "release", "schedule", "review", "please", "attached", "report",
+            "thanks", "regards", "tomorrow", "budget", "draft", "question", "about", "server", "change", "with",
+            "and", "for", "this", "that", "will", "have", "from", "notes", "agenda", "final"
+    };
+    private static final String[] FLAGS = {
+            "\\Seen", "\\Seen \\Answered", "", "\\Flagged", "\\Seen $Forwarded", "\\Seen \\Flagged"
+    };
+
+
+    private SyntheticCorpus() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: SyntheticCorpus <directory>");
+            System.exit(1);
+        }
+
+        File directory = new File(args[0]);
+        List<byte[]> messages = mimeMessages(100);
+        for (int i = 0; i < messages.size(); i++) {
+            String name = String.format(Locale.US, "message-%03d.eml", i);
+            FileUtils.writeByteArrayToFile(new File(directory, name), messages.get(i));
+        }
+
+        FileUtils.writeByteArrayToFile(new File(directory, "imap-fetch-headers.txt"), imapHeaderFetchTranscript(100));
+        FileUtils.writeByteArrayToFile(new File(directory, "imap-fetch-bodystructure.txt"),
+                imapBodyStructureTranscript(100));
+    }
+
+    /**
+     * Returns the server side of a {@code UID FETCH} of flags, size, internal date and a few header fields for
+     * {@code messageCount} messages, as sent during a sync.
+     */
+    public static byte[] imapHeaderFetchTranscript(int messageCount) {
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= messageCount; i++) {
+            String headers = createHeaderFields(random, i);
+            sb.append("* ").append(i).append(" FETCH (UID ").append(1000 + i)
+                    .append(" FLAGS (").append(pick(random, FLAGS)).append(")")
+                    .append(" INTERNALDATE \"").append(createInternalDate(random)).append("\"")
+                    .append(" RFC822.SIZE ").append(2000 + random.nextInt(200000))
+                    .append(" BODY[HEADER.FIELDS (DATE SUBJECT FROM TO CC MESSAGE-ID REFERENCES CONTENT-TYPE)] {")
+                    .append(headers.length()).append("}\r\n")
+                    .append(headers)
+                    .append(")\r\n");
+        }
+        sb.append("8 OK UID FETCH completed\r\n");
+
+        return sb.toString().getBytes(US_ASCII);
+    }
+
+    /**
+     * Returns the server side of a {@code UID FETCH (BODYSTRUCTURE)} for {@code messageCount} messages.
+     */
+    public static byte[] imapBodyStructureTranscript(int messageCount) {
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= messageCount; i++) {
+            sb.append("* ").append(i).append(" FETCH (UID ").append(1000 + i).append(" BODYSTRUCTURE ");
+            switch (random.nextInt(3)) {
+                case 0: {
+                    sb.append(createTextBodyStructure(random, "plain"));
+                    break;
+                }
+                case 1: {
+                    sb.append(createAlternativeBodyStructure(random));
+                    break;
+                }
+                default: {
+                    sb.append("(").append(createAlternativeBodyStructure(random))
+                            .append("(\"application\" \"pdf\" (\"name\" \"report-").append(i).append(".pdf\") NIL NIL")
+                            .append(" \"base64\" ").append(10000 + random.nextInt(500000))
+                            .append(" NIL (\"attachment\" (\"filename\" \"report-").append(i).append(".pdf\")) NIL)")
+                            .append(" \"mixed\" (\"boundary\" \"mixed-").append(i).append("\") NIL NIL)");
+                    break;
+                }
+            }
+            sb.append(")\r\n");
+        }
+        sb.append("9 OK UID FETCH completed\r\n");
+
+        return sb.toString().getBytes(US_ASCII);
+    }
+
+    /**
+     * Returns {@code count} complete messages: plain text, multipart/alternative, messages with an attachment and
+     * forwarded messages, in a fixed rotation.
+     */
+    public static List<byte[]> mimeMessages(int count) {
+        Random random = new Random(SEED);
+        List<byte[]> messages = new ArrayList<byte[]>(count);
+        for (int i = 0; i < count; i++) {
+            String message;
+            switch (i % 4) {
+                case 0: {
+                    message = createPlainTextMessage(random, i);
+                    break;
+                }
+                case 1: {
+                    message = createAlternativeMessage(random, i);
+                    break;
+                }
+                case 2: {
+                    message = createMessageWithAttachment(random, i);
+                    break;
+                }
+                default: {
+                    message = createForwardedMessage(random, i);
+                    break;
+                }
+            }
+            messages.add(message.getBytes(UTF_8));
+        }
+
+        return messages;
+    }
+
+    /**
+     * Returns {@code count} unstructured header values, most of them containing RFC 2047 encoded words.
+     */
+    public static List<String> encodedHeaderValues(int count) {
+        Random random = new Random(SEED);
+        List<String> values = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            String text = pick(random, NON_ASCII_NAMES) + " " + createWords(random, 4);
+            switch (i % 4) {
+                case 0: {
+                    values.add("Re: " + encodeB(text));
+                    break;
+                }
+                case 1: {
+                    values.add(encodeQ(text) + " " + encodeQ(createWords(random, 3)));
+                    break;
+                }
+                case 2: {
+                    values.add("Fwd: " + createWords(random, 6));
+                    break;
+                }
+                default: {
+                    values.add(encodeB(text) + "\r\n " + encodeB(createWords(random, 5)));
+                    break;
+                }
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Returns {@code count} address list header values with between one and eight addresses each.
+     */
+    public static List<String> addressLists(int count) {
+        Random random = new Random(SEED);
+        List<String> lists = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            int addressCount = 1 + random.nextInt(8);
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < addressCount; j++) {
+                if (j > 0) {
+                    sb.append(",\r\n ");
+                }
+                sb.append(createAddress(random));
+            }
+            lists.add(sb.toString());
+        }
+
+        return lists;
+    }
+
+    /**
+     * Returns {@code count} {@code Content-Type} header values for text parts, a third of them {@code format=flowed}.
+     */
+    public static List<String> textContentTypes(int count) {
+        Random random = new Random(SEED);
+        List<String> contentTypes = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(3)) {
+                case 0: {
+                    contentTypes.add("text/plain; charset=UTF-8; format=flowed; delsp=yes");
+                    break;
+                }
+                case 1: {
+                    contentTypes.add("text/plain;\r\n\tcharset=\"iso-8859-1\"");
+                    break;
+                }
+                default: {
+                    contentTypes.add("text/html; charset=\"utf-8\"");
+                    break;
+                }
+            }
+        }
+
+        return contentTypes;
+    }
+
+    /**
+     * Returns {@code size} bytes of random binary data, e.g. the content of an attachment.
+     */
+    public static byte[] binaryData(int size) {
+        byte[] data = new byte[size];
+        new Random(SEED).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Returns a message body of about {@code size} bytes with a mix of short and overlong lines, lines starting with
+     * a dot or "From " and bare line feeds, i.e. everything the output filters have to deal with.
+     */
+    public static byte[] messageText(int size) {
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder(size + 1000);
+        while (sb.length() < size) {
+            switch (random.nextInt(8)) {
+                case 0: {
+                    sb.append(".").append(createWords(random, 8)).append("\r\n");
+                    break;
+                }
+                case 1: {
+                    sb.append("From ").append(createWords(random, 6)).append("\n");
+                    break;
+                }
+                case 2: {
+                    sb.append(createWords(random, 40)).append("\r\n");
+                    break;
+                }
+                case 3: {
+                    sb.append("\r\n");
+                    break;
+                }
+                default: {
+                    sb.append(createWords(random, 10)).append("\r\n");
+                    break;
+                }
+            }
+        }
+
+        return sb.toString().getBytes(US_ASCII);
+    }
+
+    private static String createHeaderFields(Random random, int id) {
+        return "Date: " + createDate(random) + "\r\n" +
+                "Subject: " + (random.nextBoolean() ? encodeB(pick(random, NON_ASCII_NAMES) + " " +
+                        createWords(random, 3)) : createWords(random, 5)) + "\r\n" +
+                "From: " + createAddress(random) + "\r\n" +
+                "To: " + createAddress(random) + ", " + createAddress(random) + "\r\n" +
+                "Message-ID: <" + id + "." + Long.toHexString(random.nextLong()) + "@example.com>\r\n" +
+                "References: <" + Long.toHexString(random.nextLong()) + "@example.org>\r\n" +
+                " <" + Long.toHexString(random.nextLong()) + "@example.org>\r\n" +
+                "Content-Type: multipart/alternative; boundary=\"" + Long.toHexString(random.nextLong()) + "\"\r\n" +
+                "\r\n";
+    }
+
+    private static String createMessageHeaders(Random random, int id, String contentType) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Return-Path: <").append(createMailbox(random)).append(">\r\n");
+        int hops = 2 + random.nextInt(4);
+        for (int hop = 0; hop < hops; hop++) {
+            sb.append("Received: from mx").append(hop).append(".example.net (mx").append(hop)
+                    .append(".example.net [192.0.2.").append(random.nextInt(255)).append("])\r\n")
+                    .append("\tby mail.example.org with ESMTPS id ").append(Long.toHexString(random.nextLong()))
+                    .append("\r\n\tfor <recipient@example.org>; ").append(createDate(random)).append("\r\n");
+        }
+        sb.append("DKIM-Signature: v=1; a=rsa-sha256; c=relaxed/relaxed; d=example.com; s=selector;\r\n")
+                .append("\th=from:to:subject:date:message-id; bh=")
+                .append(Base64.encode(Long.toHexString(random.nextLong()))).append(";\r\n")
+                .append("\tb=").append(Base64.encode(createWords(random, 8).replace(' ', '-'))).append("\r\n");
+        sb.append("Date: ").append(createDate(random)).append("\r\n");
+        sb.append("From: ").append(createAddress(random)).append("\r\n");
+        sb.append("To: ").append(createAddress(random)).append("\r\n");
+        if (random.nextBoolean()) {
+            sb.append("Cc: ").append(createAddress(random)).append(", ").append(createAddress(random)).append("\r\n");
+        }
+        sb.append("Subject: ").append(encodeB(pick(random, NON_ASCII_NAMES) + " " + createWords(random, 4)))
+                .append("\r\n");
+        sb.append("Message-ID: <").append(id).append('.').append(Long.toHexString(random.nextLong()))
+                .append("@example.com>\r\n");
+        sb.append("MIME-Version: 1.0\r\n");
+        sb.append("Content-Type: ").append(contentType).append("\r\n");
+        return sb.toString();
+    }
+
+    private static String createText(Random random, int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append(createWords(random, 6 + random.nextInt(8))).append("\r\n");
+        }
+        return sb.toString();
+    }
+
+    private static String createPlainTextMessage(Random random, int id) {
+        return createMessageHeaders(random, id, "text/plain; charset=utf-8; format=flowed") +
+                "Content-Transfer-Encoding: 8bit\r\n" +
+                "\r\n" +
+                createText(random, 10 + random.nextInt(60));
+    }
+
+    private static String createAlternativePart(Random random, String boundary) {
+        return "--" + boundary + "\r\n" +
+                "Content-Type: text/plain; charset=utf-8\r\n" +
+                "Content-Transfer-Encoding: quoted-printable\r\n" +
+                "\r\n" +
+                createText(random, 30) +
+                "--" + boundary + "\r\n" +
+                "Content-Type: text/html; charset=utf-8\r\n" +
+                "Content-Transfer-Encoding: quoted-printable\r\n" +
+                "\r\n" +
+                "<html><body>\r\n" + createText(random, 30).replace("\r\n", "<br>\r\n") + "</body></html>\r\n" +
+                "--" + boundary + "--\r\n";
+    }
+
+    private static String createAlternativeMessage(Random random, int id) {
+        String boundary = "alt-" + id;
+        return createMessageHeaders(random, id, "multipart/alternative; boundary=\"" + boundary + "\"") +
+                "\r\n" +
+                createAlternativePart(random, boundary);
+    }
+
+    private static String createMessageWithAttachment(Random random, int id) {
+        byte[] attachment = new byte[4 * 1024 + random.nextInt(64 * 1024)];
+        random.nextBytes(attachment);
+        String encodedAttachment = new String(Base64.encodeBase64Chunked(attachment), US_ASCII);
+
+        return createMessageHeaders(random, id, "multipart/mixed; boundary=\"mixed-" + id + "\"") +
+                "\r\n" +
+                "This is a multi-part message in MIME format.\r\n" +
+                "--mixed-" + id + "\r\n" +
+                "Content-Type: multipart/alternative; boundary=\"alt-" + id + "\"\r\n" +
+                "\r\n" +
+                createAlternativePart(random, "alt-" + id) +
+                "--mixed-" + id + "\r\n" +
+                "Content-Type: application/pdf; name=\"report-" + id + ".pdf\"\r\n" +
+                "Content-Disposition: attachment; filename=\"report-" + id + ".pdf\"\r\n" +
+                "Content-Transfer-Encoding: base64\r\n" +
+                "\r\n" +
+                encodedAttachment +
+                "--mixed-" + id + "--\r\n";
+    }
+
+    private static String createForwardedMessage(Random random, int id) {
+        return createMessageHeaders(random, id, "multipart/mixed; boundary=\"fwd-" + id + "\"") +
+                "\r\n" +
+                "--fwd-" + id + "\r\n" +
+                "Content-Type: text/plain; charset=utf-8\r\n" +
+                "\r\n" +
+                createText(random, 3) +
+                "--fwd-" + id + "\r\n" +
+                "Content-Type: message/rfc822\r\n" +
+                "\r\n" +
+                createAlternativeMessage(random, id + 100000) +
+                "--fwd-" + id + "--\r\n";
+    }
+
+    private static String createTextBodyStructure(Random random, String subtype) {
+        return "(\"text\" \"" + subtype + "\" (\"charset\" \"utf-8\") NIL NIL \"quoted-printable\" " +
+                (100 + random.nextInt(20000)) + " " + (5 + random.nextInt(400)) + " NIL NIL NIL NIL)";
+    }
+
+    private static String createAlternativeBodyStructure(Random random) {
+        return "(" + createTextBodyStructure(random, "plain") + createTextBodyStructure(random, "html") +
+                " \"alternative\" (\"boundary\" \"" + Long.toHexString(random.nextLong()) + "\") NIL NIL NIL)";
+    }
+
+    private static String createAddress(Random random) {
+        switch (random.nextInt(4)) {
+            case 0: {
+                return createMailbox(random);
+            }
+            case 1: {
+                return encodeB(pick(random, NON_ASCII_NAMES)) + " <" + createMailbox(random) + ">";
+            }
+            case 2: {
+                return "\"" + pick(random, LAST_NAMES) + ", " + pick(random, FIRST_NAMES) + "\" <" +
+                        createMailbox(random) + ">";
+            }
+            default: {
+                return pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES) + " <" + createMailbox(random) + ">";
+            }
+        }
+    }
+
+    private static String createMailbox(Random random) {
+        return pick(random, FIRST_NAMES).toLowerCase(Locale.US) + "." + pick(random, LAST_NAMES).toLowerCase(Locale.US) +
+                "@" + pick(random, DOMAINS);
+    }
+
+    private static String createWords(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(pick(random, WORDS));
+        }
+        return sb.toString();
+    }
+
+    private static String createDate(Random random) {
+        return String.format(Locale.US, "Tue, %d Oct 2017 %02d:%02d:%02d +0200",
+                1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+    }
+
+    private static String createInternalDate(Random random) {
+        return String.format(Locale.US, "%02d-Oct-2017 %02d:%02d:%02d +0200",
+                1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+    }
+
+    private static String encodeB(String text) {
+        return "=?UTF-8?B?" + new String(Base64.encodeBase64(text.getBytes(UTF_8)), US_ASCII) + "?=";
+    }
+
+    private static String encodeQ(String text) {
+        StringBuilder sb = new StringBuilder("=?UTF-8?Q?");
+        for (byte b : text.getBytes(UTF_8)) {
+            int c = b & 0xFF;
+            if (c == ' ') {
+                sb.append('_');
+            } else if (c < 128 && Character.isLetterOrDigit(c)) {
+                sb.append((char) c);
+            } else {
+                sb.append(String.format(Locale.US, "=%02X", c));
+            }
+        }
+        return sb.append("?=").toString();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,85 @@
+package com.fsck.k9.mail.filter;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.fsck.k9.mail.benchmark.SyntheticCorpus;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Measures Base64 encoding and decoding of attachment-like data, both in one go and through the streams used when
+ * sending and reading messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Base64Benchmark {
+    private static final int CHUNK_SIZE = 8192;
+
+
+    @Param({ "1024", "65536", "1048576" })
+    public int size;
+
+    private byte[] data;
+    private byte[] encodedData;
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+
+
+    @Setup
+    public void setUp() {
+        data = SyntheticCorpus.binaryData(size);
+        encodedData = Base64.encodeBase64Chunked(data);
+    }
+
+    @Benchmark
+    public byte[] encodeBase64Chunked() {
+        return Base64.encodeBase64Chunked(data);
+    }
+
+    @Benchmark
+    public byte[] decodeBase64() {
+        return Base64.decodeBase64(encodedData);
+    }
+
+    @Benchmark
+    public void base64OutputStream() throws IOException {
+        writeInChunks(new Base64OutputStream(NullOutputStream.NULL_OUTPUT_STREAM));
+    }
+
+    @Benchmark
+    public void base64EncodingOutputStream() throws IOException {
+        writeInChunks(new Base64EncodingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM));
+    }
+
+    @Benchmark
+    public long base64DecodingInputStream() throws IOException {
+        InputStream inputStream = new Base64DecodingInputStream(new ByteArrayInputStream(encodedData));
+
+        long total = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    private void writeInChunks(OutputStream outputStream) throws IOException {
+        for (int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+            outputStream.write(data, offset, Math.min(CHUNK_SIZE, data.length - offset));
+        }
+        outputStream.close();
+    }
+}
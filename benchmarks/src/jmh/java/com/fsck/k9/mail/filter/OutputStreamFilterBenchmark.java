@@ -0,0 +1,72 @@
+package com.fsck.k9.mail.filter;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.fsck.k9.mail.benchmark.SyntheticCorpus;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Measures the output filters a message body passes through when it is sent or signed, writing 256 KiB of text in
+ * the chunk size used when copying streams.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OutputStreamFilterBenchmark {
+    private static final int TEXT_SIZE = 256 * 1024;
+    private static final int CHUNK_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 1000;
+
+
+    private byte[] text;
+
+
+    @Setup
+    public void setUp() {
+        text = SyntheticCorpus.messageText(TEXT_SIZE);
+    }
+
+    @Benchmark
+    public void eolConverting() throws IOException {
+        writeInChunks(new EOLConvertingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM));
+    }
+
+    @Benchmark
+    public void lineWrap() throws IOException {
+        writeInChunks(new LineWrapOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, MAX_LINE_LENGTH));
+    }
+
+    @Benchmark
+    public void smtpDataStuffing() throws IOException {
+        writeInChunks(new SmtpDataStuffing(NullOutputStream.NULL_OUTPUT_STREAM));
+    }
+
+    @Benchmark
+    public void signSafe() throws IOException {
+        writeInChunks(new SignSafeOutputStream(NullOutputStream.NULL_OUTPUT_STREAM));
+    }
+
+    @Benchmark
+    public void smtpPipeline() throws IOException {
+        writeInChunks(new EOLConvertingOutputStream(new LineWrapOutputStream(
+                new SmtpDataStuffing(NullOutputStream.NULL_OUTPUT_STREAM), MAX_LINE_LENGTH)));
+    }
+
+    private void writeInChunks(OutputStream outputStream) throws IOException {
+        for (int offset = 0; offset < text.length; offset += CHUNK_SIZE) {
+            outputStream.write(text, offset, Math.min(CHUNK_SIZE, text.length - offset));
+        }
+        outputStream.flush();
+    }
+}
@@ -0,0 +1,52 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fsck.k9.mail.benchmark.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Measures decoding of RFC 2047 encoded words in subjects and display names. Scores are per header value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecoderUtilBenchmark {
+    private static final int VALUE_COUNT = 1000;
+
+
+    private List<String> headerValues;
+
+
+    @Setup
+    public void setUp() {
+        headerValues = SyntheticCorpus.encodedHeaderValues(VALUE_COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public void decodeEncodedWords(Blackhole blackhole) {
+        for (String value : headerValues) {
+            blackhole.consume(DecoderUtil.decodeEncodedWords(value, null));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public void unfoldAndDecode(Blackhole blackhole) {
+        for (String value : headerValues) {
+            blackhole.consume(MimeUtility.unfoldAndDecode(value));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fsck.k9.mail.benchmark.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Measures the {@code format=flowed} checks done for every text part when extracting viewable parts. Scores are per
+ * {@code Content-Type} value.
+ * <p>
+ * Decoding the flowed text itself ({@code deflow()}) is done by the app, not the library, and isn't covered here.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FlowedMessageUtilsBenchmark {
+    private static final int VALUE_COUNT = 1000;
+
+
+    private List<String> contentTypes;
+
+
+    @Setup
+    public void setUp() {
+        contentTypes = SyntheticCorpus.textContentTypes(VALUE_COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUE_COUNT)
+    public void isFormatFlowedAndDelSp(Blackhole blackhole) {
+        for (String contentType : contentTypes) {
+            blackhole.consume(FlowedMessageUtils.isFormatFlowed(contentType));
+            blackhole.consume(FlowedMessageUtils.isDelSp(contentType));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fsck.k9.mail.MessagingException;
+import com.fsck.k9.mail.benchmark.SyntheticCorpus;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Measures {@link MimeMessage#parse(java.io.InputStream)} on a mix of plain text, multipart/alternative, forwarded
+ * messages and messages with attachments. Scores are per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MimeMessageParseBenchmark {
+    private static final int MESSAGE_COUNT = 100;
+
+
+    private List<byte[]> messages;
+    private File tempDirectory;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        messages = SyntheticCorpus.mimeMessages(MESSAGE_COUNT);
+
+        tempDirectory = File.createTempFile("k9-benchmark", "");
+        FileUtils.forceDelete(tempDirectory);
+        FileUtils.forceMkdir(tempDirectory);
+        BinaryTempFileBody.setTempDirectory(tempDirectory);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteTempFiles() throws IOException {
+        FileUtils.cleanDirectory(tempDirectory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDirectory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE_COUNT)
+    public void parse(Blackhole blackhole) throws IOException, MessagingException {
+        for (byte[] message : messages) {
+            blackhole.consume(MimeMessage.parseMimeMessage(new ByteArrayInputStream(message), true));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.fsck.k9.mail.store.imap;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.fsck.k9.mail.benchmark.SyntheticCorpus;
+import com.fsck.k9.mail.filter.PeekableInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Measures parsing the responses to the {@code UID FETCH} commands issued during a sync of 100 messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImapResponseParserBenchmark {
+    private static final int MESSAGE_COUNT = 100;
+
+
+    private byte[] headerFetchTranscript;
+    private byte[] bodyStructureFetchTranscript;
+
+
+    @Setup
+    public void setUp() {
+        headerFetchTranscript = SyntheticCorpus.imapHeaderFetchTranscript(MESSAGE_COUNT);
+        bodyStructureFetchTranscript = SyntheticCorpus.imapBodyStructureTranscript(MESSAGE_COUNT);
+    }
+
+    @Benchmark
+    public int headerFetch() throws IOException {
+        return parseTranscript(headerFetchTranscript);
+    }
+
+    @Benchmark
+    public int bodyStructureFetch() throws IOException {
+        return parseTranscript(bodyStructureFetchTranscript);
+    }
+
+    private static int parseTranscript(byte[] transcript) throws IOException {
+        PeekableInputStream inputStream = new PeekableInputStream(new ByteArrayInputStream(transcript));
+        ImapResponseParser parser = new ImapResponseParser(inputStream);
+
+        int size = 0;
+        while (inputStream.peek() != -1) {
+            size += parser.readResponse().size();
+        }
+        return size;
+    }
+}
@@ -26,6 +26,9 @@ public class Address implements Serializable {
      */
     private static final Address[] EMPTY_ADDRESS_ARRAY = new Address[0];
 
+    private static final AddressInternCache INTERN_CACHE =
+            new AddressInternCache(AddressInternCache.DEFAULT_MAX_SIZE);
+
     private String mAddress;
 
     private String mPersonal;
@@ -44,7 +47,7 @@ public class Address implements Serializable {
         this(address, null, true);
     }
 
-    private Address(String address, String personal, boolean parse) {
+    Address(String address, String personal, boolean parse) {
         if (parse) {
             Rfc822Token[] tokens =  Rfc822Tokenizer.tokenize(address);
             if (tokens.length > 0) {
@@ -232,44 +235,47 @@ public class Address implements Serializable {
 
 
     /**
-     * Unpacks an address list previously packed with packAddressList()
+     * Unpacks an address list previously packed with {@link #pack(Address[])}.
      * @param addressList Packed address list.
      * @return Unpacked list.
      */
     public static Address[] unpack(String addressList) {
-        if (addressList == null) {
+        if (addressList == null || addressList.isEmpty()) {
             return new Address[] { };
         }
         List<Address> addresses = new ArrayList<Address>();
-        int length = addressList.length();
-        int pairStartIndex = 0;
-        int pairEndIndex = 0;
-        int addressEndIndex = 0;
-        while (pairStartIndex < length) {
-            pairEndIndex = addressList.indexOf(",\u0000", pairStartIndex);
-            if (pairEndIndex == -1) {
-                pairEndIndex = length;
-            }
-            addressEndIndex = addressList.indexOf(";\u0000", pairStartIndex);
-            String address = null;
-            String personal = null;
-            if (addressEndIndex == -1 || addressEndIndex > pairEndIndex) {
-                address = addressList.substring(pairStartIndex, pairEndIndex);
-            } else {
-                address = addressList.substring(pairStartIndex, addressEndIndex);
-                personal = addressList.substring(addressEndIndex + 2, pairEndIndex);
-            }
-            addresses.add(new Address(address, personal, false));
-            pairStartIndex = pairEndIndex + 2;
+        PackedAddressReader reader = new PackedAddressReader(addressList);
+        while (reader.next()) {
+            addresses.add(reader.toAddress());
+        }
+        return addresses.toArray(new Address[addresses.size()]);
+    }
+
+    /**
+     * Like {@link #unpack(String)}, but returns shared instances for addresses that were unpacked recently.
+     * <p>
+     * Meant for code that unpacks the same addresses over and over again, e.g. when displaying the message list. The
+     * returned {@link Address} objects must not be modified.
+     * </p>
+     */
+    public static Address[] unpackInterned(String addressList) {
+        if (addressList == null || addressList.isEmpty()) {
+            return EMPTY_ADDRESS_ARRAY;
+        }
+        List<Address> addresses = new ArrayList<Address>(2);
+        PackedAddressReader reader = new PackedAddressReader(addressList);
+        while (reader.next()) {
+            addresses.add(reader.toAddress(INTERN_CACHE));
         }
         return addresses.toArray(new Address[addresses.size()]);
     }
 
     /**
      * Packs an address list into a String that is very quick to read
-     * and parse. Packed lists can be unpacked with unpackAddressList()
-     * The packed list is a ",\u0000" separated list of:
-     * address;\u0000personal
+     * and parse. Packed lists can be unpacked with {@link #unpack(String)} or read
+     * with a {@link PackedAddressReader}, which also describes the format.
+     * Personal parts are stored verbatim. The old format did the same; its
+     * attempt to escape {@code "} used a replacement that left the quote as it was.
      * @param addresses Array of addresses to pack.
      * @return Packed addresses.
      */
@@ -277,22 +283,56 @@ public class Address implements Serializable {
         if (addresses == null) {
             return null;
         }
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0, count = addresses.length; i < count; i++) {
-            Address address = addresses[i];
-            sb.append(address.getAddress());
-            String personal = address.getPersonal();
-            if (personal != null) {
-                sb.append(";\u0000");
-                // Escape quotes in the address part on the way in
-                personal = personal.replaceAll("\"", "\\\"");
-                sb.append(personal);
+        if (addresses.length == 0) {
+            return "";
+        }
+        if (addresses.length == 1 && isPlainAddress(addresses[0])) {
+            return addresses[0].getAddress();
+        }
+        StringBuilder data = new StringBuilder();
+        StringBuilder index = new StringBuilder(PackedAddressReader.INDEX_MARKER);
+        for (int i = 0; i < addresses.length; i++) {
+            if (i > 0) {
+                data.append(PackedAddressReader.ENTRY_SEPARATOR);
             }
-            if (i < count - 1) {
-                sb.append(",\u0000");
+            appendField(data, index, addresses[i].getAddress(), ',');
+            if (addresses[i].getPersonal() != null) {
+                data.append(PackedAddressReader.PERSONAL_SEPARATOR);
             }
+            appendField(data, index, addresses[i].getPersonal(), ';');
         }
-        return sb.toString();
+        return data.append(index).toString();
+    }
+
+    /**
+     * Returns whether {@code address} reads the same in both packed formats when it's stored on its own.
+     */
+    private static boolean isPlainAddress(Address address) {
+        String addressString = address.getAddress();
+        return address.getPersonal() == null && addressString != null && !addressString.isEmpty() &&
+                addressString.indexOf('\u0000') == -1;
+    }
+
+    private static void appendField(StringBuilder data, StringBuilder index, String value, char terminator) {
+        if (value == null) {
+            index.append('-');
+        } else {
+            data.append(value);
+            index.append(value.length());
+        }
+        index.append(terminator);
+    }
+
+    /**
+     * Converts an address list packed by an older version of {@link #pack(Address[])} to the current format.
+     *
+     * @return The list in the current format, or {@code addressList} itself if no conversion is necessary.
+     */
+    public static String repack(String addressList) {
+        if (!PackedAddressReader.isLegacyFormat(addressList)) {
+            return addressList;
+        }
+        return pack(unpack(addressList));
     }
 
     /**
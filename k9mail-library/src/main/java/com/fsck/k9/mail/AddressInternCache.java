@@ -0,0 +1,125 @@
+package com.fsck.k9.mail;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Bounded LRU cache that hands out shared {@link Address} instances for address/personal pairs read from packed
+ * address lists.
+ * <p>
+ * Lookups compare the regions of the packed string directly, so an address that is already in the cache (e.g. a
+ * frequent sender) can be returned without creating any strings.
+ * </p>
+ */
+class AddressInternCache {
+    static final int DEFAULT_MAX_SIZE = 256;
+
+
+    private final Map<Key, Address> entries;
+    private final Key probe = new Key();
+
+
+    AddressInternCache(final int maxSize) {
+        entries = new LinkedHashMap<Key, Address>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Address> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the address for the given regions of {@code source}. A start offset of {@code -1} denotes a missing
+     * address or personal part.
+     */
+    synchronized Address get(String source, int addressStart, int addressEnd, int personalStart, int personalEnd) {
+        probe.set(source, addressStart, addressEnd, personalStart, personalEnd);
+        Address address = entries.get(probe);
+        if (address != null) {
+            return address;
+        }
+
+        String addressString = addressStart != -1 ? source.substring(addressStart, addressEnd) : null;
+        String personal = personalStart != -1 ? source.substring(personalStart, personalEnd) : null;
+        address = new Address(addressString, personal, false);
+
+        entries.put(Key.copyOf(addressString, personal), address);
+        probe.set(null, -1, -1, -1, -1);
+
+        return address;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+
+    private static class Key {
+        private String source;
+        private int addressStart;
+        private int addressEnd;
+        private int personalStart;
+        private int personalEnd;
+        private int hash;
+
+
+        static Key copyOf(String address, String personal) {
+            String source = (address != null ? address : "") + (personal != null ? personal : "");
+            int addressLength = address != null ? address.length() : 0;
+
+            Key key = new Key();
+            key.set(source, address != null ? 0 : -1, addressLength,
+                    personal != null ? addressLength : -1, source.length());
+            return key;
+        }
+
+        void set(String source, int addressStart, int addressEnd, int personalStart, int personalEnd) {
+            this.source = source;
+            this.addressStart = addressStart;
+            this.addressEnd = addressEnd;
+            this.personalStart = personalStart;
+            this.personalEnd = personalEnd;
+            hash = source != null ? 31 * hash(addressStart, addressEnd) + hash(personalStart, personalEnd) : 0;
+        }
+
+        private int hash(int start, int end) {
+            if (start == -1) {
+                return -1;
+            }
+
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + source.charAt(i);
+            }
+            return h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return hash == other.hash &&
+                    regionEquals(addressStart, addressEnd, other, other.addressStart, other.addressEnd) &&
+                    regionEquals(personalStart, personalEnd, other, other.personalStart, other.personalEnd);
+        }
+
+        private boolean regionEquals(int start, int end, Key other, int otherStart, int otherEnd) {
+            if (start == -1 || otherStart == -1) {
+                return start == otherStart;
+            }
+
+            int length = end - start;
+            return length == otherEnd - otherStart && source.regionMatches(start, other.source, otherStart, length);
+        }
+    }
+}
@@ -5,10 +5,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import com.fsck.k9.mail.filter.FixedLengthInputStream;
 import com.fsck.k9.mail.internet.BinaryTempFileBody;
 import com.fsck.k9.mail.internet.BinaryTempFileMessageBody;
+import com.fsck.k9.mail.internet.MimeParseContext;
 import com.fsck.k9.mail.internet.MimeUtility;
-import org.apache.commons.io.IOUtils;
 import org.apache.james.mime4j.util.MimeUtil;
 
 
@@ -22,9 +23,9 @@ public class DefaultBodyFactory implements BodyFactory {
 
         final BinaryTempFileBody tempBody;
         if (MimeUtil.isMessage(contentType)) {
-            tempBody = new BinaryTempFileMessageBody(contentTransferEncoding);
+            tempBody = new BinaryTempFileMessageBody(contentTransferEncoding, getMemoryBackedThreshold());
         } else {
-            tempBody = new BinaryTempFileBody(contentTransferEncoding);
+            tempBody = new BinaryTempFileBody(contentTransferEncoding, getMemoryBackedThreshold());
         }
 
         OutputStream outputStream = tempBody.getOutputStream();
@@ -37,7 +38,19 @@ public class DefaultBodyFactory implements BodyFactory {
         return tempBody;
     }
 
+    /**
+     * Bodies up to this size are kept in memory instead of being written to a temp file.
+     */
+    protected int getMemoryBackedThreshold() {
+        return BinaryTempFileBody.DEFAULT_MEMORY_BACKED_THRESHOLD;
+    }
+
     protected void copyData(InputStream inputStream, OutputStream outputStream) throws IOException {
-        IOUtils.copy(inputStream, outputStream);
+        if (inputStream instanceof FixedLengthInputStream) {
+            // Literals read from a server connection are written directly from the connection's buffer
+            ((FixedLengthInputStream) inputStream).transferTo(outputStream);
+        } else {
+            MimeParseContext.copy(inputStream, outputStream);
+        }
     }
 }
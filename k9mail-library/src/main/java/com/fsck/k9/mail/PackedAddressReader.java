@@ -0,0 +1,244 @@
+package com.fsck.k9.mail;
+
+
+import java.nio.CharBuffer;
+
+
+/**
+ * Iterates over the addresses in a list packed with {@link Address#pack(Address[])} without copying the packed
+ * string.
+ * <p>
+ * The current format stores the entries as {@code address;personal}, separated by {@code ,}, followed by
+ * {@link #INDEX_MARKER} and an index with the length of every field:
+ * </p>
+ * <pre>
+ * address;personal,address,address;personal ... \u0000\u0001 addressLength,personalLength; ...
+ * </pre>
+ * <p>
+ * A missing field is recorded as {@code -} instead of a length, and a missing personal part has no {@code ;} in front
+ * of it. The separators are only there for SQL queries, the lengths are what counts when reading. Keeping the index at
+ * the end means the packed list still starts with the first address, so sorting by a packed column keeps sorting by
+ * address. And because the index starts with a NUL character, SQLite's string functions (e.g. {@code LIKE}) only see
+ * the delimited list of addresses. A list with a single address and no personal part is stored as just that address,
+ * same as in the older format, so comparing the column to an address keeps working.
+ * </p><p>
+ * Lists in the older format ({@code address;\u0000personal,\u0000address...}) are read as well. So is anything with
+ * an index that doesn't match its data; that is never the result of packing a list.
+ * </p>
+ */
+public class PackedAddressReader {
+    static final String INDEX_MARKER = "\u0000\u0001";
+    static final char ENTRY_SEPARATOR = ',';
+    static final char PERSONAL_SEPARATOR = ';';
+
+    private static final int INVALID_LENGTH = -2;
+
+    private static final String LEGACY_PAIR_DELIMITER = ",\u0000";
+    private static final String LEGACY_PERSONAL_DELIMITER = ";\u0000";
+
+
+    private final String packed;
+    private final int length;
+    private final boolean legacyFormat;
+
+    private int dataPosition = 0;
+    private int indexPosition;
+    private boolean firstEntry = true;
+
+    private int addressStart;
+    private int addressEnd;
+    private int personalStart;
+    private int personalEnd;
+
+
+    public PackedAddressReader(String packed) {
+        this.packed = packed != null ? packed : "";
+
+        int indexStart = this.packed.lastIndexOf(INDEX_MARKER);
+        legacyFormat = indexStart == -1 || !isIndexValid(indexStart);
+        if (legacyFormat) {
+            length = this.packed.length();
+        } else {
+            length = indexStart;
+            indexPosition = indexStart + INDEX_MARKER.length();
+        }
+    }
+
+    /**
+     * Returns whether {@code packed} was created by an older version of {@link Address#pack(Address[])} and reads
+     * differently in the current format.
+     */
+    public static boolean isLegacyFormat(String packed) {
+        return packed != null && !packed.contains(INDEX_MARKER) &&
+                (packed.contains(LEGACY_PAIR_DELIMITER) || packed.contains(LEGACY_PERSONAL_DELIMITER));
+    }
+
+    /**
+     * Moves to the next address.
+     *
+     * @return {@code false} if there are no more addresses.
+     */
+    public boolean next() {
+        return legacyFormat ? nextLegacy() : nextIndexed();
+    }
+
+    public boolean hasAddress() {
+        return addressStart != -1;
+    }
+
+    public boolean hasPersonal() {
+        return personalStart != -1;
+    }
+
+    /**
+     * Returns a view of the address of the current entry, or {@code null}.
+     */
+    public CharSequence getAddressView() {
+        return addressStart != -1 ? CharBuffer.wrap(packed, addressStart, addressEnd) : null;
+    }
+
+    /**
+     * Returns a view of the personal part of the current entry, or {@code null}.
+     */
+    public CharSequence getPersonalView() {
+        return personalStart != -1 ? CharBuffer.wrap(packed, personalStart, personalEnd) : null;
+    }
+
+    public String getAddress() {
+        return addressStart != -1 ? packed.substring(addressStart, addressEnd) : null;
+    }
+
+    public String getPersonal() {
+        return personalStart != -1 ? packed.substring(personalStart, personalEnd) : null;
+    }
+
+    public boolean addressEqualsIgnoreCase(String address) {
+        if (addressStart == -1 || address == null) {
+            return addressStart == -1 && address == null;
+        }
+
+        int addressLength = addressEnd - addressStart;
+        return address.length() == addressLength && packed.regionMatches(true, addressStart, address, 0, addressLength);
+    }
+
+    /**
+     * Returns an {@link Address} for the current entry.
+     */
+    public Address toAddress() {
+        return new Address(getAddress(), getPersonal(), false);
+    }
+
+    Address toAddress(AddressInternCache cache) {
+        return cache.get(packed, addressStart, addressEnd, personalStart, personalEnd);
+    }
+
+    private boolean nextIndexed() {
+        if (indexPosition >= packed.length()) {
+            return false;
+        }
+
+        if (!firstEntry) {
+            dataPosition++;
+        }
+        firstEntry = false;
+
+        int addressLength = readLength(',');
+        int personalLength = readLength(';');
+
+        addressStart = addressLength != -1 ? dataPosition : -1;
+        addressEnd = dataPosition + Math.max(addressLength, 0);
+        if (personalLength != -1) {
+            personalStart = addressEnd + 1;
+            personalEnd = personalStart + personalLength;
+        } else {
+            personalStart = -1;
+            personalEnd = addressEnd;
+        }
+        dataPosition = personalEnd;
+
+        return true;
+    }
+
+    /**
+     * Checks that the index describes exactly the data in front of it, so {@link #nextIndexed()} can't run past the
+     * data.
+     */
+    private boolean isIndexValid(int indexStart) {
+        indexPosition = indexStart + INDEX_MARKER.length();
+        int dataLength = 0;
+        boolean first = true;
+        while (indexPosition < packed.length()) {
+            int addressLength = readLength(',');
+            int personalLength = addressLength != INVALID_LENGTH ? readLength(';') : INVALID_LENGTH;
+            if (personalLength == INVALID_LENGTH) {
+                return false;
+            }
+
+            dataLength += (first ? 0 : 1) + Math.max(addressLength, 0);
+            dataLength += personalLength != -1 ? personalLength + 1 : 0;
+            first = false;
+            if (dataLength > indexStart) {
+                return false;
+            }
+        }
+
+        return !first && dataLength == indexStart;
+    }
+
+    /**
+     * Reads the next length from the index.
+     *
+     * @return The length, {@code -1} for a missing field or {@link #INVALID_LENGTH} if the index is malformed.
+     */
+    private int readLength(char terminator) {
+        int position = indexPosition;
+        int value;
+        if (position < packed.length() && packed.charAt(position) == '-') {
+            value = -1;
+            position++;
+        } else {
+            value = 0;
+            char c;
+            while (position < packed.length() && (c = packed.charAt(position)) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                position++;
+                if (value > packed.length()) {
+                    return INVALID_LENGTH;
+                }
+            }
+        }
+
+        if (position == indexPosition || position >= packed.length() || packed.charAt(position) != terminator) {
+            return INVALID_LENGTH;
+        }
+
+        indexPosition = position + 1;
+        return value;
+    }
+
+    private boolean nextLegacy() {
+        if (dataPosition >= length) {
+            return false;
+        }
+
+        int pairEnd = packed.indexOf(LEGACY_PAIR_DELIMITER, dataPosition);
+        if (pairEnd == -1) {
+            pairEnd = length;
+        }
+
+        int addressEndIndex = packed.indexOf(LEGACY_PERSONAL_DELIMITER, dataPosition);
+        addressStart = dataPosition;
+        if (addressEndIndex == -1 || addressEndIndex > pairEnd) {
+            addressEnd = pairEnd;
+            personalStart = -1;
+            personalEnd = -1;
+        } else {
+            addressEnd = addressEndIndex;
+            personalStart = addressEndIndex + LEGACY_PERSONAL_DELIMITER.length();
+            personalEnd = pairEnd;
+        }
+
+        dataPosition = pairEnd + LEGACY_PAIR_DELIMITER.length();
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+package com.fsck.k9.mail.filter;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Incremental Base64 decoder that works on caller-provided buffers.
+ * <p>
+ * Decoding is lenient in the same way as mime4j's {@code Base64InputStream}: characters outside of the Base64
+ * alphabet (line breaks, but also garbage) are skipped, and everything after the first pad character is ignored. An
+ * incomplete trailing group that isn't terminated by padding is dropped.
+ * </p><p>
+ * Groups of 4 characters are decoded with one lookup per character in four tables that already contain the 6-bit
+ * values shifted into place. Invalid characters map to a negative value in all tables, so a single check on the
+ * combined value tells whether the fast path can be used. No memory is allocated after construction.
+ * </p>
+ */
+public final class Base64Decoder {
+    private static final int INVALID = -1;
+    private static final int PAD = '=';
+
+    private static final int[] DECODE_0 = new int[256];
+    private static final int[] DECODE_1 = new int[256];
+    private static final int[] DECODE_2 = new int[256];
+    private static final int[] DECODE_3 = new int[256];
+
+    static {
+        Arrays.fill(DECODE_0, INVALID);
+        Arrays.fill(DECODE_1, INVALID);
+        Arrays.fill(DECODE_2, INVALID);
+        Arrays.fill(DECODE_3, INVALID);
+
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            int c = alphabet.charAt(i);
+            DECODE_0[c] = i << 18;
+            DECODE_1[c] = i << 12;
+            DECODE_2[c] = i << 6;
+            DECODE_3[c] = i;
+        }
+    }
+
+
+    private int pending = 0;
+    private int pendingCount = 0;
+    private boolean paddingSeen = false;
+
+
+    /**
+     * Returns the size of an output buffer that is large enough for a call to
+     * {@link #decode(byte[], int, int, byte[], int)} with {@code length} input bytes.
+     */
+    public static int getMaxDecodedLength(int length) {
+        return (length + 3) / 4 * 3;
+    }
+
+    /**
+     * Decodes {@code length} bytes of {@code input} starting at {@code inputOffset}.
+     *
+     * @return The number of bytes written to {@code output}.
+     */
+    public int decode(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        int in = inputOffset;
+        int end = inputOffset + length;
+        int out = outputOffset;
+
+        while (in < end && !paddingSeen) {
+            if (pendingCount == 0) {
+                while (end - in >= 4) {
+                    int bits = DECODE_0[input[in] & 0xFF] | DECODE_1[input[in + 1] & 0xFF] |
+                            DECODE_2[input[in + 2] & 0xFF] | DECODE_3[input[in + 3] & 0xFF];
+                    if (bits < 0) {
+                        break;
+                    }
+
+                    output[out] = (byte) (bits >> 16);
+                    output[out + 1] = (byte) (bits >> 8);
+                    output[out + 2] = (byte) bits;
+                    in += 4;
+                    out += 3;
+                }
+
+                if (in == end) {
+                    break;
+                }
+            }
+
+            int c = input[in++] & 0xFF;
+            int value = DECODE_3[c];
+            if (value >= 0) {
+                pending = (pending << 6) | value;
+                pendingCount++;
+                if (pendingCount == 4) {
+                    output[out] = (byte) (pending >> 16);
+                    output[out + 1] = (byte) (pending >> 8);
+                    output[out + 2] = (byte) pending;
+                    out += 3;
+                    pending = 0;
+                    pendingCount = 0;
+                }
+            } else if (c == PAD) {
+                paddingSeen = true;
+                out = writePartialQuantum(output, out);
+            }
+        }
+
+        return out - outputOffset;
+    }
+
+    public void reset() {
+        pending = 0;
+        pendingCount = 0;
+        paddingSeen = false;
+    }
+
+    private int writePartialQuantum(byte[] output, int out) {
+        if (pendingCount == 2) {
+            output[out++] = (byte) (pending >> 4);
+        } else if (pendingCount == 3) {
+            output[out++] = (byte) (pending >> 10);
+            output[out++] = (byte) (pending >> 2);
+        }
+
+        pending = 0;
+        pendingCount = 0;
+        return out;
+    }
+}
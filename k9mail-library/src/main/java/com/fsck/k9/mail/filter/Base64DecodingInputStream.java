@@ -0,0 +1,127 @@
+package com.fsck.k9.mail.filter;
+
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Decodes data in the {@code base64} content transfer encoding while it is read.
+ * <p>
+ * The wrapped stream is read in blocks of up to 4 KiB. Large reads are decoded straight into the caller's buffer;
+ * only small reads go through an internal buffer. See {@link Base64Decoder} for how invalid input is handled.
+ * {@link #close()} doesn't close the wrapped stream.
+ * </p>
+ */
+public class Base64DecodingInputStream extends FilterInputStream {
+    private static final int INPUT_BUFFER_SIZE = 4 * 1024;
+    private static final int DIRECT_READ_THRESHOLD = 1024;
+
+
+    private final Base64Decoder decoder = new Base64Decoder();
+    private final byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+    private final byte[] outputBuffer = new byte[Base64Decoder.getMaxDecodedLength(INPUT_BUFFER_SIZE)];
+    private final byte[] singleByte = new byte[1];
+    private int outputPosition = 0;
+    private int outputLimit = 0;
+    private boolean eof = false;
+    private boolean closed = false;
+
+
+    public Base64DecodingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = read(singleByte, 0, 1);
+        return read == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (outputPosition < outputLimit) {
+                int count = Math.min(length, outputLimit - outputPosition);
+                System.arraycopy(outputBuffer, outputPosition, buffer, offset, count);
+                outputPosition += count;
+                return count;
+            }
+
+            if (eof) {
+                return -1;
+            }
+
+            if (length >= DIRECT_READ_THRESHOLD) {
+                // Limit the input so everything it decodes to, plus what the decoder holds back, fits into the buffer
+                int maxInput = Math.min(inputBuffer.length, (length / 3) * 4 - 4);
+                int decoded = fill(buffer, offset, maxInput);
+                if (decoded > 0) {
+                    return decoded;
+                }
+            } else {
+                outputPosition = 0;
+                outputLimit = fill(outputBuffer, 0, inputBuffer.length);
+            }
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed");
+        }
+
+        long skipped = 0;
+        while (skipped < n) {
+            if (outputPosition == outputLimit) {
+                if (eof) {
+                    break;
+                }
+
+                outputPosition = 0;
+                outputLimit = fill(outputBuffer, 0, inputBuffer.length);
+                continue;
+            }
+
+            int count = (int) Math.min(n - skipped, outputLimit - outputPosition);
+            outputPosition += count;
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    private int fill(byte[] output, int offset, int maxInput) throws IOException {
+        int read = in.read(inputBuffer, 0, maxInput);
+        if (read == -1) {
+            eof = true;
+            return 0;
+        }
+
+        return decoder.decode(inputBuffer, 0, read, output, offset);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return outputLimit - outputPosition;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+    }
+}
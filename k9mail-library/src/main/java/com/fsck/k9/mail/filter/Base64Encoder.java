@@ -0,0 +1,200 @@
+package com.fsck.k9.mail.filter;
+
+
+/**
+ * Incremental Base64 encoder that works on caller-provided buffers.
+ * <p>
+ * Input doesn't have to be a multiple of 3 bytes. Up to two trailing bytes are kept between calls to
+ * {@link #encode(byte[], int, int, byte[], int)} and written out (with padding) by {@link #finish(byte[], int)}.
+ * Every group of 3 input bytes is encoded with two lookups in a table that maps 12 bits to two characters. No
+ * memory is allocated after construction.
+ * </p><p>
+ * Like {@link Base64}, the encoded output is split into lines of {@link #MIME_LINE_LENGTH} characters and always
+ * ends with a line separator, so both produce the same bytes for the same input.
+ * </p>
+ */
+public final class Base64Encoder {
+    public static final int MIME_LINE_LENGTH = 76;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte PAD = '=';
+    private static final byte[] ALPHABET = {
+            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+            'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
+            'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
+            'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '+', '/'
+    };
+
+    /** First character of the encoding of a 12-bit value. */
+    private static final byte[] PAIR_FIRST = new byte[4096];
+    /** Second character of the encoding of a 12-bit value. */
+    private static final byte[] PAIR_SECOND = new byte[4096];
+
+    static {
+        for (int i = 0; i < 4096; i++) {
+            PAIR_FIRST[i] = ALPHABET[i >>> 6];
+            PAIR_SECOND[i] = ALPHABET[i & 0x3F];
+        }
+    }
+
+
+    private final int lineLength;
+    private final byte[] lineSeparator;
+    private int linePosition = 0;
+    private int pending = 0;
+    private int pendingCount = 0;
+
+
+    /**
+     * Creates an encoder for the {@code base64} content transfer encoding, i.e. with lines of 76 characters
+     * terminated by CRLF.
+     */
+    public Base64Encoder() {
+        this(MIME_LINE_LENGTH, CRLF);
+    }
+
+    /**
+     * @param lineLength
+     *         The number of characters per line. Has to be a multiple of 4. If {@code lineLength <= 0} the output
+     *         isn't split into lines and no line separator is written.
+     * @param lineSeparator
+     *         The bytes written after every line.
+     */
+    public Base64Encoder(int lineLength, byte[] lineSeparator) {
+        if (lineLength > 0 && lineLength % 4 != 0) {
+            throw new IllegalArgumentException("lineLength must be a multiple of 4");
+        }
+
+        this.lineLength = lineLength > 0 ? lineLength : 0;
+        this.lineSeparator = lineSeparator.clone();
+    }
+
+    /**
+     * Returns the size of an output buffer that is large enough for a call to
+     * {@link #encode(byte[], int, int, byte[], int)} with {@code length} input bytes, or for {@link #finish(byte[], int)}
+     * when {@code length} is 0.
+     */
+    public int getMaxEncodedLength(int length) {
+        int quanta = (length + 2) / 3 + 1;
+        int characters = quanta * 4;
+        if (lineLength == 0) {
+            return characters;
+        }
+
+        int lines = characters / lineLength + 2;
+        return characters + lines * lineSeparator.length;
+    }
+
+    /**
+     * Encodes {@code length} bytes of {@code input} starting at {@code inputOffset}.
+     *
+     * @return The number of bytes written to {@code output}.
+     */
+    public int encode(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+        int in = inputOffset;
+        int end = inputOffset + length;
+        int out = outputOffset;
+
+        while (pendingCount > 0 && in < end) {
+            pending = (pending << 8) | (input[in++] & 0xFF);
+            pendingCount++;
+            if (pendingCount == 3) {
+                out = writeQuantum(pending, output, out);
+                pending = 0;
+                pendingCount = 0;
+            }
+        }
+
+        while (end - in >= 3) {
+            int bits = ((input[in] & 0xFF) << 16) | ((input[in + 1] & 0xFF) << 8) | (input[in + 2] & 0xFF);
+            in += 3;
+
+            int high = bits >>> 12;
+            int low = bits & 0xFFF;
+            output[out] = PAIR_FIRST[high];
+            output[out + 1] = PAIR_SECOND[high];
+            output[out + 2] = PAIR_FIRST[low];
+            output[out + 3] = PAIR_SECOND[low];
+            out += 4;
+
+            if (lineLength != 0) {
+                linePosition += 4;
+                if (linePosition == lineLength) {
+                    out = writeLineSeparator(output, out);
+                }
+            }
+        }
+
+        while (in < end) {
+            pending = (pending << 8) | (input[in++] & 0xFF);
+            pendingCount++;
+        }
+
+        return out - outputOffset;
+    }
+
+    /**
+     * Writes the remaining input bytes with padding, followed by the final line separator. Afterwards the encoder can
+     * be used for new data.
+     *
+     * @return The number of bytes written to {@code output}.
+     */
+    public int finish(byte[] output, int outputOffset) {
+        int out = outputOffset;
+        if (pendingCount == 1) {
+            int bits = pending << 4;
+            output[out] = PAIR_FIRST[bits];
+            output[out + 1] = PAIR_SECOND[bits];
+            output[out + 2] = PAD;
+            output[out + 3] = PAD;
+            out += 4;
+        } else if (pendingCount == 2) {
+            int bits = pending << 2;
+            output[out] = PAIR_FIRST[bits >>> 6];
+            output[out + 1] = PAIR_SECOND[bits >>> 6];
+            output[out + 2] = ALPHABET[bits & 0x3F];
+            output[out + 3] = PAD;
+            out += 4;
+        }
+
+        if (lineLength != 0) {
+            out = writeLineSeparator(output, out);
+        }
+
+        reset();
+
+        return out - outputOffset;
+    }
+
+    public void reset() {
+        linePosition = 0;
+        pending = 0;
+        pendingCount = 0;
+    }
+
+    private int writeQuantum(int bits, byte[] output, int out) {
+        int high = bits >>> 12;
+        int low = bits & 0xFFF;
+        output[out] = PAIR_FIRST[high];
+        output[out + 1] = PAIR_SECOND[high];
+        output[out + 2] = PAIR_FIRST[low];
+        output[out + 3] = PAIR_SECOND[low];
+        out += 4;
+
+        if (lineLength != 0) {
+            linePosition += 4;
+            if (linePosition == lineLength) {
+                out = writeLineSeparator(output, out);
+            }
+        }
+
+        return out;
+    }
+
+    private int writeLineSeparator(byte[] output, int out) {
+        System.arraycopy(lineSeparator, 0, output, out, lineSeparator.length);
+        linePosition = 0;
+        return out + lineSeparator.length;
+    }
+}
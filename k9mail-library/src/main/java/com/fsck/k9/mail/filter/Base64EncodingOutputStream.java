@@ -0,0 +1,83 @@
+package com.fsck.k9.mail.filter;
+
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Encodes everything written to it using the {@code base64} content transfer encoding.
+ * <p>
+ * Encoded data is collected in a fixed buffer that is handed to the wrapped stream once it's (almost) full, so the
+ * wrapped stream sees large writes regardless of how the data is written to this stream. {@link #close()} writes
+ * the final group and line separator, flushes, but doesn't close the wrapped stream.
+ * </p>
+ */
+public class Base64EncodingOutputStream extends FilterOutputStream {
+    private static final int INPUT_CHUNK_SIZE = 3 * 1024;
+
+
+    private final Base64Encoder encoder = new Base64Encoder();
+    private final byte[] buffer = new byte[encoder.getMaxEncodedLength(INPUT_CHUNK_SIZE)];
+    private final byte[] singleByte = new byte[1];
+    private int count = 0;
+    private boolean closed = false;
+
+
+    public Base64EncodingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int oneByte) throws IOException {
+        singleByte[0] = (byte) oneByte;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream has been closed");
+        }
+
+        int end = offset + length;
+        while (offset < end) {
+            int chunkLength = Math.min(end - offset, INPUT_CHUNK_SIZE);
+            if (buffer.length - count < encoder.getMaxEncodedLength(chunkLength)) {
+                flushBuffer();
+            }
+
+            count += encoder.encode(data, offset, chunkLength, buffer, count);
+            offset += chunkLength;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        if (buffer.length - count < encoder.getMaxEncodedLength(0)) {
+            flushBuffer();
+        }
+        count += encoder.finish(buffer, count);
+        closed = true;
+
+        flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -32,6 +32,42 @@ public class EOLConvertingOutputStream extends FilterOutputStream {
         ignoreLf = false;
     }
 
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        int runStart = offset;
+        for (int i = offset; i < end; i++) {
+            byte oneByte = buffer[i];
+            if (oneByte == CR || oneByte == LF) {
+                writeRun(buffer, runStart, i);
+                write(oneByte);
+                runStart = i + 1;
+            }
+        }
+        writeRun(buffer, runStart, end);
+    }
+
+    /**
+     * Writes a sequence of bytes that contains neither CR nor LF.
+     */
+    private void writeRun(byte[] buffer, int start, int end) throws IOException {
+        if (start == end) {
+            return;
+        }
+
+        if (lastByte == CR || ignoreLf) {
+            // The first byte needs special treatment
+            write(buffer[start]);
+            start++;
+            if (start == end) {
+                return;
+            }
+        }
+
+        out.write(buffer, start, end - start);
+        lastByte = buffer[end - 1];
+    }
+
     @Override
     public void flush() throws IOException {
         completeCrLf();
@@ -1,8 +1,10 @@
 
 package com.fsck.k9.mail.filter;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Locale;
 
 /**
@@ -11,6 +13,8 @@ import java.util.Locale;
  * past where the protocol handler intended the client to read.
  */
 public class FixedLengthInputStream extends InputStream {
+    private static final int TRANSFER_BUFFER_SIZE = 8 * 1024;
+
     private final InputStream mIn;
     private final int mLength;
     private int mCount = 0;
@@ -72,7 +76,39 @@ public class FixedLengthInputStream extends InputStream {
 
     public void skipRemaining() throws IOException {
         while (available() > 0) {
-            skip(available());
+            if (skip(available()) == 0 && read() == -1) {
+                throw new EOFException("End of stream reached with " + available() + " bytes remaining");
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of this stream to {@code out}. If the wrapped stream is a {@link PeekableInputStream}
+     * the data is written directly from its buffer.
+     *
+     * @return The number of bytes written.
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        int remaining = mLength - mCount;
+        if (remaining <= 0) {
+            return 0;
         }
+
+        long transferred;
+        if (mIn instanceof PeekableInputStream) {
+            transferred = ((PeekableInputStream) mIn).transferTo(out, remaining);
+        } else {
+            transferred = 0;
+            byte[] buffer = new byte[Math.min(remaining, TRANSFER_BUFFER_SIZE)];
+            int read;
+            while (transferred < remaining &&
+                    (read = mIn.read(buffer, 0, (int) Math.min(buffer.length, remaining - transferred))) != -1) {
+                out.write(buffer, 0, read);
+                transferred += read;
+            }
+        }
+
+        mCount += transferred;
+        return transferred;
     }
 }
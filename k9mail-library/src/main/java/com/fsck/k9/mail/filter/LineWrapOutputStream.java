@@ -69,6 +69,33 @@ public class LineWrapOutputStream extends FilterOutputStream {
         }
     }
 
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        int end = offset + length;
+        int index = offset;
+        while (index < end) {
+            // Copy bytes that are neither line breaks nor word-boundaries straight to the buffer, as long as they fit
+            int runEnd = index;
+            int runLimit = Math.min(end, index + buffer.length - lineLength);
+            while (runEnd < runLimit) {
+                byte oneByte = bytes[runEnd];
+                if (oneByte == '\r' || oneByte == '\n' || oneByte == ' ') {
+                    break;
+                }
+                runEnd++;
+            }
+
+            if (runEnd > index) {
+                System.arraycopy(bytes, index, buffer, lineLength, runEnd - index);
+                lineLength += runEnd - index;
+                index = runEnd;
+            } else {
+                write(bytes[index]);
+                index++;
+            }
+        }
+    }
+
     @Override
     public void flush() throws IOException {
         // Buffer empty?
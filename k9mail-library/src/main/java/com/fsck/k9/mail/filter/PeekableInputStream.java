@@ -4,55 +4,80 @@ package com.fsck.k9.mail.filter;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Locale;
 
 
 /**
- * A filtering InputStream that allows single byte "peeks" without consuming the byte. The
+ * A buffering InputStream that allows single byte "peeks" without consuming the byte. The
  * client of this stream can call peek() to see the next available byte in the stream
  * and a subsequent read will still return the peeked byte.
+ * <p>
+ * The wrapped stream is read in blocks into an internal buffer, so it doesn't need to be wrapped in a
+ * {@link java.io.BufferedInputStream}. Single byte reads and peeks are served from that buffer, array reads and
+ * {@link #skip(long)} work on whole blocks, and {@link #transferTo(OutputStream, long)} writes straight from the
+ * buffer to an {@code OutputStream}.
+ * </p>
  */
 public class PeekableInputStream extends FilterInputStream {
-    private boolean peeked;
-    private int peekedByte;
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+
+    private final byte[] buffer;
+    private int position = 0;
+    private int limit = 0;
 
 
     public PeekableInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public PeekableInputStream(InputStream in, int bufferSize) {
         super(in);
+        buffer = new byte[bufferSize];
     }
 
     @Override
     public int read() throws IOException {
-        if (!peeked) {
-            return in.read();
-        } else {
-            peeked = false;
-            return peekedByte;
+        if (position == limit && !fill()) {
+            return -1;
         }
+
+        return buffer[position++] & 0xFF;
     }
 
     public int peek() throws IOException {
-        if (!peeked) {
-            peekedByte = in.read();
-            peeked = true;
+        if (position == limit && !fill()) {
+            return -1;
         }
-        return peekedByte;
+
+        return buffer[position] & 0xFF;
     }
 
     @Override
     public int read(byte[] buffer, int offset, int length) throws IOException {
-        if (!peeked) {
-            return in.read(buffer, offset, length);
-        } else {
-            buffer[offset] = (byte) peekedByte;
-            peeked = false;
-            int r = in.read(buffer, offset + 1, length - 1);
-            if (r == -1) {
-                return 1;
-            } else {
-                return r + 1;
+        if (length == 0) {
+            return 0;
+        }
+
+        int buffered = limit - position;
+        if (buffered == 0) {
+            if (length >= this.buffer.length) {
+                // Nothing gained by going through the buffer
+                return in.read(buffer, offset, length);
+            }
+
+            if (!fill()) {
+                return -1;
             }
+            buffered = limit - position;
         }
+
+        int count = Math.min(buffered, length);
+        System.arraycopy(this.buffer, position, buffer, offset, count);
+        position += count;
+
+        return count;
     }
 
     @Override
@@ -60,9 +85,74 @@ public class PeekableInputStream extends FilterInputStream {
         return read(buffer, 0, buffer.length);
     }
 
+    /**
+     * Skips up to {@code n} bytes. Buffered bytes are dropped first; otherwise the next block is read from the wrapped
+     * stream and (partly) dropped.
+     *
+     * @return The number of bytes skipped, {@code 0} at the end of the stream.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+
+        if (position == limit && !fill()) {
+            return 0;
+        }
+
+        int count = (int) Math.min(limit - position, n);
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Writes the next {@code count} bytes of this stream to {@code out}, directly from the internal buffer.
+     *
+     * @return The number of bytes written. This is less than {@code count} only if the end of the stream was reached.
+     */
+    public long transferTo(OutputStream out, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            if (position == limit && !fill()) {
+                break;
+            }
+
+            int chunk = (int) Math.min(limit - position, remaining);
+            out.write(buffer, position, chunk);
+            position += chunk;
+            remaining -= chunk;
+        }
+
+        return count - remaining;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            position = 0;
+            limit = 0;
+            return false;
+        }
+
+        position = 0;
+        limit = read;
+        return true;
+    }
+
     @Override
     public String toString() {
-        return String.format(Locale.US, "PeekableInputStream(in=%s, peeked=%b, peekedByte=%d)",
-                in.toString(), peeked, peekedByte);
+        return String.format(Locale.US, "PeekableInputStream(in=%s, buffered=%d)", in.toString(), limit - position);
     }
 }
@@ -48,6 +48,20 @@ public class SignSafeOutputStream extends FilterOutputStream {
         }
     }
 
+    private void writeToBuffer(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, outBuffer.length - outputIndex);
+            System.arraycopy(bytes, offset, outBuffer, outputIndex, count);
+            outputIndex += count;
+            offset += count;
+            length -= count;
+
+            if (outputIndex >= outBuffer.length) {
+                flushOutput();
+            }
+        }
+    }
+
     void flushOutput() throws IOException {
         if (outputIndex < outBuffer.length) {
             out.write(outBuffer, 0, outputIndex);
@@ -70,8 +84,25 @@ public class SignSafeOutputStream extends FilterOutputStream {
         if (closed) {
             throw new IOException("Stream has been closed");
         }
-        for (int inputIndex = off; inputIndex < len + off; inputIndex++) {
+        int end = off + len;
+        int inputIndex = off;
+        while (inputIndex < end) {
+            if (state == State.INIT) {
+                // Nothing can happen until the next <CR>, so copy everything up to it
+                int runEnd = inputIndex;
+                while (runEnd < end && b[runEnd] != '\r') {
+                    runEnd++;
+                }
+
+                if (runEnd > inputIndex) {
+                    writeToBuffer(b, inputIndex, runEnd - inputIndex);
+                    inputIndex = runEnd;
+                    continue;
+                }
+            }
+
             encode(b[inputIndex]);
+            inputIndex++;
         }
     }
 
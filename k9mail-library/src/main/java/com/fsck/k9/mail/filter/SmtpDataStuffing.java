@@ -30,4 +30,30 @@ public class SmtpDataStuffing extends FilterOutputStream {
         }
         super.write(oneByte);
     }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        int runStart = offset;
+        int currentState = state;
+        for (int i = offset; i < end; i++) {
+            byte oneByte = buffer[i];
+            if (oneByte == '\r') {
+                currentState = STATE_CR;
+            } else if ((currentState == STATE_CR) && (oneByte == '\n')) {
+                currentState = STATE_CRLF;
+            } else if ((currentState == STATE_CRLF) && (oneByte == '.')) {
+                // Read <CR><LF><DOT> so this line needs an additional period.
+                out.write(buffer, runStart, i - runStart);
+                out.write('.');
+                runStart = i;
+                currentState = STATE_NORMAL;
+            } else {
+                currentState = STATE_NORMAL;
+            }
+        }
+
+        out.write(buffer, runStart, end - runStart);
+        state = currentState;
+    }
 }
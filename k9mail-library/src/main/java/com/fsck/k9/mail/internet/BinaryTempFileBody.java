@@ -1,6 +1,7 @@
 package com.fsck.k9.mail.internet;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -8,9 +9,10 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 import com.fsck.k9.mail.MessagingException;
-import com.fsck.k9.mail.filter.Base64OutputStream;
+import com.fsck.k9.mail.filter.Base64EncodingOutputStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.james.mime4j.codec.QuotedPrintableOutputStream;
 import org.apache.james.mime4j.util.MimeUtil;
@@ -22,11 +24,23 @@ import timber.log.Timber;
  * the user to write to the temp file. After the write the body is available via getInputStream
  * and writeTo one time. After writeTo is called, or the InputStream returned from
  * getInputStream is closed the file is deleted and the Body should be considered disposed of.
+ * <p>
+ * When created with a memory-backed threshold, data that doesn't exceed the threshold is kept in memory and a temp
+ * file is only created for larger bodies, or when {@link #getFile()} is called. While the data is written it is
+ * collected in a per-thread buffer that is reused for subsequent bodies, so small bodies only allocate an array of
+ * their exact size.
+ * </p>
  */
 public class BinaryTempFileBody implements RawDataBody, SizeAware {
+    public static final int DEFAULT_MEMORY_BACKED_THRESHOLD = 16 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER_POOL = new ThreadLocal<byte[]>();
+
     private static File mTempDirectory;
 
+    private final int mMemoryBackedThreshold;
     private File mFile;
+    private byte[] mData;
 
     String mEncoding = null;
 
@@ -54,14 +68,13 @@ public class BinaryTempFileBody implements RawDataBody, SizeAware {
         }
 
         try {
-            File newFile = File.createTempFile("body", null, mTempDirectory);
-            final OutputStream out = new FileOutputStream(newFile);
+            final ThresholdOutputStream out = new ThresholdOutputStream(mMemoryBackedThreshold);
             try {
                 OutputStream wrappedOut;
                 if (MimeUtil.ENC_QUOTED_PRINTABLE.equals(encoding)) {
                     wrappedOut = new QuotedPrintableOutputStream(out, false);
                 } else if (MimeUtil.ENC_BASE64.equals(encoding)) {
-                    wrappedOut = new Base64OutputStream(out);
+                    wrappedOut = new Base64EncodingOutputStream(out);
                 } else {
                     throw new RuntimeException("Target encoding not supported: " + encoding);
                 }
@@ -77,7 +90,7 @@ public class BinaryTempFileBody implements RawDataBody, SizeAware {
                 IOUtils.closeQuietly(out);
             }
 
-            mFile = newFile;
+            adopt(out);
             mEncoding = encoding;
         } catch (IOException e) {
             throw new MessagingException("Unable to convert body", e);
@@ -85,20 +98,44 @@ public class BinaryTempFileBody implements RawDataBody, SizeAware {
     }
 
     public BinaryTempFileBody(String encoding) {
+        this(encoding, 0);
+    }
+
+    /**
+     * @param memoryBackedThreshold
+     *         The maximum number of bytes that are kept in memory. If {@code memoryBackedThreshold <= 0} the data is
+     *         always written to a temp file.
+     */
+    public BinaryTempFileBody(String encoding, int memoryBackedThreshold) {
         if (mTempDirectory == null) {
             throw new RuntimeException("setTempDirectory has not been called on BinaryTempFileBody!");
         }
 
         mEncoding = encoding;
+        mMemoryBackedThreshold = memoryBackedThreshold;
     }
 
     public OutputStream getOutputStream() throws IOException {
-        mFile = File.createTempFile("body", null, mTempDirectory);
-        mFile.deleteOnExit();
-        return new FileOutputStream(mFile);
+        if (mMemoryBackedThreshold <= 0) {
+            mData = null;
+            mFile = createTempFile();
+            return new FileOutputStream(mFile);
+        }
+
+        return new ThresholdOutputStream(mMemoryBackedThreshold) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                adopt(this);
+            }
+        };
     }
 
     public InputStream getInputStream() throws MessagingException {
+        if (mData != null) {
+            return new ByteArrayInputStream(mData);
+        }
+
         try {
             return new BinaryTempFileBodyInputStream(new FileInputStream(mFile));
         } catch (IOException ioe) {
@@ -107,6 +144,11 @@ public class BinaryTempFileBody implements RawDataBody, SizeAware {
     }
 
     public void writeTo(OutputStream out) throws IOException, MessagingException {
+        if (mData != null) {
+            out.write(mData);
+            return;
+        }
+
         InputStream in = getInputStream();
         try {
             IOUtils.copy(in, out);
@@ -117,13 +159,159 @@ public class BinaryTempFileBody implements RawDataBody, SizeAware {
 
     @Override
     public long getSize() {
+        if (mData != null) {
+            return mData.length;
+        }
+
         return mFile.length();
     }
 
-    public File getFile() {
+    /**
+     * Returns the temp file containing the data. A memory-backed body is written to a temp file first.
+     */
+    public File getFile() throws IOException {
+        if (mData != null) {
+            File file = createTempFile();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(mData);
+            } finally {
+                out.close();
+            }
+
+            mFile = file;
+            mData = null;
+        }
+
         return mFile;
     }
 
+    private void adopt(ThresholdOutputStream out) {
+        mFile = out.getFile();
+        mData = out.getData();
+    }
+
+    private static File createTempFile() throws IOException {
+        File file = File.createTempFile("body", null, mTempDirectory);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static byte[] obtainBuffer(int size) {
+        byte[] buffer = BUFFER_POOL.get();
+        if (buffer != null && buffer.length == size) {
+            BUFFER_POOL.set(null);
+            return buffer;
+        }
+
+        return new byte[size];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        BUFFER_POOL.set(buffer);
+    }
+
+
+    /**
+     * Collects written data in a pooled buffer and switches to a temp file once more than {@code threshold} bytes
+     * have been written. After {@link #close()} either {@link #getData()} or {@link #getFile()} returns the result.
+     */
+    private static class ThresholdOutputStream extends OutputStream {
+        private final int threshold;
+        private byte[] buffer;
+        private int count;
+        private File file;
+        private OutputStream fileOutputStream;
+        private byte[] data;
+        private boolean closed;
+
+
+        ThresholdOutputStream(int threshold) throws IOException {
+            this.threshold = threshold;
+            if (threshold > 0) {
+                buffer = obtainBuffer(threshold);
+            } else {
+                file = createTempFile();
+                fileOutputStream = new FileOutputStream(file);
+            }
+        }
+
+        @Override
+        public void write(int oneByte) throws IOException {
+            ensureOpen();
+            if (fileOutputStream == null) {
+                if (count < threshold) {
+                    buffer[count++] = (byte) oneByte;
+                    return;
+                }
+                switchToFile();
+            }
+
+            fileOutputStream.write(oneByte);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureOpen();
+            if (fileOutputStream == null) {
+                if (length <= threshold - count) {
+                    System.arraycopy(bytes, offset, buffer, count, length);
+                    count += length;
+                    return;
+                }
+                switchToFile();
+            }
+
+            fileOutputStream.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fileOutputStream != null) {
+                fileOutputStream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (fileOutputStream != null) {
+                fileOutputStream.close();
+            } else {
+                data = Arrays.copyOf(buffer, count);
+                releaseBuffer(buffer);
+                buffer = null;
+            }
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+
+        private void switchToFile() throws IOException {
+            file = createTempFile();
+            fileOutputStream = new FileOutputStream(file);
+            fileOutputStream.write(buffer, 0, count);
+
+            releaseBuffer(buffer);
+            buffer = null;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+        }
+    }
+
     class BinaryTempFileBodyInputStream extends FilterInputStream {
         public BinaryTempFileBodyInputStream(InputStream in) {
             super(in);
@@ -14,6 +14,10 @@ public class BinaryTempFileMessageBody extends BinaryTempFileBody implements Bod
         super(encoding);
     }
 
+    public BinaryTempFileMessageBody(String encoding, int memoryBackedThreshold) {
+        super(encoding, memoryBackedThreshold);
+    }
+
     @Override
     public void setEncoding(String encoding) throws MessagingException {
         if (!MimeUtil.ENC_7BIT.equalsIgnoreCase(encoding)
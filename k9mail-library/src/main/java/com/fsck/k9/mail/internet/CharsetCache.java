@@ -0,0 +1,114 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Bounded cache from charset labels, as found in messages, to the Java {@link Charset} they resolve to.
+ * <p>
+ * Labels that can't be resolved are cached too, so unknown or malformed labels don't cause repeated lookups. The
+ * number of distinct labels seen in practice is small; if the cache grows beyond its limit anyway (e.g. because of
+ * garbage labels in spam) it is simply emptied.
+ * </p>
+ */
+class CharsetCache {
+    static final int DEFAULT_MAX_SIZE = 64;
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final byte[] ASCII_PROBE;
+
+    static {
+        // All ASCII characters plus the escape sequences of stateful charsets that only use ASCII bytes
+        // (UTF-7, HZ, ISO-2022).
+        byte[] escapeSequences = "+AGE-~{~}\u001b$B\u001b(B\u001b$)C\u000e\u000f".getBytes(US_ASCII);
+        byte[] probe = new byte[128 + escapeSequences.length];
+        for (int i = 0; i < 128; i++) {
+            probe[i] = (byte) i;
+        }
+        System.arraycopy(escapeSequences, 0, probe, 128, escapeSequences.length);
+        ASCII_PROBE = probe;
+    }
+
+    private static final Entry UNSUPPORTED = new Entry(null, false);
+
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final int maxSize;
+
+
+    CharsetCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    Entry get(String label) {
+        Entry entry = entries.get(label);
+        if (entry != null) {
+            return entry;
+        }
+
+        entry = resolve(label);
+        if (entries.size() >= maxSize) {
+            entries.clear();
+        }
+        entries.put(label, entry);
+
+        return entry;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static Entry resolve(String label) {
+        Charset charset;
+        try {
+            charset = Charset.forName(label);
+        } catch (IllegalArgumentException e) {
+            return UNSUPPORTED;
+        }
+
+        return new Entry(charset, isAsciiCompatible(charset));
+    }
+
+    /**
+     * Checks whether data that only consists of ASCII bytes decodes to the same characters it would decode to as
+     * {@code US-ASCII}.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+
+        try {
+            String decoded = new String(ASCII_PROBE, charset);
+            return decoded.equals(new String(ASCII_PROBE, US_ASCII));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+
+    static class Entry {
+        private final Charset charset;
+        private final boolean asciiCompatible;
+
+
+        Entry(Charset charset, boolean asciiCompatible) {
+            this.charset = charset;
+            this.asciiCompatible = asciiCompatible;
+        }
+
+        /**
+         * Returns the resolved charset or {@code null} if the label isn't supported.
+         */
+        Charset getCharset() {
+            return charset;
+        }
+
+        boolean isAsciiCompatible() {
+            return asciiCompatible;
+        }
+    }
+}
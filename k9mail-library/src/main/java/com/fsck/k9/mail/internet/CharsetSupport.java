@@ -4,14 +4,19 @@ import com.fsck.k9.mail.Message;
 import com.fsck.k9.mail.MessagingException;
 import com.fsck.k9.mail.Part;
 
-import org.apache.commons.io.IOUtils;
 import timber.log.Timber;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.nio.charset.Charset;
-import java.nio.charset.IllegalCharsetNameException;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import static com.fsck.k9.mail.internet.JisSupport.SHIFT_JIS;
 
@@ -28,6 +33,18 @@ public class CharsetSupport {
             // Default fall-back is US-ASCII
             {".*", "US-ASCII"}
     };
+    private static final Pattern[] CHARSET_FALLBACK_PATTERNS = new Pattern[CHARSET_FALLBACK_MAP.length];
+
+    static {
+        for (int i = 0; i < CHARSET_FALLBACK_MAP.length; i++) {
+            CHARSET_FALLBACK_PATTERNS[i] = Pattern.compile(CHARSET_FALLBACK_MAP[i][0]);
+        }
+    }
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final CharsetCache CHARSET_CACHE = new CharsetCache(CharsetCache.DEFAULT_MAX_SIZE);
+    /** Results of {@link #normalizeCharset(String)} by label; emptied when it grows too large, like the cache above. */
+    private static final ConcurrentHashMap<String, String> NORMALIZED_CHARSETS = new ConcurrentHashMap<String, String>();
 
 
     public static void setCharset(String charset, Part part) throws MessagingException {
@@ -40,7 +57,7 @@ public class CharsetSupport {
         String variant = JisSupport.getJisVariantFromAddress(address);
         if (variant != null) {
             String charset = "x-" + variant + "-shift_jis-2007";
-            if (Charset.isSupported(charset))
+            if (isSupported(charset))
                 return charset;
         }
 
@@ -56,6 +73,38 @@ public class CharsetSupport {
     }
 
     static String fixupCharset(String charset, Message message) throws MessagingException {
+        charset = getNormalizedCharset(charset);
+
+        if (charset.equals(SHIFT_JIS) || charset.equals("iso-2022-jp")) {
+            String variant = JisSupport.getJisVariantFromMessage(message);
+            if (variant != null)
+                charset = "x-" + variant + "-" + charset + "-2007";
+        }
+        return charset;
+    }
+
+    /**
+     * Returns the part of {@link #fixupCharset(String, Message)} that doesn't depend on the message. It's called for
+     * every encoded word in a header, so the results are cached.
+     */
+    private static String getNormalizedCharset(String charset) {
+        if (charset == null) {
+            return normalizeCharset(null);
+        }
+
+        String normalizedCharset = NORMALIZED_CHARSETS.get(charset);
+        if (normalizedCharset == null) {
+            normalizedCharset = normalizeCharset(charset);
+            if (NORMALIZED_CHARSETS.size() >= CharsetCache.DEFAULT_MAX_SIZE) {
+                NORMALIZED_CHARSETS.clear();
+            }
+            NORMALIZED_CHARSETS.put(charset, normalizedCharset);
+        }
+
+        return normalizedCharset;
+    }
+
+    private static String normalizeCharset(String charset) {
         if (charset == null || "0".equals(charset))
             charset = "US-ASCII";  // No encoding, so use us-ascii, which is the standard.
 
@@ -63,27 +112,59 @@ public class CharsetSupport {
         if (charset.equals("cp932"))
             charset = SHIFT_JIS;
 
-        if (charset.equals(SHIFT_JIS) || charset.equals("iso-2022-jp")) {
-            String variant = JisSupport.getJisVariantFromMessage(message);
-            if (variant != null)
-                charset = "x-" + variant + "-" + charset + "-2007";
-        }
         return charset;
     }
 
 
     static String readToString(InputStream in, String charset) throws IOException {
+        DecodingInput input = prepareDecoding(in, charset);
+
+        /*
+         * Convert and return as new String
+         */
+        StringBuilder builder = new StringBuilder();
+        InputStream remainingInput = input.inputStream;
+        if (input.charset.isAsciiCompatible()) {
+            remainingInput = appendAsciiPrefix(remainingInput, builder);
+        }
+        if (remainingInput != null) {
+            Reader reader = new InputStreamReader(remainingInput, input.charset.getCharset());
+            char[] buffer = new char[BUFFER_SIZE];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, count);
+            }
+        }
+        String str = builder.toString();
+
+        if (input.isIphoneString)
+            str = importStringFromIphone(str);
+        return str;
+    }
+
+    /**
+     * Returns a {@link Reader} that decodes {@code in} using the same charset handling as
+     * {@link #readToString(InputStream, String)}, but only as far as the returned reader is read.
+     */
+    static Reader createReader(InputStream in, String charset) {
+        DecodingInput input = prepareDecoding(in, charset);
+
+        Reader reader = new InputStreamReader(input.inputStream, input.charset.getCharset());
+        return input.isIphoneString ? new IphoneImportReader(reader) : reader;
+    }
+
+    private static DecodingInput prepareDecoding(InputStream in, String charset) {
         boolean isIphoneString = false;
 
         // iso-2022-jp variants are supported by no versions as of Dec 2010.
         if (charset.length() > 19 && charset.startsWith("x-") &&
-                charset.endsWith("-iso-2022-jp-2007") && !Charset.isSupported(charset)) {
+                charset.endsWith("-iso-2022-jp-2007") && !isSupported(charset)) {
             in = new Iso2022JpToShiftJisInputStream(in);
             charset = "x-" + charset.substring(2, charset.length() - 17) + "-shift_jis-2007";
         }
 
         // shift_jis variants are supported by Eclair and later.
-        if (JisSupport.isShiftJis(charset) && !Charset.isSupported(charset)) {
+        if (JisSupport.isShiftJis(charset) && !isSupported(charset)) {
             // If the JIS variant is iPhone, map the Unicode private use area in iPhone to the one in Android after
             // converting the character set from the standard Shift JIS to Unicode.
             if (charset.substring(2, charset.length() - 15).equals("iphone"))
@@ -96,37 +177,50 @@ public class CharsetSupport {
          * See if there is conversion from the MIME charset to the Java one.
          * this function may also throw an exception if the charset name is not known
          */
-        boolean supported;
-        try {
-            supported = Charset.isSupported(charset);
-        } catch (IllegalCharsetNameException e) {
-            supported = false;
-        }
+        CharsetCache.Entry resolvedCharset = CHARSET_CACHE.get(charset);
 
-        for (String[] rule: CHARSET_FALLBACK_MAP) {
-            if (supported) {
+        for (int i = 0; i < CHARSET_FALLBACK_MAP.length; i++) {
+            if (resolvedCharset.getCharset() != null) {
                 break;
             }
 
-            if (charset.matches(rule[0])) {
+            String[] rule = CHARSET_FALLBACK_MAP[i];
+            if (CHARSET_FALLBACK_PATTERNS[i].matcher(charset).matches()) {
                 Timber.e("I don't know how to deal with the charset %s. Falling back to %s", charset, rule[1]);
                 charset = rule[1];
-                try {
-                    supported = Charset.isSupported(charset);
-                } catch (IllegalCharsetNameException e) {
-                    supported = false;
-                }
+                resolvedCharset = CHARSET_CACHE.get(charset);
             }
         }
 
-        /*
-         * Convert and return as new String
-         */
-        String str = IOUtils.toString(in, charset);
+        return new DecodingInput(in, resolvedCharset, isIphoneString);
+    }
 
-        if (isIphoneString)
-            str = importStringFromIphone(str);
-        return str;
+    private static boolean isSupported(String charset) {
+        return CHARSET_CACHE.get(charset).getCharset() != null;
+    }
+
+    /**
+     * Appends characters to {@code builder} for as long as {@code in} contains ASCII bytes, skipping the charset
+     * decoder. Only used with charsets that decode ASCII bytes to the same characters as US-ASCII does, where a byte
+     * outside of the ASCII range can't be the continuation of an earlier byte.
+     *
+     * @return A stream with the remaining input, starting at the first non-ASCII byte, or {@code null} if all input
+     *         was ASCII.
+     */
+    private static InputStream appendAsciiPrefix(InputStream in, StringBuilder builder) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            for (int i = 0; i < count; i++) {
+                byte b = buffer[i];
+                if (b < 0) {
+                    return new SequenceInputStream(new ByteArrayInputStream(buffer, i, count - i), in);
+                }
+                builder.append((char) b);
+            }
+        }
+
+        return null;
     }
 
     private static String importStringFromIphone(String str) {
@@ -1115,4 +1209,99 @@ public class CharsetSupport {
         }
     }
 
+
+    private static class DecodingInput {
+        final InputStream inputStream;
+        final CharsetCache.Entry charset;
+        final boolean isIphoneString;
+
+
+        DecodingInput(InputStream inputStream, CharsetCache.Entry charset, boolean isIphoneString) {
+            this.inputStream = inputStream;
+            this.charset = charset;
+            this.isIphoneString = isIphoneString;
+        }
+    }
+
+    /**
+     * Applies {@link #importCodePointFromIphone(int)} to the characters read from the wrapped reader.
+     */
+    private static class IphoneImportReader extends FilterReader {
+        private final char[] inputBuffer = new char[1024];
+        private final char[] surrogatePair = new char[2];
+        private char pendingLowSurrogate = 0;
+
+
+        IphoneImportReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] buffer = new char[1];
+            int read = read(buffer, 0, 1);
+            return read == -1 ? -1 : buffer[0];
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            int count = 0;
+            if (pendingLowSurrogate != 0) {
+                buffer[offset] = pendingLowSurrogate;
+                pendingLowSurrogate = 0;
+                count = 1;
+                if (length == 1) {
+                    return 1;
+                }
+            }
+
+            // Every input character can turn into a surrogate pair, so only read as much as is guaranteed to fit
+            int maxInput = Math.min(inputBuffer.length, Math.max(1, (length - count) / 2));
+            int read = in.read(inputBuffer, 0, maxInput);
+            if (read == -1) {
+                return count == 0 ? -1 : count;
+            }
+
+            for (int i = 0; i < read; i++) {
+                int codePoint = importCodePointFromIphone(inputBuffer[i]);
+                if (Character.isSupplementaryCodePoint(codePoint)) {
+                    // Character.highSurrogate() and lowSurrogate() are only available on API 19+
+                    Character.toChars(codePoint, surrogatePair, 0);
+                    buffer[offset + count++] = surrogatePair[0];
+                    if (count < length) {
+                        buffer[offset + count++] = surrogatePair[1];
+                    } else {
+                        pendingLowSurrogate = surrogatePair[1];
+                    }
+                } else {
+                    buffer[offset + count++] = (char) codePoint;
+                }
+            }
+
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            char[] buffer = new char[1024];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 }
@@ -3,11 +3,11 @@ package com.fsck.k9.mail.internet;
 
 import com.fsck.k9.mail.Message;
 import com.fsck.k9.mail.MessagingException;
+import com.fsck.k9.mail.filter.Base64Decoder;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 
-import org.apache.james.mime4j.codec.Base64InputStream;
 import org.apache.james.mime4j.codec.QuotedPrintableInputStream;
 import org.apache.james.mime4j.util.CharsetUtil;
 import timber.log.Timber;
@@ -21,20 +21,32 @@ import timber.log.Timber;
  * it has to be determined with the sender address, the mailer and so on.
  */
 class DecoderUtil {
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+
     /**
      * Decodes an encoded word encoded with the 'B' encoding (described in
      * RFC 2047) found in a header field body.
      *
-     * @param encodedWord the encoded word to decode.
+     * @param body the string containing the encoded word.
+     * @param start the index of the first character of the encoded text.
+     * @param end the index after the last character of the encoded text.
      * @param charset the Java charset to use.
      * @return the decoded string.
      */
-    private static String decodeB(String encodedWord, String charset) {
-        byte[] bytes = encodedWord.getBytes(Charset.forName("US-ASCII"));
+    private static String decodeB(String body, int start, int end, String charset) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            char c = body.charAt(i);
+            bytes[i - start] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+
+        Base64Decoder decoder = new Base64Decoder();
+        byte[] decoded = new byte[Base64Decoder.getMaxDecodedLength(bytes.length)];
+        int length = decoder.decode(bytes, 0, bytes.length, decoded, 0);
 
-        Base64InputStream is = new Base64InputStream(new ByteArrayInputStream(bytes));
         try {
-            return CharsetSupport.readToString(is, charset);
+            return CharsetSupport.readToString(new ByteArrayInputStream(decoded, 0, length), charset);
         } catch (IOException e) {
             return null;
         }
@@ -44,18 +56,20 @@ class DecoderUtil {
      * Decodes an encoded word encoded with the 'Q' encoding (described in
      * RFC 2047) found in a header field body.
      *
-     * @param encodedWord the encoded word to decode.
+     * @param body the string containing the encoded word.
+     * @param start the index of the first character of the encoded text.
+     * @param end the index after the last character of the encoded text.
      * @param charset the Java charset to use.
      * @return the decoded string.
      */
-    private static String decodeQ(String encodedWord, String charset) {
+    private static String decodeQ(String body, int start, int end, String charset) {
 
         /*
          * Replace _ with =20
          */
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < encodedWord.length(); i++) {
-            char c = encodedWord.charAt(i);
+        StringBuilder sb = new StringBuilder(end - start + 16);
+        for (int i = start; i < end; i++) {
+            char c = body.charAt(i);
             if (c == '_') {
                 sb.append("=20");
             } else {
@@ -63,7 +77,7 @@ class DecoderUtil {
             }
         }
 
-        byte[] bytes = sb.toString().getBytes(Charset.forName("US-ASCII"));
+        byte[] bytes = sb.toString().getBytes(US_ASCII);
 
         QuotedPrintableInputStream is = new QuotedPrintableInputStream(new ByteArrayInputStream(bytes));
         try {
@@ -101,7 +115,7 @@ class DecoderUtil {
         while (true) {
             int begin = body.indexOf("=?", previousEnd);
             if (begin == -1) {
-                sb.append(body.substring(previousEnd));
+                sb.append(body, previousEnd, body.length());
                 return sb.toString();
             }
 
@@ -110,32 +124,29 @@ class DecoderUtil {
             // to find the two '?' in the "header", before looking for the final "?=".
             int qm1 = body.indexOf('?', begin + 2);
             if (qm1 == -1) {
-                sb.append(body.substring(previousEnd));
+                sb.append(body, previousEnd, body.length());
                 return sb.toString();
             }
 
             int qm2 = body.indexOf('?', qm1 + 1);
             if (qm2 == -1) {
-                sb.append(body.substring(previousEnd));
+                sb.append(body, previousEnd, body.length());
                 return sb.toString();
             }
 
             int end = body.indexOf("?=", qm2 + 1);
             if (end == -1) {
-                sb.append(body.substring(previousEnd));
+                sb.append(body, previousEnd, body.length());
                 return sb.toString();
             }
             end += 2;
 
-            String sep = body.substring(previousEnd, begin);
-
             String decoded = decodeEncodedWord(body, begin, end, message);
             if (decoded == null) {
-                sb.append(sep);
-                sb.append(body.substring(begin, end));
+                sb.append(body, previousEnd, end);
             } else {
-                if (!previousWasEncoded || !CharsetUtil.isWhitespace(sep)) {
-                    sb.append(sep);
+                if (!previousWasEncoded || !isWhitespace(body, previousEnd, begin)) {
+                    sb.append(body, previousEnd, begin);
                 }
                 sb.append(decoded);
             }
@@ -145,6 +156,16 @@ class DecoderUtil {
         }
     }
 
+    private static boolean isWhitespace(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!CharsetUtil.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     // return null on error
     private static String decodeEncodedWord(String body, int begin, int end, Message message) {
         int qm1 = body.indexOf('?', begin + 2);
@@ -156,8 +177,9 @@ class DecoderUtil {
             return null;
 
         String mimeCharset = body.substring(begin + 2, qm1);
-        String encoding = body.substring(qm1 + 1, qm2);
-        String encodedText = body.substring(qm2 + 1, end - 2);
+        int encodingLength = qm2 - qm1 - 1;
+        int textStart = qm2 + 1;
+        int textEnd = end - 2;
 
         String charset;
         try {
@@ -166,15 +188,15 @@ class DecoderUtil {
             return null;
         }
 
-        if (encodedText.isEmpty()) {
+        if (textStart == textEnd) {
             Timber.w("Missing encoded text in encoded word: '%s'", body.substring(begin, end));
             return null;
         }
 
-        if (encoding.equalsIgnoreCase("Q")) {
-            return decodeQ(encodedText, charset);
-        } else if (encoding.equalsIgnoreCase("B")) {
-            return DecoderUtil.decodeB(encodedText, charset);
+        if (encodingLength == 1 && body.regionMatches(true, qm1 + 1, "Q", 0, 1)) {
+            return decodeQ(body, textStart, textEnd, charset);
+        } else if (encodingLength == 1 && body.regionMatches(true, qm1 + 1, "B", 0, 1)) {
+            return DecoderUtil.decodeB(body, textStart, textEnd, charset);
         } else {
             Timber.w("Warning: Unknown encoding in encoded word '%s'", body.substring(begin, end));
             return null;
@@ -1,8 +1,11 @@
 package com.fsck.k9.mail.internet;
 
 
+import java.io.FilterReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -36,6 +39,10 @@ import static com.fsck.k9.mail.internet.Viewable.Textual;
 public class MessageExtractor {
     public static final long NO_TEXT_SIZE_LIMIT = -1L;
 
+    private static final int TEXT_BUFFER_SIZE = 4096;
+    private static final Pattern HTML_META_CHARSET_PATTERN = Pattern.compile(
+            "<meta http-equiv=\"?Content-Type\"? content=\"text/html; charset=(.+?)\">", Pattern.CASE_INSENSITIVE);
+
 
     private MessageExtractor() {}
 
@@ -68,37 +75,89 @@ public class MessageExtractor {
         return null;
     }
 
+    /**
+     * Returns at most {@code maxCharacters} characters from the beginning of the text in {@code part}.
+     * <p>
+     * Unlike {@link #getTextFromPart(Part, long)} the limit applies to the decoded characters, and the body is only
+     * read and decoded as far as necessary to produce them. So extracting e.g. a preview from a huge text part only
+     * touches the first few kilobytes of the body.
+     * </p>
+     *
+     * @return The text or {@code null} if the part doesn't contain text or the text couldn't be read.
+     */
+    public static String getTextPrefixFromPart(Part part, int maxCharacters) {
+        try {
+            Reader reader = getTextReaderFromPart(part);
+            try {
+                return readText(reader, maxCharacters);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            Timber.e(e, "Unable to getTextPrefixFromPart");
+        } catch (MessagingException e) {
+            Timber.e("Unable to getTextPrefixFromPart");
+        }
+        return null;
+    }
+
+    /**
+     * Returns a {@link Reader} that decodes the text in {@code part} while it is being read.
+     * <p>
+     * The content transfer encoding and charset are handled the same way as in {@link #getTextFromPart(Part)}.
+     * The caller is responsible for closing the returned reader.
+     * </p>
+     *
+     * @throws MessagingException If {@code part} doesn't have a body or isn't a text part.
+     */
+    @NonNull
+    public static Reader getTextReaderFromPart(Part part) throws MessagingException, IOException {
+        if (part == null || part.getBody() == null) {
+            throw new MessagingException("Provided invalid part");
+        }
+
+        Body body = part.getBody();
+        if (body instanceof TextBody) {
+            return new StringReader(((TextBody) body).getRawText());
+        }
+
+        String mimeType = part.getMimeType();
+        if (!(mimeType != null && MimeUtility.mimeTypeMatches(mimeType, "text/*") ||
+                part.isMimeType("application/pgp"))) {
+            throw new MessagingException("Provided non-text part: " + mimeType);
+        }
+
+        String charset = determineCharset(part, body, mimeType);
+
+        final InputStream bodyStream = MimeUtility.decodeBody(body);
+        return new FilterReader(CharsetSupport.createReader(bodyStream, charset)) {
+            @Override
+            public void close() throws IOException {
+                MimeUtility.closeInputStreamWithoutDeletingTemporaryFiles(bodyStream);
+            }
+        };
+    }
+
+    private static String readText(Reader reader, int maxCharacters) throws IOException {
+        StringBuilder text = new StringBuilder(Math.min(maxCharacters, TEXT_BUFFER_SIZE));
+        char[] buffer = new char[Math.min(maxCharacters, TEXT_BUFFER_SIZE)];
+        while (text.length() < maxCharacters) {
+            int read = reader.read(buffer, 0, Math.min(buffer.length, maxCharacters - text.length()));
+            if (read == -1) {
+                break;
+            }
+            text.append(buffer, 0, read);
+        }
+
+        return text.toString();
+    }
+
     private static String getTextFromTextPart(Part part, Body body, String mimeType, long textSizeLimit)
             throws IOException, MessagingException {
         /*
          * We've got a text part, so let's see if it needs to be processed further.
          */
-        String charset = getHeaderParameter(part.getContentType(), "charset");
-        /*
-         * determine the charset from HTML message.
-         */
-        if (isSameMimeType(mimeType, "text/html") && charset == null) {
-            InputStream in = MimeUtility.decodeBody(body);
-            try {
-                byte[] buf = new byte[256];
-                in.read(buf, 0, buf.length);
-                String str = new String(buf, "US-ASCII");
-
-                if (str.isEmpty()) {
-                    return "";
-                }
-                Pattern p = Pattern.compile("<meta http-equiv=\"?Content-Type\"? content=\"text/html; charset=(.+?)\">", Pattern.CASE_INSENSITIVE);
-                Matcher m = p.matcher(str);
-                if (m.find()) {
-                    charset = m.group(1);
-                }
-            } finally {
-                try {
-                    MimeUtility.closeInputStreamWithoutDeletingTemporaryFiles(in);
-                } catch (IOException e) { /* ignore */ }
-            }
-        }
-        charset = fixupCharset(charset, getMessageFromPart(part));
+        String charset = determineCharset(part, body, mimeType);
         /*
          * Now we read the part into a buffer for further processing. Because
          * the stream is now wrapped we'll remove any transfer encoding at this point.
@@ -115,6 +174,32 @@ public class MessageExtractor {
         }
     }
 
+    private static String determineCharset(Part part, Body body, String mimeType)
+            throws IOException, MessagingException {
+        String charset = getHeaderParameter(part.getContentType(), "charset");
+        if (isSameMimeType(mimeType, "text/html") && charset == null) {
+            InputStream in = MimeUtility.decodeBody(body);
+            try {
+                charset = findHtmlMetaCharset(in);
+            } finally {
+                try {
+                    MimeUtility.closeInputStreamWithoutDeletingTemporaryFiles(in);
+                } catch (IOException e) { /* ignore */ }
+            }
+        }
+
+        return fixupCharset(charset, getMessageFromPart(part));
+    }
+
+    private static String findHtmlMetaCharset(InputStream in) throws IOException {
+        byte[] buf = new byte[256];
+        in.read(buf, 0, buf.length);
+        String str = new String(buf, "US-ASCII");
+
+        Matcher m = HTML_META_CHARSET_PATTERN.matcher(str);
+        return m.find() ? m.group(1) : null;
+    }
+
     public static boolean hasMissingParts(Part part) {
         Body body = part.getBody();
         if (body == null) {
@@ -57,6 +57,14 @@ public class MimeBodyPart extends BodyPart {
         mHeader.addRawHeader(name, raw);
     }
 
+    /**
+     * Replaces all header fields with the ones contained in {@code header}, which has to be in the format written by
+     * {@link #writeHeaderTo(OutputStream)}. The fields are only parsed when they're accessed.
+     */
+    public void setRawHeader(byte[] header) {
+        mHeader.setRawHeader(header);
+    }
+
     @Override
     public void setHeader(String name, String value) {
         mHeader.setHeader(name, value);
@@ -93,9 +101,9 @@ public class MimeBodyPart extends BodyPart {
 
     @Override
     public String getContentType() {
-        String contentType = getFirstHeader(MimeHeader.HEADER_CONTENT_TYPE);
+        String contentType = mHeader.getFirstDecodedHeader(MimeHeader.HEADER_CONTENT_TYPE);
         if (contentType != null) {
-            return MimeUtility.unfoldAndDecode(contentType);
+            return contentType;
         }
         Multipart parent = getParent();
         if (parent != null && "multipart/digest".equals(parent.getMimeType())) {
@@ -6,40 +6,89 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import android.support.annotation.NonNull;
 
 
+/**
+ * The header fields of a message or body part.
+ * <p>
+ * Headers loaded from the database are handed over as raw bytes (see {@link #setRawHeader(byte[])}) and only split
+ * into fields once they are accessed. Lookups by name go through a case-insensitive index that is built on first use.
+ * Decoded values (see {@link #getFirstDecodedHeader(String)}) are computed on request and cached per field.
+ * </p><p>
+ * Reading from multiple threads is safe: splitting the raw header and building the index happen under a lock and are
+ * only published once complete. Modifications still have to be synchronized by the caller.
+ * </p>
+ */
 public class MimeHeader implements Cloneable {
     public static final String HEADER_CONTENT_TYPE = "Content-Type";
     public static final String HEADER_CONTENT_TRANSFER_ENCODING = "Content-Transfer-Encoding";
     public static final String HEADER_CONTENT_DISPOSITION = "Content-Disposition";
     public static final String HEADER_CONTENT_ID = "Content-ID";
 
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+
     private List<Field> mFields = new ArrayList<Field>();
     private String mCharset = null;
+    /** Header as written by {@link #writeTo(OutputStream)}; {@code null} once the fields have been modified. */
+    private byte[] rawHeader;
+    private volatile boolean rawHeaderParsed = true;
+    /** Fields by lower-case name; {@code null} until the first lookup. */
+    private volatile Map<String, List<Field>> fieldIndex;
 
     public void clear() {
         mFields.clear();
+        rawHeader = null;
+        rawHeaderParsed = true;
+        fieldIndex = null;
+    }
+
+    /**
+     * Replaces all fields with the ones contained in {@code header}.
+     * <p>
+     * The data is expected to be in the format written by {@link #writeTo(OutputStream)}. It's not split into fields
+     * until they're needed, and it's written out unchanged as long as no field is modified.
+     * </p>
+     */
+    void setRawHeader(byte[] header) {
+        clear();
+        rawHeader = header;
+        rawHeaderParsed = false;
     }
 
     public String getFirstHeader(String name) {
-        String[] header = getHeader(name);
-        if (header.length == 0) {
-            return null;
-        }
-        return header[0];
+        List<Field> fields = getFields(name);
+        return fields.isEmpty() ? null : fields.get(0).getValue();
+    }
+
+    /**
+     * Returns the value of the first field with the given name, unfolded and with RFC 2047 encoded words decoded (see
+     * {@link MimeUtility#unfoldAndDecode(String)}).
+     */
+    public String getFirstDecodedHeader(String name) {
+        List<Field> fields = getFields(name);
+        return fields.isEmpty() ? null : fields.get(0).getDecodedValue();
     }
 
     public void addHeader(String name, String value) {
         Field field = Field.newNameValueField(name, MimeUtility.foldAndEncode(value));
-        mFields.add(field);
+        addField(field);
     }
 
     void addRawHeader(String name, String raw) {
         Field field = Field.newRawField(name, raw);
-        mFields.add(field);
+        addField(field);
     }
 
     public void setHeader(String name, String value) {
@@ -52,6 +101,8 @@ public class MimeHeader implements Cloneable {
 
     @NonNull
     public Set<String> getHeaderNames() {
+        parseRawHeader();
+
         Set<String> names = new LinkedHashSet<String>();
         for (Field field : mFields) {
             names.add(field.getName());
@@ -61,26 +112,179 @@ public class MimeHeader implements Cloneable {
 
     @NonNull
     public String[] getHeader(String name) {
-        List<String> values = new ArrayList<String>();
-        for (Field field : mFields) {
-            if (field.getName().equalsIgnoreCase(name)) {
-                values.add(field.getValue());
-            }
+        List<Field> fields = getFields(name);
+        String[] values = new String[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = fields.get(i).getValue();
         }
-        return values.toArray(new String[values.size()]);
+        return values;
     }
 
     public void removeHeader(String name) {
-        List<Field> removeFields = new ArrayList<Field>();
-        for (Field field : mFields) {
-            if (field.getName().equalsIgnoreCase(name)) {
-                removeFields.add(field);
+        if (getFields(name).isEmpty()) {
+            return;
+        }
+
+        fieldIndex.remove(getIndexKey(name));
+        rawHeader = null;
+
+        Iterator<Field> iterator = mFields.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getName().equalsIgnoreCase(name)) {
+                iterator.remove();
             }
         }
-        mFields.removeAll(removeFields);
+    }
+
+    private void addField(Field field) {
+        parseRawHeader();
+        rawHeader = null;
+
+        mFields.add(field);
+        if (fieldIndex != null) {
+            addToIndex(field);
+        }
+    }
+
+    @NonNull
+    private List<Field> getFields(String name) {
+        Map<String, List<Field>> index = fieldIndex;
+        if (index == null) {
+            index = buildFieldIndex();
+        }
+
+        List<Field> fields = index.get(getIndexKey(name));
+        return fields != null ? fields : Collections.<Field>emptyList();
+    }
+
+    private synchronized Map<String, List<Field>> buildFieldIndex() {
+        if (fieldIndex == null) {
+            parseRawHeader();
+
+            Map<String, List<Field>> index = new HashMap<String, List<Field>>();
+            for (Field field : mFields) {
+                addToIndex(index, field);
+            }
+            fieldIndex = index;
+        }
+
+        return fieldIndex;
+    }
+
+    private void addToIndex(Field field) {
+        addToIndex(fieldIndex, field);
+    }
+
+    private static void addToIndex(Map<String, List<Field>> index, Field field) {
+        String key = getIndexKey(field.getName());
+        List<Field> fields = index.get(key);
+        if (fields == null) {
+            fields = new ArrayList<Field>(1);
+            index.put(key, fields);
+        }
+        fields.add(field);
+    }
+
+    private static String getIndexKey(String name) {
+        return name.toLowerCase(Locale.US);
+    }
+
+    /**
+     * Splits {@link #rawHeader} into fields the same way mime4j's {@code MimeStreamParser} does: lines end with LF,
+     * lines starting with whitespace continue the previous field, an empty line ends the header, whitespace around the
+     * name is ignored, and fields with a malformed name are skipped.
+     */
+    private void parseRawHeader() {
+        if (!rawHeaderParsed) {
+            parseRawHeaderLocked();
+        }
+    }
+
+    private synchronized void parseRawHeaderLocked() {
+        if (rawHeaderParsed) {
+            return;
+        }
+
+        List<Field> fields = new ArrayList<Field>();
+        byte[] header = rawHeader;
+        int length = header.length;
+        int fieldStart = -1;
+        int fieldEnd = -1;
+        int position = 0;
+        while (position < length) {
+            int lineStart = position;
+            int lineEnd = lineStart;
+            while (lineEnd < length && header[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            position = lineEnd + 1;
+
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && header[contentEnd - 1] == '\r') {
+                contentEnd--;
+            }
+
+            if (contentEnd == lineStart) {
+                break;
+            }
+
+            byte firstByte = header[lineStart];
+            if ((firstByte == ' ' || firstByte == '\t') && fieldStart != -1) {
+                fieldEnd = contentEnd;
+            } else {
+                addParsedField(fields, header, fieldStart, fieldEnd);
+                fieldStart = lineStart;
+                fieldEnd = contentEnd;
+            }
+        }
+
+        addParsedField(fields, header, fieldStart, fieldEnd);
+
+        mFields.addAll(fields);
+        rawHeaderParsed = true;
+    }
+
+    private static void addParsedField(List<Field> fields, byte[] header, int fieldStart, int fieldEnd) {
+        if (fieldStart == -1) {
+            return;
+        }
+
+        int colonIndex = fieldStart;
+        while (colonIndex < fieldEnd && header[colonIndex] != ':') {
+            colonIndex++;
+        }
+        if (colonIndex == fieldEnd) {
+            return;
+        }
+
+        int nameStart = fieldStart;
+        while (nameStart < colonIndex && isWhitespace(header[nameStart])) {
+            nameStart++;
+        }
+        int nameEnd = colonIndex;
+        while (nameEnd > nameStart && isWhitespace(header[nameEnd - 1])) {
+            nameEnd--;
+        }
+        for (int i = nameStart; i < nameEnd; i++) {
+            if (header[i] < 0x21 || header[i] > 0x7E) {
+                return;
+            }
+        }
+
+        String name = new String(header, nameStart, nameEnd - nameStart, US_ASCII);
+        String raw = new String(header, fieldStart, fieldEnd - fieldStart);
+        fields.add(Field.newRawField(name, raw));
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
     }
 
     public String toString() {
+        if (rawHeader != null) {
+            return new String(rawHeader);
+        }
+
         StringBuilder builder = new StringBuilder();
         for (Field field : mFields) {
             if (field.hasRawData()) {
@@ -94,6 +298,11 @@ public class MimeHeader implements Cloneable {
     }
 
     public void writeTo(OutputStream out) throws IOException {
+        if (rawHeader != null) {
+            out.write(rawHeader);
+            return;
+        }
+
         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out), 1024);
         for (Field field : mFields) {
             if (field.hasRawData()) {
@@ -155,8 +364,9 @@ public class MimeHeader implements Cloneable {
 
     private static class Field {
         private final String name;
-        private final String value;
         private final String raw;
+        private String value;
+        private String decodedValue;
 
         public static Field newNameValueField(String name, String value) {
             if (value == null) {
@@ -195,10 +405,20 @@ public class MimeHeader implements Cloneable {
 
             int delimiterIndex = raw.indexOf(':');
             if (delimiterIndex == raw.length() - 1) {
-                return "";
+                value = "";
+            } else {
+                value = raw.substring(delimiterIndex + 1).trim();
+            }
+
+            return value;
+        }
+
+        public String getDecodedValue() {
+            if (decodedValue == null) {
+                decodedValue = MimeUtility.unfoldAndDecode(getValue());
             }
 
-            return raw.substring(delimiterIndex + 1).trim();
+            return decodedValue;
         }
 
         public String getRaw() {
@@ -221,9 +441,11 @@ public class MimeHeader implements Cloneable {
 
     @Override
     public MimeHeader clone() {
+        parseRawHeader();
         try {
             MimeHeader header = (MimeHeader) super.clone();
             header.mFields = new ArrayList<Field>(mFields);
+            header.fieldIndex = null;
             return header;
         } catch(CloneNotSupportedException e) {
             throw new AssertionError(e);
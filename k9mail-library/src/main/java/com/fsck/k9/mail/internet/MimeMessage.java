@@ -26,16 +26,13 @@ import com.fsck.k9.mail.Message;
 import com.fsck.k9.mail.MessagingException;
 import com.fsck.k9.mail.Multipart;
 import com.fsck.k9.mail.Part;
-import org.apache.commons.io.IOUtils;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.dom.field.DateTimeField;
 import org.apache.james.mime4j.field.DefaultFieldParser;
 import org.apache.james.mime4j.io.EOLConvertingInputStream;
 import org.apache.james.mime4j.parser.ContentHandler;
-import org.apache.james.mime4j.parser.MimeStreamParser;
 import org.apache.james.mime4j.stream.BodyDescriptor;
 import org.apache.james.mime4j.stream.Field;
-import org.apache.james.mime4j.stream.MimeConfig;
 
 
 /**
@@ -43,6 +40,8 @@ import org.apache.james.mime4j.stream.MimeConfig;
  * RFC 2045 style headers.
  */
 public class MimeMessage extends Message {
+    private static final BodyFactory BODY_FACTORY = new DefaultBodyFactory();
+
     private MimeHeader mHeader = new MimeHeader();
     protected Address[] mFrom;
     protected Address[] mSender;
@@ -66,9 +65,13 @@ public class MimeMessage extends Message {
     private String serverExtra;
 
 
+    /**
+     * Parses a message from {@code in}. Nested parts are always parsed; mime4j recurses into them by default, so
+     * {@code recurse} makes no difference.
+     */
     public static MimeMessage parseMimeMessage(InputStream in, boolean recurse) throws IOException, MessagingException {
         MimeMessage mimeMessage = new MimeMessage();
-        mimeMessage.parse(in, recurse);
+        mimeMessage.parse(in);
         return mimeMessage;
     }
 
@@ -77,43 +80,15 @@ public class MimeMessage extends Message {
 
     /**
      * Parse the given InputStream using Apache Mime4J to build a MimeMessage.
-     * Does not recurse through nested bodyparts.
      */
     public final void parse(InputStream in) throws IOException, MessagingException {
-        parse(in, false);
-    }
-
-    private void parse(InputStream in, boolean recurse) throws IOException, MessagingException {
         mHeader.clear();
-        mFrom = null;
-        mTo = null;
-        mCc = null;
-        mBcc = null;
-        mReplyTo = null;
-        xOriginalTo = null;
-        deliveredTo = null;
-        xEnvelopeTo = null;
-
-        mMessageId = null;
-        mReferences = null;
-        mInReplyTo = null;
-
-        mSentDate = null;
+        clearCachedHeaderValues();
 
         mBody = null;
 
-        MimeConfig parserConfig  = new MimeConfig();
-        parserConfig.setMaxHeaderLen(-1); // The default is a mere 10k
-        parserConfig.setMaxLineLen(-1); // The default is 1000 characters. Some MUAs generate
-        // REALLY long References: headers
-        parserConfig.setMaxHeaderCount(-1); // Disable the check for header count.
-        MimeStreamParser parser = new MimeStreamParser(parserConfig);
-        parser.setContentHandler(new MimeMessageBuilder(new DefaultBodyFactory()));
-        if (recurse) {
-            parser.setRecurse();
-        }
         try {
-            parser.parse(new EOLConvertingInputStream(in));
+            MimeParseContext.parse(new EOLConvertingInputStream(in), new MimeMessageBuilder(BODY_FACTORY));
         } catch (MimeException me) {
             throw new MessagingException(me.getMessage(), me);
         }
@@ -166,13 +141,13 @@ public class MimeMessage extends Message {
 
     @Override
     public String getContentType() {
-        String contentType = getFirstHeader(MimeHeader.HEADER_CONTENT_TYPE);
-        return (contentType == null) ? "text/plain" : MimeUtility.unfoldAndDecode(contentType);
+        String contentType = mHeader.getFirstDecodedHeader(MimeHeader.HEADER_CONTENT_TYPE);
+        return (contentType == null) ? "text/plain" : contentType;
     }
 
     @Override
     public String getDisposition() {
-        return MimeUtility.unfoldAndDecode(getFirstHeader(MimeHeader.HEADER_CONTENT_DISPOSITION));
+        return mHeader.getFirstDecodedHeader(MimeHeader.HEADER_CONTENT_DISPOSITION);
     }
 
     @Override
@@ -458,6 +433,32 @@ public class MimeMessage extends Message {
         mHeader.addRawHeader(name, raw);
     }
 
+    /**
+     * Replaces all header fields with the ones contained in {@code header}, which has to be in the format written by
+     * {@link #writeHeaderTo(OutputStream)}. The fields are only parsed when they're accessed.
+     */
+    public void setRawHeader(byte[] header) {
+        mHeader.setRawHeader(header);
+        clearCachedHeaderValues();
+    }
+
+    private void clearCachedHeaderValues() {
+        mFrom = null;
+        mTo = null;
+        mCc = null;
+        mBcc = null;
+        mReplyTo = null;
+        xOriginalTo = null;
+        deliveredTo = null;
+        xEnvelopeTo = null;
+
+        mMessageId = null;
+        mReferences = null;
+        mInReplyTo = null;
+
+        mSentDate = null;
+    }
+
     @Override
     public void setHeader(String name, String value) {
         mHeader.setHeader(name, value);
@@ -626,7 +627,7 @@ public class MimeMessage extends Message {
         public void preamble(InputStream is) throws IOException {
             expect(MimeMultipart.class);
             ByteArrayOutputStream preamble = new ByteArrayOutputStream();
-            IOUtils.copy(is, preamble);
+            MimeParseContext.copy(is, preamble);
             ((MimeMultipart)stack.peek()).setPreamble(preamble.toByteArray());
         }
 
@@ -634,7 +635,7 @@ public class MimeMessage extends Message {
         public void epilogue(InputStream is) throws IOException {
             expect(MimeMultipart.class);
             ByteArrayOutputStream epilogue = new ByteArrayOutputStream();
-            IOUtils.copy(is, epilogue);
+            MimeParseContext.copy(is, epilogue);
             ((MimeMultipart) stack.peek()).setEpilogue(epilogue.toByteArray());
         }
 
@@ -0,0 +1,94 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.parser.AbstractContentHandler;
+import org.apache.james.mime4j.parser.ContentHandler;
+import org.apache.james.mime4j.parser.MimeStreamParser;
+import org.apache.james.mime4j.stream.MimeConfig;
+
+
+/**
+ * Per-thread state for parsing messages with mime4j.
+ * <p>
+ * Bulk operations like syncing a folder or re-parsing stored messages in a migration parse many messages in a row on
+ * the same thread. Instead of setting up a new {@link MimeStreamParser} (with its token stream, field builder and
+ * body descriptor builder) and new copy buffers for every message, each thread keeps one parser and one buffer that
+ * are reused. Only the content handler changes from message to message.
+ * </p><p>
+ * A parse that is started while another one is in progress on the same thread (e.g. from within a content handler)
+ * uses a temporary context, so the state of the outer parse is never touched.
+ * </p>
+ */
+public final class MimeParseContext {
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+    private static final ContentHandler NO_HANDLER = new AbstractContentHandler() {};
+
+    private static final ThreadLocal<MimeParseContext> CONTEXTS = new ThreadLocal<MimeParseContext>() {
+        @Override
+        protected MimeParseContext initialValue() {
+            return new MimeParseContext();
+        }
+    };
+
+
+    private final MimeStreamParser parser;
+    private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+    private boolean parsing = false;
+
+
+    private MimeParseContext() {
+        parser = new MimeStreamParser(createParserConfig());
+    }
+
+    /**
+     * Returns the parser configuration used for all messages: no limits on header length, line length or the number
+     * of header fields.
+     */
+    private static MimeConfig createParserConfig() {
+        MimeConfig parserConfig = new MimeConfig();
+        parserConfig.setMaxHeaderLen(-1); // The default is a mere 10k
+        parserConfig.setMaxLineLen(-1); // The default is 1000 characters. Some MUAs generate
+        // REALLY long References: headers
+        parserConfig.setMaxHeaderCount(-1); // Disable the check for header count.
+        return parserConfig;
+    }
+
+    /**
+     * Parses {@code inputStream} with the parser of the current thread, reporting to {@code contentHandler}.
+     * <p>
+     * Nested multiparts and {@code message/rfc822} parts are always parsed recursively. The stream is neither wrapped
+     * (e.g. to convert line endings) nor closed.
+     * </p>
+     */
+    public static void parse(InputStream inputStream, ContentHandler contentHandler) throws MimeException, IOException {
+        MimeParseContext context = CONTEXTS.get();
+        if (context.parsing) {
+            context = new MimeParseContext();
+        }
+
+        context.parsing = true;
+        context.parser.setContentHandler(contentHandler);
+        try {
+            context.parser.parse(inputStream);
+        } finally {
+            // Don't keep the handler (and with it the parsed message) reachable from the thread
+            context.parser.setContentHandler(NO_HANDLER);
+            context.parsing = false;
+        }
+    }
+
+    /**
+     * Copies all of {@code inputStream} to {@code outputStream} using the copy buffer of the current thread.
+     *
+     * @return The number of bytes copied.
+     */
+    public static long copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        return IOUtils.copyLarge(inputStream, outputStream, CONTEXTS.get().copyBuffer);
+    }
+}
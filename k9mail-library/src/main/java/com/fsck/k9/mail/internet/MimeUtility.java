@@ -15,8 +15,8 @@ import com.fsck.k9.mail.Message;
 import com.fsck.k9.mail.MessagingException;
 import com.fsck.k9.mail.Multipart;
 import com.fsck.k9.mail.Part;
+import com.fsck.k9.mail.filter.Base64DecodingInputStream;
 
-import org.apache.james.mime4j.codec.Base64InputStream;
 import org.apache.james.mime4j.codec.QuotedPrintableInputStream;
 import org.apache.james.mime4j.util.MimeUtil;
 import timber.log.Timber;
@@ -892,7 +892,25 @@ public class MimeUtility {
         if (s == null) {
             return null;
         }
-        return s.replaceAll("\r|\n", "");
+
+        int length = s.length();
+        int index = 0;
+        while (index < length && s.charAt(index) != '\r' && s.charAt(index) != '\n') {
+            index++;
+        }
+        if (index == length) {
+            return s;
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        builder.append(s, 0, index);
+        for (; index < length; index++) {
+            char c = s.charAt(index);
+            if (c != '\r' && c != '\n') {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
     }
 
     private static String decode(String s, Message message) {
@@ -1004,7 +1022,7 @@ public class MimeUtility {
                     || MimeUtil.ENC_BINARY.equalsIgnoreCase(encoding)) {
                 inputStream = rawInputStream;
             } else if (MimeUtil.ENC_BASE64.equalsIgnoreCase(encoding)) {
-                inputStream = new Base64InputStream(rawInputStream, false) {
+                inputStream = new Base64DecodingInputStream(rawInputStream) {
                     @Override
                     public void close() throws IOException {
                         super.close();
@@ -6,22 +6,18 @@ import java.io.InputStream;
 
 import com.fsck.k9.mail.MessagingException;
 import com.fsck.k9.mail.Part;
+import com.fsck.k9.mail.internet.MimeParseContext;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.parser.ContentHandler;
-import org.apache.james.mime4j.parser.MimeStreamParser;
 import org.apache.james.mime4j.stream.BodyDescriptor;
 import org.apache.james.mime4j.stream.Field;
-import org.apache.james.mime4j.stream.MimeConfig;
 
 
 public class MessageHeaderParser {
 
     public static void parse(final Part part, InputStream headerInputStream) throws MessagingException {
-        MimeStreamParser parser = getMimeStreamParser();
-        parser.setContentHandler(new MessageHeaderParserContentHandler(part));
-
         try {
-            parser.parse(headerInputStream);
+            MimeParseContext.parse(headerInputStream, new MessageHeaderParserContentHandler(part));
         } catch (MimeException me) {
             throw new MessagingException("Error parsing headers", me);
         } catch (IOException e) {
@@ -29,14 +25,6 @@ public class MessageHeaderParser {
         }
     }
 
-    private static MimeStreamParser getMimeStreamParser() {
-        MimeConfig parserConfig = new MimeConfig();
-        parserConfig.setMaxHeaderLen(-1);
-        parserConfig.setMaxLineLen(-1);
-        parserConfig.setMaxHeaderCount(-1);
-        return new MimeStreamParser(parserConfig);
-    }
-
     private static class MessageHeaderParserContentHandler implements ContentHandler {
         private final Part part;
 
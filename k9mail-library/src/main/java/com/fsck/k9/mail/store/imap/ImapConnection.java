@@ -1,7 +1,6 @@
 package com.fsck.k9.mail.store.imap;
 
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -237,7 +236,7 @@ class ImapConnection {
     }
 
     private void setUpStreamsAndParser(InputStream input, OutputStream output) {
-        inputStream = new PeekableInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+        inputStream = new PeekableInputStream(input);
         responseParser = new ImapResponseParser(inputStream);
         outputStream = new BufferedOutputStream(output, BUFFER_SIZE);
     }
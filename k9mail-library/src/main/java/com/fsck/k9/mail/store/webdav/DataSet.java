@@ -159,47 +159,53 @@ class DataSet {
         Map<String, ParsedMessageEnvelope> envelopes = new HashMap<String, ParsedMessageEnvelope>();
 
         for (String uid : mData.keySet()) {
-            ParsedMessageEnvelope envelope = new ParsedMessageEnvelope();
             Map<String, String> data = mData.get(uid);
+            envelopes.put(uid, createEnvelope(data));
+        }
 
-            if (data != null) {
-                for (Map.Entry<String, String> entry : data.entrySet()) {
-                    String header = entry.getKey();
-                    if (header.equals("read")) {
-                        String read = entry.getValue();
-                        boolean readStatus = !read.equals("0");
-
-                        envelope.setReadStatus(readStatus);
-                    } else if (header.equals("date")) {
-                        /**
-                         * Exchange doesn't give us rfc822 dates like it claims. The date is in the format:
-                         * yyyy-MM-dd'T'HH:mm:ss.SSS<Single digit representation of timezone, so far, all instances
-                         * are Z>
-                         */
-                        String date = entry.getValue();
-                        date = date.substring(0, date.length() - 1);
-
-                        DateFormat dfInput = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
-                        DateFormat dfOutput = new SimpleDateFormat("EEE, d MMM yy HH:mm:ss Z", Locale.US);
-                        String tempDate = "";
-
-                        try {
-                            Date parsedDate = dfInput.parse(date);
-                            tempDate = dfOutput.format(parsedDate);
-                        } catch (java.text.ParseException pe) {
-                            Timber.e(pe, "Error parsing date: %s", date);
-                        }
-                        envelope.addHeader(header, tempDate);
-                    } else {
-                        envelope.addHeader(header, entry.getValue());
+        return envelopes;
+    }
+
+    /**
+     * Creates a ParsedMessageEnvelope from the properties of a single {@code response} element.
+     */
+    static ParsedMessageEnvelope createEnvelope(Map<String, String> data) {
+        ParsedMessageEnvelope envelope = new ParsedMessageEnvelope();
+
+        if (data != null) {
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                String header = entry.getKey();
+                if (header.equals("read")) {
+                    String read = entry.getValue();
+                    boolean readStatus = !read.equals("0");
+
+                    envelope.setReadStatus(readStatus);
+                } else if (header.equals("date")) {
+                    /**
+                     * Exchange doesn't give us rfc822 dates like it claims. The date is in the format:
+                     * yyyy-MM-dd'T'HH:mm:ss.SSS<Single digit representation of timezone, so far, all instances
+                     * are Z>
+                     */
+                    String date = entry.getValue();
+                    date = date.substring(0, date.length() - 1);
+
+                    DateFormat dfInput = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+                    DateFormat dfOutput = new SimpleDateFormat("EEE, d MMM yy HH:mm:ss Z", Locale.US);
+                    String tempDate = "";
+
+                    try {
+                        Date parsedDate = dfInput.parse(date);
+                        tempDate = dfOutput.format(parsedDate);
+                    } catch (java.text.ParseException pe) {
+                        Timber.e(pe, "Error parsing date: %s", date);
                     }
+                    envelope.addHeader(header, tempDate);
+                } else {
+                    envelope.addHeader(header, entry.getValue());
                 }
             }
-
-            envelopes.put(uid, envelope);
         }
 
-        return envelopes;
+        return envelope;
     }
 }
-
@@ -0,0 +1,78 @@
+package com.fsck.k9.mail.store.webdav;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Handler for the multistatus response of a message envelope search.
+ * <p>
+ * Unlike {@link WebDavHandler} this doesn't build a {@link DataSet} of the whole response. Every envelope is handed
+ * to the {@link EnvelopeCallback} as soon as its {@code response} element has been parsed, i.e. while the rest of
+ * the response is still being received.
+ * </p>
+ */
+class MessageEnvelopeHandler extends DefaultHandler {
+    private final EnvelopeCallback callback;
+    private final LinkedList<String> openTags = new LinkedList<String>();
+    private Map<String, String> properties = new HashMap<String, String>();
+    private StringBuilder uid = new StringBuilder();
+    private int envelopeCount = 0;
+
+
+    MessageEnvelopeHandler(EnvelopeCallback callback) {
+        this.callback = callback;
+    }
+
+    public int getEnvelopeCount() {
+        return envelopeCount;
+    }
+
+    @Override
+    public void startElement(String namespaceURI, String localName,
+                             String qName, Attributes atts) throws SAXException {
+        openTags.addFirst(localName);
+    }
+
+    @Override
+    public void endElement(String namespaceURI, String localName, String qName) {
+        openTags.removeFirst();
+
+        if (localName.equals("response")) {
+            ParsedMessageEnvelope envelope = DataSet.createEnvelope(properties);
+            String messageUid = uid.toString();
+            envelope.setUid(messageUid);
+
+            properties = new HashMap<String, String>();
+            uid = new StringBuilder();
+            envelopeCount++;
+
+            callback.envelopeParsed(messageUid, envelope);
+        }
+    }
+
+    @Override
+    public void characters(char ch[], int start, int length) {
+        String tagName = openTags.peek();
+        if (tagName == null) {
+            return;
+        }
+
+        String value = new String(ch, start, length);
+        if (tagName.equals("uid")) {
+            uid.append(value);
+        }
+
+        String previousValue = properties.get(tagName);
+        properties.put(tagName, previousValue != null ? previousValue + value : value);
+    }
+
+
+    interface EnvelopeCallback {
+        void envelopeParsed(String uid, ParsedMessageEnvelope envelope);
+    }
+}
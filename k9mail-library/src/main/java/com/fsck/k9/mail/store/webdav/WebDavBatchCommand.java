@@ -0,0 +1,236 @@
+package com.fsck.k9.mail.store.webdav;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Exchange batch method (BMOVE, BCOPY, BPROPPATCH, BDELETE) that is applied to an arbitrary number of messages.
+ * <p>
+ * The targets are split into chunks of at most {@link #MAX_HREFS_PER_REQUEST} hrefs and roughly
+ * {@link #MAX_REQUEST_BODY_SIZE} bytes. Every chunk is sent as a single request whose XML body is written straight
+ * to the connection instead of being assembled in memory first.
+ * </p>
+ */
+class WebDavBatchCommand {
+    static final int MAX_HREFS_PER_REQUEST = 200;
+    static final int MAX_REQUEST_BODY_SIZE = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int HREF_OVERHEAD = " <a:href></a:href>\r\n".length();
+
+
+    private final String method;
+    private final String rootElement;
+    private final String properties;
+    private final Map<String, String> headers = new HashMap<String, String>();
+    private final List<String> hrefs = new ArrayList<String>();
+
+
+    static WebDavBatchCommand createMoveOrCopyCommand(String destinationUrl, boolean isMove) {
+        WebDavBatchCommand command = new WebDavBatchCommand(isMove ? "BMOVE" : "BCOPY", isMove ? "move" : "copy",
+                null);
+        command.addHeader("Destination", destinationUrl);
+        command.addHeader("Brief", "t");
+        command.addHeader("If-Match", "*");
+        return command;
+    }
+
+    static WebDavBatchCommand createMarkReadCommand(boolean read) {
+        String properties = "<a:set>\r\n" +
+                " <a:prop>\r\n" +
+                "  <b:read>" + (read ? "1" : "0") + "</b:read>\r\n" +
+                " </a:prop>\r\n" +
+                "</a:set>\r\n";
+
+        WebDavBatchCommand command = new WebDavBatchCommand("BPROPPATCH", "propertyupdate", properties);
+        command.addHeader("Brief", "t");
+        command.addHeader("If-Match", "*");
+        return command;
+    }
+
+    static WebDavBatchCommand createDeleteCommand() {
+        WebDavBatchCommand command = new WebDavBatchCommand("BDELETE", "delete", null);
+        command.addHeader("Brief", "t");
+        return command;
+    }
+
+    WebDavBatchCommand(String method, String rootElement, String properties) {
+        this.method = method;
+        this.rootElement = rootElement;
+        this.properties = properties;
+    }
+
+    public void addHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    public void addHref(String href) {
+        if (href != null) {
+            hrefs.add(href);
+        }
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public List<String> getHrefs() {
+        return Collections.unmodifiableList(hrefs);
+    }
+
+    public boolean isEmpty() {
+        return hrefs.isEmpty();
+    }
+
+    /**
+     * Splits the hrefs into the groups that are sent with a single request each.
+     */
+    public List<List<String>> getChunks() {
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        int fixedSize = getFixedBodySize();
+
+        List<String> chunk = new ArrayList<String>();
+        int chunkSize = fixedSize;
+        for (String href : hrefs) {
+            int hrefSize = HREF_OVERHEAD + escape(href).length();
+            if (!chunk.isEmpty() && (chunk.size() >= MAX_HREFS_PER_REQUEST ||
+                    chunkSize + hrefSize > MAX_REQUEST_BODY_SIZE)) {
+                chunks.add(chunk);
+                chunk = new ArrayList<String>();
+                chunkSize = fixedSize;
+            }
+
+            chunk.add(href);
+            chunkSize += hrefSize;
+        }
+
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
+
+    public HttpEntity createEntity(List<String> chunk) {
+        return new BatchRequestEntity(chunk);
+    }
+
+    void writeBody(List<String> chunk, Writer writer) throws IOException {
+        writer.write("<?xml version='1.0' ?>\r\n");
+        writer.write("<a:");
+        writer.write(rootElement);
+        writer.write(" xmlns:a='DAV:' xmlns:b='urn:schemas:httpmail:'>\r\n");
+        writer.write("<a:target>\r\n");
+        for (String href : chunk) {
+            writer.write(" <a:href>");
+            writer.write(escape(href));
+            writer.write("</a:href>\r\n");
+        }
+        writer.write("</a:target>\r\n");
+        if (properties != null) {
+            writer.write(properties);
+        }
+        writer.write("</a:");
+        writer.write(rootElement);
+        writer.write(">\r\n");
+    }
+
+    private int getFixedBodySize() {
+        return 2 * rootElement.length() + (properties != null ? properties.length() : 0) + 100;
+    }
+
+    private static String escape(String href) {
+        if (href.indexOf('&') == -1 && href.indexOf('<') == -1 && href.indexOf('>') == -1) {
+            return href;
+        }
+
+        return href.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+
+    /**
+     * Writes the XML body of a chunk when the request is sent. The content length is determined by a counting pass,
+     * so Exchange doesn't have to deal with a chunked request.
+     */
+    private class BatchRequestEntity extends AbstractHttpEntity {
+        private final List<String> chunk;
+        private long contentLength = -1;
+
+
+        BatchRequestEntity(List<String> chunk) {
+            this.chunk = chunk;
+            setContentType("text/xml");
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public synchronized long getContentLength() {
+            if (contentLength == -1) {
+                CountingOutputStream countingOutputStream = new CountingOutputStream();
+                try {
+                    writeTo(countingOutputStream);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Can't happen", e);
+                }
+                contentLength = countingOutputStream.count;
+            }
+
+            return contentLength;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeTo(out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            Writer writer = new OutputStreamWriter(outstream, UTF_8);
+            writeBody(chunk, writer);
+            writer.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int oneByte) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            count += length;
+        }
+    }
+}
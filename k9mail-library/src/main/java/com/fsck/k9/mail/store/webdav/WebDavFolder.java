@@ -14,6 +14,8 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import timber.log.Timber;
 
 import java.io.BufferedOutputStream;
@@ -32,6 +34,11 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.fsck.k9.mail.K9MailLib.DEBUG_PROTOCOL_WEBDAV;
 import static com.fsck.k9.mail.helper.UrlEncodingHelper.encodeUtf8;
@@ -116,8 +123,6 @@ class WebDavFolder extends Folder<WebDavMessage> {
         for (int i = 0, count = messages.size(); i < count; i++) {
             uids[i] = messages.get(i).getUid();
         }
-        String messageBody;
-        Map<String, String> headers = new HashMap<String, String>();
         Map<String, String> uidToUrl = getMessageUrls(uids);
         String[] urls = new String[uids.length];
 
@@ -129,15 +134,14 @@ class WebDavFolder extends Folder<WebDavMessage> {
             }
         }
 
-        messageBody = store.getMoveOrCopyMessagesReadXml(urls, isMove);
         WebDavFolder destFolder = (WebDavFolder) store.getFolder(folderName);
-        headers.put("Destination", destFolder.mFolderUrl);
-        headers.put("Brief", "t");
-        headers.put("If-Match", "*");
-        String action = (isMove ? "BMOVE" : "BCOPY");
+        WebDavBatchCommand command = WebDavBatchCommand.createMoveOrCopyCommand(destFolder.mFolderUrl, isMove);
+        for (String url : urls) {
+            command.addHref(url);
+        }
         Timber.v("Moving %d messages to %s", messages.size(), destFolder.mFolderUrl);
 
-        store.processRequest(mFolderUrl, action, messageBody, headers, false);
+        store.processBatchCommand(mFolderUrl, command);
     }
 
     private int getMessageCount(boolean read) throws MessagingException {
@@ -329,113 +333,169 @@ class WebDavFolder extends Folder<WebDavMessage> {
 
     /**
      * Fetches the full messages or up to {@param lines} lines and passes them to the message parser.
+     * <p>
+     * The messages are downloaded concurrently, using as many connections as the HTTP client keeps per route. The
+     * listener is still notified in the order of {@code messages}.
+     * </p>
      */
-    private void fetchMessages(List<WebDavMessage> messages, MessageRetrievalListener<WebDavMessage> listener, int lines)
-            throws MessagingException {
-        WebDavHttpClient httpclient;
-        httpclient = store.getHttpClient();
-
-        /**
-         * We can't hand off to processRequest() since we need the stream to parse.
-         */
-        for (int i = 0, count = messages.size(); i < count; i++) {
-            WebDavMessage wdMessage = messages.get(i);
-            int statusCode = 0;
+    private void fetchMessages(List<WebDavMessage> messages, MessageRetrievalListener<WebDavMessage> listener,
+            final int lines) throws MessagingException {
+        final WebDavHttpClient httpclient = store.getHttpClient();
 
-            if (listener != null) {
-                listener.messageStarted(wdMessage.getUid(), i, count);
-            }
+        int count = messages.size();
+        if (count == 0) {
+            return;
+        }
 
-            /**
-             * If fetch is called outside of the initial list (ie, a locally stored message), it may not have a URL
-             * associated. Verify and fix that
-             */
-            if (wdMessage.getUrl().equals("")) {
-                wdMessage.setUrl(getMessageUrls(new String[]{wdMessage.getUid()}).get(wdMessage.getUid()));
-                Timber.i("Fetching messages with UID = '%s', URL = '%s'", wdMessage.getUid(), wdMessage.getUrl());
+        int threadCount = Math.max(1, Math.min(httpclient.getMaxConnectionsPerRoute(), count));
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Void>> downloads = new ArrayList<Future<Void>>(count);
+            for (final WebDavMessage wdMessage : messages) {
+                /**
+                 * If fetch is called outside of the initial list (ie, a locally stored message), it may not have a
+                 * URL associated. Verify and fix that
+                 */
                 if (wdMessage.getUrl().equals("")) {
-                    throw new MessagingException("Unable to get URL for message");
+                    wdMessage.setUrl(getMessageUrls(new String[]{wdMessage.getUid()}).get(wdMessage.getUid()));
+                    Timber.i("Fetching messages with UID = '%s', URL = '%s'", wdMessage.getUid(), wdMessage.getUrl());
+                    if (wdMessage.getUrl().equals("")) {
+                        throw new MessagingException("Unable to get URL for message");
+                    }
                 }
+
+                downloads.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws MessagingException {
+                        fetchMessage(httpclient, wdMessage, lines);
+                        return null;
+                    }
+                }));
             }
 
-            try {
-                Timber.i("Fetching message with UID = '%s', URL = '%s'", wdMessage.getUid(), wdMessage.getUrl());
-                HttpGet httpget = new HttpGet(new URI(wdMessage.getUrl()));
-                HttpResponse response;
-                HttpEntity entity;
-
-                httpget.setHeader("translate", "f");
-                if (store.getAuthentication() == WebDavConstants.AUTH_TYPE_BASIC) {
-                    httpget.setHeader("Authorization", store.getAuthString());
+            for (int i = 0; i < count; i++) {
+                WebDavMessage wdMessage = messages.get(i);
+                if (listener != null) {
+                    listener.messageStarted(wdMessage.getUid(), i, count);
                 }
-                response = httpclient.executeOverride(httpget, store.getHttpContext());
 
-                statusCode = response.getStatusLine().getStatusCode();
+                waitForDownload(downloads.get(i));
 
-                entity = response.getEntity();
-
-                if (statusCode < 200 ||
-                        statusCode > 300) {
-                    throw new IOException("Error during with code " + statusCode + " during fetch: "
-                            + response.getStatusLine().toString());
+                if (listener != null) {
+                    listener.messageFinished(wdMessage, i, count);
                 }
+            }
+        } finally {
+            // Stops pending downloads if one of them failed
+            executor.shutdownNow();
+        }
+    }
+
+    private void waitForDownload(Future<Void> download) throws MessagingException {
+        try {
+            download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while fetching messages", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MessagingException) {
+                throw (MessagingException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new MessagingException("Error fetching message", cause);
+        }
+    }
 
-                if (entity != null) {
-                    InputStream istream = null;
-                    StringBuilder buffer = new StringBuilder();
-                    String tempText;
-                    String resultText;
-                    BufferedReader reader = null;
-                    int currentLines = 0;
+    /**
+     * Downloads a single message and passes it to the message parser. This may be called from multiple threads at
+     * the same time.
+     */
+    private void fetchMessage(WebDavHttpClient httpclient, WebDavMessage wdMessage, int lines)
+            throws MessagingException {
+        int statusCode = 0;
+
+        /**
+         * We can't hand off to processRequest() since we need the stream to parse.
+         */
+        try {
+            Timber.i("Fetching message with UID = '%s', URL = '%s'", wdMessage.getUid(), wdMessage.getUrl());
+            HttpGet httpget = new HttpGet(new URI(wdMessage.getUrl()));
+            HttpResponse response;
+            HttpEntity entity;
 
-                    try {
-                        istream = WebDavHttpClient.getUngzippedContent(entity);
+            httpget.setHeader("translate", "f");
+            if (store.getAuthentication() == WebDavConstants.AUTH_TYPE_BASIC) {
+                httpget.setHeader("Authorization", store.getAuthString());
+            }
 
-                        if (lines != -1) {
-                            //Convert the ungzipped input stream into a StringBuilder
-                            //containing the given line count
-                            reader = new BufferedReader(new InputStreamReader(istream), 8192);
+            // HttpContext isn't thread-safe. Use a child context that shares the cookies of the store's context.
+            HttpContext httpContext = new BasicHttpContext(store.getHttpContext());
+            response = httpclient.executeOverride(httpget, httpContext);
 
-                            while ((tempText = reader.readLine()) != null &&
-                                    (currentLines < lines)) {
-                                buffer.append(tempText).append("\r\n");
-                                currentLines++;
-                            }
+            statusCode = response.getStatusLine().getStatusCode();
 
-                            IOUtils.closeQuietly(istream);
+            entity = response.getEntity();
 
-                            resultText = buffer.toString();
-                            istream = new ByteArrayInputStream(resultText.getBytes("UTF-8"));
+            if (statusCode < 200 ||
+                    statusCode > 300) {
+                WebDavHttpClient.consumeQuietly(response);
+                throw new IOException("Error during with code " + statusCode + " during fetch: "
+                        + response.getStatusLine().toString());
+            }
+
+            if (entity != null) {
+                InputStream istream = null;
+                StringBuilder buffer = new StringBuilder();
+                String tempText;
+                String resultText;
+                BufferedReader reader = null;
+                int currentLines = 0;
+
+                try {
+                    istream = WebDavHttpClient.getUngzippedContent(entity);
+
+                    if (lines != -1) {
+                        //Convert the ungzipped input stream into a StringBuilder
+                        //containing the given line count
+                        reader = new BufferedReader(new InputStreamReader(istream), 8192);
+
+                        while ((tempText = reader.readLine()) != null &&
+                                (currentLines < lines)) {
+                            buffer.append(tempText).append("\r\n");
+                            currentLines++;
                         }
-                        //Parse either the entire message stream, or a stream of the given lines
-                        wdMessage.parse(istream);
-
-                    } catch (IOException ioe) {
-                        Timber.e(ioe, "IOException during message parsing");
-                        throw new MessagingException("I/O Error", ioe);
-                    } finally {
-                        IOUtils.closeQuietly(reader);
+
                         IOUtils.closeQuietly(istream);
+
+                        resultText = buffer.toString();
+                        istream = new ByteArrayInputStream(resultText.getBytes("UTF-8"));
                     }
-                } else {
-                    Timber.v("Empty response");
+                    //Parse either the entire message stream, or a stream of the given lines
+                    wdMessage.parse(istream);
+
+                } catch (IOException ioe) {
+                    Timber.e(ioe, "IOException during message parsing");
+                    throw new MessagingException("I/O Error", ioe);
+                } finally {
+                    IOUtils.closeQuietly(reader);
+                    IOUtils.closeQuietly(istream);
                 }
-
-            } catch (IllegalArgumentException iae) {
-                Timber.e(iae, "IllegalArgumentException caught");
-                throw new MessagingException("IllegalArgumentException caught", iae);
-            } catch (URISyntaxException use) {
-                Timber.e(use, "URISyntaxException caught");
-                throw new MessagingException("URISyntaxException caught", use);
-            } catch (IOException ioe) {
-                Timber.e(ioe, "Non-success response code loading message, response code was %d, URL: %s",
-                        statusCode, wdMessage.getUrl());
-                throw new MessagingException("Failure code " + statusCode, ioe);
+            } else {
+                Timber.v("Empty response");
             }
 
-            if (listener != null) {
-                listener.messageFinished(wdMessage, i, count);
-            }
+        } catch (IllegalArgumentException iae) {
+            Timber.e(iae, "IllegalArgumentException caught");
+            throw new MessagingException("IllegalArgumentException caught", iae);
+        } catch (URISyntaxException use) {
+            Timber.e(use, "URISyntaxException caught");
+            throw new MessagingException("URISyntaxException caught", use);
+        } catch (IOException ioe) {
+            Timber.e(ioe, "Non-success response code loading message, response code was %d, URL: %s",
+                    statusCode, wdMessage.getUrl());
+            throw new MessagingException("Failure code " + statusCode, ioe);
         }
     }
 
@@ -541,28 +601,54 @@ class WebDavFolder extends Folder<WebDavMessage> {
 
         messageBody = store.getMessageEnvelopeXml(uids);
         headers.put("Brief", "t");
-        DataSet dataset = store.processRequest(this.mFolderUrl, "SEARCH", messageBody, headers);
 
-        Map<String, ParsedMessageEnvelope> envelopes = dataset.getMessageEnvelopes();
+        /*
+         * Envelopes are applied while the response is still being parsed, so the listener doesn't have to wait for
+         * the whole multistatus document and we never keep more than one envelope in memory.
+         */
+        final Map<String, WebDavMessage> pendingMessages = new HashMap<String, WebDavMessage>(messages.size());
+        for (WebDavMessage message : messages) {
+            pendingMessages.put(message.getUid(), message);
+        }
+
+        final int count = messages.size();
+        final int[] position = { 0 };
+        final MessageRetrievalListener<WebDavMessage> envelopeListener = listener;
+        MessageEnvelopeHandler handler = new MessageEnvelopeHandler(new MessageEnvelopeHandler.EnvelopeCallback() {
+            @Override
+            public void envelopeParsed(String uid, ParsedMessageEnvelope envelope) {
+                WebDavMessage message = pendingMessages.remove(uid);
+                if (message == null) {
+                    Timber.w("Received metadata for a message we didn't ask for: %s", uid);
+                    return;
+                }
 
-        int count = messages.size();
-        for (int i = messages.size() - 1; i >= 0; i--) {
-            WebDavMessage message = messages.get(i);
-            if (listener != null) {
-                listener.messageStarted(messages.get(i).getUid(), i, count);
+                try {
+                    message.setNewHeaders(envelope);
+                    message.setFlagInternal(Flag.SEEN, envelope.getReadStatus());
+                } catch (MessagingException e) {
+                    Timber.e(e, "Error applying metadata to message %s", uid);
+                }
+
+                notifyEnvelopeFetched(envelopeListener, message, position[0]++, count);
             }
+        });
 
-            ParsedMessageEnvelope envelope = envelopes.get(message.getUid());
-            if (envelope != null) {
-                message.setNewHeaders(envelope);
-                message.setFlagInternal(Flag.SEEN, envelope.getReadStatus());
-            } else {
+        store.processRequest(this.mFolderUrl, "SEARCH", messageBody, headers, handler);
+
+        for (WebDavMessage message : messages) {
+            if (pendingMessages.containsKey(message.getUid())) {
                 Timber.e("Asked to get metadata for a non-existent message: %s", message.getUid());
+                notifyEnvelopeFetched(listener, message, position[0]++, count);
             }
+        }
+    }
 
-            if (listener != null) {
-                listener.messageFinished(messages.get(i), i, count);
-            }
+    private void notifyEnvelopeFetched(MessageRetrievalListener<WebDavMessage> listener, WebDavMessage message,
+            int number, int count) {
+        if (listener != null) {
+            listener.messageStarted(message.getUid(), number, count);
+            listener.messageFinished(message, number, count);
         }
     }
 
@@ -585,42 +671,43 @@ class WebDavFolder extends Folder<WebDavMessage> {
     }
 
     private void markServerMessagesRead(String[] uids, boolean read) throws MessagingException {
-        String messageBody;
-        Map<String, String> headers = new HashMap<String, String>();
         Map<String, String> uidToUrl = getMessageUrls(uids);
-        String[] urls = new String[uids.length];
 
-        for (int i = 0, count = uids.length; i < count; i++) {
-            urls[i] = uidToUrl.get(uids[i]);
+        WebDavBatchCommand command = WebDavBatchCommand.createMarkReadCommand(read);
+        for (String uid : uids) {
+            command.addHref(uidToUrl.get(uid));
         }
 
-        messageBody = store.getMarkMessagesReadXml(urls, read);
-        headers.put("Brief", "t");
-        headers.put("If-Match", "*");
-
-        store.processRequest(this.mFolderUrl, "BPROPPATCH", messageBody, headers, false);
+        store.processBatchCommand(this.mFolderUrl, command);
     }
 
     private void deleteServerMessages(String[] uids) throws MessagingException {
         Map<String, String> uidToUrl = getMessageUrls(uids);
 
+        WebDavBatchCommand moveCommand = WebDavBatchCommand.createMoveOrCopyCommand(getDeletedItemsUrl(), true);
+        WebDavBatchCommand deleteCommand = WebDavBatchCommand.createDeleteCommand();
         for (String uid : uids) {
-            Map<String, String> headers = new HashMap<String, String>();
             String url = uidToUrl.get(uid);
-            String destinationUrl = generateDeleteUrl(url);
+            if (url == null) {
+                continue;
+            }
 
             /**
              * If the destination is the same as the origin, assume delete forever
              */
-            if (destinationUrl.equals(url)) {
-                headers.put("Brief", "t");
-                store.processRequest(url, "DELETE", null, headers, false);
+            if (generateDeleteUrl(url).equals(url)) {
+                deleteCommand.addHref(url);
             } else {
-                headers.put("Destination", generateDeleteUrl(url));
-                headers.put("Brief", "t");
-                store.processRequest(url, "MOVE", null, headers, false);
+                moveCommand.addHref(url);
             }
         }
+
+        store.processBatchCommand(this.mFolderUrl, moveCommand);
+        store.processBatchCommand(this.mFolderUrl, deleteCommand);
+    }
+
+    private String getDeletedItemsUrl() {
+        return store.getUrl() + "Deleted%20Items";
     }
 
     private String generateDeleteUrl(String startUrl) {
@@ -5,7 +5,18 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HttpContext;
 import timber.log.Timber;
 
@@ -15,6 +26,11 @@ import java.util.zip.GZIPInputStream;
 
 /**
  * HTTP client for WebDAV communication
+ * <p>
+ * Connections are kept alive and pooled, so that requests to the same server reuse them and several requests can
+ * be executed concurrently. Every response entity has to be consumed or its content stream closed, otherwise the
+ * connection is not returned to the pool.
+ * </p>
  */
 public class WebDavHttpClient extends DefaultHttpClient {
     /*
@@ -30,10 +46,91 @@ public class WebDavHttpClient extends DefaultHttpClient {
      * the License for the specific language governing permissions and limitations under the License.
      */
 
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 4;
+    private static final int MAX_TOTAL_CONNECTIONS = 20;
+    private static final long CONNECTION_POOL_TIMEOUT_MILLIS = 60 * 1000;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 30 * 1000;
+
+
     public static class WebDavHttpClientFactory {
+        private final int maxConnectionsPerRoute;
+
+        public WebDavHttpClientFactory() {
+            this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        }
+
+        public WebDavHttpClientFactory(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        }
 
         public WebDavHttpClient create() {
-            return new WebDavHttpClient();
+            return new WebDavHttpClient(maxConnectionsPerRoute);
+        }
+    }
+
+
+    private final int maxConnectionsPerRoute;
+
+
+    public WebDavHttpClient() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    public WebDavHttpClient(int maxConnectionsPerRoute) {
+        super();
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute must be at least 1");
+        }
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    @Override
+    protected ClientConnectionManager createClientConnectionManager() {
+        HttpParams params = getParams();
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+        ConnManagerParams.setMaxTotalConnections(params, Math.max(maxConnectionsPerRoute, MAX_TOTAL_CONNECTIONS));
+        ConnManagerParams.setTimeout(params, CONNECTION_POOL_TIMEOUT_MILLIS);
+
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+        return new ThreadSafeClientConnManager(params, registry);
+    }
+
+    @Override
+    protected ConnectionKeepAliveStrategy createConnectionKeepAliveStrategy() {
+        return new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = super.getKeepAliveDuration(response, context);
+                // Exchange usually doesn't send a Keep-Alive header; don't keep such connections around forever
+                return duration > 0 ? duration : DEFAULT_KEEP_ALIVE_MILLIS;
+            }
+        };
+    }
+
+    /**
+     * Reads and discards whatever is left of the response body, so the connection can be reused.
+     */
+    public static void consumeQuietly(HttpResponse response) {
+        if (response == null) {
+            return;
+        }
+
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return;
+        }
+
+        try {
+            entity.consumeContent();
+        } catch (IOException e) {
+            Timber.w(e, "Error consuming response entity");
         }
     }
 
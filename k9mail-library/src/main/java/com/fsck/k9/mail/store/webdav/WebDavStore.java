@@ -35,14 +35,17 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.commons.io.IOUtils;
 import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -451,44 +454,6 @@ public class WebDavStore extends RemoteStore {
         return buffer.toString();
     }
 
-    String getMarkMessagesReadXml(String[] urls, boolean read) {
-        StringBuilder buffer = new StringBuilder(600);
-        buffer.append("<?xml version='1.0' ?>\r\n");
-        buffer.append("<a:propertyupdate xmlns:a='DAV:' xmlns:b='urn:schemas:httpmail:'>\r\n");
-        buffer.append("<a:target>\r\n");
-        for (String url : urls) {
-            buffer.append(" <a:href>").append(url).append("</a:href>\r\n");
-        }
-        buffer.append("</a:target>\r\n");
-        buffer.append("<a:set>\r\n");
-        buffer.append(" <a:prop>\r\n");
-        buffer.append("  <b:read>").append(read ? "1" : "0").append("</b:read>\r\n");
-        buffer.append(" </a:prop>\r\n");
-        buffer.append("</a:set>\r\n");
-        buffer.append("</a:propertyupdate>\r\n");
-        return buffer.toString();
-    }
-
-    // For flag:
-    // http://www.devnewsgroups.net/group/microsoft.public.exchange.development/topic27175.aspx
-    // "<m:0x10900003>1</m:0x10900003>" & _
-
-    String getMoveOrCopyMessagesReadXml(String[] urls, boolean isMove) {
-
-        String action = (isMove ? "move" : "copy");
-        StringBuilder buffer = new StringBuilder(600);
-        buffer.append("<?xml version='1.0' ?>\r\n");
-        buffer.append("<a:").append(action).append(" xmlns:a='DAV:' xmlns:b='urn:schemas:httpmail:'>\r\n");
-        buffer.append("<a:target>\r\n");
-        for (String url : urls) {
-            buffer.append(" <a:href>").append(url).append("</a:href>\r\n");
-        }
-        buffer.append("</a:target>\r\n");
-
-        buffer.append("</a:").append(action).append(">\r\n");
-        return buffer.toString();
-    }
-
     private boolean authenticate()
             throws MessagingException {
         try {
@@ -502,6 +467,7 @@ public class WebDavStore extends RemoteStore {
 
                     WebDavHttpClient httpClient = getHttpClient();
                     HttpResponse response = httpClient.executeOverride(request, httpContext);
+                    WebDavHttpClient.consumeQuietly(response);
 
                     int statusCode = response.getStatusLine().getStatusCode();
                     if (statusCode >= 200 && statusCode < 300) {
@@ -551,6 +517,7 @@ public class WebDavStore extends RemoteStore {
 
         try {
             HttpResponse response = httpClient.executeOverride(request, httpContext);
+            WebDavHttpClient.consumeQuietly(response);
             info.statusCode = response.getStatusLine().getStatusCode();
 
             if (info.statusCode == 401) {
@@ -629,6 +596,7 @@ public class WebDavStore extends RemoteStore {
         request.setEntity(formEntity);
 
         HttpResponse response = httpClient.executeOverride(request, httpContext);
+        bufferEntity(response);
         boolean authenticated = testAuthenticationResponse(response);
         if (!authenticated) {
             // Check the response from the authentication request above for a form action.
@@ -642,6 +610,7 @@ public class WebDavStore extends RemoteStore {
                     request.setMethod("GET");
 
                     response = httpClient.executeOverride(request, httpContext);
+                    bufferEntity(response);
                     formAction = findFormAction(WebDavHttpClient.getUngzippedContent(response.getEntity()));
                 }
             }
@@ -684,6 +653,7 @@ public class WebDavStore extends RemoteStore {
                     request.setEntity(formEntity);
 
                     response = httpClient.executeOverride(request, httpContext);
+                    WebDavHttpClient.consumeQuietly(response);
                     authenticated = testAuthenticationResponse(response);
                 } catch (URISyntaxException e) {
                     Timber.e(e, "URISyntaxException caught");
@@ -702,6 +672,17 @@ public class WebDavStore extends RemoteStore {
         }
     }
 
+    /**
+     * Reads the (small) body of an authentication response into memory. That returns the connection to the pool
+     * before testAuthenticationResponse() issues another request.
+     */
+    private void bufferEntity(HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new BufferedHttpEntity(entity));
+        }
+    }
+
     private String findFormAction(InputStream istream)
             throws IOException {
         String formAction = null;
@@ -823,7 +804,7 @@ public class WebDavStore extends RemoteStore {
         return httpClient;
     }
 
-    protected InputStream sendRequest(String url, String method, StringEntity messageBody,
+    protected InputStream sendRequest(String url, String method, HttpEntity messageBody,
             Map<String, String> headers, boolean tryAuth)
             throws MessagingException {
         if (url == null || method == null) {
@@ -862,13 +843,18 @@ public class WebDavStore extends RemoteStore {
 
             entity = response.getEntity();
 
+            if (statusCode < 200 || statusCode >= 300) {
+                // We won't read the body of unsuccessful responses. Release the connection right away.
+                WebDavHttpClient.consumeQuietly(response);
+            }
+
             if (statusCode == 401) {
                 throw new MessagingException("Invalid username or password for Basic authentication.");
             } else if (statusCode == 440) {
                 if (tryAuth && authenticationType == WebDavConstants.AUTH_TYPE_FORM_BASED) {
                     // Our cookie expired, re-authenticate.
                     performFormBasedAuthentication(null);
-                    sendRequest(url, method, messageBody, headers, false);
+                    return sendRequest(url, method, messageBody, headers, false);
                 } else {
                     throw new MessagingException("Authentication failure in sendRequest().");
                 }
@@ -922,39 +908,81 @@ public class WebDavStore extends RemoteStore {
     DataSet processRequest(String url, String method, String messageBody, Map<String, String> headers,
             boolean needsParsing)
             throws MessagingException {
-        DataSet dataset = new DataSet();
+        if (!needsParsing) {
+            processRequest(url, method, messageBody, headers, (ContentHandler) null);
+            return new DataSet();
+        }
+
+        WebDavHandler myHandler = new WebDavHandler();
+        processRequest(url, method, messageBody, headers, myHandler);
+
+        return myHandler.getDataSet();
+    }
+
+    /**
+     * Sends a batch command to the given folder URL, one request per chunk of targets. The chunks are sent back to back
+     * so they reuse the same kept-alive connection.
+     */
+    void processBatchCommand(String url, WebDavBatchCommand command) throws MessagingException {
+        if (url == null || command.isEmpty()) {
+            return;
+        }
+
+        for (List<String> chunk : command.getChunks()) {
+            if (K9MailLib.isDebug() && DEBUG_PROTOCOL_WEBDAV) {
+                Timber.v("processBatchCommand url = '%s', method = '%s', targets = %d", url, command.getMethod(),
+                        chunk.size());
+            }
+
+            InputStream istream = null;
+            try {
+                istream = sendRequest(url, command.getMethod(), command.createEntity(chunk), command.getHeaders(),
+                        true);
+            } finally {
+                // Closing the stream returns the connection to the pool
+                IOUtils.closeQuietly(istream);
+            }
+        }
+    }
+
+    /**
+     * Performs an HttpRequest and feeds the response to the supplied SAX handler while it is being received. Use this
+     * for (potentially large) multistatus responses that can be processed one {@code response} element at a time.
+     * If {@code handler} is {@code null} the response body is discarded.
+     */
+    void processRequest(String url, String method, String messageBody, Map<String, String> headers,
+            ContentHandler handler)
+            throws MessagingException {
         if (K9MailLib.isDebug() && DEBUG_PROTOCOL_WEBDAV) {
             Timber.v("processRequest url = '%s', method = '%s', messageBody = '%s'", url, method, messageBody);
         }
 
         if (url == null ||
                 method == null) {
-            return dataset;
+            return;
         }
 
         getHttpClient();
 
+        InputStream istream = null;
         try {
             StringEntity messageEntity = null;
             if (messageBody != null) {
                 messageEntity = new StringEntity(messageBody);
                 messageEntity.setContentType("text/xml");
             }
-            InputStream istream = sendRequest(url, method, messageEntity, headers, true);
+            istream = sendRequest(url, method, messageEntity, headers, true);
             if (istream != null &&
-                    needsParsing) {
+                    handler != null) {
                 try {
                     SAXParserFactory spf = SAXParserFactory.newInstance();
                     spf.setNamespaceAware(true); //This should be a no-op on Android, but makes the tests work
                     SAXParser sp = spf.newSAXParser();
                     XMLReader xr = sp.getXMLReader();
-                    WebDavHandler myHandler = new WebDavHandler();
 
-                    xr.setContentHandler(myHandler);
+                    xr.setContentHandler(handler);
 
                     xr.parse(new InputSource(istream));
-
-                    dataset = myHandler.getDataSet();
                 } catch (SAXException se) {
                     Timber.e(se, "SAXException in processRequest()");
                     throw new MessagingException("SAXException in processRequest() ", se);
@@ -962,8 +990,6 @@ public class WebDavStore extends RemoteStore {
                     Timber.e(pce, "ParserConfigurationException in processRequest()");
                     throw new MessagingException("ParserConfigurationException in processRequest() ", pce);
                 }
-
-                istream.close();
             }
         } catch (UnsupportedEncodingException uee) {
             Timber.e(uee, "UnsupportedEncodingException: ");
@@ -971,9 +997,10 @@ public class WebDavStore extends RemoteStore {
         } catch (IOException ioe) {
             Timber.e(ioe, "IOException: ");
             throw new MessagingException("IOException in processRequest() ", ioe);
+        } finally {
+            // Closing the stream returns the connection to the pool
+            IOUtils.closeQuietly(istream);
         }
-
-        return dataset;
     }
 
     @Override
@@ -2,7 +2,6 @@
 package com.fsck.k9.mail.transport.smtp;
 
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -136,7 +135,7 @@ public class SmtpTransport extends Transport {
             // RFC 1047
             socket.setSoTimeout(SOCKET_READ_TIMEOUT);
 
-            inputStream = new PeekableInputStream(new BufferedInputStream(socket.getInputStream(), 1024));
+            inputStream = new PeekableInputStream(socket.getInputStream(), 1024);
             outputStream = new BufferedOutputStream(socket.getOutputStream(), 1024);
 
             // Eat the banner
@@ -176,8 +175,7 @@ public class SmtpTransport extends Transport {
                             port,
                             clientCertificateAlias);
 
-                    inputStream = new PeekableInputStream(new BufferedInputStream(socket.getInputStream(),
-                            1024));
+                    inputStream = new PeekableInputStream(socket.getInputStream(), 1024);
                     outputStream = new BufferedOutputStream(socket.getOutputStream(), 1024);
                     /*
                      * Now resend the EHLO. Required by RFC2487 Sec. 5.2, and more specifically,
@@ -0,0 +1,60 @@
+package com.fsck.k9.mail;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+
+public class AddressInternCacheTest {
+    @Test
+    public void get_withSameRegionsInDifferentStrings_shouldReturnSameInstance() throws Exception {
+        AddressInternCache cache = new AddressInternCache(10);
+
+        Address first = cache.get("xalice@example.orgAlice", 1, 18, 18, 23);
+        Address second = cache.get("alice@example.orgAlicey", 0, 17, 17, 22);
+
+        assertSame(first, second);
+        assertEquals("alice@example.org", first.getAddress());
+        assertEquals("Alice", first.getPersonal());
+    }
+
+    @Test
+    public void get_withMissingPersonal_shouldNotMatchEmptyPersonal() throws Exception {
+        AddressInternCache cache = new AddressInternCache(10);
+
+        Address withoutPersonal = cache.get("alice@example.org", 0, 17, -1, -1);
+        Address withEmptyPersonal = cache.get("alice@example.org", 0, 17, 17, 17);
+
+        assertNotSame(withoutPersonal, withEmptyPersonal);
+        assertNull(withoutPersonal.getPersonal());
+        assertEquals("", withEmptyPersonal.getPersonal());
+    }
+
+    @Test
+    public void get_withSplitAtDifferentPosition_shouldReturnDifferentAddress() throws Exception {
+        AddressInternCache cache = new AddressInternCache(10);
+
+        Address first = cache.get("abcd", 0, 2, 2, 4);
+        Address second = cache.get("abcd", 0, 3, 3, 4);
+
+        assertNotSame(first, second);
+        assertEquals("abc", second.getAddress());
+    }
+
+    @Test
+    public void get_withMoreEntriesThanMaxSize_shouldEvictLeastRecentlyUsed() throws Exception {
+        AddressInternCache cache = new AddressInternCache(2);
+        Address a = cache.get("a", 0, 1, -1, -1);
+        cache.get("b", 0, 1, -1, -1);
+        cache.get("a", 0, 1, -1, -1);
+
+        cache.get("c", 0, 1, -1, -1);
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a", 0, 1, -1, -1));
+    }
+}
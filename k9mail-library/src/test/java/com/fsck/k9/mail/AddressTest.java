@@ -4,9 +4,11 @@ package com.fsck.k9.mail;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 
@@ -180,4 +182,126 @@ public class AddressTest {
 
         assertNull(result);
     }
+
+    @Test
+    public void unpack_withPackedAddresses_shouldReturnSameAddresses() throws Exception {
+        Address[] addresses = new Address[] {
+                new Address("alice@example.org", "Alice"),
+                new Address("bob@example.org"),
+                Address.parse("Name only")[0],
+                new Address("carol@example.org", ""),
+        };
+
+        Address[] result = Address.unpack(Address.pack(addresses));
+
+        assertArrayEquals(addresses, result);
+        assertNull(result[1].getPersonal());
+        assertNull(result[2].getAddress());
+    }
+
+    @Test
+    public void pack_shouldStartWithFirstAddress() throws Exception {
+        Address[] addresses = Address.parse("Alice <alice@example.org>, bob@example.org");
+
+        String result = Address.pack(addresses);
+
+        assertTrue(result.startsWith("alice@example.org;Alice,bob@example.org\u0000"));
+    }
+
+    @Test
+    public void pack_withSingleAddressWithoutPersonal_shouldReturnAddress() throws Exception {
+        Address[] addresses = Address.parse("alice@example.org");
+
+        String result = Address.pack(addresses);
+
+        assertEquals("alice@example.org", result);
+        assertArrayEquals(addresses, Address.unpack(result));
+        assertSame(result, Address.repack(result));
+    }
+
+    @Test
+    public void pack_withEmptyArray_shouldReturnEmptyString() throws Exception {
+        assertEquals("", Address.pack(new Address[0]));
+        assertEquals(0, Address.unpack("").length);
+    }
+
+    @Test
+    public void pack_withNull_shouldReturnNull() throws Exception {
+        assertNull(Address.pack(null));
+        assertEquals(0, Address.unpack(null).length);
+    }
+
+    @Test
+    public void unpack_withLegacyFormat_shouldReturnAddresses() throws Exception {
+        String packed = "alice@example.org;\u0000Alice,\u0000bob@example.org,\u0000carol@example.org;\u0000";
+
+        Address[] result = Address.unpack(packed);
+
+        assertEquals(3, result.length);
+        assertEquals("alice@example.org", result[0].getAddress());
+        assertEquals("Alice", result[0].getPersonal());
+        assertEquals("bob@example.org", result[1].getAddress());
+        assertNull(result[1].getPersonal());
+        assertEquals("carol@example.org", result[2].getAddress());
+        assertEquals("", result[2].getPersonal());
+    }
+
+    @Test
+    public void repack_withLegacyFormat_shouldConvertToCurrentFormat() throws Exception {
+        String legacy = "alice@example.org;\u0000Alice,\u0000bob@example.org";
+
+        String result = Address.repack(legacy);
+
+        assertEquals(Address.pack(Address.unpack(legacy)), result);
+        assertFalse(PackedAddressReader.isLegacyFormat(result));
+        assertArrayEquals(Address.unpack(legacy), Address.unpack(result));
+    }
+
+    @Test
+    public void unpack_withQuotesAndBackslashesInPersonal_shouldReturnSameAddresses() throws Exception {
+        Address[] addresses = new Address[] {
+                new Address("alice@example.org", "Alice \"Al\" \\ Smith"),
+                new Address("bob@example.org", "\\\"Bob\\\""),
+        };
+
+        Address[] result = Address.unpack(Address.pack(addresses));
+
+        assertArrayEquals(addresses, result);
+    }
+
+    @Test
+    public void unpack_withQuotesAndBackslashesInLegacyFormat_shouldMatchCurrentFormat() throws Exception {
+        Address[] addresses = new Address[] {
+                new Address("alice@example.org", "Alice \"Al\" \\ Smith"),
+                new Address("bob@example.org", "\\\"Bob\\\""),
+        };
+        String legacy = "alice@example.org;\u0000Alice \"Al\" \\ Smith,\u0000bob@example.org;\u0000\\\"Bob\\\"";
+
+        Address[] result = Address.unpack(legacy);
+
+        assertArrayEquals(addresses, result);
+        assertArrayEquals(Address.unpack(Address.pack(addresses)), result);
+        assertArrayEquals(addresses, Address.unpack(Address.repack(legacy)));
+    }
+
+    @Test
+    public void repack_withCurrentFormat_shouldReturnSameString() throws Exception {
+        String packed = Address.pack(Address.parse("Alice <alice@example.org>"));
+
+        String result = Address.repack(packed);
+
+        assertSame(packed, result);
+    }
+
+    @Test
+    public void unpackInterned_withSameAddressTwice_shouldReturnSameInstance() throws Exception {
+        String packed = Address.pack(Address.parse("Alice <interned@example.org>, other@example.org"));
+
+        Address[] first = Address.unpackInterned(packed);
+        Address[] second = Address.unpackInterned(packed);
+
+        assertSame(first[0], second[0]);
+        assertSame(first[1], second[1]);
+        assertArrayEquals(Address.unpack(packed), second);
+    }
 }
@@ -0,0 +1,91 @@
+package com.fsck.k9.mail;
+
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+@RunWith(K9LibRobolectricTestRunner.class)
+public class PackedAddressReaderTest {
+    @Test
+    public void next_shouldIterateOverAllEntries() throws Exception {
+        String packed = Address.pack(Address.parse("Alice <alice@example.org>, bob@example.org"));
+        PackedAddressReader reader = new PackedAddressReader(packed);
+
+        assertTrue(reader.next());
+        assertEquals("alice@example.org", reader.getAddressView().toString());
+        assertEquals("Alice", reader.getPersonalView().toString());
+        assertTrue(reader.next());
+        assertEquals("bob@example.org", reader.getAddress());
+        assertFalse(reader.hasPersonal());
+        assertNull(reader.getPersonalView());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void next_withNull_shouldReturnFalse() throws Exception {
+        PackedAddressReader reader = new PackedAddressReader(null);
+
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void addressEqualsIgnoreCase_shouldCompareAddressOnly() throws Exception {
+        String packed = Address.pack(Address.parse("Alice <Alice@Example.org>"));
+        PackedAddressReader reader = new PackedAddressReader(packed);
+        reader.next();
+
+        assertTrue(reader.addressEqualsIgnoreCase("alice@example.org"));
+        assertFalse(reader.addressEqualsIgnoreCase("alice@example.com"));
+        assertFalse(reader.addressEqualsIgnoreCase("alice@example.orgAlice"));
+    }
+
+    @Test
+    public void next_withPersonalContainingLegacyDelimiters_shouldReadEntriesUnchanged() throws Exception {
+        Address[] addresses = new Address[] { new Address("a@example.org", "x;\u0000y,\u0000z", false),
+                new Address("b@example.org", "\u0000", false) };
+        PackedAddressReader reader = new PackedAddressReader(Address.pack(addresses));
+
+        assertTrue(reader.next());
+        assertEquals("x;\u0000y,\u0000z", reader.getPersonal());
+        assertTrue(reader.next());
+        assertEquals("b@example.org", reader.getAddress());
+        assertEquals("\u0000", reader.getPersonal());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void isLegacyFormat() throws Exception {
+        assertTrue(PackedAddressReader.isLegacyFormat("alice@example.org;\u0000Alice"));
+        assertFalse(PackedAddressReader.isLegacyFormat(Address.pack(Address.parse("alice@example.org"))));
+        assertFalse(PackedAddressReader.isLegacyFormat(""));
+        assertFalse(PackedAddressReader.isLegacyFormat(null));
+    }
+
+    @Test
+    public void next_withCorruptIndex_shouldReadLikeLegacyFormat() throws Exception {
+        String packed = "alice;\u0000Alice\u0000\u000199,-;";
+        PackedAddressReader reader = new PackedAddressReader(packed);
+
+        assertTrue(reader.next());
+        assertEquals("alice", reader.getAddress());
+        assertEquals("Alice\u0000\u000199,-;", reader.getPersonal());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void next_withIndexNotCoveringData_shouldNotThrow() throws Exception {
+        String[] corruptLists = { "alice\u0000\u00014,-;", "alice\u0000\u00016,-;", "alice\u0000\u0001x,-;",
+                "alice\u0000\u00015,-", "\u0000\u0001", "alice\u0000\u000199999999999999999999,-;" };
+
+        for (String packed : corruptLists) {
+            assertArrayEquals(packed, new Address[] { new Address(packed, null, false) }, Address.unpack(packed));
+        }
+    }
+}
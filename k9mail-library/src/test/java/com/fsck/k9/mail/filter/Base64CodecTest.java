@@ -0,0 +1,191 @@
+package com.fsck.k9.mail.filter;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.codec.Base64InputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+public class Base64CodecTest {
+    private static final int ITERATIONS = 200;
+
+
+    @Test
+    public void encodingOutputStream_shouldProduceSameOutputAsBase64OutputStream() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < ITERATIONS; i++) {
+            byte[] data = randomBytes(random, random.nextInt(2000));
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Base64OutputStream oldStream = new Base64OutputStream(expected);
+            oldStream.write(data);
+            oldStream.close();
+
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            Base64EncodingOutputStream newStream = new Base64EncodingOutputStream(actual);
+            writeInRandomChunks(random, data, newStream);
+            newStream.close();
+
+            assertArrayEquals("Input length " + data.length, expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    public void encode_withInputMultipleOfLineLength_shouldEndWithEmptyLine() throws Exception {
+        byte[] data = new byte[57];
+
+        String encoded = encode(new Base64Encoder(), data);
+
+        assertEquals("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\r\n\r\n", encoded);
+    }
+
+    @Test
+    public void encode_withoutLineLength_shouldNotWrap() throws Exception {
+        Base64Encoder encoder = new Base64Encoder(0, new byte[0]);
+
+        String encoded = encode(encoder, "Hello, world!".getBytes("US-ASCII"));
+
+        assertEquals("SGVsbG8sIHdvcmxkIQ==", encoded);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encoder_withLineLengthNotMultipleOfFour_shouldThrow() throws Exception {
+        new Base64Encoder(75, new byte[] { '\n' });
+    }
+
+    @Test
+    public void decode_withPaddingAndLineBreaks() throws Exception {
+        byte[] decoded = decode("SGVsbG8s\r\nIHdvcmxk\r\nIQ==\r\n");
+
+        assertEquals("Hello, world!", new String(decoded, "US-ASCII"));
+    }
+
+    @Test
+    public void decode_withMissingPadding_shouldDropIncompleteTrailingGroup() throws Exception {
+        byte[] decoded = decode("SGVsbG8sIHdvcmxkIQ");
+
+        assertEquals("Hello, world", new String(decoded, "US-ASCII"));
+    }
+
+    @Test
+    public void decode_withDataAfterPadding_shouldIgnoreIt() throws Exception {
+        byte[] decoded = decode("SGk=SGVsbG8=");
+
+        assertEquals("Hi", new String(decoded, "US-ASCII"));
+    }
+
+    @Test
+    public void decode_shouldRoundTripEncoderOutput() throws Exception {
+        Random random = new Random(2);
+        for (int i = 0; i < ITERATIONS; i++) {
+            byte[] data = randomBytes(random, random.nextInt(5000));
+
+            byte[] decoded = decode(encode(new Base64Encoder(), data));
+
+            assertArrayEquals(data, decoded);
+        }
+    }
+
+    @Test
+    public void decodingInputStream_shouldProduceSameOutputAsMime4jDecoder() throws Exception {
+        byte[] alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/\r\n \t=*".getBytes("US-ASCII");
+        Random random = new Random(3);
+        for (int i = 0; i < ITERATIONS; i++) {
+            byte[] encoded = new byte[random.nextInt(3000)];
+            for (int j = 0; j < encoded.length; j++) {
+                // Keep pad characters rare so most inputs are long enough to be interesting
+                byte c = alphabet[random.nextInt(alphabet.length)];
+                encoded[j] = c == '=' && random.nextInt(20) != 0 ? (byte) 'A' : c;
+            }
+
+            byte[] expected = IOUtils.toByteArray(new Base64InputStream(new ByteArrayInputStream(encoded), false));
+            byte[] actual = readInRandomChunks(random, new Base64DecodingInputStream(new ByteArrayInputStream(encoded)));
+
+            assertArrayEquals(new String(encoded, "US-ASCII"), expected, actual);
+        }
+    }
+
+    @Test
+    public void decodingInputStream_skip() throws Exception {
+        byte[] data = randomBytes(new Random(4), 10000);
+        InputStream inputStream = new Base64DecodingInputStream(
+                new ByteArrayInputStream(encode(new Base64Encoder(), data).getBytes("US-ASCII")));
+
+        long skipped = inputStream.skip(7000);
+        byte[] remainder = IOUtils.toByteArray(inputStream);
+
+        assertEquals(7000, skipped);
+        assertEquals(3000, remainder.length);
+        assertEquals(data[7000], remainder[0]);
+        assertEquals(data[9999], remainder[2999]);
+    }
+
+
+    private static String encode(Base64Encoder encoder, byte[] data) throws IOException {
+        byte[] output = new byte[encoder.getMaxEncodedLength(data.length)];
+        int length = encoder.encode(data, 0, data.length, output, 0);
+        length += encoder.finish(output, length);
+        return new String(output, 0, length, "US-ASCII");
+    }
+
+    private static byte[] decode(String encoded) throws IOException {
+        byte[] input = encoded.getBytes("US-ASCII");
+        Base64Decoder decoder = new Base64Decoder();
+        byte[] output = new byte[Base64Decoder.getMaxDecodedLength(input.length)];
+        int length = decoder.decode(input, 0, input.length, output, 0);
+
+        byte[] result = new byte[length];
+        System.arraycopy(output, 0, result, 0, length);
+        return result;
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static void writeInRandomChunks(Random random, byte[] data, Base64EncodingOutputStream out)
+            throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            if (random.nextInt(10) == 0) {
+                out.write(data[offset++]);
+            } else {
+                int length = Math.min(random.nextInt(5000), data.length - offset);
+                out.write(data, offset, length);
+                offset += length;
+            }
+        }
+    }
+
+    private static byte[] readInRandomChunks(Random random, InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[5000];
+        while (true) {
+            if (random.nextInt(10) == 0) {
+                int b = in.read();
+                if (b == -1) {
+                    break;
+                }
+                out.write(b);
+            } else {
+                int read = in.read(buffer, 0, 1 + random.nextInt(buffer.length - 1));
+                if (read == -1) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+}
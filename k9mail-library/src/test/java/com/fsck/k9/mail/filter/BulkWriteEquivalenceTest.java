@@ -0,0 +1,106 @@
+package com.fsck.k9.mail.filter;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+
+/**
+ * Makes sure the {@code write(byte[], int, int)} fast paths of the filter streams produce exactly the same output as
+ * writing the same data one byte at a time, no matter how the input is split up.
+ */
+public class BulkWriteEquivalenceTest {
+    private static final byte[] ALPHABET = "ab .F\r\nromx=".getBytes();
+    private static final int ITERATIONS = 200;
+
+
+    @Test
+    public void eolConvertingOutputStream() throws Exception {
+        assertEquivalent(new StreamFactory() {
+            @Override
+            public OutputStream create(OutputStream out) {
+                return new EOLConvertingOutputStream(out);
+            }
+        });
+    }
+
+    @Test
+    public void lineWrapOutputStream() throws Exception {
+        assertEquivalent(new StreamFactory() {
+            @Override
+            public OutputStream create(OutputStream out) {
+                return new LineWrapOutputStream(out, 12);
+            }
+        });
+    }
+
+    @Test
+    public void smtpDataStuffing() throws Exception {
+        assertEquivalent(new StreamFactory() {
+            @Override
+            public OutputStream create(OutputStream out) {
+                return new SmtpDataStuffing(out);
+            }
+        });
+    }
+
+    @Test
+    public void signSafeOutputStream() throws Exception {
+        assertEquivalent(new StreamFactory() {
+            @Override
+            public OutputStream create(OutputStream out) {
+                return new SignSafeOutputStream(out);
+            }
+        });
+    }
+
+    @Test
+    public void smtpOutputStack() throws Exception {
+        assertEquivalent(new StreamFactory() {
+            @Override
+            public OutputStream create(OutputStream out) {
+                return new EOLConvertingOutputStream(new LineWrapOutputStream(new SmtpDataStuffing(out), 20));
+            }
+        });
+    }
+
+    private void assertEquivalent(StreamFactory factory) throws IOException {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            byte[] input = new byte[random.nextInt(3000)];
+            for (int i = 0; i < input.length; i++) {
+                input[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            OutputStream byteAtATime = factory.create(expected);
+            for (byte b : input) {
+                byteAtATime.write(b);
+            }
+            byteAtATime.flush();
+
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            OutputStream bulk = factory.create(actual);
+            int offset = 0;
+            while (offset < input.length) {
+                int length = Math.min(input.length - offset, random.nextInt(100) + 1);
+                bulk.write(input, offset, length);
+                offset += length;
+            }
+            bulk.flush();
+
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+
+    private interface StreamFactory {
+        OutputStream create(OutputStream out);
+    }
+}
@@ -1,6 +1,8 @@
 package com.fsck.k9.mail.filter;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -237,6 +239,40 @@ public class FixedLengthInputStreamTest {
         assertRemainingInputStreamEquals("World", inputStream);
     }
 
+    @Test(expected = EOFException.class)
+    public void skipRemaining_withTruncatedUnderlyingStream_shouldThrow() throws IOException {
+        FixedLengthInputStream fixedLengthInputStream = new FixedLengthInputStream(inputStream("Hello"), 10);
+
+        fixedLengthInputStream.skipRemaining();
+    }
+
+    @Test
+    public void transferTo_shouldWriteRemainingBytes() throws IOException {
+        FixedLengthInputStream fixedLengthInputStream = new FixedLengthInputStream(inputStream("Hello World"), 5);
+        consumeBytes(fixedLengthInputStream, 1);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        long transferred = fixedLengthInputStream.transferTo(outputStream);
+
+        assertEquals(4, transferred);
+        assertEquals("ello", outputStream.toString("UTF-8"));
+        assertInputStreamExhausted(fixedLengthInputStream);
+    }
+
+    @Test
+    public void transferTo_withPeekableInputStream_shouldNotConsumeMoreThanLimit() throws IOException {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("Hello World"), 4);
+        FixedLengthInputStream fixedLengthInputStream = new FixedLengthInputStream(peekableInputStream, 6);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        long transferred = fixedLengthInputStream.transferTo(outputStream);
+
+        assertEquals(6, transferred);
+        assertEquals("Hello ", outputStream.toString("UTF-8"));
+        assertEquals(0, fixedLengthInputStream.available());
+        assertRemainingInputStreamEquals("World", peekableInputStream);
+    }
+
 
     private String readStreamAsUtf8String(InputStream inputStream) throws IOException {
         return Okio.buffer(Okio.source(inputStream)).readUtf8();
@@ -0,0 +1,139 @@
+package com.fsck.k9.mail.filter;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okio.Buffer;
+import okio.Okio;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class PeekableInputStreamTest {
+    @Test
+    public void peek_shouldNotConsumeByte() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("ab"));
+
+        assertEquals('a', peekableInputStream.peek());
+        assertEquals('a', peekableInputStream.peek());
+        assertEquals('a', peekableInputStream.read());
+        assertEquals('b', peekableInputStream.peek());
+    }
+
+    @Test
+    public void peek_atEndOfStream_shouldReturnMinusOne() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("a"));
+        peekableInputStream.read();
+
+        assertEquals(-1, peekableInputStream.peek());
+        assertEquals(-1, peekableInputStream.read());
+    }
+
+    @Test
+    public void read_withDataLargerThanBuffer_shouldReturnAllData() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("Hello world"), 4);
+
+        assertEquals("Hello world", readStreamAsUtf8String(peekableInputStream));
+    }
+
+    @Test
+    public void readArray_afterPeek_shouldReturnPeekedByte() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("Hello"), 4);
+        peekableInputStream.peek();
+
+        byte[] data = new byte[3];
+        int read = peekableInputStream.read(data);
+
+        assertEquals(3, read);
+        assertEquals("Hel", new String(data, "US-ASCII"));
+    }
+
+    @Test
+    public void readArray_largerThanBuffer_shouldReadFromUnderlyingStream() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("Hello world"), 4);
+
+        byte[] data = new byte[8];
+        int read = peekableInputStream.read(data);
+
+        assertEquals(8, read);
+        assertEquals("Hello wo", new String(data, "US-ASCII"));
+        assertEquals("rld", readStreamAsUtf8String(peekableInputStream));
+    }
+
+    @Test
+    public void readArray_atEndOfStream_shouldReturnMinusOne() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream(""));
+
+        assertEquals(-1, peekableInputStream.read(new byte[2]));
+    }
+
+    @Test
+    public void skip_afterPeek_shouldSkipPeekedByte() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("Hello world"), 4);
+        peekableInputStream.peek();
+
+        guaranteedSkip(peekableInputStream, 6);
+
+        assertEquals("world", readStreamAsUtf8String(peekableInputStream));
+    }
+
+    @Test
+    public void skip_atEndOfStream_shouldReturnZero() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("a"));
+        peekableInputStream.read();
+
+        assertEquals(0, peekableInputStream.skip(10));
+    }
+
+    @Test
+    public void available_shouldIncludeBufferedBytes() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("Hello world"), 4);
+        peekableInputStream.read();
+
+        assertEquals(10, peekableInputStream.available());
+    }
+
+    @Test
+    public void transferTo_shouldWriteRequestedNumberOfBytes() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("Hello world"), 4);
+        peekableInputStream.peek();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        long transferred = peekableInputStream.transferTo(outputStream, 7);
+
+        assertEquals(7, transferred);
+        assertEquals("Hello w", outputStream.toString("US-ASCII"));
+        assertEquals("orld", readStreamAsUtf8String(peekableInputStream));
+    }
+
+    @Test
+    public void transferTo_pastEndOfStream_shouldReturnNumberOfBytesWritten() throws Exception {
+        PeekableInputStream peekableInputStream = new PeekableInputStream(inputStream("Hello"), 4);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        long transferred = peekableInputStream.transferTo(outputStream, 100);
+
+        assertEquals(5, transferred);
+        assertEquals("Hello", outputStream.toString("US-ASCII"));
+    }
+
+
+    private String readStreamAsUtf8String(InputStream inputStream) throws IOException {
+        return Okio.buffer(Okio.source(inputStream)).readUtf8();
+    }
+
+    private void guaranteedSkip(InputStream inputStream, int numberOfBytesToSkip) throws IOException {
+        int remaining = numberOfBytesToSkip;
+        while (remaining > 0) {
+            remaining -= inputStream.skip(remaining);
+        }
+        assertEquals(0, remaining);
+    }
+
+    private InputStream inputStream(String data) {
+        return new Buffer().writeUtf8(data).inputStream();
+    }
+}
@@ -0,0 +1,162 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.util.MimeUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+
+public class BinaryTempFileBodyTest {
+    private static final int THRESHOLD = 1024;
+
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File tempDirectory;
+
+
+    @Before
+    public void setUp() throws Exception {
+        tempDirectory = temporaryFolder.newFolder();
+        BinaryTempFileBody.setTempDirectory(tempDirectory);
+    }
+
+    @Test
+    public void getInputStream_withDataBelowThreshold_shouldNotCreateTempFile() throws Exception {
+        byte[] data = createData(THRESHOLD);
+
+        BinaryTempFileBody body = createBody(THRESHOLD, data);
+
+        assertEquals(0, countTempFiles());
+        assertEquals(THRESHOLD, body.getSize());
+        assertArrayEquals(data, readBody(body));
+    }
+
+    @Test
+    public void getInputStream_withDataAboveThreshold_shouldUseTempFile() throws Exception {
+        byte[] data = createData(THRESHOLD + 1);
+
+        BinaryTempFileBody body = createBody(THRESHOLD, data);
+
+        assertEquals(1, countTempFiles());
+        assertEquals(THRESHOLD + 1, body.getSize());
+        assertArrayEquals(data, readBody(body));
+    }
+
+    @Test
+    public void getOutputStream_withDataWrittenByteByByte_shouldSwitchToTempFileAtThreshold() throws Exception {
+        byte[] data = createData(THRESHOLD * 3);
+        BinaryTempFileBody body = new BinaryTempFileBody(MimeUtil.ENC_8BIT, THRESHOLD);
+
+        OutputStream out = body.getOutputStream();
+        for (byte b : data) {
+            out.write(b);
+        }
+        out.close();
+
+        assertEquals(1, countTempFiles());
+        assertArrayEquals(data, readBody(body));
+    }
+
+    @Test
+    public void getOutputStream_withoutThreshold_shouldAlwaysUseTempFile() throws Exception {
+        BinaryTempFileBody body = new BinaryTempFileBody(MimeUtil.ENC_8BIT);
+
+        OutputStream out = body.getOutputStream();
+        out.write(createData(10));
+        out.close();
+
+        assertEquals(1, countTempFiles());
+    }
+
+    @Test
+    public void getFile_withMemoryBackedBody_shouldWriteDataToTempFile() throws Exception {
+        byte[] data = createData(100);
+        BinaryTempFileBody body = createBody(THRESHOLD, data);
+
+        File file = body.getFile();
+
+        assertEquals(tempDirectory, file.getParentFile());
+        assertArrayEquals(data, FileUtils.readFileToByteArray(file));
+        assertArrayEquals(data, readBody(body));
+    }
+
+    @Test
+    public void writeTo_withMemoryBackedBody_shouldWriteData() throws Exception {
+        byte[] data = createData(100);
+        BinaryTempFileBody body = createBody(THRESHOLD, data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        body.writeTo(out);
+
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void setEncoding_withMemoryBackedBody_shouldEncodeData() throws Exception {
+        BinaryTempFileBody body = createBody(THRESHOLD, "Hello".getBytes("US-ASCII"));
+
+        body.setEncoding(MimeUtil.ENC_BASE64);
+
+        assertEquals(MimeUtil.ENC_BASE64, body.getEncoding());
+        assertEquals("SGVsbG8=\r\n", new String(readBody(body), "US-ASCII"));
+        assertEquals(0, countTempFiles());
+    }
+
+    @Test
+    public void getOutputStream_withSeveralBodies_shouldKeepDataSeparate() throws Exception {
+        byte[] firstData = createData(200);
+        byte[] secondData = new byte[100];
+        Arrays.fill(secondData, (byte) 'x');
+
+        BinaryTempFileBody firstBody = createBody(THRESHOLD, firstData);
+        BinaryTempFileBody secondBody = createBody(THRESHOLD, secondData);
+
+        assertArrayEquals(firstData, readBody(firstBody));
+        assertArrayEquals(secondData, readBody(secondBody));
+    }
+
+    private BinaryTempFileBody createBody(int threshold, byte[] data) throws IOException {
+        BinaryTempFileBody body = new BinaryTempFileBody(MimeUtil.ENC_8BIT, threshold);
+        OutputStream out = body.getOutputStream();
+        out.write(data);
+        out.close();
+        return body;
+    }
+
+    private byte[] readBody(BinaryTempFileBody body) throws Exception {
+        InputStream in = body.getInputStream();
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            MimeUtility.closeInputStreamWithoutDeletingTemporaryFiles(in);
+        }
+    }
+
+    private int countTempFiles() {
+        return tempDirectory.list().length;
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,60 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class CharsetCacheTest {
+    private final CharsetCache cache = new CharsetCache(3);
+
+
+    @Test
+    public void get_withSupportedLabel_shouldResolveCharset() throws Exception {
+        CharsetCache.Entry entry = cache.get("utf-8");
+
+        assertEquals(Charset.forName("UTF-8"), entry.getCharset());
+        assertTrue(entry.isAsciiCompatible());
+    }
+
+    @Test
+    public void get_withUnsupportedLabel_shouldCacheNegativeResult() throws Exception {
+        CharsetCache.Entry entry = cache.get("x-unknown");
+
+        assertNull(entry.getCharset());
+        assertSame(entry, cache.get("x-unknown"));
+    }
+
+    @Test
+    public void get_withIllegalLabel_shouldReturnUnsupported() throws Exception {
+        assertNull(cache.get("not a charset!").getCharset());
+    }
+
+    @Test
+    public void get_withStatefulOrMultiByteCharset_shouldNotBeAsciiCompatible() throws Exception {
+        assertFalse(cache.get("UTF-16").isAsciiCompatible());
+        assertFalse(cache.get("ISO-2022-JP").isAsciiCompatible());
+    }
+
+    @Test
+    public void get_withSingleByteCharset_shouldBeAsciiCompatible() throws Exception {
+        assertTrue(cache.get("windows-1252").isAsciiCompatible());
+        assertTrue(cache.get("koi8-r").isAsciiCompatible());
+    }
+
+    @Test
+    public void get_withMoreLabelsThanMaxSize_shouldStayBounded() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            cache.get("x-label-" + i);
+        }
+
+        assertTrue(cache.size() <= 3);
+    }
+}
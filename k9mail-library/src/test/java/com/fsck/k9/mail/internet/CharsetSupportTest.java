@@ -1,8 +1,11 @@
 package com.fsck.k9.mail.internet;
 
 
-import com.fsck.k9.mail.K9LibRobolectricTestRunner;
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
 
+import com.fsck.k9.mail.K9LibRobolectricTestRunner;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -99,4 +102,88 @@ public class CharsetSupportTest {
         expect = "x-kddi-shift_jis-2007";
         assertEquals(expect, CharsetSupport.fixupCharset(charsetOnMail, message));
     }
+
+    @Test
+    public void fixupCharset_calledRepeatedly_shouldStillApplyMessageSpecificVariant() throws Exception {
+        MimeMessage message = new MimeMessage();
+        message.setHeader("From", "aaa@docomo.ne.jp");
+
+        assertEquals("shift_jis", CharsetSupport.fixupCharset("CP932", new MimeMessage()));
+        assertEquals("x-docomo-shift_jis-2007", CharsetSupport.fixupCharset("CP932", message));
+        assertEquals("shift_jis", CharsetSupport.fixupCharset("CP932", new MimeMessage()));
+    }
+
+    @Test
+    public void fixupCharset_withNullOrZero_shouldReturnAscii() throws Exception {
+        assertEquals("us-ascii", CharsetSupport.fixupCharset(null, new MimeMessage()));
+        assertEquals("us-ascii", CharsetSupport.fixupCharset("0", new MimeMessage()));
+    }
+
+    @Test
+    public void readToString_withNonAsciiAfterLongAsciiPrefix_shouldDecodeUsingCharset() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        text.append("Gr\u00fc\u00dfe \u20ac");
+
+        for (String charset : new String[] { "utf-8", "iso-8859-15" }) {
+            byte[] data = text.toString().getBytes(charset);
+
+            String result = CharsetSupport.readToString(new ByteArrayInputStream(data), charset);
+
+            assertEquals(charset, text.toString(), result);
+        }
+    }
+
+    @Test
+    public void readToString_withMultiByteCharacterAcrossBufferBoundary_shouldDecodeCharacter() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 4095; i++) {
+            text.append('x');
+        }
+        text.append("\u20ac");
+        byte[] data = text.toString().getBytes("UTF-8");
+
+        String result = CharsetSupport.readToString(new ByteArrayInputStream(data), "utf-8");
+
+        assertEquals(text.toString(), result);
+    }
+
+    @Test
+    public void readToString_withUnsupportedCharset_shouldFallBackToAscii() throws Exception {
+        byte[] data = "Hello \u00e4".getBytes("ISO-8859-1");
+
+        String result = CharsetSupport.readToString(new ByteArrayInputStream(data), "x-unknown");
+
+        assertEquals("Hello \ufffd", result);
+    }
+
+    @Test
+    public void readToString_withAsciiDataInStatefulCharset_shouldDecodeUsingCharset() throws Exception {
+        byte[] data = "\u001b$B$3$s$K$A$O\u001b(B".getBytes("US-ASCII");
+
+        String result = CharsetSupport.readToString(new ByteArrayInputStream(data), "iso-2022-jp");
+
+        assertEquals("\u3053\u3093\u306b\u3061\u306f", result);
+    }
+
+    @Test
+    public void createReader_shouldDecodeLikeReadToString() throws Exception {
+        String text = "Gr\u00fc\u00dfe \u3053\u3093\u306b\u3061\u306f \u20ac";
+        String[][] charsets = {
+                { "utf-8", "utf-8" }, { "iso-2022-jp", "iso-2022-jp" }, { "shift_jis", "shift_jis" },
+                { "x-unknown", "utf-8" }
+        };
+        for (String[] charsetAndEncoding : charsets) {
+            String charset = charsetAndEncoding[0];
+            byte[] data = text.getBytes(charsetAndEncoding[1]);
+
+            String expected = CharsetSupport.readToString(new ByteArrayInputStream(data), charset);
+            Reader reader = CharsetSupport.createReader(new ByteArrayInputStream(data), charset);
+            String result = IOUtils.toString(reader);
+
+            assertEquals(charset, expected, result);
+        }
+    }
 }
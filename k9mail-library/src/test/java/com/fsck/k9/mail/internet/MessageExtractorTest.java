@@ -1,10 +1,17 @@
 package com.fsck.k9.mail.internet;
 
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+
 import com.fsck.k9.mail.Body;
 import com.fsck.k9.mail.K9LibRobolectricTestRunner;
 import com.fsck.k9.mail.MessagingException;
+import com.fsck.k9.mail.filter.Base64;
 import com.fsck.k9.mailstore.BinaryMemoryBody;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.james.mime4j.util.MimeUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,6 +20,7 @@ import org.junit.runner.RunWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -119,4 +127,95 @@ public class MessageExtractorTest {
         assertNotNull(result);
         assertEquals(bodyText, result);
     }
+
+    @Test
+    public void getTextPrefixFromPart_withLongText_shouldReturnRequestedNumberOfCharacters() throws Exception {
+        BinaryMemoryBody body = new BinaryMemoryBody("\u00e4\u00f6\u00fc\u00df text".getBytes("UTF-8"),
+                MimeUtil.ENC_8BIT);
+        part.setHeader(MimeHeader.HEADER_CONTENT_TYPE, "text/plain; charset=utf-8");
+        part.setBody(body);
+
+        String result = MessageExtractor.getTextPrefixFromPart(part, 6);
+
+        assertEquals("\u00e4\u00f6\u00fc\u00df t", result);
+    }
+
+    @Test
+    public void getTextPrefixFromPart_withShortText_shouldReturnWholeText() throws Exception {
+        BinaryMemoryBody body = new BinaryMemoryBody("Sample text body".getBytes(), MimeUtil.ENC_8BIT);
+        part.setHeader(MimeHeader.HEADER_CONTENT_TYPE, "text/plain");
+        part.setBody(body);
+
+        String result = MessageExtractor.getTextPrefixFromPart(part, 1000);
+
+        assertEquals("Sample text body", result);
+    }
+
+    @Test
+    public void getTextPrefixFromPart_withTextBody_shouldReturnBeginningOfText() throws Exception {
+        part.setBody(new TextBody("Sample text body"));
+
+        String result = MessageExtractor.getTextPrefixFromPart(part, 6);
+
+        assertEquals("Sample", result);
+    }
+
+    @Test
+    public void getTextPrefixFromPart_withNonTextPart_shouldReturnNull() throws Exception {
+        BinaryMemoryBody body = new BinaryMemoryBody("Sample text body".getBytes(), MimeUtil.ENC_8BIT);
+        part.setHeader(MimeHeader.HEADER_CONTENT_TYPE, "image/jpeg");
+        part.setBody(body);
+
+        String result = MessageExtractor.getTextPrefixFromPart(part, 1000);
+
+        assertNull(result);
+    }
+
+    @Test
+    public void getTextPrefixFromPart_withHugeBase64Body_shouldOnlyReadBeginningOfBody() throws Exception {
+        byte[] text = new byte[20 * 1024 * 1024];
+        Arrays.fill(text, (byte) 'a');
+        CountingBody body = new CountingBody(Base64.encodeBase64Chunked(text), MimeUtil.ENC_BASE64);
+        part.setHeader(MimeHeader.HEADER_CONTENT_TYPE, "text/plain; charset=utf-8");
+        part.setBody(body);
+
+        String result = MessageExtractor.getTextPrefixFromPart(part, 8192);
+
+        assertEquals(8192, result.length());
+        assertTrue(body.getBytesRead() < 64 * 1024);
+    }
+
+    @Test
+    public void getTextReaderFromPart_withQuotedPrintableBody_shouldDecodeText() throws Exception {
+        BinaryMemoryBody body = new BinaryMemoryBody("Gr=C3=BC=C3=9Fe=\r\n!".getBytes(), MimeUtil.ENC_QUOTED_PRINTABLE);
+        part.setHeader(MimeHeader.HEADER_CONTENT_TYPE, "text/plain; charset=utf-8");
+        part.setBody(body);
+
+        Reader reader = MessageExtractor.getTextReaderFromPart(part);
+        try {
+            assertEquals("Gr\u00fc\u00dfe!", IOUtils.toString(reader));
+        } finally {
+            reader.close();
+        }
+    }
+
+
+    static class CountingBody extends BinaryMemoryBody {
+        private CountingInputStream inputStream;
+
+
+        CountingBody(byte[] data, String encoding) {
+            super(data, encoding);
+        }
+
+        @Override
+        public InputStream getInputStream() throws MessagingException {
+            inputStream = new CountingInputStream(super.getInputStream());
+            return inputStream;
+        }
+
+        long getBytesRead() {
+            return inputStream.getByteCount();
+        }
+    }
 }
@@ -0,0 +1,158 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fsck.k9.mail.K9LibRobolectricTestRunner;
+import com.fsck.k9.mail.message.MessageHeaderParser;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+@RunWith(K9LibRobolectricTestRunner.class)
+public class MimeHeaderTest {
+    private static final String[] HEADER_FRAGMENTS = {
+            "Subject", "To", "X-Bad Name", "Content-Type", ":", ": ", " ", "\t", "\r\n", "\n", "\r", "\r\n ",
+            "\r\n\t", "value", "=?UTF-8?B?w6TDtsO8?=", "text/plain; charset=utf-8", "ä", "\u007f"
+    };
+
+
+    @Test
+    public void getHeader_shouldBeCaseInsensitive() throws Exception {
+        MimeHeader header = createHeader("Subject: one\r\nsubject: two\r\nTo: alice@example.org\r\n");
+
+        assertArrayEquals(new String[] { "one", "two" }, header.getHeader("SUBJECT"));
+        assertEquals("alice@example.org", header.getFirstHeader("to"));
+        assertNull(header.getFirstHeader("Cc"));
+    }
+
+    @Test
+    public void getFirstDecodedHeader_shouldUnfoldAndDecode() throws Exception {
+        MimeHeader header = createHeader("Subject: =?UTF-8?B?w6TDtsO8?=\r\n and more\r\n");
+
+        assertEquals("=?UTF-8?B?w6TDtsO8?=\r\n and more", header.getFirstHeader("Subject"));
+        assertEquals("äöü and more", header.getFirstDecodedHeader("Subject"));
+    }
+
+    @Test
+    public void writeTo_withUnmodifiedRawHeader_shouldWriteItUnchanged() throws Exception {
+        String raw = "Subject: one\r\nContent-Type: text/plain;\r\n charset=utf-8\r\n";
+        MimeHeader header = createHeader(raw);
+        header.getFirstHeader("Subject");
+
+        assertEquals(raw, writeToString(header));
+    }
+
+    @Test
+    public void writeTo_afterModification_shouldWriteFields() throws Exception {
+        MimeHeader header = createHeader("Subject: one\r\nTo: alice@example.org\r\nsubject: two\r\n");
+
+        header.setHeader("Subject", "three");
+
+        assertEquals("To: alice@example.org\r\nSubject: three\r\n", writeToString(header));
+        assertArrayEquals(new String[] { "three" }, header.getHeader("subject"));
+    }
+
+    @Test
+    public void clone_shouldNotShareModifications() throws Exception {
+        MimeHeader header = createHeader("Subject: one\r\n");
+        MimeHeader clone = header.clone();
+
+        clone.addHeader("Subject", "two");
+
+        assertArrayEquals(new String[] { "one" }, header.getHeader("Subject"));
+        assertArrayEquals(new String[] { "one", "two" }, clone.getHeader("Subject"));
+    }
+
+    @Test
+    public void getHeader_fromConcurrentReaders_shouldParseOnce() throws Exception {
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            raw.append("X-Field-").append(i).append(": value ").append(i).append("\r\n");
+        }
+        raw.append("Received: one\r\nReceived: two\r\n");
+
+        for (int attempt = 0; attempt < 20; attempt++) {
+            final MimeHeader header = createHeader(raw.toString());
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread[] readers = new Thread[4];
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            assertArrayEquals(new String[] { "one", "two" }, header.getHeader("received"));
+                            assertEquals("value 199", header.getFirstHeader("X-Field-199"));
+                        } catch (Throwable t) {
+                            failure.set(t);
+                        }
+                    }
+                });
+                readers[i].start();
+            }
+
+            start.countDown();
+            for (Thread reader : readers) {
+                reader.join();
+            }
+
+            assertNull(failure.get());
+            assertEquals(201, header.getHeaderNames().size());
+        }
+    }
+
+    @Test
+    public void setRawHeader_shouldProduceSameFieldsAsMessageHeaderParser() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder builder = new StringBuilder();
+            int fragmentCount = random.nextInt(30);
+            for (int j = 0; j < fragmentCount; j++) {
+                builder.append(HEADER_FRAGMENTS[random.nextInt(HEADER_FRAGMENTS.length)]);
+            }
+            byte[] raw = builder.toString().getBytes("UTF-8");
+
+            MimeMessage expected = new MimeMessage();
+            MessageHeaderParser.parse(expected, new ByteArrayInputStream(raw));
+            MimeHeader actual = new MimeHeader();
+            actual.setRawHeader(raw);
+
+            assertEquals(builder.toString(), expected.getHeaderNames(), actual.getHeaderNames());
+            for (String name : expected.getHeaderNames()) {
+                assertArrayEquals(builder.toString(), expected.getHeader(name), actual.getHeader(name));
+            }
+            actual.addHeader("X-Modified", "1");
+            expected.addHeader("X-Modified", "1");
+            assertEquals(builder.toString(), writeHeaderToString(expected), writeToString(actual));
+        }
+    }
+
+
+    private static MimeHeader createHeader(String raw) throws Exception {
+        MimeHeader header = new MimeHeader();
+        header.setRawHeader(raw.getBytes("UTF-8"));
+        return header;
+    }
+
+    private static String writeToString(MimeHeader header) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.writeTo(out);
+        return out.toString("UTF-8");
+    }
+
+    private static String writeHeaderToString(MimeMessage message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeHeaderTo(out);
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,124 @@
+package com.fsck.k9.mail.internet;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mime4j.MimeException;
+import org.apache.james.mime4j.parser.AbstractContentHandler;
+import org.apache.james.mime4j.stream.BodyDescriptor;
+import org.apache.james.mime4j.stream.Field;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+public class MimeParseContextTest {
+    private static final String MESSAGE_ONE = "" +
+            "Subject: one\r\n" +
+            "\r\n" +
+            "first body";
+    private static final String MESSAGE_TWO = "" +
+            "Subject: two\r\n" +
+            "Content-Type: multipart/mixed; boundary=\"b\"\r\n" +
+            "\r\n" +
+            "--b\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "\r\n" +
+            "part body\r\n" +
+            "--b--\r\n";
+
+
+    @Test
+    public void parse_calledTwice_shouldReportEachMessageToItsOwnHandler() throws Exception {
+        RecordingHandler first = new RecordingHandler();
+        RecordingHandler second = new RecordingHandler();
+
+        MimeParseContext.parse(toStream(MESSAGE_ONE), first);
+        MimeParseContext.parse(toStream(MESSAGE_TWO), second);
+
+        assertEquals(Arrays.asList("Subject: one", "body: first body"), first.events);
+        assertEquals(Arrays.asList("Subject: two", "Content-Type: multipart/mixed; boundary=\"b\"",
+                "Content-Type: text/plain", "body: part body"), second.events);
+    }
+
+    @Test
+    public void parse_fromWithinContentHandler_shouldNotDisturbOuterParse() throws Exception {
+        final RecordingHandler inner = new RecordingHandler();
+        RecordingHandler outer = new RecordingHandler() {
+            @Override
+            public void body(BodyDescriptor bd, InputStream is) throws MimeException, IOException {
+                MimeParseContext.parse(toStream(MESSAGE_ONE), inner);
+                super.body(bd, is);
+            }
+        };
+
+        MimeParseContext.parse(toStream(MESSAGE_TWO), outer);
+
+        assertEquals(Arrays.asList("Subject: one", "body: first body"), inner.events);
+        assertEquals(Arrays.asList("Subject: two", "Content-Type: multipart/mixed; boundary=\"b\"",
+                "Content-Type: text/plain", "body: part body"), outer.events);
+    }
+
+    @Test
+    public void parse_afterFailedParse_shouldParseNextMessage() throws Exception {
+        RecordingHandler failing = new RecordingHandler() {
+            @Override
+            public void field(Field field) throws MimeException {
+                throw new MimeException("failure");
+            }
+        };
+        try {
+            MimeParseContext.parse(toStream(MESSAGE_TWO), failing);
+            fail("Expected exception");
+        } catch (MimeException e) {
+            assertEquals("failure", e.getMessage());
+        }
+
+        RecordingHandler handler = new RecordingHandler();
+        MimeParseContext.parse(toStream(MESSAGE_ONE), handler);
+
+        assertEquals(Arrays.asList("Subject: one", "body: first body"), handler.events);
+    }
+
+    @Test
+    public void copy_withDataLargerThanBuffer_shouldCopyEverything() throws Exception {
+        byte[] data = new byte[100 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long copied = MimeParseContext.copy(new ByteArrayInputStream(data), out);
+
+        assertEquals(data.length, copied);
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    private static InputStream toStream(String data) {
+        return new ByteArrayInputStream(data.getBytes());
+    }
+
+
+    private static class RecordingHandler extends AbstractContentHandler {
+        final List<String> events = new ArrayList<String>();
+
+
+        @Override
+        public void field(Field field) throws MimeException {
+            events.add(field.getName() + ": " + field.getBody());
+        }
+
+        @Override
+        public void body(BodyDescriptor bd, InputStream is) throws MimeException, IOException {
+            events.add("body: " + IOUtils.toString(is, "US-ASCII").trim());
+        }
+    }
+}
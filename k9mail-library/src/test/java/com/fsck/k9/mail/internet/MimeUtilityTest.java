@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 
@@ -133,4 +134,17 @@ public class MimeUtilityTest {
     public void isSameMimeType_withSecondArgumentBeingNull_shouldReturnFalse() throws Exception {
         assertFalse(MimeUtility.isSameMimeType("text/html", null));
     }
+
+    @Test
+    public void unfold_shouldRemoveLineBreaks() {
+        assertEquals("text/plain; charset=utf-8", MimeUtility.unfold("text/plain;\r\n charset=utf-8"));
+        assertEquals("a b", MimeUtility.unfold("a\n\r b"));
+    }
+
+    @Test
+    public void unfold_withoutLineBreaks_shouldReturnSameString() {
+        String value = "text/plain";
+
+        assertSame(value, MimeUtility.unfold(value));
+    }
 }
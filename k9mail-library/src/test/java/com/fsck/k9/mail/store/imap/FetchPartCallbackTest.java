@@ -0,0 +1,116 @@
+package com.fsck.k9.mail.store.imap;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+
+import com.fsck.k9.mail.Body;
+import com.fsck.k9.mail.DefaultBodyFactory;
+import com.fsck.k9.mail.K9LibRobolectricTestRunner;
+import com.fsck.k9.mail.filter.FixedLengthInputStream;
+import com.fsck.k9.mail.filter.PeekableInputStream;
+import com.fsck.k9.mail.internet.BinaryTempFileBody;
+import com.fsck.k9.mail.internet.MimeBodyPart;
+import com.fsck.k9.mail.internet.MimeHeader;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import static com.fsck.k9.mail.store.imap.ImapResponseHelper.createImapResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+@RunWith(K9LibRobolectricTestRunner.class)
+public class FetchPartCallbackTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File tempDirectory;
+    private MimeBodyPart part;
+
+
+    @Before
+    public void setUp() throws Exception {
+        tempDirectory = temporaryFolder.newFolder();
+        BinaryTempFileBody.setTempDirectory(tempDirectory);
+
+        part = new MimeBodyPart();
+        part.setHeader(MimeHeader.HEADER_CONTENT_TYPE, "text/plain");
+        part.setHeader(MimeHeader.HEADER_CONTENT_TRANSFER_ENCODING, "7bit");
+    }
+
+    @Test
+    public void foundLiteral_withSmallPart_shouldNotCreateTempFile() throws Exception {
+        FetchPartCallback callback = new FetchPartCallback(part, new DefaultBodyFactory());
+
+        Body body = (Body) callback.foundLiteral(createFetchResponse(), createLiteral("Part body"));
+
+        assertEquals("Part body", readBody(body));
+        assertEquals(0, tempDirectory.list().length);
+    }
+
+    @Test
+    public void foundLiteral_withLargePart_shouldUseTempFile() throws Exception {
+        String data = createString(BinaryTempFileBody.DEFAULT_MEMORY_BACKED_THRESHOLD + 1);
+        FetchPartCallback callback = new FetchPartCallback(part, new DefaultBodyFactory());
+
+        Body body = (Body) callback.foundLiteral(createFetchResponse(), createLiteral(data));
+
+        assertEquals(1, tempDirectory.list().length);
+        assertEquals(data, readBody(body));
+    }
+
+    @Test
+    public void foundLiteral_withTaggedResponse_shouldReturnNull() throws Exception {
+        FetchPartCallback callback = new FetchPartCallback(part, new DefaultBodyFactory());
+
+        Object result = callback.foundLiteral(createImapResponse("x OK"), createLiteral("Part body"));
+
+        assertNull(result);
+    }
+
+    @Test
+    public void foundLiteral_withLiteralFromConnection_shouldOnlyConsumeLiteral() throws Exception {
+        String data = createString(BinaryTempFileBody.DEFAULT_MEMORY_BACKED_THRESHOLD * 2);
+        PeekableInputStream connection = new PeekableInputStream(
+                new ByteArrayInputStream((data + ")\r\n").getBytes("US-ASCII")), 1024);
+        FetchPartCallback callback = new FetchPartCallback(part, new DefaultBodyFactory());
+
+        Body body = (Body) callback.foundLiteral(createFetchResponse(), new FixedLengthInputStream(connection,
+                data.length()));
+
+        assertEquals(data, readBody(body));
+        assertEquals(")\r\n", IOUtils.toString(connection, "US-ASCII"));
+    }
+
+    private ImapResponse createFetchResponse() throws Exception {
+        return createImapResponse("* 1 FETCH (UID 1)");
+    }
+
+    private FixedLengthInputStream createLiteral(String data) throws Exception {
+        byte[] bytes = data.getBytes("US-ASCII");
+        return new FixedLengthInputStream(new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    private String readBody(Body body) throws Exception {
+        InputStream in = body.getInputStream();
+        try {
+            return IOUtils.toString(in, "US-ASCII");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String createString(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+package com.fsck.k9.mail.store.webdav;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import com.fsck.k9.mail.K9LibRobolectricTestRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+@RunWith(K9LibRobolectricTestRunner.class)
+public class MessageEnvelopeHandlerTest {
+    private static final String MULTISTATUS_RESPONSE = "<?xml version=\"1.0\"?>" +
+            "<a:multistatus xmlns:a=\"DAV:\" xmlns:d=\"urn:schemas:mailheader:\">" +
+            "<a:response><a:propstat><a:prop>" +
+            "<a:uid>uid1</a:uid>" +
+            "<d:subject>First</d:subject>" +
+            "<d:from>alice@example.org</d:from>" +
+            "<a:read>1</a:read>" +
+            "<d:date>2016-10-29T10:37:12.000Z</d:date>" +
+            "</a:prop></a:propstat></a:response>" +
+            "<a:response><a:propstat><a:prop>" +
+            "<a:uid>uid2</a:uid>" +
+            "<d:subject>Second &amp; last</d:subject>" +
+            "<a:read>0</a:read>" +
+            "</a:prop></a:propstat></a:response>" +
+            "</a:multistatus>";
+
+
+    @Test
+    public void parse_shouldReportEveryEnvelopeInOrder() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        MessageEnvelopeHandler handler = parse(MULTISTATUS_RESPONSE, callback);
+
+        assertEquals(2, handler.getEnvelopeCount());
+        assertEquals(2, callback.uids.size());
+        assertEquals("uid1", callback.uids.get(0));
+        assertEquals("uid2", callback.uids.get(1));
+        assertEquals("uid1", callback.envelopes.get(0).getUid());
+        assertEquals("uid2", callback.envelopes.get(1).getUid());
+    }
+
+    @Test
+    public void parse_shouldExtractHeadersAndReadStatus() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        parse(MULTISTATUS_RESPONSE, callback);
+
+        ParsedMessageEnvelope first = callback.envelopes.get(0);
+        assertEquals("First", first.getMessageHeaders().get("Subject"));
+        assertEquals("alice@example.org", first.getMessageHeaders().get("From"));
+        assertTrue(first.getReadStatus());
+        assertTrue(first.getMessageHeaders().get("Date").contains("29 Oct 16"));
+
+        ParsedMessageEnvelope second = callback.envelopes.get(1);
+        assertEquals("Second & last", second.getMessageHeaders().get("Subject"));
+        assertFalse(second.getReadStatus());
+        assertFalse(second.getMessageHeaders().containsKey("From"));
+    }
+
+    @Test
+    public void parse_withEmptyMultistatus_shouldNotReportEnvelopes() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        MessageEnvelopeHandler handler = parse("<?xml version=\"1.0\"?><a:multistatus xmlns:a=\"DAV:\"/>", callback);
+
+        assertEquals(0, handler.getEnvelopeCount());
+        assertTrue(callback.uids.isEmpty());
+    }
+
+    private MessageEnvelopeHandler parse(String xml, MessageEnvelopeHandler.EnvelopeCallback callback)
+            throws Exception {
+        MessageEnvelopeHandler handler = new MessageEnvelopeHandler(callback);
+
+        SAXParserFactory spf = SAXParserFactory.newInstance();
+        spf.setNamespaceAware(true);
+        XMLReader xr = spf.newSAXParser().getXMLReader();
+        xr.setContentHandler(handler);
+        xr.parse(new InputSource(new StringReader(xml)));
+
+        return handler;
+    }
+
+
+    private static class RecordingCallback implements MessageEnvelopeHandler.EnvelopeCallback {
+        final List<String> uids = new ArrayList<>();
+        final List<ParsedMessageEnvelope> envelopes = new ArrayList<>();
+
+        @Override
+        public void envelopeParsed(String uid, ParsedMessageEnvelope envelope) {
+            uids.add(uid);
+            envelopes.add(envelope);
+        }
+    }
+}
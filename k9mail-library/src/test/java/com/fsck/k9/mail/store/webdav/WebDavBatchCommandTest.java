@@ -0,0 +1,122 @@
+package com.fsck.k9.mail.store.webdav;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import com.fsck.k9.mail.K9LibRobolectricTestRunner;
+import org.apache.http.HttpEntity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+@RunWith(K9LibRobolectricTestRunner.class)
+public class WebDavBatchCommandTest {
+
+    @Test
+    public void createEntity_forMoveCommand_shouldWriteMoveXml() throws Exception {
+        WebDavBatchCommand command = WebDavBatchCommand.createMoveOrCopyCommand("http://example.org/dest", true);
+        command.addHref("http://example.org/folder/1.EML");
+        command.addHref("http://example.org/folder/2.EML");
+
+        String body = writeEntity(command, command.getChunks().get(0));
+
+        assertEquals("<?xml version='1.0' ?>\r\n" +
+                "<a:move xmlns:a='DAV:' xmlns:b='urn:schemas:httpmail:'>\r\n" +
+                "<a:target>\r\n" +
+                " <a:href>http://example.org/folder/1.EML</a:href>\r\n" +
+                " <a:href>http://example.org/folder/2.EML</a:href>\r\n" +
+                "</a:target>\r\n" +
+                "</a:move>\r\n", body);
+        assertEquals("BMOVE", command.getMethod());
+        assertEquals("http://example.org/dest", command.getHeaders().get("Destination"));
+    }
+
+    @Test
+    public void createEntity_forMarkReadCommand_shouldIncludeReadProperty() throws Exception {
+        WebDavBatchCommand command = WebDavBatchCommand.createMarkReadCommand(true);
+        command.addHref("http://example.org/folder/1.EML");
+
+        String body = writeEntity(command, command.getChunks().get(0));
+
+        assertTrue(body.contains("<a:propertyupdate "));
+        assertTrue(body.contains("<b:read>1</b:read>"));
+        assertEquals("BPROPPATCH", command.getMethod());
+    }
+
+    @Test
+    public void createEntity_shouldEscapeHref() throws Exception {
+        WebDavBatchCommand command = WebDavBatchCommand.createDeleteCommand();
+        command.addHref("http://example.org/a&b.EML");
+
+        String body = writeEntity(command, command.getChunks().get(0));
+
+        assertTrue(body.contains("<a:href>http://example.org/a&amp;b.EML</a:href>"));
+    }
+
+    @Test
+    public void createEntity_shouldReportExactContentLength() throws Exception {
+        WebDavBatchCommand command = WebDavBatchCommand.createMarkReadCommand(false);
+        command.addHref("http://example.org/földer/1.EML");
+        HttpEntity entity = command.createEntity(command.getChunks().get(0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+
+        assertEquals(out.size(), entity.getContentLength());
+    }
+
+    @Test
+    public void getChunks_shouldLimitNumberOfHrefs() {
+        WebDavBatchCommand command = WebDavBatchCommand.createDeleteCommand();
+        int count = WebDavBatchCommand.MAX_HREFS_PER_REQUEST * 2 + 1;
+        for (int i = 0; i < count; i++) {
+            command.addHref("http://example.org/" + i + ".EML");
+        }
+
+        List<List<String>> chunks = command.getChunks();
+
+        assertEquals(3, chunks.size());
+        assertEquals(WebDavBatchCommand.MAX_HREFS_PER_REQUEST, chunks.get(0).size());
+        assertEquals(WebDavBatchCommand.MAX_HREFS_PER_REQUEST, chunks.get(1).size());
+        assertEquals(1, chunks.get(2).size());
+    }
+
+    @Test
+    public void getChunks_shouldLimitBodySize() throws Exception {
+        WebDavBatchCommand command = WebDavBatchCommand.createDeleteCommand();
+        StringBuilder longPath = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longPath.append('x');
+        }
+        for (int i = 0; i < 150; i++) {
+            command.addHref("http://example.org/" + longPath + i + ".EML");
+        }
+
+        List<List<String>> chunks = command.getChunks();
+
+        assertTrue(chunks.size() > 1);
+        int total = 0;
+        for (List<String> chunk : chunks) {
+            total += chunk.size();
+            assertTrue(command.createEntity(chunk).getContentLength() <= WebDavBatchCommand.MAX_REQUEST_BODY_SIZE);
+        }
+        assertEquals(150, total);
+    }
+
+    @Test
+    public void getChunks_withoutHrefs_shouldReturnEmptyList() {
+        WebDavBatchCommand command = WebDavBatchCommand.createDeleteCommand();
+
+        assertTrue(command.isEmpty());
+        assertTrue(command.getChunks().isEmpty());
+    }
+
+    private String writeEntity(WebDavBatchCommand command, List<String> chunk) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        command.createEntity(chunk).writeTo(out);
+        return out.toString("UTF-8");
+    }
+}
@@ -1,6 +1,7 @@
 package com.fsck.k9.mail.store.webdav;
 
 import com.fsck.k9.mail.FetchProfile;
+import com.fsck.k9.mail.Flag;
 import com.fsck.k9.mail.K9LibRobolectricTestRunner;
 import com.fsck.k9.mail.Message;
 import com.fsck.k9.mail.MessageRetrievalListener;
@@ -19,6 +20,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -39,7 +41,9 @@ import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -52,6 +56,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -80,13 +85,14 @@ public class WebDavFolderTest {
     private ArgumentCaptor<String> urlCaptor;
     @Captor
     private ArgumentCaptor<StringEntity> entityCaptor;
+    @Captor
+    private ArgumentCaptor<WebDavBatchCommand> batchCommandCaptor;
 
     private WebDavFolder folder;
 
     private WebDavFolder destinationFolder;
     private String storeUrl = "https://localhost/webDavStoreUrl";
     private String folderName = "testFolder";
-    private String moveOrCopyXml = "<xml>MoveOrCopyXml</xml>";
     private HashMap<String, String> moveOrCopyHeaders;
     private List<WebDavMessage> messages;
 
@@ -273,6 +279,69 @@ public class WebDavFolderTest {
         verify(listener, times(25)).messageFinished(any(WebDavMessage.class), anyInt(), anyInt());
     }
 
+    @Test
+    public void fetch_withConcurrentBodyDownloads_shouldNotifyListenerInOrder() throws Exception {
+        setupStoreForMessageFetching();
+        when(mockHttpClient.getMaxConnectionsPerRoute()).thenReturn(4);
+        List<WebDavMessage> messages = setup25MessagesToFetch();
+        when(mockHttpClient.executeOverride(any(HttpUriRequest.class), any(HttpContext.class))).thenAnswer(
+                new Answer<HttpResponse>() {
+                    @Override
+                    public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                        HttpUriRequest request = (HttpUriRequest) invocation.getArguments()[0];
+                        if (request.getURI().toString().endsWith("/message0.EML")) {
+                            // Make sure later downloads complete first
+                            Thread.sleep(100);
+                        }
+                        return createOkResponse("Subject: test\r\n\r\nbody");
+                    }
+                });
+
+        FetchProfile profile = new FetchProfile();
+        profile.add(FetchProfile.Item.BODY);
+        folder.fetch(messages, profile, listener);
+
+        InOrder inOrder = inOrder(listener);
+        for (int i = 0; i < 25; i++) {
+            inOrder.verify(listener).messageStarted("message" + i, i, 25);
+            inOrder.verify(listener).messageFinished(messages.get(i), i, 25);
+        }
+    }
+
+    @Test(expected = MessagingException.class)
+    public void fetch_withFailingConcurrentBodyDownload_shouldThrow() throws Exception {
+        setupStoreForMessageFetching();
+        when(mockHttpClient.getMaxConnectionsPerRoute()).thenReturn(4);
+        List<WebDavMessage> messages = setup25MessagesToFetch();
+        when(mockHttpClient.executeOverride(any(HttpUriRequest.class), any(HttpContext.class))).thenAnswer(
+                new Answer<HttpResponse>() {
+                    @Override
+                    public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                        HttpUriRequest request = (HttpUriRequest) invocation.getArguments()[0];
+                        if (request.getURI().toString().endsWith("/message3.EML")) {
+                            throw new IOException("Connection reset");
+                        }
+                        return createOkResponse("");
+                    }
+                });
+
+        FetchProfile profile = new FetchProfile();
+        profile.add(FetchProfile.Item.BODY);
+        folder.fetch(messages, profile, listener);
+    }
+
+    private HttpResponse createOkResponse(String body) throws IOException {
+        HttpResponse httpResponse = mock(HttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(httpResponse.getStatusLine()).thenReturn(statusLine);
+        when(statusLine.getStatusCode()).thenReturn(200);
+
+        BasicHttpEntity httpEntity = new BasicHttpEntity();
+        httpEntity.setContent(new ByteArrayInputStream(body.getBytes("UTF-8")));
+        when(httpResponse.getEntity()).thenReturn(httpEntity);
+        return httpResponse;
+    }
+
     private void setupStoreForMessageFetching() {
         String authString = "authString";
         when(mockStoreConfig.getMaximumAutoDownloadMessageSize()).thenReturn(1900);
@@ -472,7 +541,6 @@ public class WebDavFolderTest {
         String url = "url1";
         messages = singletonList(createWebDavMessage(uid));
         setupGetUrlsRequestResponse(uid, url);
-        when(mockStore.getMoveOrCopyMessagesReadXml(eq(new String[]{url}), anyBoolean())).thenReturn(moveOrCopyXml);
         moveOrCopyHeaders = new HashMap<>();
         moveOrCopyHeaders.put("Destination", "https://localhost/webDavStoreUrl/destFolder");
         moveOrCopyHeaders.put("Brief", "t");
@@ -480,13 +548,14 @@ public class WebDavFolderTest {
     }
 
     @Test
-    public void moveMessages_should_requestMoveXml() throws Exception {
+    public void moveMessages_should_targetMessageUrl() throws Exception {
         setupMoveOrCopy();
 
         folder.moveMessages(messages, destinationFolder);
 
-        verify(mockStore).getMoveOrCopyMessagesReadXml(eq(new String[]{"url1"}),
-                eq(true));
+        verify(mockStore).processBatchCommand(eq("https://localhost/webDavStoreUrl/testFolder"),
+                batchCommandCaptor.capture());
+        assertEquals(singletonList("url1"), batchCommandCaptor.getValue().getHrefs());
     }
 
     @Test
@@ -495,18 +564,21 @@ public class WebDavFolderTest {
 
         folder.moveMessages(messages, destinationFolder);
 
-        verify(mockStore).processRequest("https://localhost/webDavStoreUrl/testFolder", "BMOVE",
-                moveOrCopyXml, moveOrCopyHeaders, false);
+        verify(mockStore).processBatchCommand(eq("https://localhost/webDavStoreUrl/testFolder"),
+                batchCommandCaptor.capture());
+        assertEquals("BMOVE", batchCommandCaptor.getValue().getMethod());
+        assertEquals(moveOrCopyHeaders, batchCommandCaptor.getValue().getHeaders());
     }
 
     @Test
-    public void copyMessages_should_requestCopyXml() throws Exception {
+    public void copyMessages_should_targetMessageUrl() throws Exception {
         setupMoveOrCopy();
 
         folder.copyMessages(messages, destinationFolder);
 
-        verify(mockStore).getMoveOrCopyMessagesReadXml(eq(new String[]{"url1"}),
-                eq(false));
+        verify(mockStore).processBatchCommand(eq("https://localhost/webDavStoreUrl/testFolder"),
+                batchCommandCaptor.capture());
+        assertEquals(singletonList("url1"), batchCommandCaptor.getValue().getHrefs());
     }
 
     @Test
@@ -515,8 +587,37 @@ public class WebDavFolderTest {
 
         folder.copyMessages(messages, destinationFolder);
 
-        verify(mockStore).processRequest("https://localhost/webDavStoreUrl/testFolder", "BCOPY",
-                moveOrCopyXml, moveOrCopyHeaders, false);
+        verify(mockStore).processBatchCommand(eq("https://localhost/webDavStoreUrl/testFolder"),
+                batchCommandCaptor.capture());
+        assertEquals("BCOPY", batchCommandCaptor.getValue().getMethod());
+        assertEquals(moveOrCopyHeaders, batchCommandCaptor.getValue().getHeaders());
+    }
+
+    @Test
+    public void setFlags_withDeleted_shouldMoveAllMessagesWithSingleBatch() throws Exception {
+        when(mockStore.getUrl()).thenReturn("https://localhost/webDavStoreUrl/");
+        Map<String, String> uidToUrl = new HashMap<>();
+        uidToUrl.put("uid1", "https://localhost/webDavStoreUrl/testFolder/message1.EML");
+        uidToUrl.put("uid2", "https://localhost/webDavStoreUrl/testFolder/message2.EML");
+        when(mockStore.processRequest(anyString(), eq("SEARCH"), anyString(), anyMapOf(String.class, String.class)))
+                .thenReturn(mockDataSet);
+        when(mockDataSet.getUidToUrl()).thenReturn(uidToUrl);
+        List<WebDavMessage> messages = new ArrayList<>();
+        messages.add(createWebDavMessage("uid1"));
+        messages.add(createWebDavMessage("uid2"));
+
+        folder.setFlags(messages, Collections.singleton(Flag.DELETED), true);
+
+        verify(mockStore, times(2)).processBatchCommand(eq("https://localhost/webDavStoreUrl/testFolder"),
+                batchCommandCaptor.capture());
+        WebDavBatchCommand moveCommand = batchCommandCaptor.getAllValues().get(0);
+        assertEquals("BMOVE", moveCommand.getMethod());
+        assertEquals("https://localhost/webDavStoreUrl/Deleted%20Items",
+                moveCommand.getHeaders().get("Destination"));
+        assertEquals(2, moveCommand.getHrefs().size());
+        assertTrue(batchCommandCaptor.getAllValues().get(1).isEmpty());
+        verify(mockStore, never()).processRequest(anyString(), eq("MOVE"), anyString(),
+                anyMapOf(String.class, String.class), anyBoolean());
     }
 
     @Test
@@ -0,0 +1,50 @@
+package com.fsck.k9.mail.store.webdav;
+
+import com.fsck.k9.mail.K9LibRobolectricTestRunner;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+@RunWith(K9LibRobolectricTestRunner.class)
+public class WebDavHttpClientTest {
+
+    @Test
+    public void create_shouldUsePooledConnectionManager() {
+        WebDavHttpClient client = new WebDavHttpClient.WebDavHttpClientFactory().create();
+
+        assertTrue(client.getConnectionManager() instanceof ThreadSafeClientConnManager);
+        assertEquals(WebDavHttpClient.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, client.getMaxConnectionsPerRoute());
+    }
+
+    @Test
+    public void create_withMaxConnectionsPerRoute_shouldUseValue() {
+        WebDavHttpClient client = new WebDavHttpClient.WebDavHttpClientFactory(2).create();
+
+        assertEquals(2, client.getMaxConnectionsPerRoute());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_withZeroConnectionsPerRoute_shouldThrow() {
+        new WebDavHttpClient(0);
+    }
+
+    @Test
+    public void consumeQuietly_shouldConsumeEntity() throws Exception {
+        HttpResponse response = mock(HttpResponse.class);
+        HttpEntity entity = mock(HttpEntity.class);
+        when(response.getEntity()).thenReturn(entity);
+
+        WebDavHttpClient.consumeQuietly(response);
+
+        verify(entity).consumeContent();
+    }
+}
@@ -14,9 +14,11 @@ import android.test.ProviderTestCase2;
 
 import com.fsck.k9.Account;
 import com.fsck.k9.Preferences;
+import com.fsck.k9.mail.Folder;
 import com.fsck.k9.mail.Message;
 import com.fsck.k9.mail.MessagingException;
 import com.fsck.k9.mail.internet.MimeMessage;
+import com.fsck.k9.mailstore.LocalFolder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -282,6 +284,37 @@ public class EmailProviderTest extends ProviderTestCase2<EmailProvider> {
         assertFalse(cursor.moveToNext());
     }
 
+    @Test
+    public void query_forThreadedMessagesOfFolder_showsNewestMessageOfThread() throws MessagingException {
+        Account account = Preferences.getPreferences(getContext()).newAccount();
+        LocalFolder folder = account.getLocalStore().getFolder("Inbox");
+        folder.appendMessages(Collections.singletonList(message));
+        folder.appendMessages(Collections.singletonList(reply));
+        folder.open(Folder.OPEN_MODE_RO);
+
+        Cursor cursor = getProvider().query(
+                Uri.parse("content://" + EmailProvider.AUTHORITY + "/account/" + account.getUuid() +
+                        "/messages/threaded"),
+                new String[] {
+                        EmailProvider.MessageColumns.ID,
+                        EmailProvider.MessageColumns.FOLDER_ID,
+                        EmailProvider.ThreadColumns.ROOT,
+                        EmailProvider.MessageColumns.SUBJECT,
+                        EmailProvider.MessageColumns.DATE,
+                        EmailProvider.SpecialColumns.THREAD_COUNT
+                },
+                EmailProvider.MessageColumns.FOLDER_ID + " = ?",
+                new String[] { Long.toString(folder.getDatabaseId()) },
+                EmailProvider.MessageColumns.DATE + " DESC");
+
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(folder.getDatabaseId(), cursor.getLong(1));
+        assertEquals(reply.getSubject(), cursor.getString(3));
+        assertEquals(2, cursor.getInt(5));
+        assertFalse(cursor.moveToNext());
+    }
+
     @Test
     public void query_forAThreadOfMessages_returnsMessage() throws MessagingException {
         Account account = Preferences.getPreferences(getContext()).newAccount();
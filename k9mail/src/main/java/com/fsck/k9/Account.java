@@ -988,12 +988,15 @@ public class Account implements BaseAccount, StoreConfig {
         return displayCount;
     }
 
-    public synchronized void setDisplayCount(int displayCount) {
-        if (displayCount != -1) {
-            this.displayCount = displayCount;
-        } else {
-            this.displayCount = K9.DEFAULT_VISIBLE_LIMIT;
+    public void setDisplayCount(int displayCount) {
+        synchronized (this) {
+            if (displayCount != -1) {
+                this.displayCount = displayCount;
+            } else {
+                this.displayCount = K9.DEFAULT_VISIBLE_LIMIT;
+            }
         }
+        // Not while holding the lock, the reset waits for the write queue and queued writes may read the account
         resetVisibleLimits();
     }
 
@@ -13,6 +13,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 
 import android.app.Application;
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
@@ -43,6 +44,7 @@ import com.fsck.k9.preferences.Storage;
 import com.fsck.k9.preferences.StorageEditor;
 import com.fsck.k9.provider.UnreadWidgetProvider;
 import com.fsck.k9.service.BootReceiver;
+import com.fsck.k9.service.DatabaseUpgradeService;
 import com.fsck.k9.service.MailService;
 import com.fsck.k9.service.ShutdownReceiver;
 import com.fsck.k9.service.StorageGoneReceiver;
@@ -90,6 +92,14 @@ public class K9 extends Application {
      */
     private static final String KEY_LAST_ACCOUNT_DATABASE_VERSION = "last_account_database_version";
 
+    /**
+     * Key used to remember that the address lists of all accounts have been converted to the current packed format.
+     *
+     * @see #DATABASE_VERSION_CACHE
+     * @see MessagingController#repackAddressListsInBackground()
+     */
+    private static final String KEY_ADDRESS_LISTS_REPACKED = "address_lists_repacked";
+
     /**
      * Components that are interested in knowing when the K9 instance is
      * available and ready.
@@ -452,6 +462,26 @@ public class K9 extends Application {
         Timber.i("Registered: shutdown receiver");
     }
 
+    /**
+     * The fulltext indexer stops while the device is in use and not charging. Resume when that changes, unless the
+     * databases still have to be upgraded. {@link DatabaseUpgradeService} starts the indexer when it's done.
+     */
+    private void registerFulltextIndexerReceiver() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_SCREEN_OFF);
+
+        registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (areDatabasesUpToDate()) {
+                    MessagingController.getInstance(context).indexFulltextBacklogInBackground();
+                }
+            }
+        }, filter);
+        Timber.i("Registered: fulltext indexer receiver");
+    }
+
     public static void save(StorageEditor editor) {
         editor.putBoolean("enableDebugLogging", K9.DEBUG);
         editor.putBoolean("enableSensitiveLogging", K9.DEBUG_SENSITIVE);
@@ -567,6 +597,12 @@ public class K9 extends Application {
 
         setServicesEnabled(this);
         registerReceivers();
+        registerFulltextIndexerReceiver();
+
+        if (areDatabasesUpToDate()) {
+            MessagingController.getInstance(this).repackAddressListsInBackground();
+            MessagingController.getInstance(this).indexFulltextBacklogInBackground();
+        }
 
         MessagingController.getInstance(this).addListener(new SimpleMessagingListener() {
             private void broadcastIntent(String action, Account account, String folder, Message message) {
@@ -1441,6 +1477,20 @@ public class K9 extends Application {
         }
     }
 
+    public static synchronized boolean areAddressListsRepacked() {
+        return sDatabaseVersionCache.getBoolean(KEY_ADDRESS_LISTS_REPACKED, false);
+    }
+
+    /**
+     * Remember that the address lists of all accounts are in the current packed format, so they don't have to be
+     * checked again on the next start.
+     */
+    public static synchronized void setAddressListsRepacked() {
+        Editor editor = sDatabaseVersionCache.edit();
+        editor.putBoolean(KEY_ADDRESS_LISTS_REPACKED, true);
+        editor.apply();
+    }
+
     private static void updateLoggingStatus() {
         Timber.uprootAll();
         boolean enableDebugLogging = BuildConfig.DEBUG || DEBUG;
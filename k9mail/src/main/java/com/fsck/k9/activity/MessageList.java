@@ -1274,7 +1274,7 @@ public class MessageList extends K9Activity implements MessageListFragmentListen
     public void showMoreFromSameSender(String senderAddress) {
         LocalSearch tmpSearch = new LocalSearch("From " + senderAddress);
         tmpSearch.addAccountUuids(mSearch.getAccountUuids());
-        tmpSearch.and(SearchField.SENDER, senderAddress, Attribute.CONTAINS);
+        tmpSearch.and(SearchField.SENDER, senderAddress, Attribute.EQUALS);
 
         MessageListFragment fragment = MessageListFragment.newInstance(tmpSearch, false, false);
 
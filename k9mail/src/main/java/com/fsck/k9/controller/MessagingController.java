@@ -100,6 +100,7 @@ import com.fsck.k9.mailstore.LocalStore;
 import com.fsck.k9.mailstore.MessageRemovalListener;
 import com.fsck.k9.mailstore.UnavailableStorageException;
 import com.fsck.k9.notification.NotificationController;
+import com.fsck.k9.power.DeviceStateChecker;
 import com.fsck.k9.provider.EmailProvider;
 import com.fsck.k9.provider.EmailProvider.StatsColumns;
 import com.fsck.k9.search.ConditionsTreeNode;
@@ -130,6 +131,8 @@ public class MessagingController {
     public static final long INVALID_MESSAGE_ID = -1;
 
     private static final Set<Flag> SYNC_FLAGS = EnumSet.of(Flag.SEEN, Flag.FLAGGED, Flag.ANSWERED, Flag.FORWARDED);
+    private static final int ADDRESS_REPACK_BATCH_SIZE = 200;
+    private static final int FULLTEXT_INDEX_BATCH_SIZE = 50;
 
 
     private static MessagingController inst = null;
@@ -146,8 +149,12 @@ public class MessagingController {
     private final ConcurrentHashMap<String, AtomicInteger> sendCount = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<Account, Pusher> pushers = new ConcurrentHashMap<>();
     private final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private final AtomicBoolean fulltextIndexerRunning = new AtomicBoolean();
     private final MemorizingMessagingListener memorizingMessagingListener = new MemorizingMessagingListener();
     private final TransportProvider transportProvider;
+    private final OutboxDeliveryScheduler outboxDeliveryScheduler;
+    private final SendingProgress sendingProgress;
+    private final Map<String, Set<MessagingListener>> sendListeners = new HashMap<>();
 
 
     private MessagingListener checkMailListener = null;
@@ -183,11 +190,34 @@ public class MessagingController {
         controllerThread.setName("MessagingController");
         controllerThread.start();
         addListener(memorizingMessagingListener);
+
+        outboxDeliveryScheduler = OutboxDeliveryScheduler.newInstance(new OutboxDeliveryScheduler.DeliveryHandler() {
+            @Override
+            public OutboxDeliveryScheduler.DeliveryResult deliver(Account account) {
+                return deliverPendingMessages(account);
+            }
+        });
+        sendingProgress = new SendingProgress(new SendingProgress.ProgressObserver() {
+            @Override
+            public void onSendingProgress(Account account, Set<MessagingListener> listeners, int sentCount,
+                    int totalCount) {
+                for (MessagingListener l : listeners) {
+                    l.synchronizeMailboxProgress(account, account.getSentFolderName(), sentCount, totalCount);
+                }
+                showSendingNotificationIfNecessary(account, sentCount, totalCount);
+            }
+
+            @Override
+            public void onSendingFinished(Account account) {
+                clearSendingNotificationIfNecessary(account);
+            }
+        });
     }
 
     @VisibleForTesting
     void stop() throws InterruptedException {
         stopped = true;
+        outboxDeliveryScheduler.shutdown();
         controllerThread.interrupt();
         controllerThread.join(1000L);
     }
@@ -959,6 +989,10 @@ public class MessagingController {
 
             Timber.i("Done synchronizing folder %s:%s", account.getDescription(), folder);
 
+            if (newMessages > 0) {
+                indexFulltextBacklogInBackground();
+            }
+
         } catch (AuthenticationFailedException e) {
             handleAuthenticationFailure(account, true);
 
@@ -2628,32 +2662,71 @@ public class MessagingController {
 
     /**
      * Attempt to send any messages that are sitting in the Outbox.
+     * <p>
+     * Outboxes of different accounts are delivered concurrently by {@link OutboxDeliveryScheduler}, so a slow
+     * outgoing server of one account doesn't hold up sending for the others. {@code listener} is notified of the
+     * next delivery of the account's outbox, together with the registered listeners.
+     * </p>
      */
     public void sendPendingMessages(final Account account,
             MessagingListener listener) {
-        putBackground("sendPendingMessages", listener, new Runnable() {
-            @Override
-            public void run() {
-                if (!account.isAvailable(context)) {
-                    throw new UnavailableAccountException();
+        if (listener != null) {
+            synchronized (sendListeners) {
+                Set<MessagingListener> accountListeners = sendListeners.get(account.getUuid());
+                if (accountListeners == null) {
+                    accountListeners = new HashSet<>();
+                    sendListeners.put(account.getUuid(), accountListeners);
                 }
-                if (messagesPendingSend(account)) {
+                accountListeners.add(listener);
+            }
+        }
 
-                    showSendingNotificationIfNecessary(account);
+        outboxDeliveryScheduler.schedule(account);
+    }
 
-                    try {
-                        sendPendingMessagesSynchronous(account);
-                    } finally {
-                        clearSendingNotificationIfNecessary(account);
-                    }
-                }
-            }
-        });
+    private Set<MessagingListener> takeSendListeners(Account account) {
+        Set<MessagingListener> accountListeners;
+        synchronized (sendListeners) {
+            accountListeners = sendListeners.remove(account.getUuid());
+        }
+
+        if (accountListeners == null) {
+            return getListeners();
+        }
+
+        accountListeners.addAll(getListeners());
+        return accountListeners;
+    }
+
+    private OutboxDeliveryScheduler.DeliveryResult deliverPendingMessages(Account account) {
+        if (!account.isAvailable(context)) {
+            return OutboxDeliveryScheduler.DeliveryResult.ACCOUNT_UNAVAILABLE;
+        }
+
+        Set<MessagingListener> listeners = takeSendListeners(account);
+        if (!messagesPendingSend(account)) {
+            return OutboxDeliveryScheduler.DeliveryResult.DELIVERED;
+        }
+
+        TracingPowerManager pm = TracingPowerManager.getPowerManager(context);
+        TracingWakeLock wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK,
+                "K9 MessagingController.sendPendingMessages");
+        wakeLock.setReferenceCounted(false);
+        wakeLock.acquire(K9.MANUAL_WAKE_LOCK_TIMEOUT);
+        try {
+            boolean hadTransientFailure = sendPendingMessagesSynchronous(account, listeners);
+            return hadTransientFailure ? OutboxDeliveryScheduler.DeliveryResult.TRANSIENT_FAILURE :
+                    OutboxDeliveryScheduler.DeliveryResult.DELIVERED;
+        } catch (UnavailableAccountException e) {
+            return OutboxDeliveryScheduler.DeliveryResult.ACCOUNT_UNAVAILABLE;
+        } finally {
+            wakeLock.release();
+        }
     }
 
-    private void showSendingNotificationIfNecessary(Account account) {
+    private void showSendingNotificationIfNecessary(Account account, int sentCount, int totalCount) {
         if (account.isShowOngoing()) {
-            notificationController.showSendingNotification(account);
+            notificationController.showSendingNotification(account, sentCount, totalCount);
         }
     }
 
@@ -2687,9 +2760,15 @@ public class MessagingController {
 
     /**
      * Attempt to send any messages that are sitting in the Outbox.
+     *
+     * @return {@code true} if sending failed with an error that might go away when trying again later.
      */
     @VisibleForTesting
-    protected void sendPendingMessagesSynchronous(final Account account) {
+    protected boolean sendPendingMessagesSynchronous(final Account account) {
+        return sendPendingMessagesSynchronous(account, getListeners());
+    }
+
+    private boolean sendPendingMessagesSynchronous(final Account account, Set<MessagingListener> listeners) {
         LocalFolder localFolder = null;
         Exception lastFailure = null;
         boolean wasPermanentFailure = false;
@@ -2699,19 +2778,15 @@ public class MessagingController {
                     account.getOutboxFolderName());
             if (!localFolder.exists()) {
                 Timber.v("Outbox does not exist");
-                return;
+                return false;
             }
-            for (MessagingListener l : getListeners()) {
+            for (MessagingListener l : listeners) {
                 l.sendPendingMessagesStarted(account);
             }
             localFolder.open(Folder.OPEN_MODE_RW);
 
             List<LocalMessage> localMessages = localFolder.getMessages(null);
-            int progress = 0;
-            int todo = localMessages.size();
-            for (MessagingListener l : getListeners()) {
-                l.synchronizeMailboxProgress(account, account.getSentFolderName(), progress, todo);
-            }
+            sendingProgress.start(account, listeners, localMessages.size());
             /*
              * The profile we will use to pull all of the content
              * for a given local message into memory for sending.
@@ -2762,10 +2837,7 @@ public class MessagingController {
 
                         message.setFlag(Flag.X_SEND_IN_PROGRESS, false);
                         message.setFlag(Flag.SEEN, true);
-                        progress++;
-                        for (MessagingListener l : getListeners()) {
-                            l.synchronizeMailboxProgress(account, account.getSentFolderName(), progress, todo);
-                        }
+                        sendingProgress.messageSent(account);
                         moveOrDeleteSentMessage(account, localStore, localFolder, message);
                     } catch (AuthenticationFailedException e) {
                         lastFailure = e;
@@ -2799,7 +2871,7 @@ public class MessagingController {
                 }
             }
 
-            for (MessagingListener l : getListeners()) {
+            for (MessagingListener l : listeners) {
                 l.sendPendingMessagesCompleted(account);
             }
 
@@ -2810,18 +2882,22 @@ public class MessagingController {
                     notificationController.showSendFailedNotification(account, lastFailure);
                 }
             }
+
+            return lastFailure != null && !wasPermanentFailure;
         } catch (UnavailableStorageException e) {
             Timber.i("Failed to send pending messages because storage is not available - trying again later.");
             throw new UnavailableAccountException(e);
         } catch (Exception e) {
             Timber.v(e, "Failed to send pending messages");
 
-            for (MessagingListener l : getListeners()) {
+            for (MessagingListener l : listeners) {
                 l.sendPendingMessagesFailed(account);
             }
             addErrorMessage(account, null, e);
 
+            return true;
         } finally {
+            sendingProgress.finish(account);
             if (lastFailure == null) {
                 notificationController.clearSendFailedNotification(account);
             }
@@ -2877,6 +2953,85 @@ public class MessagingController {
         }
     }
 
+    /**
+     * Converts address lists stored in an older format, one small batch at a time, so the databases aren't locked
+     * for long. Once all accounts have been converted this is remembered (see {@link K9#areAddressListsRepacked()}),
+     * and later calls do nothing.
+     */
+    public void repackAddressListsInBackground() {
+        if (K9.areAddressListsRepacked()) {
+            return;
+        }
+
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = true;
+                for (Account account : Preferences.getPreferences(context).getAccounts()) {
+                    try {
+                        LocalStore localStore = account.getLocalStore();
+                        while (localStore.repackAddressLists(ADDRESS_REPACK_BATCH_SIZE)) {
+                            Thread.yield();
+                        }
+                    } catch (MessagingException e) {
+                        success = false;
+                        Timber.e(e, "Error while repacking address lists of account %s", account.getDescription());
+                    }
+                }
+
+                if (success) {
+                    K9.setAddressListsRepacked();
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds messages that were stored without a search index entry to the index, one small batch at a time. This runs
+     * in a low-priority thread and stops when the device is in use and not charging; it's started again when the
+     * screen is turned off, the device is plugged in or new messages have been downloaded.
+     */
+    public void indexFulltextBacklogInBackground() {
+        if (!fulltextIndexerRunning.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread indexer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    indexFulltextBacklog(Preferences.getPreferences(context).getAvailableAccounts(),
+                            new DeviceStateChecker(context));
+                } finally {
+                    fulltextIndexerRunning.set(false);
+                }
+            }
+        }, "FulltextIndexer");
+        indexer.setPriority(Thread.MIN_PRIORITY);
+        indexer.start();
+    }
+
+    @VisibleForTesting
+    void indexFulltextBacklog(Collection<Account> accounts, DeviceStateChecker deviceStateChecker) {
+        for (Account account : accounts) {
+            try {
+                LocalStore localStore = account.getLocalStore();
+                while (deviceStateChecker.isIdleOrCharging() &&
+                        localStore.indexFulltextBacklog(FULLTEXT_INDEX_BATCH_SIZE)) {
+                    Thread.yield();
+                }
+
+                int remaining = localStore.getFulltextBacklogCount();
+                if (remaining > 0) {
+                    Timber.d("%d messages of account %s are waiting to be indexed", remaining,
+                            account.getDescription());
+                }
+            } catch (MessagingException e) {
+                Timber.e(e, "Error while indexing messages of account %s", account.getDescription());
+            }
+        }
+    }
+
     public void getAccountStats(final Context context, final Account account,
             final MessagingListener listener) {
 
@@ -3800,6 +3955,8 @@ public class MessagingController {
                 try {
                     LocalStore localStore = account.getLocalStore();
                     long oldSize = localStore.getSize();
+                    localStore.checkThreadSummary();
+                    localStore.checkFolderCounts();
                     localStore.compact();
                     long newSize = localStore.getSize();
                     for (MessagingListener l : getListeners(ml)) {
@@ -0,0 +1,245 @@
+package com.fsck.k9.controller;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+import android.support.annotation.VisibleForTesting;
+
+import com.fsck.k9.Account;
+import com.fsck.k9.Clock;
+import com.fsck.k9.mail.ServerSettings;
+import com.fsck.k9.mail.TransportUris;
+import timber.log.Timber;
+
+
+/**
+ * Drains the outboxes of multiple accounts concurrently.
+ * <p>
+ * There is never more than one delivery running for an account, so the messages of an account are still sent in
+ * the order they appear in its outbox. Requests for an account that is already being delivered are coalesced into
+ * a single follow-up run. No more than {@link #MAX_CONCURRENT_DELIVERIES} accounts are sent from at the same time.
+ * </p><p>
+ * When a delivery fails with a transient error, further deliveries through the same outgoing server are postponed
+ * using exponential backoff. That way a server that is down doesn't delay the other accounts, and it isn't hammered
+ * by every account that uses it either.
+ * </p>
+ */
+class OutboxDeliveryScheduler {
+    static final int MAX_CONCURRENT_DELIVERIES = 3;
+    static final long INITIAL_BACKOFF_MILLIS = 30 * 1000L;
+    static final long MAX_BACKOFF_MILLIS = 30 * 60 * 1000L;
+    static final long UNAVAILABLE_ACCOUNT_RETRY_DELAY_MILLIS = 30 * 1000L;
+
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+
+    private final ScheduledExecutorService executor;
+    private final DeliveryHandler deliveryHandler;
+    private final Clock clock;
+    private final Map<String, AccountState> accountStates = new HashMap<>();
+    private final Map<String, ServerBackoff> serverBackoffs = new HashMap<>();
+
+
+    static OutboxDeliveryScheduler newInstance(DeliveryHandler deliveryHandler) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(MAX_CONCURRENT_DELIVERIES,
+                new DeliveryThreadFactory());
+        executor.setKeepAliveTime(IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+
+        return new OutboxDeliveryScheduler(executor, deliveryHandler, Clock.INSTANCE);
+    }
+
+    @VisibleForTesting
+    OutboxDeliveryScheduler(ScheduledExecutorService executor, DeliveryHandler deliveryHandler, Clock clock) {
+        this.executor = executor;
+        this.deliveryHandler = deliveryHandler;
+        this.clock = clock;
+    }
+
+    /**
+     * Requests a delivery of the outbox of the given account.
+     * <p>
+     * If a delivery for this account is already waiting to be run this is a no-op. If one is currently running
+     * another run is started once it has finished.
+     * </p>
+     */
+    public synchronized void schedule(Account account) {
+        AccountState state = getAccountState(account);
+        if (state.running) {
+            state.rerunRequested = true;
+            return;
+        }
+
+        if (state.scheduled) {
+            return;
+        }
+
+        long delay = getRemainingBackoff(getServerKey(account));
+        scheduleLocked(account, state, delay);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @VisibleForTesting
+    synchronized long getRemainingBackoff(String serverKey) {
+        ServerBackoff backoff = serverBackoffs.get(serverKey);
+        if (backoff == null) {
+            return 0;
+        }
+
+        return Math.max(0, backoff.nextAttemptTime - clock.getTime());
+    }
+
+    private void scheduleLocked(Account account, AccountState state, long delayMillis) {
+        state.scheduled = true;
+        if (delayMillis > 0) {
+            Timber.i("Postponing delivery of outbox for account %s by %d ms", account.getDescription(), delayMillis);
+        }
+
+        executor.schedule(new DeliveryTask(account), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runDelivery(Account account) {
+        AccountState state;
+        synchronized (this) {
+            state = getAccountState(account);
+            state.scheduled = false;
+            state.running = true;
+        }
+
+        DeliveryResult result;
+        try {
+            result = deliveryHandler.deliver(account);
+        } catch (RuntimeException e) {
+            Timber.e(e, "Error delivering outbox for account %s", account.getDescription());
+            result = DeliveryResult.TRANSIENT_FAILURE;
+        }
+
+        synchronized (this) {
+            state.running = false;
+
+            String serverKey = getServerKey(account);
+            switch (result) {
+                case DELIVERED: {
+                    serverBackoffs.remove(serverKey);
+                    break;
+                }
+                case TRANSIENT_FAILURE: {
+                    increaseBackoff(serverKey);
+                    break;
+                }
+                case ACCOUNT_UNAVAILABLE: {
+                    state.rerunRequested = false;
+                    scheduleLocked(account, state, UNAVAILABLE_ACCOUNT_RETRY_DELAY_MILLIS);
+                    return;
+                }
+            }
+
+            if (state.rerunRequested) {
+                state.rerunRequested = false;
+                scheduleLocked(account, state, getRemainingBackoff(serverKey));
+            }
+        }
+    }
+
+    private void increaseBackoff(String serverKey) {
+        ServerBackoff backoff = serverBackoffs.get(serverKey);
+        if (backoff == null) {
+            backoff = new ServerBackoff();
+            backoff.delay = INITIAL_BACKOFF_MILLIS;
+            serverBackoffs.put(serverKey, backoff);
+        } else {
+            backoff.delay = Math.min(backoff.delay * 2, MAX_BACKOFF_MILLIS);
+        }
+
+        backoff.nextAttemptTime = clock.getTime() + backoff.delay;
+        Timber.i("Backing off from %s for %d ms", serverKey, backoff.delay);
+    }
+
+    private AccountState getAccountState(Account account) {
+        String accountUuid = account.getUuid();
+        AccountState state = accountStates.get(accountUuid);
+        if (state == null) {
+            state = new AccountState();
+            accountStates.put(accountUuid, state);
+        }
+
+        return state;
+    }
+
+    @VisibleForTesting
+    static String getServerKey(Account account) {
+        String transportUri = account.getTransportUri();
+        try {
+            ServerSettings serverSettings = TransportUris.decodeTransportUri(transportUri);
+            return serverSettings.host + ":" + serverSettings.port;
+        } catch (Exception e) {
+            // Don't share backoff state with other accounts if we can't tell which server is used
+            return account.getUuid();
+        }
+    }
+
+
+    enum DeliveryResult {
+        /** All messages were sent, or failed permanently. */
+        DELIVERED,
+        /** Sending failed in a way that might go away when trying again later, e.g. a network error. */
+        TRANSIENT_FAILURE,
+        /** The account's storage isn't available right now. */
+        ACCOUNT_UNAVAILABLE
+    }
+
+    interface DeliveryHandler {
+        DeliveryResult deliver(Account account);
+    }
+
+    private class DeliveryTask implements Runnable {
+        private final Account account;
+
+        DeliveryTask(Account account) {
+            this.account = account;
+        }
+
+        @Override
+        public void run() {
+            runDelivery(account);
+        }
+    }
+
+    private static class AccountState {
+        boolean scheduled;
+        boolean running;
+        boolean rerunRequested;
+    }
+
+    private static class ServerBackoff {
+        long delay;
+        long nextAttemptTime;
+    }
+
+    private static class DeliveryThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            });
+            thread.setName("OutboxDelivery-" + threadNumber.getAndIncrement());
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.fsck.k9.controller;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fsck.k9.Account;
+
+
+/**
+ * Progress of all outbox deliveries that are currently running.
+ * <p>
+ * Deliveries of different accounts run concurrently (see {@link OutboxDeliveryScheduler}) but all report to a single
+ * instance of this class. The observer is notified of every change, so the listeners of a delivery and the sending
+ * notifications are updated from the same numbers.
+ * </p>
+ */
+class SendingProgress {
+    private final ProgressObserver observer;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+
+    SendingProgress(ProgressObserver observer) {
+        this.observer = observer;
+    }
+
+    public void start(Account account, Set<MessagingListener> listeners, int totalCount) {
+        synchronized (this) {
+            Entry entry = new Entry();
+            entry.listeners = listeners;
+            entry.totalCount = totalCount;
+            entries.put(account.getUuid(), entry);
+        }
+
+        observer.onSendingProgress(account, listeners, 0, totalCount);
+    }
+
+    public void messageSent(Account account) {
+        Set<MessagingListener> listeners;
+        int sentCount;
+        int totalCount;
+        synchronized (this) {
+            Entry entry = entries.get(account.getUuid());
+            if (entry == null) {
+                return;
+            }
+
+            entry.sentCount++;
+            listeners = entry.listeners;
+            sentCount = entry.sentCount;
+            totalCount = entry.totalCount;
+        }
+
+        observer.onSendingProgress(account, listeners, sentCount, totalCount);
+    }
+
+    public void finish(Account account) {
+        synchronized (this) {
+            if (entries.remove(account.getUuid()) == null) {
+                return;
+            }
+        }
+
+        observer.onSendingFinished(account);
+    }
+
+
+    interface ProgressObserver {
+        void onSendingProgress(Account account, Set<MessagingListener> listeners, int sentCount, int totalCount);
+
+        void onSendingFinished(Account account);
+    }
+
+    private static class Entry {
+        Set<MessagingListener> listeners;
+        int sentCount;
+        int totalCount;
+    }
+}
@@ -145,9 +145,9 @@ public class MessageListAdapter extends CursorAdapter {
         String fromList = cursor.getString(SENDER_LIST_COLUMN);
         String toList = cursor.getString(TO_LIST_COLUMN);
         String ccList = cursor.getString(CC_LIST_COLUMN);
-        Address[] fromAddrs = Address.unpack(fromList);
-        Address[] toAddrs = Address.unpack(toList);
-        Address[] ccAddrs = Address.unpack(ccList);
+        Address[] fromAddrs = Address.unpackInterned(fromList);
+        Address[] toAddrs = Address.unpackInterned(toList);
+        Address[] ccAddrs = Address.unpackInterned(ccList);
 
         boolean fromMe = fragment.messageHelper.toMe(account, fromAddrs);
         boolean toMe = fragment.messageHelper.toMe(account, toAddrs);
@@ -171,6 +171,7 @@ public class MessageListFragment extends Fragment implements OnItemClickListener
     private Account account;
     private String[] accountUuids;
     private int unreadMessageCount = 0;
+    private int fulltextBacklogCount = 0;
 
     private Cursor[] cursors;
     private boolean[] cursorValid;
@@ -337,7 +338,12 @@ public class MessageListFragment extends Fragment implements OnItemClickListener
                 fragmentListener.setMessageListTitle(getString(R.string.search_results));
             }
 
-            fragmentListener.setMessageListSubTitle(null);
+            if (fulltextBacklogCount > 0) {
+                fragmentListener.setMessageListSubTitle(getResources().getQuantityString(
+                        R.plurals.search_results_fulltext_backlog, fulltextBacklogCount, fulltextBacklogCount));
+            } else {
+                fragmentListener.setMessageListSubTitle(null);
+            }
         }
 
         // set unread count
@@ -2700,6 +2706,8 @@ public class MessageListFragment extends Fragment implements OnItemClickListener
             }
         }
 
+        updateFulltextBacklogCount();
+
         cleanupSelected(cursor);
         updateContextMenu(cursor);
 
@@ -2717,6 +2725,20 @@ public class MessageListFragment extends Fragment implements OnItemClickListener
         }
     }
 
+    private void updateFulltextBacklogCount() {
+        int backlogCount = 0;
+        for (Cursor cursor : cursors) {
+            if (cursor != null) {
+                backlogCount += cursor.getExtras().getInt(EmailProvider.EXTRA_FULLTEXT_BACKLOG);
+            }
+        }
+
+        if (backlogCount != fulltextBacklogCount) {
+            fulltextBacklogCount = backlogCount;
+            updateTitle();
+        }
+    }
+
     private void updateMoreMessagesOfCurrentFolder() {
         if (folderName != null) {
             try {
@@ -10,9 +10,9 @@ import com.fsck.k9.Account;
 import com.fsck.k9.Preferences;
 import com.fsck.k9.activity.MessageReference;
 import com.fsck.k9.helper.Utility;
-import com.fsck.k9.mail.Address;
 import com.fsck.k9.mail.Folder;
 import com.fsck.k9.mail.MessagingException;
+import com.fsck.k9.mail.PackedAddressReader;
 import com.fsck.k9.mailstore.LocalFolder;
 import com.fsck.k9.mailstore.LocalStore;
 import timber.log.Timber;
@@ -43,8 +43,8 @@ public class MlfUtils {
 
     static String getSenderAddressFromCursor(Cursor cursor) {
         String fromList = cursor.getString(SENDER_LIST_COLUMN);
-        Address[] fromAddrs = Address.unpack(fromList);
-        return (fromAddrs.length > 0) ? fromAddrs[0].getAddress() : null;
+        PackedAddressReader reader = new PackedAddressReader(fromList);
+        return reader.next() ? reader.getAddress() : null;
     }
 
     static String buildSubject(String subjectFromCursor, String emptySubject, int threadCount) {
@@ -0,0 +1,25 @@
+package com.fsck.k9.mailstore;
+
+
+/**
+ * The header an address was taken from, as stored in the {@code role} column of the {@code message_addresses} table.
+ */
+public enum DatabaseAddressRole {
+    FROM(0),
+    TO(1),
+    CC(2),
+    BCC(3),
+    REPLY_TO(4);
+
+
+    private final int databaseValue;
+
+
+    DatabaseAddressRole(int databaseValue) {
+        this.databaseValue = databaseValue;
+    }
+
+    public int getDatabaseValue() {
+        return databaseValue;
+    }
+}
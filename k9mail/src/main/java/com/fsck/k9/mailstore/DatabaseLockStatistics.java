@@ -0,0 +1,92 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Records how long {@link LockableDatabase#execute(boolean, LockableDatabase.DbCallback)} callers wait for the
+ * database.
+ * <p>
+ * For transactions the wait is the time until the transaction has been started, i.e. until the database lock and
+ * SQLite's write lock have been acquired. Queries outside of a transaction wait for a connection inside SQLite, which
+ * can't be observed separately, so their complete duration is recorded instead. Without write-ahead logging that
+ * duration includes waiting for any write transaction on another thread to finish.
+ * </p>
+ */
+public class DatabaseLockStatistics {
+    private final Counter transactionWaits = new Counter();
+    private final Counter queryDurations = new Counter();
+
+
+    void recordTransactionWait(long nanos) {
+        transactionWaits.record(nanos);
+    }
+
+    void recordQueryDuration(long nanos) {
+        queryDurations.record(nanos);
+    }
+
+    public long getTransactionCount() {
+        return transactionWaits.count.get();
+    }
+
+    public long getTotalTransactionWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(transactionWaits.total.get());
+    }
+
+    public long getMaxTransactionWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(transactionWaits.max.get());
+    }
+
+    public long getQueryCount() {
+        return queryDurations.count.get();
+    }
+
+    public long getTotalQueryMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(queryDurations.total.get());
+    }
+
+    public long getMaxQueryMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(queryDurations.max.get());
+    }
+
+    public void reset() {
+        transactionWaits.reset();
+        queryDurations.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "transactions: %d (wait total %d ms, max %d ms), " +
+                        "queries: %d (total %d ms, max %d ms)",
+                getTransactionCount(), getTotalTransactionWaitMillis(), getMaxTransactionWaitMillis(),
+                getQueryCount(), getTotalQueryMillis(), getMaxQueryMillis());
+    }
+
+
+    private static class Counter {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+
+            long currentMax;
+            do {
+                currentMax = max.get();
+            } while (nanos > currentMax && !max.compareAndSet(currentMax, nanos));
+        }
+
+        void reset() {
+            count.set(0);
+            total.set(0);
+            max.set(0);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.database.sqlite.SQLiteDatabase;
+import timber.log.Timber;
+
+import com.fsck.k9.mail.MessagingException;
+import com.fsck.k9.mailstore.LockableDatabase.DbCallback;
+import com.fsck.k9.mailstore.LockableDatabase.WrappedException;
+
+
+/**
+ * Executes writes to a {@link LockableDatabase} on a single writer thread and commits them in groups.
+ * <p>
+ * Writes submitted within {@link #MAX_LATENCY_MILLIS} of the oldest waiting write share one transaction (up to
+ * {@link #MAX_BATCH_SIZE} of them), so they cost one commit instead of one each. The future returned by
+ * {@link #submit(DbCallback)} completes once the transaction containing the write has been committed. If a group
+ * fails, its writes are retried in transactions of their own, so a single failing write only fails its own future.
+ * </p><p>
+ * Writes are executed in the order they were submitted. Other accesses to the database don't wait for them, so a
+ * caller that reads back what it wrote has to wait for the write's future first (see
+ * {@link LockableDatabase#executeQueued(DbCallback)}). {@link LockableDatabase} calls {@link #awaitWrites()} before
+ * the database is closed, moved or deleted, so nothing is left in the queue then. A write may be executed again
+ * after its group was rolled back, so it must not depend on side effects of an earlier attempt.
+ * </p>
+ */
+class DatabaseWriteQueue {
+    static final int MAX_BATCH_SIZE = 100;
+    static final long MAX_LATENCY_MILLIS = 50;
+
+    /**
+     * How long the writer thread waits for new writes before it exits. It's restarted by the next write.
+     */
+    static final long IDLE_TIMEOUT_MILLIS = 30 * 1000;
+
+    private static final DbCallback<Void> NO_OP = new DbCallback<Void>() {
+        @Override
+        public Void doDbWork(SQLiteDatabase db) {
+            return null;
+        }
+    };
+
+
+    private final LockableDatabase database;
+    private final String name;
+
+    private final ArrayDeque<PendingWrite<?>> pending = new ArrayDeque<>();
+    /** Writes that have been submitted but not committed or failed yet, including the batch being written. */
+    private final AtomicInteger unfinishedCount = new AtomicInteger();
+    private boolean flushRequested;
+    private volatile Thread writerThread;
+
+
+    DatabaseWriteQueue(LockableDatabase database, String name) {
+        this.database = database;
+        this.name = name;
+    }
+
+    <T> Future<T> submit(DbCallback<T> callback) {
+        PendingWrite<T> write = new PendingWrite<>(callback, System.nanoTime());
+        unfinishedCount.incrementAndGet();
+
+        synchronized (pending) {
+            pending.add(write);
+            if (pending.size() == 1 || pending.size() == MAX_BATCH_SIZE) {
+                pending.notifyAll();
+            }
+
+            startWriterThreadIfNecessary();
+        }
+
+        return write;
+    }
+
+    /**
+     * Commits the queued writes without waiting for the latency bound to expire.
+     *
+     * @return A future that completes once all writes submitted before this call have been committed.
+     */
+    Future<Void> flush() {
+        Future<Void> future = submit(NO_OP);
+
+        synchronized (pending) {
+            flushRequested = true;
+            pending.notifyAll();
+        }
+
+        return future;
+    }
+
+    /**
+     * Waits until all writes submitted before this call have been committed or have failed. Returns right away if
+     * there are none, or when called by the writer thread itself.
+     */
+    void awaitWrites() {
+        if (unfinishedCount.get() == 0 || Thread.currentThread() == writerThread) {
+            return;
+        }
+
+        try {
+            flush().get();
+        } catch (InterruptedException e) {
+            Timber.w("DatabaseWriteQueue: Interrupted while waiting for writes to %s", name);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // flush() only waits for a write that does nothing, the failures of other writes are their own
+            Timber.w(e, "DatabaseWriteQueue: Error while waiting for writes to %s", name);
+        }
+    }
+
+    int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    private void startWriterThreadIfNecessary() {
+        if (writerThread != null) {
+            return;
+        }
+
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processWrites();
+            }
+        }, "DatabaseWriter-" + name);
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
+    }
+
+    private void processWrites() {
+        List<PendingWrite<?>> batch;
+        while ((batch = takeBatch()) != null) {
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * Waits until the oldest queued write has waited {@link #MAX_LATENCY_MILLIS}, the queue holds a full batch or a
+     * flush was requested, then removes the next batch from the queue.
+     *
+     * @return The batch, or {@code null} if the writer thread has been idle for {@link #IDLE_TIMEOUT_MILLIS} and exits.
+     */
+    private List<PendingWrite<?>> takeBatch() {
+        synchronized (pending) {
+            try {
+                long idleDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS);
+                long remaining;
+                while (pending.isEmpty() && (remaining = idleDeadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+                }
+
+                if (pending.isEmpty()) {
+                    writerThread = null;
+                    return null;
+                }
+
+                long deadline = pending.peekFirst().submitTime + TimeUnit.MILLISECONDS.toNanos(MAX_LATENCY_MILLIS);
+                while (pending.size() < MAX_BATCH_SIZE && !flushRequested &&
+                        (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+                }
+            } catch (InterruptedException e) {
+                Timber.w("DatabaseWriteQueue: Writer thread of %s was interrupted", name);
+                Thread.currentThread().interrupt();
+
+                if (pending.isEmpty()) {
+                    writerThread = null;
+                    return null;
+                }
+            }
+
+            int count = Math.min(pending.size(), MAX_BATCH_SIZE);
+            List<PendingWrite<?>> batch = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                batch.add(pending.poll());
+            }
+
+            if (pending.isEmpty()) {
+                flushRequested = false;
+            }
+
+            return batch;
+        }
+    }
+
+    private void writeBatch(final List<PendingWrite<?>> batch) {
+        try {
+            database.execute(true, new DbCallback<Void>() {
+                @Override
+                public Void doDbWork(SQLiteDatabase db) throws WrappedException, MessagingException {
+                    for (PendingWrite<?> write : batch) {
+                        write.execute(db);
+                    }
+                    return null;
+                }
+            });
+        } catch (Throwable e) {
+            // Errors too, like FutureTask, so the writer thread survives and nobody waits forever
+            if (batch.size() == 1) {
+                batch.get(0).fail(e);
+                unfinishedCount.decrementAndGet();
+                return;
+            }
+
+            Timber.w(e, "DatabaseWriteQueue: Group of %d writes to %s failed, retrying them one by one",
+                    batch.size(), name);
+            for (PendingWrite<?> write : batch) {
+                writeBatch(Collections.<PendingWrite<?>>singletonList(write));
+            }
+            return;
+        }
+
+        for (PendingWrite<?> write : batch) {
+            write.complete();
+            unfinishedCount.decrementAndGet();
+        }
+    }
+
+
+    private static class PendingWrite<T> implements Future<T> {
+        final long submitTime;
+        private final DbCallback<T> callback;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private T result;
+        private Throwable exception;
+
+
+        PendingWrite(DbCallback<T> callback, long submitTime) {
+            this.callback = callback;
+            this.submitTime = submitTime;
+        }
+
+        void execute(SQLiteDatabase db) throws MessagingException {
+            result = callback.doDbWork(db);
+        }
+
+        void complete() {
+            done.countDown();
+        }
+
+        void fail(Throwable e) {
+            result = null;
+            exception = e instanceof WrappedException && e.getCause() != null ? e.getCause() : e;
+            Timber.w(exception, "DatabaseWriteQueue: Write failed");
+            done.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            done.await();
+            return getResult();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private T getResult() throws ExecutionException {
+            if (exception != null) {
+                throw new ExecutionException(exception);
+            }
+            return result;
+        }
+    }
+}
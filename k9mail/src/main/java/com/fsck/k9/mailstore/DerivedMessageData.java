@@ -0,0 +1,61 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fsck.k9.mail.Message;
+import com.fsck.k9.mail.MessagingException;
+import com.fsck.k9.message.extractors.AttachmentCounter;
+import com.fsck.k9.message.extractors.MessagePreviewCreator;
+import com.fsck.k9.message.extractors.PreviewResult;
+
+
+/**
+ * Data derived from a message's content that is stored along with the message: the preview and the number of
+ * attachments.
+ * <p>
+ * Creating it means decoding text parts and converting HTML to text, so it's done before the transaction that stores
+ * the messages is started. The text for the fulltext index is created later by
+ * {@link LocalStore#indexFulltextBacklog(int)}.
+ * </p>
+ */
+class DerivedMessageData {
+    final PreviewResult previewResult;
+    final int attachmentCount;
+
+
+    private DerivedMessageData(PreviewResult previewResult, int attachmentCount) {
+        this.previewResult = previewResult;
+        this.attachmentCount = attachmentCount;
+    }
+
+    static DerivedMessageData create(LocalStore localStore, Message message) throws MessagingException {
+        try {
+            MessagePreviewCreator previewCreator = localStore.getMessagePreviewCreator();
+            PreviewResult previewResult = previewCreator.createPreview(message);
+
+            AttachmentCounter attachmentCounter = localStore.getAttachmentCounter();
+            int attachmentCount = attachmentCounter.getAttachmentCount(message);
+
+            return new DerivedMessageData(previewResult, attachmentCount);
+        } catch (Exception e) {
+            throw new MessagingException("Error appending message: " + message.getSubject(), e);
+        }
+    }
+
+    /**
+     * Creates the derived data of all messages.
+     *
+     * @return The data in the order of {@code messages}.
+     */
+    static List<DerivedMessageData> createAll(LocalStore localStore, List<? extends Message> messages)
+            throws MessagingException {
+        List<DerivedMessageData> result = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            result.add(create(localStore, message));
+        }
+
+        return result;
+    }
+}
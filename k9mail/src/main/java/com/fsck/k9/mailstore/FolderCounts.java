@@ -0,0 +1,65 @@
+package com.fsck.k9.mailstore;
+
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+
+/**
+ * The {@code message_count}, {@code unread_count} and {@code flagged_count} columns of the {@code folders} table.
+ * <p>
+ * They're maintained by triggers on the {@code messages} table (see {@link StoreSchemaDefinition}), so the counts
+ * change in the same transaction as the messages. Only messages that are neither deleted nor empty placeholders are
+ * counted.
+ * </p>
+ */
+class FolderCounts {
+    static final String MESSAGE_COUNT = "message_count";
+    static final String UNREAD_COUNT = "unread_count";
+    static final String FLAGGED_COUNT = "flagged_count";
+
+    private static final String COUNTED_MESSAGES = "FROM messages " +
+            "WHERE folder_id = folders.id AND empty = 0 AND deleted = 0";
+
+    private static final String ACTUAL_MESSAGE_COUNT = "(SELECT COUNT(id) " + COUNTED_MESSAGES + ")";
+    private static final String ACTUAL_UNREAD_COUNT = "(SELECT COUNT(id) " + COUNTED_MESSAGES + " AND read = 0)";
+    private static final String ACTUAL_FLAGGED_COUNT = "(SELECT COUNT(id) " + COUNTED_MESSAGES + " AND flagged = 1)";
+
+
+    private FolderCounts() {
+    }
+
+    static int read(SQLiteDatabase db, long folderId, String column) {
+        Cursor cursor = db.query("folders", new String[] { column }, "id = ?",
+                new String[] { Long.toString(folderId) }, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Compares the stored counts with the ones computed from the {@code messages} table.
+     *
+     * @return The number of folders with wrong counts.
+     */
+    static int countMismatches(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(id) FROM folders WHERE " +
+                "COALESCE(message_count, 0) != " + ACTUAL_MESSAGE_COUNT + " OR " +
+                "COALESCE(unread_count, 0) != " + ACTUAL_UNREAD_COUNT + " OR " +
+                "COALESCE(flagged_count, 0) != " + ACTUAL_FLAGGED_COUNT, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static void recount(SQLiteDatabase db) {
+        db.execSQL("UPDATE folders SET " +
+                "message_count = " + ACTUAL_MESSAGE_COUNT + ", " +
+                "unread_count = " + ACTUAL_UNREAD_COUNT + ", " +
+                "flagged_count = " + ACTUAL_FLAGGED_COUNT);
+    }
+}
@@ -0,0 +1,94 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.fsck.k9.mail.Message;
+
+
+/**
+ * Messages whose text still has to be added to the {@link MessageSearchIndex}.
+ * <p>
+ * Creating the text for the index means decoding all text parts and converting HTML to text, so it isn't done while
+ * messages are stored. Instead, {@link MessageInsertStatements#queueFulltextIndexing(long)} adds the message to the
+ * {@code fulltext_backlog} table and {@link LocalStore#indexFulltextBacklog(int)} completes the index entries later.
+ * Messages are removed from the backlog when they're deleted.
+ * </p>
+ */
+class FulltextBacklog {
+    private FulltextBacklog() {
+    }
+
+    static int count(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(id) FROM fulltext_backlog", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns up to {@code batchSize} entries, the most recently queued first.
+     */
+    static List<Entry> readBatch(SQLiteDatabase db, int batchSize) {
+        Cursor cursor = db.rawQuery("SELECT b.id, b.message_id, (m.empty = 0 AND m.deleted = 0) " +
+                "FROM fulltext_backlog b " +
+                "LEFT JOIN messages m ON (m.id = b.message_id) " +
+                "ORDER BY b.id DESC LIMIT " + batchSize, null);
+        try {
+            List<Entry> entries = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                entries.add(new Entry(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2) == 1));
+            }
+            return entries;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes an entry from the backlog and updates the message's entry in the {@link MessageSearchIndex}. Does nothing
+     * if the message has been queued again or deleted since the entry was read.
+     *
+     * @param message The message as loaded by the indexer, or {@code null} if it can't be indexed.
+     */
+    static void complete(SQLiteDatabase db, Entry entry, Message message, String fulltext) {
+        if (!remove(db, entry)) {
+            return;
+        }
+
+        if (message == null) {
+            MessageSearchIndex.remove(db, entry.messageId);
+        } else {
+            MessageSearchIndex.put(db, entry.messageId, message, fulltext);
+        }
+    }
+
+    /**
+     * Removes an entry from the backlog without changing the message's entry in the {@link MessageSearchIndex}.
+     *
+     * @return {@code false} if the entry had already been removed.
+     */
+    static boolean remove(SQLiteDatabase db, Entry entry) {
+        return db.delete("fulltext_backlog", "id = ?", new String[] { Long.toString(entry.id) }) > 0;
+    }
+
+
+    static class Entry {
+        final long id;
+        final long messageId;
+        final boolean indexable;
+
+
+        Entry(long id, long messageId, boolean indexable) {
+            this.id = id;
+            this.messageId = messageId;
+            this.indexable = indexable;
+        }
+    }
+}
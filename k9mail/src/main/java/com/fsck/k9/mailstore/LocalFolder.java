@@ -47,6 +47,7 @@ import com.fsck.k9.mail.Multipart;
 import com.fsck.k9.mail.Part;
 import com.fsck.k9.mail.filter.CountingOutputStream;
 import com.fsck.k9.mail.internet.BinaryTempFileBody;
+import com.fsck.k9.mail.internet.MimeBodyPart;
 import com.fsck.k9.mail.internet.MimeHeader;
 import com.fsck.k9.mail.internet.MimeMessage;
 import com.fsck.k9.mail.internet.MimeMultipart;
@@ -55,10 +56,7 @@ import com.fsck.k9.mail.internet.SizeAware;
 import com.fsck.k9.mail.message.MessageHeaderParser;
 import com.fsck.k9.mailstore.LockableDatabase.DbCallback;
 import com.fsck.k9.mailstore.LockableDatabase.WrappedException;
-import com.fsck.k9.message.extractors.AttachmentCounter;
 import com.fsck.k9.message.extractors.AttachmentInfoExtractor;
-import com.fsck.k9.message.extractors.MessageFulltextCreator;
-import com.fsck.k9.message.extractors.MessagePreviewCreator;
 import com.fsck.k9.message.extractors.PreviewResult;
 import com.fsck.k9.message.extractors.PreviewResult.PreviewType;
 import com.fsck.k9.preferences.Storage;
@@ -149,6 +147,7 @@ public class LocalFolder extends Folder<LocalMessage> {
             close();
         }
 
+        localStore.awaitFolderWrites();
         try {
             this.localStore.getDatabase().execute(false, new DbCallback<Void>() {
                 @Override
@@ -282,93 +281,30 @@ public class LocalFolder extends Folder<LocalMessage> {
 
     @Override
     public int getMessageCount() throws MessagingException {
-        try {
-            return this.localStore.getDatabase().execute(false, new DbCallback<Integer>() {
-                @Override
-                public Integer doDbWork(final SQLiteDatabase db) throws WrappedException {
-                    try {
-                        open(OPEN_MODE_RW);
-                    } catch (MessagingException e) {
-                        throw new WrappedException(e);
-                    }
-                    Cursor cursor = null;
-                    try {
-                        cursor = db.rawQuery(
-                                "SELECT COUNT(id) FROM messages " +
-                                "WHERE empty = 0 AND deleted = 0 and folder_id = ?",
-                                new String[] { Long.toString(databaseId) });
-                        cursor.moveToFirst();
-                        return cursor.getInt(0);   //messagecount
-                    } finally {
-                        Utility.closeQuietly(cursor);
-                    }
-                }
-            });
-        } catch (WrappedException e) {
-            throw (MessagingException) e.getCause();
-        }
+        return getFolderCount(FolderCounts.MESSAGE_COUNT);
     }
 
     @Override
     public int getUnreadMessageCount() throws MessagingException {
-        if (databaseId == -1) {
-            open(OPEN_MODE_RW);
-        }
-
-        try {
-            return this.localStore.getDatabase().execute(false, new DbCallback<Integer>() {
-                @Override
-                public Integer doDbWork(final SQLiteDatabase db) throws WrappedException {
-                    int unreadMessageCount = 0;
-                    Cursor cursor = db.query("messages", new String[] { "COUNT(id)" },
-                            "folder_id = ? AND empty = 0 AND deleted = 0 AND read=0",
-                            new String[] { Long.toString(databaseId) }, null, null, null);
-
-                    try {
-                        if (cursor.moveToFirst()) {
-                            unreadMessageCount = cursor.getInt(0);
-                        }
-                    } finally {
-                        cursor.close();
-                    }
-
-                    return unreadMessageCount;
-                }
-            });
-        } catch (WrappedException e) {
-            throw(MessagingException) e.getCause();
-        }
+        return getFolderCount(FolderCounts.UNREAD_COUNT);
     }
 
     @Override
     public int getFlaggedMessageCount() throws MessagingException {
+        return getFolderCount(FolderCounts.FLAGGED_COUNT);
+    }
+
+    private int getFolderCount(final String column) throws MessagingException {
         if (databaseId == -1) {
             open(OPEN_MODE_RW);
         }
 
-        try {
-            return this.localStore.getDatabase().execute(false, new DbCallback<Integer>() {
-                @Override
-                public Integer doDbWork(final SQLiteDatabase db) throws WrappedException {
-                    int flaggedMessageCount = 0;
-                    Cursor cursor = db.query("messages", new String[] { "COUNT(id)" },
-                            "folder_id = ? AND empty = 0 AND deleted = 0 AND flagged = 1",
-                            new String[] { Long.toString(databaseId) }, null, null, null);
-
-                    try {
-                        if (cursor.moveToFirst()) {
-                            flaggedMessageCount = cursor.getInt(0);
-                        }
-                    } finally {
-                        cursor.close();
-                    }
-
-                    return flaggedMessageCount;
-                }
-            });
-        } catch (WrappedException e) {
-            throw(MessagingException) e.getCause();
-        }
+        return this.localStore.getDatabase().execute(false, new DbCallback<Integer>() {
+            @Override
+            public Integer doDbWork(final SQLiteDatabase db) {
+                return FolderCounts.read(db, databaseId, column);
+            }
+        });
     }
 
     @Override
@@ -379,7 +315,7 @@ public class LocalFolder extends Folder<LocalMessage> {
         } catch (MessagingException e) {
             throw new WrappedException(e);
         }
-        updateFolderColumn("last_updated", lastChecked);
+        queueFolderColumnUpdate("last_updated", lastChecked);
     }
 
     @Override
@@ -390,7 +326,7 @@ public class LocalFolder extends Folder<LocalMessage> {
         } catch (MessagingException e) {
             throw new WrappedException(e);
         }
-        updateFolderColumn("last_pushed", lastChecked);
+        queueFolderColumnUpdate("last_pushed", lastChecked);
     }
 
     public int getVisibleLimit() throws MessagingException {
@@ -460,31 +396,43 @@ public class LocalFolder extends Folder<LocalMessage> {
 
     @Override
     public void setStatus(final String status) throws MessagingException {
-        updateFolderColumn("status", status);
+        queueFolderColumnUpdate("status", status);
     }
 
     public void setPushState(final String pushState) throws MessagingException {
         this.pushState = pushState;
-        updateFolderColumn("push_state", pushState);
+        queueFolderColumnUpdate("push_state", pushState);
     }
 
-    private void updateFolderColumn(final String column, final Object value) throws MessagingException {
-        try {
-            this.localStore.getDatabase().execute(false, new DbCallback<Void>() {
-                @Override
-                public Void doDbWork(final SQLiteDatabase db) throws WrappedException {
-                    try {
-                        open(OPEN_MODE_RW);
-                    } catch (MessagingException e) {
-                        throw new WrappedException(e);
-                    }
-                    db.execSQL("UPDATE folders SET " + column + " = ? WHERE id = ?", new Object[] { value, databaseId });
-                    return null;
-                }
-            });
-        } catch (WrappedException e) {
-            throw(MessagingException) e.getCause();
-        }
+    /**
+     * Updates a column of this folder's row and waits for the write. It goes through the write queue, so it's ordered
+     * with the updates queued by {@link #queueFolderColumnUpdate(String, Object)}.
+     */
+    private void updateFolderColumn(String column, Object value) throws MessagingException {
+        open(OPEN_MODE_RW);
+        this.localStore.getDatabase().executeQueued(createFolderColumnUpdate(column, value));
+    }
+
+    /**
+     * Queues the update of a column that synchronization writes all the time, like the status or when the folder was
+     * last checked. It's committed together with other queued writes shortly after. Only reads of folder rows wait for
+     * it (see {@link LocalStore#awaitFolderWrites()}), so a folder opened afterwards sees the new value. A failure is
+     * logged by the write queue; the next synchronization writes the column again.
+     */
+    private void queueFolderColumnUpdate(String column, Object value) throws MessagingException {
+        open(OPEN_MODE_RW);
+        this.localStore.queueFolderWrite(createFolderColumnUpdate(column, value));
+    }
+
+    private DbCallback<Void> createFolderColumnUpdate(final String column, final Object value) {
+        final long folderId = databaseId;
+        return new DbCallback<Void>() {
+            @Override
+            public Void doDbWork(final SQLiteDatabase db) {
+                db.execSQL("UPDATE folders SET " + column + " = ? WHERE id = ?", new Object[] { value, folderId });
+                return null;
+            }
+        };
     }
 
     public String getPushState() {
@@ -561,7 +509,7 @@ public class LocalFolder extends Folder<LocalMessage> {
 
     public void setMoreMessages(MoreMessages moreMessages) throws MessagingException {
         this.moreMessages = moreMessages;
-        updateFolderColumn("more_messages", moreMessages.getDatabaseName());
+        queueFolderColumnUpdate("more_messages", moreMessages.getDatabaseName());
     }
 
     private String getPrefId(String name) {
@@ -808,7 +756,14 @@ public class LocalFolder extends Folder<LocalMessage> {
     }
 
     private void parseHeaderBytes(Part part, byte[] header) throws MessagingException {
-        MessageHeaderParser.parse(part, new ByteArrayInputStream(header));
+        // The header was written by getHeaderBytes(), so it can be handed over as is and parsed on first access
+        if (part instanceof MimeBodyPart) {
+            ((MimeBodyPart) part).setRawHeader(header);
+        } else if (part instanceof MimeMessage) {
+            ((MimeMessage) part).setRawHeader(header);
+        } else {
+            MessageHeaderParser.parse(part, new ByteArrayInputStream(header));
+        }
     }
 
     @Override
@@ -1076,7 +1031,7 @@ public class LocalFolder extends Folder<LocalMessage> {
                             uidMap.put(oldUID, newUid);
 
                             // Message threading in the target folder
-                            ThreadInfo threadInfo = lDestFolder.doMessageThreading(db, message);
+                            ThreadInfo threadInfo = lDestFolder.doMessageThreading(db, message, null);
 
                             /*
                              * "Move" the message into the new folder
@@ -1156,6 +1111,9 @@ public class LocalFolder extends Folder<LocalMessage> {
                         }
                     } catch (MessagingException e) {
                         throw new WrappedException(e);
+                    } finally {
+                        localStore.invalidateThreadIndex(databaseId);
+                        localStore.invalidateThreadIndex(lDestFolder.getDatabaseId());
                     }
                     return null;
                 }
@@ -1178,11 +1136,14 @@ public class LocalFolder extends Folder<LocalMessage> {
      * @return The local version of the message. Never <code>null</code>.
      */
     public LocalMessage storeSmallMessage(final Message message, final Runnable runnable) throws MessagingException {
-        return this.localStore.getDatabase().execute(true, new DbCallback<LocalMessage>() {
+        final List<Message> messages = Collections.singletonList(message);
+        final List<DerivedMessageData> derivedData = DerivedMessageData.createAll(localStore, messages);
+
+        return this.localStore.getDatabase().executeQueued(new DbCallback<LocalMessage>() {
             @Override
             public LocalMessage doDbWork(final SQLiteDatabase db) throws WrappedException, UnavailableStorageException {
                 try {
-                    appendMessages(Collections.singletonList(message));
+                    appendMessages(messages, derivedData, false);
                     final String uid = message.getUid();
                     final LocalMessage result = getMessage(uid);
                     runnable.run();
@@ -1232,37 +1193,18 @@ public class LocalFolder extends Folder<LocalMessage> {
         }
     }
 
-    private ThreadInfo getThreadInfo(SQLiteDatabase db, String messageId, boolean onlyEmpty) {
-        if (messageId == null) {
-            return null;
+    private ThreadInfo getThreadInfo(SQLiteDatabase db, MessageThreadIndex threadIndex, String messageId,
+            boolean onlyEmpty) {
+        if (threadIndex != null) {
+            return threadIndex.get(db, messageId, onlyEmpty);
         }
 
-        String sql = "SELECT t.id, t.message_id, t.root, t.parent " +
-                "FROM messages m " +
-                "LEFT JOIN threads t ON (t.message_id = m.id) " +
-                "WHERE m.folder_id = ? AND m.message_id = ? " +
-                ((onlyEmpty) ? "AND m.empty = 1 " : "") +
-                "ORDER BY m.id LIMIT 1";
-        String[] selectionArgs = { Long.toString(databaseId), messageId };
-        Cursor cursor = db.rawQuery(sql, selectionArgs);
-
-        if (cursor != null) {
-            try {
-                if (cursor.getCount() > 0) {
-                    cursor.moveToFirst();
-                    long threadId = cursor.getLong(0);
-                    long msgId = cursor.getLong(1);
-                    long rootId = (cursor.isNull(2)) ? -1 : cursor.getLong(2);
-                    long parentId = (cursor.isNull(3)) ? -1 : cursor.getLong(3);
-
-                    return new ThreadInfo(threadId, msgId, messageId, rootId, parentId);
-                }
-            } finally {
-                cursor.close();
-            }
+        if (messageId == null) {
+            return null;
         }
 
-        return null;
+        MessageThreadIndex.Entry entry = MessageThreadIndex.query(db, databaseId, messageId, onlyEmpty);
+        return entry != null ? entry.toThreadInfo(messageId) : null;
     }
 
     /**
@@ -1277,17 +1219,27 @@ public class LocalFolder extends Folder<LocalMessage> {
      * message, retrieve the appropriate local message instance first (if it already exists).
      * @return uidMap of srcUids -> destUids
      */
-    private Map<String, String> appendMessages(final List<? extends Message> messages, final boolean copy)
+    private Map<String, String> appendMessages(List<? extends Message> messages, boolean copy)
             throws MessagingException {
+        List<DerivedMessageData> derivedData = DerivedMessageData.createAll(localStore, messages);
+        return appendMessages(messages, derivedData, copy);
+    }
+
+    /**
+     * Stores the messages with data derived from them beforehand, so the transaction only covers the actual inserts.
+     */
+    private Map<String, String> appendMessages(final List<? extends Message> messages,
+            final List<DerivedMessageData> derivedData, final boolean copy) throws MessagingException {
         open(OPEN_MODE_RW);
         try {
             final Map<String, String> uidMap = new HashMap<>();
-            this.localStore.getDatabase().execute(true, new DbCallback<Void>() {
+            this.localStore.getDatabase().executeQueued(new DbCallback<Void>() {
                 @Override
                 public Void doDbWork(final SQLiteDatabase db) throws WrappedException, UnavailableStorageException {
+                    MessageInsertStatements statements = localStore.getMessageInsertStatements(db);
                     try {
-                        for (Message message : messages) {
-                            saveMessage(db, message, copy, uidMap);
+                        for (int i = 0, count = messages.size(); i < count; i++) {
+                            saveMessage(db, statements, messages.get(i), derivedData.get(i), copy, uidMap);
                         }
                     } catch (MessagingException e) {
                         throw new WrappedException(e);
@@ -1304,8 +1256,8 @@ public class LocalFolder extends Folder<LocalMessage> {
         }
     }
 
-    private void saveMessage(SQLiteDatabase db, Message message, boolean copy, Map<String, String> uidMap)
-            throws MessagingException {
+    private void saveMessage(SQLiteDatabase db, MessageInsertStatements statements, Message message,
+            DerivedMessageData derivedData, boolean copy, Map<String, String> uidMap) throws MessagingException {
         if (!(message instanceof MimeMessage)) {
             throw new Error("LocalStore can only store Messages that extend MimeMessage");
         }
@@ -1332,6 +1284,9 @@ public class LocalFolder extends Folder<LocalMessage> {
             if (oldMessage != null) {
                 oldMessageId = oldMessage.getDatabaseId();
 
+                // The Message-ID of the replaced message might change
+                localStore.invalidateThreadIndex(databaseId);
+
                 long oldRootMessagePartId = oldMessage.getMessagePartId();
                 deleteMessagePartsAndDataFromDisk(oldRootMessagePartId);
             }
@@ -1340,28 +1295,25 @@ public class LocalFolder extends Folder<LocalMessage> {
         long rootId = -1;
         long parentId = -1;
         long msgId;
+        boolean replacePlaceholder = false;
+        MessageThreadIndex threadIndex = localStore.getThreadIndex(databaseId);
 
         if (oldMessageId == -1) {
             // This is a new message. Do the message threading.
-            ThreadInfo threadInfo = doMessageThreading(db, message);
+            ThreadInfo threadInfo = doMessageThreading(db, message, threadIndex);
             oldMessageId = threadInfo.msgId;
             rootId = threadInfo.rootId;
             parentId = threadInfo.parentId;
+            replacePlaceholder = oldMessageId != -1;
         }
 
         try {
-            MessagePreviewCreator previewCreator = localStore.getMessagePreviewCreator();
-            PreviewResult previewResult = previewCreator.createPreview(message);
+            PreviewResult previewResult = derivedData.previewResult;
             PreviewType previewType = previewResult.getPreviewType();
             DatabasePreviewType databasePreviewType = DatabasePreviewType.fromPreviewType(previewType);
+            int attachmentCount = derivedData.attachmentCount;
 
-            MessageFulltextCreator fulltextCreator = localStore.getMessageFulltextCreator();
-            String fulltext = fulltextCreator.createFulltext(message);
-
-            AttachmentCounter attachmentCounter = localStore.getAttachmentCounter();
-            int attachmentCount = attachmentCounter.getAttachmentCount(message);
-
-            long rootMessagePartId = saveMessageParts(db, message);
+            long rootMessagePartId = saveMessageParts(statements, message);
 
             ContentValues cv = new ContentValues();
             cv.put("message_part_id", rootMessagePartId);
@@ -1400,38 +1352,31 @@ public class LocalFolder extends Folder<LocalMessage> {
             }
 
             if (oldMessageId == -1) {
-                msgId = db.insert("messages", "uid", cv);
+                msgId = statements.insertMessage(cv);
 
                 // Create entry in 'threads' table
-                cv.clear();
-                cv.put("message_id", msgId);
-
-                if (rootId != -1) {
-                    cv.put("root", rootId);
-                }
-                if (parentId != -1) {
-                    cv.put("parent", parentId);
-                }
-
-                db.insert("threads", null, cv);
+                long threadId = statements.insertThread(msgId, rootId, parentId);
+                threadIndex.addMessage(messageId, msgId, threadId, rootId, parentId);
             } else {
                 msgId = oldMessageId;
                 db.update("messages", cv, "id = ?", new String[] { Long.toString(oldMessageId) });
-            }
 
-            if (fulltext != null) {
-                cv.clear();
-                cv.put("docid", msgId);
-                cv.put("fulltext", fulltext);
-                db.replace("messages_fulltext", null, cv);
+                if (replacePlaceholder) {
+                    threadIndex.markNotEmpty(messageId, msgId);
+                }
             }
+
+            statements.replaceAddresses(msgId, message);
+            statements.indexSearchHeaders(msgId, message);
+            statements.queueFulltextIndexing(msgId);
         } catch (Exception e) {
             throw new MessagingException("Error appending message: " + message.getSubject(), e);
         }
     }
 
-    private long saveMessageParts(SQLiteDatabase db, Message message) throws IOException, MessagingException {
-        long rootMessagePartId = saveMessagePart(db, new PartContainer(-1, message), -1, 0);
+    private long saveMessageParts(MessageInsertStatements statements, Message message)
+            throws IOException, MessagingException {
+        long rootMessagePartId = saveMessagePart(statements, new PartContainer(-1, message), -1, 0);
 
         Stack<PartContainer> partsToSave = new Stack<>();
         addChildrenToStack(partsToSave, message, rootMessagePartId);
@@ -1439,7 +1384,7 @@ public class LocalFolder extends Folder<LocalMessage> {
         int order = 1;
         while (!partsToSave.isEmpty()) {
             PartContainer partContainer = partsToSave.pop();
-            long messagePartId = saveMessagePart(db, partContainer, rootMessagePartId, order);
+            long messagePartId = saveMessagePart(statements, partContainer, rootMessagePartId, order);
             order++;
 
             addChildrenToStack(partsToSave, partContainer.part, messagePartId);
@@ -1448,8 +1393,8 @@ public class LocalFolder extends Folder<LocalMessage> {
         return rootMessagePartId;
     }
 
-    private long saveMessagePart(SQLiteDatabase db, PartContainer partContainer, long rootMessagePartId, int order)
-            throws IOException, MessagingException {
+    private long saveMessagePart(MessageInsertStatements statements, PartContainer partContainer,
+            long rootMessagePartId, int order) throws IOException, MessagingException {
 
         Part part = partContainer.part;
 
@@ -1461,7 +1406,14 @@ public class LocalFolder extends Folder<LocalMessage> {
         cv.put("seq", order);
         cv.put("server_extra", part.getServerExtra());
 
-        return updateOrInsertMessagePart(db, cv, part, INVALID_MESSAGE_PART_ID);
+        File file = messagePartToContentValues(cv, part);
+        long messagePartId = statements.insertMessagePart(cv);
+
+        if (file != null) {
+            moveTemporaryFile(file, Long.toString(messagePartId));
+        }
+
+        return messagePartId;
     }
 
     private void moveTemporaryFile(File tempFile, String messagePartId) throws IOException {
@@ -1471,6 +1423,27 @@ public class LocalFolder extends Folder<LocalMessage> {
 
     private long updateOrInsertMessagePart(SQLiteDatabase db, ContentValues cv, Part part, long existingMessagePartId)
             throws IOException, MessagingException {
+        File file = messagePartToContentValues(cv, part);
+
+        long messagePartId;
+        if (existingMessagePartId != INVALID_MESSAGE_PART_ID) {
+            messagePartId = existingMessagePartId;
+            db.update("message_parts", cv, "id = ?", new String[] { Long.toString(messagePartId) });
+        } else {
+            messagePartId = db.insertOrThrow("message_parts", null, cv);
+        }
+
+        if (file != null) {
+            moveTemporaryFile(file, Long.toString(messagePartId));
+        }
+
+        return messagePartId;
+    }
+
+    /**
+     * @return The temporary file containing the part's body if it's too large to be stored in the database.
+     */
+    private File messagePartToContentValues(ContentValues cv, Part part) throws IOException, MessagingException {
         byte[] headerBytes = getHeaderBytes(part);
 
         cv.put("mime_type", part.getMimeType());
@@ -1489,19 +1462,7 @@ public class LocalFolder extends Folder<LocalMessage> {
             file = leafPartToContentValues(cv, part, body);
         }
 
-        long messagePartId;
-        if (existingMessagePartId != INVALID_MESSAGE_PART_ID) {
-            messagePartId = existingMessagePartId;
-            db.update("message_parts", cv, "id = ?", new String[] { Long.toString(messagePartId) });
-        } else {
-            messagePartId = db.insertOrThrow("message_parts", null, cv);
-        }
-
-        if (file != null) {
-            moveTemporaryFile(file, Long.toString(messagePartId));
-        }
-
-        return messagePartId;
+        return file;
     }
 
     private void multipartToContentValues(ContentValues cv, Multipart multipart) {
@@ -1726,7 +1687,7 @@ public class LocalFolder extends Folder<LocalMessage> {
 
         // Use one transaction to set all flags
         try {
-            this.localStore.getDatabase().execute(true, new DbCallback<Void>() {
+            this.localStore.getDatabase().executeQueued(new DbCallback<Void>() {
                 @Override
                 public Void doDbWork(final SQLiteDatabase db) throws WrappedException,
                         UnavailableStorageException {
@@ -1804,6 +1765,7 @@ public class LocalFolder extends Folder<LocalMessage> {
                         db.execSQL("DELETE FROM threads WHERE message_id IN " +
                                 "(SELECT id FROM messages WHERE folder_id = ?)", folderIdArg);
                         db.execSQL("DELETE FROM messages WHERE folder_id = ?", folderIdArg);
+                        localStore.invalidateThreadIndex(databaseId);
 
                         setMoreMessages(MoreMessages.UNKNOWN);
 
@@ -1843,6 +1805,7 @@ public class LocalFolder extends Folder<LocalMessage> {
                     }
                     db.execSQL("DELETE FROM folders WHERE id = ?", new Object[]
                                { Long.toString(databaseId), });
+                    localStore.invalidateThreadIndex(databaseId);
                     return null;
                 }
             });
@@ -1876,9 +1839,12 @@ public class LocalFolder extends Folder<LocalMessage> {
                 public Void doDbWork(final SQLiteDatabase db) throws WrappedException,
                         UnavailableStorageException {
                     try {
+                        localStore.invalidateThreadIndex(getDatabaseId());
+
                         deleteMessagePartsAndDataFromDisk(messagePartId);
 
                         deleteFulltextIndexEntry(db, messageId);
+                        deleteMessageAddresses(db, messageId);
 
                         if (hasThreadChildren(db, messageId)) {
                             // This message has children in the thread structure so we need to
@@ -2007,7 +1973,16 @@ public class LocalFolder extends Folder<LocalMessage> {
 
     void deleteFulltextIndexEntry(SQLiteDatabase db, long messageId) {
         String[] idArg = { Long.toString(messageId) };
-        db.delete("messages_fulltext", "docid = ?", idArg);
+        MessageSearchIndex.remove(db, messageId);
+        db.delete("fulltext_backlog", "message_id = ?", idArg);
+    }
+
+    /**
+     * Removes the addresses of a message that is turned into a placeholder. Only deleting the row from the
+     * {@code messages} table removes them automatically.
+     */
+    void deleteMessageAddresses(SQLiteDatabase db, long messageId) {
+        db.delete("message_addresses", "message_id = ?", new String[] { Long.toString(messageId) });
     }
 
     void deleteMessagePartsAndDataFromDisk(final long rootMessagePartId) throws MessagingException {
@@ -2132,7 +2107,10 @@ public class LocalFolder extends Folder<LocalMessage> {
         });
     }
 
-    private ThreadInfo doMessageThreading(SQLiteDatabase db, Message message)
+    /**
+     * @param threadIndex The index of this folder, or {@code null} to look up every Message-ID in the database.
+     */
+    private ThreadInfo doMessageThreading(SQLiteDatabase db, Message message, MessageThreadIndex threadIndex)
             throws MessagingException {
         long rootId = -1;
         long parentId = -1;
@@ -2140,7 +2118,7 @@ public class LocalFolder extends Folder<LocalMessage> {
         String messageId = message.getMessageId();
 
         // If there's already an empty message in the database, update that
-        ThreadInfo msgThreadInfo = getThreadInfo(db, messageId, true);
+        ThreadInfo msgThreadInfo = getThreadInfo(db, threadIndex, messageId, true);
 
         // Get the message IDs from the "References" header line
         String[] referencesArray = message.getHeader("References");
@@ -2171,7 +2149,7 @@ public class LocalFolder extends Folder<LocalMessage> {
         }
 
         for (String reference : messageIds) {
-            ThreadInfo threadInfo = getThreadInfo(db, reference, false);
+            ThreadInfo threadInfo = getThreadInfo(db, threadIndex, reference, false);
 
             if (threadInfo == null) {
                 // Create placeholder message in 'messages' table
@@ -2192,7 +2170,12 @@ public class LocalFolder extends Folder<LocalMessage> {
                     cv.put("parent", parentId);
                 }
 
-                parentId = db.insert("threads", null, cv);
+                long threadId = db.insert("threads", null, cv);
+                if (threadIndex != null) {
+                    threadIndex.addPlaceholder(reference, newMsgId, threadId, rootId, parentId);
+                }
+
+                parentId = threadId;
                 if (rootId == -1) {
                     rootId = parentId;
                 }
@@ -2212,6 +2195,11 @@ public class LocalFolder extends Folder<LocalMessage> {
                     cv.put("parent", parentId);
                     db.update("threads", cv, "id = ?",
                             new String[] { Long.toString(threadInfo.threadId) });
+
+                    if (threadIndex != null) {
+                        threadIndex.changeRoot(threadInfo.threadId, rootId);
+                        threadIndex.moveThread(threadInfo.threadId, rootId, parentId);
+                    }
                 } else {
                     rootId = (threadInfo.rootId == -1) ?
                             threadInfo.threadId : threadInfo.rootId;
@@ -1,7 +1,6 @@
 package com.fsck.k9.mailstore;
 
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Date;
@@ -19,7 +18,6 @@ import com.fsck.k9.mail.Flag;
 import com.fsck.k9.mail.Folder;
 import com.fsck.k9.mail.MessagingException;
 import com.fsck.k9.mail.internet.MimeMessage;
-import com.fsck.k9.mail.message.MessageHeaderParser;
 import com.fsck.k9.mailstore.LockableDatabase.DbCallback;
 import com.fsck.k9.mailstore.LockableDatabase.WrappedException;
 import com.fsck.k9.message.extractors.PreviewResult.PreviewType;
@@ -54,6 +52,15 @@ public class LocalMessage extends MimeMessage {
 
 
     void populateFromGetMessageCursor(Cursor cursor) throws MessagingException {
+        // Replaces all header fields and cached values, so this has to happen before the values below are set. The
+        // header was written by LocalFolder and is only parsed once a field is accessed.
+        byte[] header = cursor.getBlob(LocalStore.MSG_INDEX_HEADER_DATA);
+        if (header != null) {
+            setRawHeader(header);
+        } else {
+            Timber.d("No headers available for this message!");
+        }
+
         final String subject = cursor.getString(LocalStore.MSG_INDEX_SUBJECT);
         this.setSubject(subject == null ? "" : subject);
 
@@ -122,13 +129,6 @@ public class LocalMessage extends MimeMessage {
         setMessagePartId(cursor.getLong(LocalStore.MSG_INDEX_MESSAGE_PART_ID));
         mimeType = cursor.getString(LocalStore.MSG_INDEX_MIME_TYPE);
 
-        byte[] header = cursor.getBlob(LocalStore.MSG_INDEX_HEADER_DATA);
-        if (header != null) {
-            MessageHeaderParser.parse(this, new ByteArrayInputStream(header));
-        } else {
-            Timber.d("No headers available for this message!");
-        }
-        
         headerNeedsUpdating = false;
     }
 
@@ -311,6 +311,7 @@ public class LocalMessage extends MimeMessage {
                     cv.putNull("message_part_id");
 
                     db.update("messages", cv, "id = ?", new String[] { Long.toString(databaseId) });
+                    localStore.invalidateThreadIndex(getFolder().getDatabaseId());
 
                     try {
                         ((LocalFolder) mFolder).deleteMessagePartsAndDataFromDisk(messagePartId);
@@ -319,6 +320,7 @@ public class LocalMessage extends MimeMessage {
                     }
 
                     getFolder().deleteFulltextIndexEntry(db, databaseId);
+                    getFolder().deleteMessageAddresses(db, databaseId);
 
                     return null;
                 }
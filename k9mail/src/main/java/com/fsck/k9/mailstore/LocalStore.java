@@ -12,13 +12,17 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -36,6 +40,7 @@ import com.fsck.k9.Preferences;
 import com.fsck.k9.controller.PendingCommandSerializer;
 import com.fsck.k9.controller.MessagingControllerCommands.PendingCommand;
 import com.fsck.k9.helper.Utility;
+import com.fsck.k9.mail.Address;
 import com.fsck.k9.mail.Body;
 import com.fsck.k9.mail.BodyPart;
 import com.fsck.k9.mail.FetchProfile;
@@ -47,6 +52,7 @@ import com.fsck.k9.mail.MessagingException;
 import com.fsck.k9.mail.Multipart;
 import com.fsck.k9.mail.Part;
 import com.fsck.k9.mail.Store;
+import com.fsck.k9.mail.filter.Base64DecodingInputStream;
 import com.fsck.k9.mailstore.LocalFolder.DataLocation;
 import com.fsck.k9.mailstore.LocalFolder.MoreMessages;
 import com.fsck.k9.mailstore.LockableDatabase.DbCallback;
@@ -64,7 +70,6 @@ import com.fsck.k9.search.SearchSpecification.Attribute;
 import com.fsck.k9.search.SearchSpecification.SearchField;
 import com.fsck.k9.search.SqlQueryBuilder;
 import org.apache.commons.io.IOUtils;
-import org.apache.james.mime4j.codec.Base64InputStream;
 import org.apache.james.mime4j.codec.QuotedPrintableInputStream;
 import org.apache.james.mime4j.util.MimeUtil;
 import org.openintents.openpgp.util.OpenPgpApi.OpenPgpDataSource;
@@ -177,7 +182,16 @@ public class LocalStore extends Store {
      */
     private static final int THREAD_FLAG_UPDATE_BATCH_SIZE = 500;
 
-    public static final int DB_VERSION = 60;
+    public static final int DB_VERSION = 66;
+
+    /**
+     * How many folders keep a {@link MessageThreadIndex} in memory at most.
+     */
+    private static final int MAX_THREAD_INDEXES = 4;
+
+    private static final String[] PACKED_ADDRESS_COLUMNS = {
+            "sender_list", "to_list", "cc_list", "bcc_list", "reply_to_list"
+    };
 
     private final Context context;
     private final ContentResolver contentResolver;
@@ -190,6 +204,23 @@ public class LocalStore extends Store {
     private final Account account;
     private final LockableDatabase database;
 
+    private final Map<Long, MessageThreadIndex> threadIndexes =
+            new LinkedHashMap<Long, MessageThreadIndex>(MAX_THREAD_INDEXES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, MessageThreadIndex> eldest) {
+                    return size() > MAX_THREAD_INDEXES;
+                }
+            };
+
+    private final Object messageInsertStatementsLock = new Object();
+    private MessageInsertStatements messageInsertStatements;
+
+    private final Object folderWriteLock = new Object();
+    /**
+     * The folder column update queued last, see {@link #queueFolderWrite(DbCallback)}.
+     */
+    private volatile Future<Void> lastFolderWrite;
+
     /**
      * local://localhost/path/to/database/uuid.db
      * This constructor is only used by {@link LocalStore#getInstance(Account, Context)}
@@ -336,13 +367,15 @@ public class LocalStore extends Store {
             public Void doDbWork(final SQLiteDatabase db) {
                 // We don't care about threads of deleted messages, so delete the whole table.
                 db.delete("threads", null, null);
+                invalidateThreadIndexes();
 
                 // Don't delete deleted messages. They are essentially placeholders for UIDs of messages that have
                 // been deleted locally.
                 db.delete("messages", "deleted = 0", null);
 
                 // We don't need the search data now either
-                db.delete("messages_fulltext", null, null);
+                db.delete("messages_search", null, null);
+                db.delete("message_search_text", null, null);
 
                 return null;
             }
@@ -397,6 +430,7 @@ public class LocalStore extends Store {
     @Override
     public List<LocalFolder> getPersonalNamespaces(boolean forceListAll) throws MessagingException {
         final List<LocalFolder> folders = new LinkedList<>();
+        awaitFolderWrites();
         try {
             database.execute(false, new DbCallback < List <? extends Folder >> () {
                 @Override
@@ -435,10 +469,12 @@ public class LocalStore extends Store {
     }
 
     public void delete() throws UnavailableStorageException {
+        invalidateThreadIndexes();
         database.delete();
     }
 
     public void recreate() throws UnavailableStorageException {
+        invalidateThreadIndexes();
         database.recreate();
     }
 
@@ -476,11 +512,14 @@ public class LocalStore extends Store {
         }
     }
 
+    /**
+     * Goes through the write queue, so it's ordered with the folder column updates queued by {@link LocalFolder}.
+     */
     public void resetVisibleLimits(int visibleLimit) throws MessagingException {
         final ContentValues cv = new ContentValues();
         cv.put("visible_limit", Integer.toString(visibleLimit));
         cv.put("more_messages", MoreMessages.UNKNOWN.getDatabaseName());
-        database.execute(false, new DbCallback<Void>() {
+        database.executeQueued(new DbCallback<Void>() {
             @Override
             public Void doDbWork(final SQLiteDatabase db) throws WrappedException {
                 db.update("folders", cv, null, null);
@@ -489,6 +528,27 @@ public class LocalStore extends Store {
         });
     }
 
+    /**
+     * Queues an update of the {@code folders} table that nobody has to wait for. Reads of folder rows through
+     * {@link LocalFolder} and {@link #getPersonalNamespaces(boolean)} wait for it, see {@link #awaitFolderWrites()}.
+     */
+    void queueFolderWrite(DbCallback<Void> write) {
+        synchronized (folderWriteLock) {
+            lastFolderWrite = database.executeAsync(write);
+        }
+    }
+
+    /**
+     * Waits for the folder column updates queued so far. The queue commits in order, so waiting for the last one is
+     * enough. Other reads don't wait.
+     */
+    void awaitFolderWrites() {
+        Future<Void> write = lastFolderWrite;
+        if (write != null) {
+            database.awaitWrite(write);
+        }
+    }
+
     public List<PendingCommand> getPendingCommands() throws MessagingException {
         return database.execute(false, new DbCallback<List<PendingCommand>>() {
             @Override
@@ -552,6 +612,188 @@ public class LocalStore extends Store {
         });
     }
 
+    /**
+     * Converts the address lists of up to {@code batchSize} messages that were stored before the current packed
+     * address format was introduced (see {@link Address#pack(Address[])}).
+     *
+     * @return {@code true} if there are messages left to convert.
+     */
+    public boolean repackAddressLists(final int batchSize) throws MessagingException {
+        return database.execute(true, new DbCallback<Boolean>() {
+            @Override
+            public Boolean doDbWork(final SQLiteDatabase db) throws WrappedException {
+                long lastMessageId;
+                Cursor cursor = db.rawQuery("SELECT last_message_id FROM address_repack_progress", null);
+                try {
+                    if (!cursor.moveToFirst()) {
+                        return false;
+                    }
+                    lastMessageId = cursor.getLong(0);
+                } finally {
+                    cursor.close();
+                }
+
+                int processed = 0;
+                cursor = db.rawQuery("SELECT id, " + TextUtils.join(", ", PACKED_ADDRESS_COLUMNS) + " " +
+                        "FROM messages WHERE id > ? ORDER BY id LIMIT " + batchSize,
+                        new String[] { Long.toString(lastMessageId) });
+                try {
+                    while (cursor.moveToNext()) {
+                        lastMessageId = cursor.getLong(0);
+                        processed++;
+
+                        ContentValues cv = new ContentValues();
+                        for (int i = 0; i < PACKED_ADDRESS_COLUMNS.length; i++) {
+                            String packed = cursor.getString(i + 1);
+                            String repacked = Address.repack(packed);
+                            // repack() returns the same instance if the list is already in the current format
+                            if (repacked != packed) {
+                                cv.put(PACKED_ADDRESS_COLUMNS[i], repacked);
+                            }
+                        }
+
+                        if (cv.size() > 0) {
+                            db.update("messages", cv, "id = ?", new String[] { Long.toString(lastMessageId) });
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                if (processed < batchSize) {
+                    db.delete("address_repack_progress", null, null);
+                    return false;
+                }
+
+                ContentValues progress = new ContentValues();
+                progress.put("last_message_id", lastMessageId);
+                db.update("address_repack_progress", progress, null, null);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Verifies the {@code thread_summary} table used by the threaded message list and rebuilds it if it doesn't match
+     * the messages and threads it's derived from.
+     *
+     * @return {@code true} if the table had to be rebuilt.
+     */
+    public boolean checkThreadSummary() throws MessagingException {
+        return database.execute(true, new DbCallback<Boolean>() {
+            @Override
+            public Boolean doDbWork(final SQLiteDatabase db) throws WrappedException {
+                int mismatches = ThreadSummary.countMismatches(db);
+                if (mismatches == 0) {
+                    return false;
+                }
+
+                Timber.w("Thread summary of account %s has %d outdated rows. Rebuilding.", account.getUuid(),
+                        mismatches);
+                ThreadSummary.rebuild(db);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Verifies the message, unread and flagged counts stored for each folder and recounts them if any of them doesn't
+     * match the messages in the folder.
+     *
+     * @return {@code true} if the counts had to be repaired.
+     */
+    public boolean checkFolderCounts() throws MessagingException {
+        return database.execute(true, new DbCallback<Boolean>() {
+            @Override
+            public Boolean doDbWork(final SQLiteDatabase db) throws WrappedException {
+                int mismatches = FolderCounts.countMismatches(db);
+                if (mismatches == 0) {
+                    return false;
+                }
+
+                Timber.w("Message counts of %d folders in account %s are wrong. Recounting.", mismatches,
+                        account.getUuid());
+                FolderCounts.recount(db);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Adds the next batch of messages from the fulltext backlog to the search index.
+     * <p>
+     * Creating the fulltext requires loading and decoding the message, so it's done outside of a transaction. Messages
+     * that are changed or deleted in the meantime are left to the next batch. Messages whose text can't be created are
+     * dropped from the backlog, so they can only be found by their headers.
+     * </p>
+     *
+     * @return {@code true} if there may be more messages in the backlog.
+     */
+    public boolean indexFulltextBacklog(final int batchSize) throws MessagingException {
+        final List<FulltextBacklog.Entry> entries = database.execute(false,
+                new DbCallback<List<FulltextBacklog.Entry>>() {
+            @Override
+            public List<FulltextBacklog.Entry> doDbWork(final SQLiteDatabase db) throws WrappedException {
+                return FulltextBacklog.readBatch(db, batchSize);
+            }
+        });
+
+        if (entries.isEmpty()) {
+            return false;
+        }
+
+        MessageFulltextCreator fulltextCreator = getMessageFulltextCreator();
+        final Map<FulltextBacklog.Entry, LocalMessage> messages = new HashMap<>(entries.size());
+        final Map<FulltextBacklog.Entry, String> fulltexts = new HashMap<>(entries.size());
+        final Set<FulltextBacklog.Entry> failedEntries = new HashSet<>();
+        for (FulltextBacklog.Entry entry : entries) {
+            if (entry.indexable) {
+                try {
+                    LocalMessage message = loadLocalMessageByMessageId(entry.messageId);
+                    if (message != null) {
+                        fulltexts.put(entry, fulltextCreator.createFulltext(message));
+                        messages.put(entry, message);
+                    }
+                } catch (MessagingException e) {
+                    Timber.w(e, "Couldn't create fulltext for message %d", entry.messageId);
+                    failedEntries.add(entry);
+                } catch (RuntimeException e) {
+                    // Don't let a single broken message stop the indexer each time it's started
+                    Timber.e(e, "Error while creating fulltext for message %d", entry.messageId);
+                    failedEntries.add(entry);
+                }
+            }
+        }
+
+        database.execute(true, new DbCallback<Void>() {
+            @Override
+            public Void doDbWork(final SQLiteDatabase db) throws WrappedException {
+                for (FulltextBacklog.Entry entry : entries) {
+                    if (failedEntries.contains(entry)) {
+                        FulltextBacklog.remove(db, entry);
+                    } else {
+                        FulltextBacklog.complete(db, entry, messages.get(entry), fulltexts.get(entry));
+                    }
+                }
+                return null;
+            }
+        });
+
+        return entries.size() == batchSize;
+    }
+
+    /**
+     * Returns the number of messages that haven't been added to the search index yet.
+     */
+    public int getFulltextBacklogCount() throws MessagingException {
+        return database.execute(false, new DbCallback<Integer>() {
+            @Override
+            public Integer doDbWork(final SQLiteDatabase db) throws WrappedException {
+                return FulltextBacklog.count(db);
+            }
+        });
+    }
+
     @Override
     public boolean isMoveCapable() {
         return true;
@@ -869,7 +1111,7 @@ public class LocalStore extends Store {
 
     InputStream getDecodingInputStream(final InputStream rawInputStream, @Nullable String encoding) {
         if (MimeUtil.ENC_BASE64.equals(encoding)) {
-            return new Base64InputStream(rawInputStream) {
+            return new Base64DecodingInputStream(rawInputStream) {
                 @Override
                 public void close() throws IOException {
                     super.close();
@@ -990,10 +1232,62 @@ public class LocalStore extends Store {
         return attachmentCounter;
     }
 
+    /**
+     * Returns the statements used to store messages. They are compiled on first use and kept until the database is
+     * reopened, e.g. after it was moved to another storage provider.
+     *
+     * @param db The database of the transaction the caller is in.
+     */
+    MessageInsertStatements getMessageInsertStatements(SQLiteDatabase db) {
+        synchronized (messageInsertStatementsLock) {
+            if (messageInsertStatements == null || !messageInsertStatements.isFor(db)) {
+                if (messageInsertStatements != null) {
+                    messageInsertStatements.close();
+                }
+                messageInsertStatements = new MessageInsertStatements(db);
+            }
+
+            return messageInsertStatements;
+        }
+    }
+
     AttachmentInfoExtractor getAttachmentInfoExtractor() {
         return attachmentInfoExtractor;
     }
 
+    MessageThreadIndex getThreadIndex(long folderId) {
+        synchronized (threadIndexes) {
+            MessageThreadIndex threadIndex = threadIndexes.get(folderId);
+            if (threadIndex == null) {
+                threadIndex = new MessageThreadIndex(database, folderId);
+                threadIndexes.put(folderId, threadIndex);
+            }
+            return threadIndex;
+        }
+    }
+
+    /**
+     * Drops the in-memory thread index of a folder. Has to be called, inside the same transaction, whenever messages or
+     * threads of the folder are changed other than by storing new messages.
+     */
+    void invalidateThreadIndex(long folderId) {
+        synchronized (threadIndexes) {
+            MessageThreadIndex threadIndex = threadIndexes.remove(folderId);
+            if (threadIndex != null) {
+                threadIndex.reset();
+            }
+        }
+    }
+
+    void invalidateThreadIndexes() {
+        synchronized (threadIndexes) {
+            for (MessageThreadIndex threadIndex : threadIndexes.values()) {
+                threadIndex.reset();
+            }
+            threadIndexes.clear();
+        }
+    }
+
     void notifyChange() {
         Uri uri = Uri.withAppendedPath(EmailProvider.CONTENT_URI, "account/" + account.getUuid() + "/messages");
         contentResolver.notifyChange(uri, null);
@@ -1,12 +1,20 @@
 package com.fsck.k9.mailstore;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.os.Build;
@@ -20,6 +28,20 @@ import static java.lang.System.currentTimeMillis;
 
 
 public class LockableDatabase {
+    /**
+     * How often the write-ahead log is checkpointed at most. SQLite also checkpoints automatically when the log grows
+     * beyond 1000 pages, but it does so on the thread that commits.
+     */
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 60 * 1000;
+
+    private static final ExecutorService CHECKPOINT_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DatabaseCheckpoint");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
 
     /**
      * Callback interface for DB operations. Concept is similar to Spring
@@ -41,6 +63,15 @@ public class LockableDatabase {
         T doDbWork(SQLiteDatabase db) throws WrappedException, MessagingException;
     }
 
+    /**
+     * Receives the outcome of a transaction started by {@link #execute(boolean, DbCallback)}.
+     *
+     * @see #addTransactionListener(TransactionListener)
+     */
+    interface TransactionListener {
+        void onTransactionEnd(boolean committed);
+    }
+
     public interface SchemaDefinition {
         int getVersion();
 
@@ -78,6 +109,7 @@ public class LockableDatabase {
             Timber.d("LockableDatabase: Closing DB %s due to unmount event on StorageProvider: %s", uUid, providerId);
 
             try {
+                awaitQueuedWrites();
                 lockWrite();
                 try {
                     mDb.close();
@@ -117,11 +149,12 @@ public class LockableDatabase {
      * unlock it 2x to release it)
      */
     private final Lock mWriteLock;
+    private final ReentrantReadWriteLock mLock;
 
     {
-        final ReadWriteLock lock = new ReentrantReadWriteLock(true);
-        mReadLock = lock.readLock();
-        mWriteLock = lock.writeLock();
+        mLock = new ReentrantReadWriteLock(true);
+        mReadLock = mLock.readLock();
+        mWriteLock = mLock.writeLock();
     }
 
     private final StorageListener mStorageListener = new StorageListener();
@@ -136,10 +169,23 @@ public class LockableDatabase {
      */
     private ThreadLocal<Boolean> inTransaction = new ThreadLocal<>();
 
+    private ThreadLocal<List<TransactionListener>> transactionListeners = new ThreadLocal<>();
+
     private SchemaDefinition mSchemaDefinition;
 
     private String uUid;
 
+    /**
+     * Whether the database is in write-ahead logging mode. In that mode Android keeps a small pool of read-only
+     * connections next to the primary connection, so queries from other threads see the last committed state instead
+     * of waiting for a write transaction to finish.
+     */
+    private volatile boolean writeAheadLogging;
+    private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+    private volatile long lastCheckpointTime;
+    private final DatabaseLockStatistics lockStatistics = new DatabaseLockStatistics();
+    private final DatabaseWriteQueue writeQueue;
+
     /**
      * @param context
      *            Never <code>null</code>.
@@ -152,6 +198,7 @@ public class LockableDatabase {
         this.context = context;
         this.uUid = uUid;
         this.mSchemaDefinition = schemaDefinition;
+        this.writeQueue = new DatabaseWriteQueue(this, uUid);
     }
 
     public void setStorageProviderId(String mStorageProviderId) {
@@ -262,18 +309,28 @@ public class LockableDatabase {
      * @throws UnavailableStorageException
      */
     public <T> T execute(final boolean transactional, final DbCallback<T> callback) throws MessagingException {
+        final long start = System.nanoTime();
         lockRead();
-        final boolean doTransaction = transactional && inTransaction.get() == null;
+        final boolean outsideTransaction = inTransaction.get() == null;
+        final boolean doTransaction = transactional && outsideTransaction;
         try {
             final boolean debug = K9.isDebug();
             if (doTransaction) {
                 inTransaction.set(Boolean.TRUE);
-                mDb.beginTransaction();
+                if (writeAheadLogging) {
+                    // Readers don't need to be locked out, only other writers
+                    mDb.beginTransactionNonExclusive();
+                } else {
+                    mDb.beginTransaction();
+                }
+                lockStatistics.recordTransactionWait(System.nanoTime() - start);
             }
+            boolean transactionSuccessful = false;
             try {
                 final T result = callback.doDbWork(mDb);
                 if (doTransaction) {
                     mDb.setTransactionSuccessful();
+                    transactionSuccessful = true;
                 }
                 return result;
             } finally {
@@ -285,7 +342,13 @@ public class LockableDatabase {
                         begin = 0L;
                     }
                     // not doing endTransaction in the same 'finally' block of unlockRead() because endTransaction() may throw an exception
-                    mDb.endTransaction();
+                    boolean committed = false;
+                    try {
+                        mDb.endTransaction();
+                        committed = transactionSuccessful;
+                    } finally {
+                        notifyTransactionListeners(committed);
+                    }
                     if (debug) {
                         Timber.v("LockableDatabase: Transaction ended, took %d ms / %s",
                                 currentTimeMillis() - begin,
@@ -298,6 +361,212 @@ public class LockableDatabase {
                 inTransaction.set(null);
             }
             unlockRead();
+
+            if (doTransaction) {
+                scheduleCheckpointIfDue();
+            } else if (!transactional && outsideTransaction) {
+                lockStatistics.recordQueryDuration(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener for the end of the transaction the current thread is in, e.g. to discard in-memory state
+     * that mirrors changes made in a transaction that is rolled back. Outside of a transaction the listener is called
+     * right away.
+     */
+    void addTransactionListener(TransactionListener listener) {
+        if (inTransaction.get() == null) {
+            listener.onTransactionEnd(true);
+            return;
+        }
+
+        List<TransactionListener> listeners = transactionListeners.get();
+        if (listeners == null) {
+            listeners = new ArrayList<>();
+            transactionListeners.set(listeners);
+        }
+        listeners.add(listener);
+    }
+
+    private void notifyTransactionListeners(boolean committed) {
+        List<TransactionListener> listeners = transactionListeners.get();
+        if (listeners == null) {
+            return;
+        }
+
+        transactionListeners.set(null);
+        for (TransactionListener listener : listeners) {
+            listener.onTransactionEnd(committed);
+        }
+    }
+
+    /**
+     * Queues a write to be executed in a transaction on this database's writer thread. Writes queued around the same
+     * time are committed together; see {@link DatabaseWriteQueue}. Other accesses to the database don't wait for queued
+     * writes; code that reads back what it queued has to wait with {@link #awaitWrite(Future)} first.
+     *
+     * @param callback
+     *            Never <code>null</code>.
+     * @return A future that completes with the callback's result once the write has been committed, or fails with the
+     *         exception thrown by the callback.
+     */
+    public <T> Future<T> executeAsync(final DbCallback<T> callback) {
+        return writeQueue.submit(callback);
+    }
+
+    /**
+     * Executes a write on this database's writer thread and waits until it has been committed. Writes queued by other
+     * threads in the meantime are committed in the same transaction. The queue is flushed right away, so the caller
+     * doesn't wait for the latency bound.
+     * <p>
+     * While the current thread holds a lock on the storage, e.g. inside another callback, the write is executed
+     * directly in the current transaction instead, since the writer thread may have to wait for that lock.
+     * </p>
+     *
+     * @param callback
+     *            Never <code>null</code>.
+     * @return Whatever {@link DbCallback#doDbWork(SQLiteDatabase)} returns.
+     */
+    public <T> T executeQueued(final DbCallback<T> callback) throws MessagingException {
+        if (holdsLock()) {
+            return execute(true, callback);
+        }
+
+        Future<T> write = writeQueue.submit(callback);
+        writeQueue.flush();
+
+        try {
+            return getUninterruptibly(write);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MessagingException) {
+                throw (MessagingException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new WrappedException((Exception) cause);
+        }
+    }
+
+    /**
+     * Waits until a write queued with {@link #executeAsync(DbCallback)} has been committed or has failed, flushing the
+     * queue so the wait isn't stretched to the latency bound. Failures are left to the owner of the future. Returns
+     * right away while the current thread holds a lock on the storage, since the writer thread may have to wait for
+     * that lock.
+     */
+    void awaitWrite(Future<?> write) {
+        if (write.isDone() || holdsLock()) {
+            return;
+        }
+
+        writeQueue.flush();
+        try {
+            getUninterruptibly(write);
+        } catch (ExecutionException e) {
+            // Logged by the write queue
+        }
+    }
+
+    /**
+     * Waits for all writes queued by {@link #executeAsync(DbCallback)}, so nothing is left in the queue when the
+     * database is closed, moved or deleted.
+     */
+    private void awaitQueuedWrites() {
+        if (!holdsLock()) {
+            writeQueue.awaitWrites();
+        }
+    }
+
+    private boolean holdsLock() {
+        return mLock.getReadHoldCount() > 0 || mLock.isWriteLockedByCurrentThread();
+    }
+
+    private static <T> T getUninterruptibly(Future<T> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Commits the writes queued by {@link #executeAsync(DbCallback)} without waiting for more writes to join them.
+     *
+     * @return A future that completes once all writes queued before this call have been committed.
+     */
+    public Future<Void> flushWrites() {
+        return writeQueue.flush();
+    }
+
+    /**
+     * Returns the wait times recorded for this database since it was created or the statistics were last reset.
+     */
+    public DatabaseLockStatistics getLockStatistics() {
+        return lockStatistics;
+    }
+
+    public boolean isWriteAheadLoggingEnabled() {
+        return writeAheadLogging;
+    }
+
+    private void scheduleCheckpointIfDue() {
+        if (!writeAheadLogging || currentTimeMillis() - lastCheckpointTime < CHECKPOINT_INTERVAL_MILLIS) {
+            return;
+        }
+
+        if (checkpointScheduled.compareAndSet(false, true)) {
+            CHECKPOINT_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        checkpoint();
+                    } finally {
+                        lastCheckpointTime = currentTimeMillis();
+                        checkpointScheduled.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Copies committed transactions from the write-ahead log into the database file, as far as possible without
+     * waiting for readers or writers.
+     */
+    void checkpoint() {
+        try {
+            lockRead();
+        } catch (UnavailableStorageException e) {
+            Timber.d("LockableDatabase: Skipping checkpoint of %s, storage is unavailable", uUid);
+            return;
+        }
+
+        try {
+            Cursor cursor = mDb.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+            try {
+                if (cursor.moveToFirst() && K9.isDebug()) {
+                    Timber.v("LockableDatabase: Checkpoint of %s copied %d of %d pages; %s", uUid,
+                            cursor.getInt(2), cursor.getInt(1), lockStatistics);
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            Timber.w(e, "LockableDatabase: Checkpoint of %s failed", uUid);
+        } finally {
+            unlockRead();
         }
     }
 
@@ -312,6 +581,8 @@ public class LockableDatabase {
             return;
         }
 
+        awaitQueuedWrites();
+
         final String oldProviderId = mStorageProviderId;
         lockWrite(oldProviderId);
         try {
@@ -391,9 +662,17 @@ public class LockableDatabase {
             // internal storage
             mDb = context.openOrCreateDatabase(databaseFile.getName(), Context.MODE_PRIVATE,
                     null);
+
+            /*
+             * The write-ahead log relies on a shared memory file next to the database, which isn't reliably supported
+             * by the file systems used for removable storage. So it's only used for internal storage; Android resets
+             * the journal mode when a database that was moved to external storage is opened there.
+             */
+            writeAheadLogging = mDb.enableWriteAheadLogging();
         } else {
             // external storage
             mDb = SQLiteDatabase.openOrCreateDatabase(databaseFile, null);
+            writeAheadLogging = false;
         }
     }
 
@@ -454,6 +733,7 @@ public class LockableDatabase {
      * @throws UnavailableStorageException
      */
     private void delete(final boolean recreate) throws UnavailableStorageException {
+        awaitQueuedWrites();
         lockWrite();
         try {
             try {
@@ -507,6 +787,8 @@ public class LockableDatabase {
         } else {
             deleted = database.delete();
             deleted |= new File(database.getPath() + "-journal").delete();
+            deleted |= new File(database.getPath() + "-wal").delete();
+            deleted |= new File(database.getPath() + "-shm").delete();
         }
         if (!deleted) {
             Timber.i("LockableDatabase: deleteDatabase(): No files deleted.");
@@ -0,0 +1,241 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.Locale;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.fsck.k9.mail.Address;
+import com.fsck.k9.mail.Message;
+import com.fsck.k9.mail.Message.RecipientType;
+
+
+/**
+ * Compiled statements for storing messages, kept by {@link LocalStore} for as long as it uses the same database.
+ * <p>
+ * {@link SQLiteDatabase#insert(String, String, ContentValues)} builds and compiles a new statement for every row, and
+ * storing a message inserts several rows: the message, its thread entry, one row per MIME part, the search index
+ * entry, one row per address and the fulltext backlog entry. Here each statement is compiled once and then reused for
+ * every message stored. Values are still collected in {@link ContentValues}; columns missing from them are bound as
+ * {@code NULL}, so every column with a default other than {@code NULL} has to be set explicitly.
+ * </p><p>
+ * Only use an instance inside a transaction. A transaction holds the database's only write connection, so no other
+ * thread can bind values to the statements at the same time. Get it through
+ * {@link LocalStore#getMessageInsertStatements(SQLiteDatabase)}.
+ * </p>
+ */
+class MessageInsertStatements {
+    static final String[] MESSAGE_COLUMNS = {
+            "message_part_id", "uid", "subject", "sender_list", "date", "flags", "deleted", "read", "flagged",
+            "answered", "forwarded", "folder_id", "to_list", "cc_list", "bcc_list", "reply_to_list",
+            "attachment_count", "internal_date", "mime_type", "empty", "preview_type", "preview", "message_id"
+    };
+
+    static final String[] MESSAGE_PART_COLUMNS = {
+            "type", "root", "parent", "seq", "mime_type", "decoded_body_size", "display_name", "header", "encoding",
+            "data_location", "data", "preamble", "epilogue", "boundary", "content_id", "server_extra"
+    };
+
+
+    private final SQLiteDatabase db;
+
+    private SQLiteStatement insertMessage;
+    private SQLiteStatement insertThread;
+    private SQLiteStatement insertMessagePart;
+    private SQLiteStatement deleteAddresses;
+    private SQLiteStatement insertAddress;
+    private SQLiteStatement deleteSearchEntry;
+    private SQLiteStatement replaceSearchText;
+    private SQLiteStatement insertSearchEntry;
+    private SQLiteStatement queueFulltextIndexing;
+
+
+    MessageInsertStatements(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    boolean isFor(SQLiteDatabase db) {
+        return this.db == db;
+    }
+
+    long insertMessage(ContentValues values) {
+        if (insertMessage == null) {
+            insertMessage = db.compileStatement(createInsertSql("messages", MESSAGE_COLUMNS));
+        }
+
+        return executeInsert(insertMessage, MESSAGE_COLUMNS, values);
+    }
+
+    /**
+     * @param rootId The database ID of the thread's root, or {@code -1} if the new entry is the root.
+     * @param parentId The database ID of the parent thread entry, or {@code -1} if there is none.
+     */
+    long insertThread(long messageId, long rootId, long parentId) {
+        if (insertThread == null) {
+            insertThread = db.compileStatement("INSERT INTO threads (message_id, root, parent) VALUES (?, ?, ?)");
+        }
+
+        insertThread.clearBindings();
+        insertThread.bindLong(1, messageId);
+        if (rootId != -1) {
+            insertThread.bindLong(2, rootId);
+        }
+        if (parentId != -1) {
+            insertThread.bindLong(3, parentId);
+        }
+
+        return insertThread.executeInsert();
+    }
+
+    long insertMessagePart(ContentValues values) {
+        if (insertMessagePart == null) {
+            insertMessagePart = db.compileStatement(createInsertSql("message_parts", MESSAGE_PART_COLUMNS));
+        }
+
+        return executeInsert(insertMessagePart, MESSAGE_PART_COLUMNS, values);
+    }
+
+    /**
+     * Stores the sender and recipient addresses of a message in the {@code message_addresses} table, replacing the
+     * ones stored for an earlier version of the message.
+     */
+    void replaceAddresses(long messageId, Message message) {
+        if (deleteAddresses == null) {
+            deleteAddresses = db.compileStatement("DELETE FROM message_addresses WHERE message_id = ?");
+            insertAddress = db.compileStatement("INSERT OR IGNORE INTO message_addresses " +
+                    "(message_id, role, address_lower, domain) VALUES (?, ?, ?, ?)");
+        }
+
+        deleteAddresses.bindLong(1, messageId);
+        deleteAddresses.executeUpdateDelete();
+
+        insertAddresses(messageId, DatabaseAddressRole.FROM, message.getFrom());
+        insertAddresses(messageId, DatabaseAddressRole.TO, message.getRecipients(RecipientType.TO));
+        insertAddresses(messageId, DatabaseAddressRole.CC, message.getRecipients(RecipientType.CC));
+        insertAddresses(messageId, DatabaseAddressRole.BCC, message.getRecipients(RecipientType.BCC));
+        insertAddresses(messageId, DatabaseAddressRole.REPLY_TO, message.getReplyTo());
+    }
+
+    private void insertAddresses(long messageId, DatabaseAddressRole role, Address[] addresses) {
+        if (addresses == null) {
+            return;
+        }
+
+        for (Address address : addresses) {
+            if (address.getAddress() == null) {
+                continue;
+            }
+
+            String addressLower = address.getAddress().toLowerCase(Locale.US);
+            int domainStart = addressLower.lastIndexOf('@');
+            String domain = (domainStart != -1) ? addressLower.substring(domainStart + 1) : "";
+
+            insertAddress.bindLong(1, messageId);
+            insertAddress.bindLong(2, role.getDatabaseValue());
+            insertAddress.bindString(3, addressLower);
+            insertAddress.bindString(4, domain);
+            insertAddress.executeInsert();
+        }
+    }
+
+    /**
+     * Adds the message's subject and addresses to the search index, replacing an existing entry. The body is added by
+     * the fulltext indexer, see {@link #queueFulltextIndexing(long)}.
+     *
+     * @see MessageSearchIndex#put(SQLiteDatabase, long, Message, String)
+     */
+    void indexSearchHeaders(long messageId, Message message) {
+        if (deleteSearchEntry == null) {
+            deleteSearchEntry = db.compileStatement(MessageSearchIndex.DELETE_ENTRY_SQL);
+            replaceSearchText = db.compileStatement(MessageSearchIndex.REPLACE_TEXT_SQL);
+            insertSearchEntry = db.compileStatement(MessageSearchIndex.INSERT_ENTRY_SQL);
+        }
+
+        deleteSearchEntry.bindLong(1, messageId);
+        deleteSearchEntry.executeUpdateDelete();
+
+        replaceSearchText.clearBindings();
+        replaceSearchText.bindLong(1, messageId);
+        bindStringOrNull(replaceSearchText, 2, message.getSubject());
+        bindStringOrNull(replaceSearchText, 3, MessageSearchIndex.getSenderText(message));
+        bindStringOrNull(replaceSearchText, 4, MessageSearchIndex.getToText(message));
+        bindStringOrNull(replaceSearchText, 5, MessageSearchIndex.getCcText(message));
+        replaceSearchText.executeInsert();
+
+        insertSearchEntry.bindLong(1, messageId);
+        insertSearchEntry.executeInsert();
+    }
+
+    /**
+     * Adds the message to the fulltext backlog. Replacing an existing entry gives it a new ID, so an indexer that read
+     * the old version of the message won't remove it.
+     */
+    void queueFulltextIndexing(long messageId) {
+        if (queueFulltextIndexing == null) {
+            queueFulltextIndexing = db.compileStatement("INSERT OR REPLACE INTO fulltext_backlog (message_id) " +
+                    "VALUES (?)");
+        }
+
+        queueFulltextIndexing.bindLong(1, messageId);
+        queueFulltextIndexing.executeInsert();
+    }
+
+    void close() {
+        close(insertMessage);
+        close(insertThread);
+        close(insertMessagePart);
+        close(deleteAddresses);
+        close(insertAddress);
+        close(deleteSearchEntry);
+        close(replaceSearchText);
+        close(insertSearchEntry);
+        close(queueFulltextIndexing);
+    }
+
+    static String createInsertSql(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    private static long executeInsert(SQLiteStatement statement, String[] columns, ContentValues values) {
+        statement.clearBindings();
+        int boundColumns = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (values.containsKey(columns[i])) {
+                boundColumns++;
+                Object value = values.get(columns[i]);
+                if (value != null) {
+                    DatabaseUtils.bindObjectToProgram(statement, i + 1, value);
+                }
+            }
+        }
+
+        if (boundColumns != values.size()) {
+            throw new IllegalArgumentException("Values contain columns the statement doesn't insert: " + values);
+        }
+
+        return statement.executeInsert();
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void close(SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.fsck.k9.mailstore;
+
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.fsck.k9.mail.Address;
+import com.fsck.k9.mail.Message;
+import com.fsck.k9.mail.Message.RecipientType;
+
+
+/**
+ * The fulltext index used to search messages by subject, sender, To and Cc recipients and body.
+ * <p>
+ * {@code messages_search} is an FTS4 table with external content: it only stores the index, the indexed text is kept
+ * in {@code message_search_text}. FTS4 reads the old text from there when an entry is removed, so both tables always
+ * have to be changed together, index entry first. The header columns are indexed when a message is stored, the body
+ * is added later from the fulltext backlog (see {@link FulltextBacklog}).
+ * </p><p>
+ * The subject and the addresses are also stored in the {@code messages} table, so they're kept twice. The body text
+ * only exists here. The copy can't be avoided: FTS4 has to get exactly the indexed text back to remove an entry, and
+ * the packed address lists in {@code messages} contain length fields that would be indexed as words. Android before
+ * 4.1 doesn't support external content, there FTS4 keeps its own copy and {@code message_search_text} is only used to
+ * fill the index.
+ * </p><p>
+ * Addresses are indexed as {@code "personal address"}. The tokenizer splits {@code alice@mail.example.com} into
+ * {@code alice}, {@code mail}, {@code example} and {@code com}. The index only finds whole words and word beginnings,
+ * so searches use it to narrow down the messages and then check those with {@code LIKE} (see
+ * {@link com.fsck.k9.search.SqlQueryBuilder}).
+ * </p>
+ */
+class MessageSearchIndex {
+    static final String DELETE_ENTRY_SQL = "DELETE FROM messages_search WHERE docid = ?";
+    static final String DELETE_TEXT_SQL = "DELETE FROM message_search_text WHERE id = ?";
+    static final String REPLACE_TEXT_SQL = "INSERT OR REPLACE INTO message_search_text " +
+            "(id, subject, sender, to_recipients, cc_recipients, body) VALUES (?, ?, ?, ?, ?, ?)";
+    static final String INSERT_ENTRY_SQL = "INSERT INTO messages_search " +
+            "(docid, subject, sender, to_recipients, cc_recipients, body) " +
+            "SELECT id, subject, sender, to_recipients, cc_recipients, body FROM message_search_text WHERE id = ?";
+
+
+    private MessageSearchIndex() {
+    }
+
+    /**
+     * Adds a message to the index or replaces its entry.
+     *
+     * @param body The message's text, or {@code null} if it hasn't been extracted yet.
+     */
+    static void put(SQLiteDatabase db, long messageId, Message message, String body) {
+        String[] idArg = { Long.toString(messageId) };
+        db.execSQL(DELETE_ENTRY_SQL, idArg);
+        db.execSQL(REPLACE_TEXT_SQL, new Object[] {
+                messageId, message.getSubject(), getSenderText(message), getToText(message), getCcText(message),
+                body });
+        db.execSQL(INSERT_ENTRY_SQL, idArg);
+    }
+
+    static void remove(SQLiteDatabase db, long messageId) {
+        String[] idArg = { Long.toString(messageId) };
+        db.execSQL(DELETE_ENTRY_SQL, idArg);
+        db.execSQL(DELETE_TEXT_SQL, idArg);
+    }
+
+    static String getSenderText(Message message) {
+        return getAddressText(message.getFrom());
+    }
+
+    static String getToText(Message message) {
+        return getAddressText(message.getRecipients(RecipientType.TO));
+    }
+
+    static String getCcText(Message message) {
+        return getAddressText(message.getRecipients(RecipientType.CC));
+    }
+
+    private static String getAddressText(Address[] addresses) {
+        StringBuilder text = new StringBuilder();
+        appendAddresses(text, addresses);
+        return text.length() > 0 ? text.toString() : null;
+    }
+
+    private static void appendAddresses(StringBuilder text, Address[] addresses) {
+        if (addresses == null) {
+            return;
+        }
+
+        for (Address address : addresses) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            if (address.getPersonal() != null) {
+                text.append(address.getPersonal()).append(' ');
+            }
+            if (address.getAddress() != null) {
+                text.append(address.getAddress());
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.fsck.k9.mailstore.LockableDatabase.TransactionListener;
+
+
+/**
+ * In-memory index of the messages in a folder by Message-ID, used to thread new messages without querying the
+ * database for the message itself and each of its references.
+ * <p>
+ * An entry holds what {@link #query(SQLiteDatabase, long, String, boolean)} returns for a Message-ID: the first
+ * message (lowest database ID) with that Message-ID and its entry in the {@code threads} table. The index is loaded
+ * when it's first used. If the folder contains at most {@link #MAX_ENTRIES} Message-IDs, all of them are loaded and a
+ * missing entry means there is no such message. Larger folders only keep the most recently used entries in memory
+ * and look up misses in the database. Entries are also indexed by thread root and thread entry, so the updates that
+ * mirror changes to the {@code threads} table don't have to scan the whole index.
+ * </p><p>
+ * The index is only used and updated while messages are stored, i.e. inside a write transaction. If that transaction
+ * is rolled back, the index is reset. Code that changes messages or threads in other ways has to call
+ * {@link LocalStore#invalidateThreadIndex(long)}.
+ * </p>
+ */
+class MessageThreadIndex {
+    static final int MAX_ENTRIES = 10000;
+
+
+    private final LockableDatabase database;
+    private final long folderId;
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries;
+    private final Map<Long, Set<String>> messageIdsByRoot = new HashMap<>();
+    private final Map<Long, String> messageIdByThread = new HashMap<>();
+    private boolean loaded;
+    private boolean complete;
+    private boolean transactionListenerRegistered;
+
+
+    MessageThreadIndex(LockableDatabase database, long folderId) {
+        this(database, folderId, MAX_ENTRIES);
+    }
+
+    MessageThreadIndex(LockableDatabase database, long folderId, final int maxEntries) {
+        this.database = database;
+        this.folderId = folderId;
+        this.maxEntries = maxEntries;
+
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    complete = false;
+                    unindex(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the same result as {@link #query(SQLiteDatabase, long, String, boolean)}, but from memory if possible.
+     */
+    synchronized ThreadInfo get(SQLiteDatabase db, String messageId, boolean onlyEmpty) {
+        if (messageId == null) {
+            return null;
+        }
+
+        registerTransactionListener();
+        loadIfNecessary(db);
+
+        Entry entry = entries.get(messageId);
+        if (entry == null && !complete) {
+            entry = query(db, folderId, messageId, false);
+            if (entry != null) {
+                putEntry(messageId, entry);
+            }
+        }
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (onlyEmpty && !entry.empty) {
+            // A later message with the same Message-ID might still be empty
+            Entry emptyEntry = query(db, folderId, messageId, true);
+            return emptyEntry != null ? emptyEntry.toThreadInfo(messageId) : null;
+        }
+
+        return entry.toThreadInfo(messageId);
+    }
+
+    /**
+     * Records a new message and its thread entry.
+     * <p>
+     * Unless all Message-IDs of the folder are in memory, it's not known whether an older message with the same
+     * Message-ID exists, so the message is only recorded if the index is complete.
+     * </p>
+     *
+     * @param rootId The root that was inserted into the {@code threads} table, or {@code -1} if the new entry is a root.
+     */
+    synchronized void addMessage(String messageId, long msgId, long threadId, long rootId, long parentId) {
+        if (complete) {
+            put(messageId, msgId, threadId, rootId, parentId, false);
+        }
+    }
+
+    /**
+     * Records an empty placeholder message created for a Message-ID that {@link #get(SQLiteDatabase, String, boolean)}
+     * didn't find.
+     */
+    synchronized void addPlaceholder(String messageId, long msgId, long threadId, long rootId, long parentId) {
+        if (loaded) {
+            put(messageId, msgId, threadId, rootId, parentId, true);
+        }
+    }
+
+    private void put(String messageId, long msgId, long threadId, long rootId, long parentId, boolean empty) {
+        if (messageId == null || entries.containsKey(messageId)) {
+            return;
+        }
+
+        registerTransactionListener();
+
+        // The 'set_thread_root' trigger makes new roots point to themselves
+        long root = rootId != -1 ? rootId : threadId;
+        putEntry(messageId, new Entry(threadId, msgId, root, parentId, empty));
+    }
+
+    /**
+     * Records that an empty placeholder message has been replaced by the actual message.
+     */
+    synchronized void markNotEmpty(String messageId, long msgId) {
+        Entry entry = entries.get(messageId);
+        if (entry != null && entry.msgId == msgId) {
+            registerTransactionListener();
+            putEntry(messageId, new Entry(entry.threadId, msgId, entry.rootId, entry.parentId, false));
+        }
+    }
+
+    /**
+     * Mirrors {@code UPDATE threads SET root = newRootId WHERE root = oldRootId}.
+     */
+    synchronized void changeRoot(long oldRootId, long newRootId) {
+        registerTransactionListener();
+
+        Set<String> messageIds = messageIdsByRoot.get(oldRootId);
+        if (messageIds == null || oldRootId == newRootId) {
+            return;
+        }
+
+        for (String messageId : new ArrayList<>(messageIds)) {
+            Entry entry = entries.get(messageId);
+            putEntry(messageId, new Entry(entry.threadId, entry.msgId, newRootId, entry.parentId, entry.empty));
+        }
+    }
+
+    /**
+     * Mirrors {@code UPDATE threads SET root = rootId, parent = parentId WHERE id = threadId}.
+     */
+    synchronized void moveThread(long threadId, long rootId, long parentId) {
+        registerTransactionListener();
+
+        String messageId = messageIdByThread.get(threadId);
+        if (messageId == null) {
+            return;
+        }
+
+        Entry entry = entries.get(messageId);
+        putEntry(messageId, new Entry(threadId, entry.msgId, rootId, parentId, entry.empty));
+    }
+
+    synchronized void reset() {
+        clear();
+        loaded = false;
+        complete = false;
+    }
+
+    private void putEntry(String messageId, Entry entry) {
+        Entry previous = entries.put(messageId, entry);
+        if (previous != null) {
+            unindex(messageId, previous);
+        }
+
+        Set<String> messageIds = messageIdsByRoot.get(entry.rootId);
+        if (messageIds == null) {
+            messageIds = new HashSet<>();
+            messageIdsByRoot.put(entry.rootId, messageIds);
+        }
+        messageIds.add(messageId);
+        messageIdByThread.put(entry.threadId, messageId);
+    }
+
+    private void unindex(String messageId, Entry entry) {
+        Set<String> messageIds = messageIdsByRoot.get(entry.rootId);
+        if (messageIds != null) {
+            messageIds.remove(messageId);
+            if (messageIds.isEmpty()) {
+                messageIdsByRoot.remove(entry.rootId);
+            }
+        }
+
+        if (messageId.equals(messageIdByThread.get(entry.threadId))) {
+            messageIdByThread.remove(entry.threadId);
+        }
+    }
+
+    private void clear() {
+        entries.clear();
+        messageIdsByRoot.clear();
+        messageIdByThread.clear();
+    }
+
+    private void loadIfNecessary(SQLiteDatabase db) {
+        if (loaded) {
+            return;
+        }
+
+        loaded = true;
+        complete = false;
+        clear();
+
+        String[] folderIdArg = { Long.toString(folderId) };
+        Cursor countCursor = db.rawQuery("SELECT COUNT(id) FROM messages " +
+                "WHERE folder_id = ? AND message_id IS NOT NULL", folderIdArg);
+        try {
+            if (!countCursor.moveToFirst() || countCursor.getLong(0) > maxEntries) {
+                return;
+            }
+        } finally {
+            countCursor.close();
+        }
+
+        Cursor cursor = db.rawQuery("SELECT m.message_id, t.id, m.id, t.root, t.parent, m.empty " +
+                "FROM messages m " +
+                "LEFT JOIN threads t ON (t.message_id = m.id) " +
+                "WHERE m.folder_id = ? AND m.message_id IS NOT NULL " +
+                "ORDER BY m.id", folderIdArg);
+        try {
+            while (cursor.moveToNext()) {
+                String messageId = cursor.getString(0);
+                if (!entries.containsKey(messageId)) {
+                    putEntry(messageId, readEntry(cursor, 1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        complete = true;
+    }
+
+    private void registerTransactionListener() {
+        if (transactionListenerRegistered) {
+            return;
+        }
+
+        transactionListenerRegistered = true;
+        database.addTransactionListener(new TransactionListener() {
+            @Override
+            public void onTransactionEnd(boolean committed) {
+                synchronized (MessageThreadIndex.this) {
+                    transactionListenerRegistered = false;
+                    if (!committed) {
+                        reset();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Looks up the first message with the given Message-ID in a folder, together with its thread entry.
+     *
+     * @param onlyEmpty Only consider empty placeholder messages.
+     */
+    static Entry query(SQLiteDatabase db, long folderId, String messageId, boolean onlyEmpty) {
+        String sql = "SELECT t.id, m.id, t.root, t.parent, m.empty " +
+                "FROM messages m " +
+                "LEFT JOIN threads t ON (t.message_id = m.id) " +
+                "WHERE m.folder_id = ? AND m.message_id = ? " +
+                ((onlyEmpty) ? "AND m.empty = 1 " : "") +
+                "ORDER BY m.id LIMIT 1";
+        String[] selectionArgs = { Long.toString(folderId), messageId };
+        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        try {
+            return cursor.moveToFirst() ? readEntry(cursor, 0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Entry readEntry(Cursor cursor, int offset) {
+        long threadId = cursor.getLong(offset);
+        long msgId = cursor.getLong(offset + 1);
+        long rootId = cursor.isNull(offset + 2) ? -1 : cursor.getLong(offset + 2);
+        long parentId = cursor.isNull(offset + 3) ? -1 : cursor.getLong(offset + 3);
+        boolean empty = cursor.getInt(offset + 4) == 1;
+
+        return new Entry(threadId, msgId, rootId, parentId, empty);
+    }
+
+
+    static class Entry {
+        final long threadId;
+        final long msgId;
+        final long rootId;
+        final long parentId;
+        final boolean empty;
+
+
+        Entry(long threadId, long msgId, long rootId, long parentId, boolean empty) {
+            this.threadId = threadId;
+            this.msgId = msgId;
+            this.rootId = rootId;
+            this.parentId = parentId;
+            this.empty = empty;
+        }
+
+        ThreadInfo toThreadInfo(String messageId) {
+            return new ThreadInfo(threadId, msgId, messageId, rootId, parentId);
+        }
+    }
+}
@@ -15,15 +15,13 @@ import com.fsck.k9.mail.Part;
 import com.fsck.k9.mail.internet.MimeBodyPart;
 import com.fsck.k9.mail.internet.MimeMessage;
 import com.fsck.k9.mail.internet.MimeMultipart;
+import com.fsck.k9.mail.internet.MimeParseContext;
 import com.fsck.k9.mailstore.util.FileFactory;
-import org.apache.commons.io.IOUtils;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.io.EOLConvertingInputStream;
 import org.apache.james.mime4j.parser.ContentHandler;
-import org.apache.james.mime4j.parser.MimeStreamParser;
 import org.apache.james.mime4j.stream.BodyDescriptor;
 import org.apache.james.mime4j.stream.Field;
-import org.apache.james.mime4j.stream.MimeConfig;
 
 public class MimePartStreamParser {
 
@@ -31,17 +29,9 @@ public class MimePartStreamParser {
             throws MessagingException, IOException {
         MimeBodyPart parsedRootPart = new MimeBodyPart();
 
-        MimeConfig parserConfig  = new MimeConfig();
-        parserConfig.setMaxHeaderLen(-1);
-        parserConfig.setMaxLineLen(-1);
-        parserConfig.setMaxHeaderCount(-1);
-
-        MimeStreamParser parser = new MimeStreamParser(parserConfig);
-        parser.setContentHandler(new PartBuilder(fileFactory, parsedRootPart));
-        parser.setRecurse();
-
         try {
-            parser.parse(new EOLConvertingInputStream(inputStream));
+            MimeParseContext.parse(new EOLConvertingInputStream(inputStream),
+                    new PartBuilder(fileFactory, parsedRootPart));
         } catch (MimeException e) {
             throw new MessagingException("Failed to parse decrypted content", e);
         }
@@ -54,7 +44,7 @@ public class MimePartStreamParser {
         DeferredFileBody body = new DeferredFileBody(fileFactory, transferEncoding);
         OutputStream outputStream = body.getOutputStream();
         try {
-            IOUtils.copy(inputStream, outputStream);
+            MimeParseContext.copy(inputStream, outputStream);
         } finally {
             outputStream.close();
         }
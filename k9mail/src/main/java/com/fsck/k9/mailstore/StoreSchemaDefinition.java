@@ -6,6 +6,7 @@ import java.util.Locale;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
 import timber.log.Timber;
 
 import com.fsck.k9.Account;
@@ -94,7 +95,8 @@ class StoreSchemaDefinition implements LockableDatabase.SchemaDefinition {
                 "push_class TEXT, " +
                 "display_class TEXT, " +
                 "notify_class TEXT default '"+ Folder.FolderClass.INHERITED.name() + "', " +
-                "more_messages TEXT default \"unknown\"" +
+                "more_messages TEXT default \"unknown\", " +
+                "message_count INTEGER default 0" +
                 ")");
 
         db.execSQL("CREATE INDEX IF NOT EXISTS folder_name ON folders (name)");
@@ -197,10 +199,38 @@ class StoreSchemaDefinition implements LockableDatabase.SchemaDefinition {
                 "UPDATE threads SET root=id WHERE root IS NULL AND ROWID = NEW.ROWID; " +
                 "END");
 
+        db.execSQL("DROP TABLE IF EXISTS thread_summary");
+        db.execSQL("CREATE TABLE thread_summary (" +
+                "folder_id INTEGER NOT NULL, " +
+                "root INTEGER NOT NULL, " +
+                "message_count INTEGER NOT NULL, " +
+                "date INTEGER, " +
+                "internal_date INTEGER, " +
+                "attachment_count INTEGER, " +
+                "read INTEGER, " +
+                "flagged INTEGER, " +
+                "answered INTEGER, " +
+                "forwarded INTEGER, " +
+                "latest_message_id INTEGER" +
+                ")");
+
+        db.execSQL("DROP INDEX IF EXISTS thread_summary_folder_root");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS thread_summary_folder_root ON thread_summary (folder_id, root)");
+
+        db.execSQL("DROP INDEX IF EXISTS thread_summary_folder_date");
+        db.execSQL("CREATE INDEX IF NOT EXISTS thread_summary_folder_date ON thread_summary (folder_id, date)");
+
+        createThreadSummaryTriggers(db);
+
+        createFolderCountsTriggers(db);
+
         db.execSQL("DROP TABLE IF EXISTS pending_commands");
         db.execSQL("CREATE TABLE pending_commands " +
                 "(id INTEGER PRIMARY KEY, command TEXT, data TEXT)");
 
+        db.execSQL("DROP TABLE IF EXISTS address_repack_progress");
+        db.execSQL("CREATE TABLE address_repack_progress (last_message_id INTEGER NOT NULL)");
+
         db.execSQL("DROP TRIGGER IF EXISTS delete_folder");
         db.execSQL("CREATE TRIGGER delete_folder BEFORE DELETE ON folders BEGIN DELETE FROM messages WHERE old.id = folder_id; END;");
 
@@ -209,11 +239,178 @@ class StoreSchemaDefinition implements LockableDatabase.SchemaDefinition {
                 "BEFORE DELETE ON messages " +
                 "BEGIN " +
                 "DELETE FROM message_parts WHERE root = OLD.message_part_id; " +
-                "DELETE FROM messages_fulltext WHERE docid = OLD.id; " +
+                "DELETE FROM messages_search WHERE docid = OLD.id; " +
+                "DELETE FROM message_search_text WHERE id = OLD.id; " +
+                "END");
+
+        db.execSQL("DROP TABLE IF EXISTS message_search_text");
+        db.execSQL("CREATE TABLE message_search_text (" +
+                "id INTEGER PRIMARY KEY, " +
+                "subject TEXT, " +
+                "sender TEXT, " +
+                "to_recipients TEXT, " +
+                "cc_recipients TEXT, " +
+                "body TEXT" +
+                ")");
+
+        db.execSQL("DROP TABLE IF EXISTS messages_search");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            db.execSQL("CREATE VIRTUAL TABLE messages_search USING fts4 (" +
+                    "subject, sender, to_recipients, cc_recipients, body, " +
+                    "content=\"message_search_text\", prefix=\"2,3\")");
+        } else {
+            // SQLite 3.7.4 doesn't support external content and prefix indexes
+            db.execSQL("CREATE VIRTUAL TABLE messages_search USING fts4 (" +
+                    "subject, sender, to_recipients, cc_recipients, body)");
+        }
+
+        db.execSQL("DROP TABLE IF EXISTS message_addresses");
+        db.execSQL("CREATE TABLE message_addresses (" +
+                "message_id INTEGER NOT NULL, " +
+                "role INTEGER NOT NULL, " +
+                "address_lower TEXT NOT NULL, " +
+                "domain TEXT NOT NULL" +
+                ")");
+
+        db.execSQL("DROP INDEX IF EXISTS message_addresses_address");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS message_addresses_address " +
+                "ON message_addresses (address_lower, role, message_id)");
+
+        db.execSQL("DROP INDEX IF EXISTS message_addresses_domain");
+        db.execSQL("CREATE INDEX IF NOT EXISTS message_addresses_domain ON message_addresses (domain, role, message_id)");
+
+        db.execSQL("DROP INDEX IF EXISTS message_addresses_message_id");
+        db.execSQL("CREATE INDEX IF NOT EXISTS message_addresses_message_id ON message_addresses (message_id)");
+
+        db.execSQL("DROP TRIGGER IF EXISTS message_addresses_delete_message");
+        db.execSQL("CREATE TRIGGER message_addresses_delete_message " +
+                "AFTER DELETE ON messages " +
+                "BEGIN " +
+                "DELETE FROM message_addresses WHERE message_id = OLD.id; " +
                 "END");
 
-        db.execSQL("DROP TABLE IF EXISTS messages_fulltext");
-        db.execSQL("CREATE VIRTUAL TABLE messages_fulltext USING fts4 (fulltext)");
+        db.execSQL("DROP TABLE IF EXISTS fulltext_backlog");
+        db.execSQL("CREATE TABLE fulltext_backlog (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "message_id INTEGER NOT NULL" +
+                ")");
+
+        db.execSQL("DROP INDEX IF EXISTS fulltext_backlog_message_id");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS fulltext_backlog_message_id ON fulltext_backlog (message_id)");
+
+        db.execSQL("DROP TRIGGER IF EXISTS fulltext_backlog_delete_message");
+        db.execSQL("CREATE TRIGGER fulltext_backlog_delete_message " +
+                "AFTER DELETE ON messages " +
+                "BEGIN " +
+                "DELETE FROM fulltext_backlog WHERE message_id = OLD.id; " +
+                "END");
+    }
+
+    /**
+     * Keeps the 'thread_summary' table up to date. Every change to a thread entry or to one of the aggregated message
+     * columns recomputes the summary of the affected thread(s) in the message's folder.
+     */
+    private static void createThreadSummaryTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_insert_thread");
+        db.execSQL("CREATE TRIGGER thread_summary_insert_thread " +
+                "AFTER INSERT ON threads " +
+                "WHEN NEW.root IS NOT NULL " +
+                "BEGIN " +
+                refreshThreadSummary("(SELECT folder_id FROM messages WHERE id = NEW.message_id)", "= NEW.root") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_update_thread");
+        db.execSQL("CREATE TRIGGER thread_summary_update_thread " +
+                "AFTER UPDATE OF root ON threads " +
+                "WHEN OLD.root IS NOT NEW.root " +
+                "BEGIN " +
+                refreshThreadSummary("(SELECT folder_id FROM messages WHERE id = OLD.message_id)", "= OLD.root") +
+                refreshThreadSummary("(SELECT folder_id FROM messages WHERE id = NEW.message_id)", "= NEW.root") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_delete_thread");
+        db.execSQL("CREATE TRIGGER thread_summary_delete_thread " +
+                "AFTER DELETE ON threads " +
+                "BEGIN " +
+                refreshThreadSummary("(SELECT folder_id FROM messages WHERE id = OLD.message_id)", "= OLD.root") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_update_message");
+        db.execSQL("CREATE TRIGGER thread_summary_update_message " +
+                "AFTER UPDATE OF folder_id, date, internal_date, attachment_count, read, flagged, answered, " +
+                "forwarded, deleted, empty ON messages " +
+                "WHEN OLD.folder_id IS NOT NEW.folder_id OR OLD.date IS NOT NEW.date OR " +
+                "OLD.internal_date IS NOT NEW.internal_date OR OLD.attachment_count IS NOT NEW.attachment_count OR " +
+                "OLD.read IS NOT NEW.read OR OLD.flagged IS NOT NEW.flagged OR OLD.answered IS NOT NEW.answered OR " +
+                "OLD.forwarded IS NOT NEW.forwarded OR OLD.deleted IS NOT NEW.deleted OR OLD.empty IS NOT NEW.empty " +
+                "BEGIN " +
+                refreshThreadSummary("NEW.folder_id", "IN (SELECT root FROM threads WHERE message_id = NEW.id)") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_move_message");
+        db.execSQL("CREATE TRIGGER thread_summary_move_message " +
+                "AFTER UPDATE OF folder_id ON messages " +
+                "WHEN OLD.folder_id IS NOT NEW.folder_id " +
+                "BEGIN " +
+                refreshThreadSummary("OLD.folder_id", "IN (SELECT root FROM threads WHERE message_id = OLD.id)") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_delete_message");
+        db.execSQL("CREATE TRIGGER thread_summary_delete_message " +
+                "AFTER DELETE ON messages " +
+                "BEGIN " +
+                refreshThreadSummary("OLD.folder_id", "IN (SELECT root FROM threads WHERE message_id = OLD.id)") +
+                "END");
+    }
+
+    /**
+     * Keeps the message, unread and flagged counts in the 'folders' table up to date. Only messages that are neither
+     * deleted nor empty placeholders are counted.
+     */
+    private static void createFolderCountsTriggers(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS folder_counts_insert_message");
+        db.execSQL("CREATE TRIGGER folder_counts_insert_message " +
+                "AFTER INSERT ON messages " +
+                "WHEN NEW.empty IS 0 AND NEW.deleted IS 0 " +
+                "BEGIN " +
+                updateFolderCounts("+", "NEW") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS folder_counts_update_message");
+        db.execSQL("CREATE TRIGGER folder_counts_update_message " +
+                "AFTER UPDATE OF folder_id, empty, deleted, read, flagged ON messages " +
+                "WHEN OLD.folder_id IS NOT NEW.folder_id OR OLD.empty IS NOT NEW.empty OR " +
+                "OLD.deleted IS NOT NEW.deleted OR OLD.read IS NOT NEW.read OR OLD.flagged IS NOT NEW.flagged " +
+                "BEGIN " +
+                updateFolderCounts("-", "OLD") +
+                updateFolderCounts("+", "NEW") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS folder_counts_delete_message");
+        db.execSQL("CREATE TRIGGER folder_counts_delete_message " +
+                "AFTER DELETE ON messages " +
+                "WHEN OLD.empty IS 0 AND OLD.deleted IS 0 " +
+                "BEGIN " +
+                updateFolderCounts("-", "OLD") +
+                "END");
+    }
+
+    private static String updateFolderCounts(String operator, String row) {
+        return "UPDATE folders SET " +
+                "message_count = COALESCE(message_count, 0) " + operator + " 1, " +
+                "unread_count = COALESCE(unread_count, 0) " + operator + " (" + row + ".read IS 0), " +
+                "flagged_count = COALESCE(flagged_count, 0) " + operator + " (" + row + ".flagged IS 1) " +
+                "WHERE id = " + row + ".folder_id AND " + row + ".empty IS 0 AND " + row + ".deleted IS 0; ";
+    }
+
+    private static String refreshThreadSummary(String folderId, String rootCondition) {
+        return "DELETE FROM thread_summary WHERE folder_id = " + folderId + " AND root " + rootCondition + "; " +
+                "INSERT INTO thread_summary (" + ThreadSummary.COLUMNS + ") " +
+                "SELECT " + ThreadSummary.AGGREGATES + " " +
+                "FROM threads t JOIN messages m ON (m.id = t.message_id) " +
+                "WHERE m.folder_id = " + folderId + " AND t.root " + rootCondition + " " +
+                "AND m.empty = 0 AND m.deleted = 0 " +
+                "GROUP BY m.folder_id, t.root; ";
     }
 
 
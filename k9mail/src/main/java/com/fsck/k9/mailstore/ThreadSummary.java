@@ -0,0 +1,62 @@
+package com.fsck.k9.mailstore;
+
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+
+/**
+ * The {@code thread_summary} table holds one row per thread and folder with the values the threaded message list
+ * displays for the thread: the number of messages, the aggregated dates and flags, and the newest message.
+ * <p>
+ * It's maintained by triggers on the {@code messages} and {@code threads} tables (see {@link StoreSchemaDefinition}),
+ * so the threaded message list of a folder can be read with a range scan instead of grouping all messages of the
+ * folder by thread. Only messages that are neither deleted nor empty placeholders are counted.
+ * </p>
+ */
+class ThreadSummary {
+    static final String COLUMNS = "folder_id, root, message_count, date, internal_date, attachment_count, " +
+            "read, flagged, answered, forwarded, latest_message_id";
+
+    /**
+     * The values of {@link #COLUMNS} for a group of {@code threads t JOIN messages m} grouped by folder and root.
+     */
+    static final String AGGREGATES = "m.folder_id, t.root, COUNT(t.root), MAX(m.date), MAX(m.internal_date), " +
+            "SUM(m.attachment_count), MIN(m.read), MAX(m.flagged), MIN(m.answered), MIN(m.forwarded), " +
+            "(SELECT m2.id FROM threads t2 JOIN messages m2 ON (m2.id = t2.message_id) " +
+            "WHERE t2.root = t.root AND m2.folder_id = m.folder_id AND m2.empty = 0 AND m2.deleted = 0 " +
+            "ORDER BY m2.date DESC, m2.id DESC LIMIT 1)";
+
+    private static final String SELECT_ALL = "SELECT " + AGGREGATES + " " +
+            "FROM threads t JOIN messages m ON (m.id = t.message_id) " +
+            "WHERE m.empty = 0 AND m.deleted = 0 " +
+            "GROUP BY m.folder_id, t.root";
+
+
+    private ThreadSummary() {
+    }
+
+    /**
+     * Compares the stored summaries with the ones computed from the {@code messages} and {@code threads} tables.
+     *
+     * @return The number of rows that are missing, outdated or shouldn't exist.
+     */
+    static int countMismatches(SQLiteDatabase db) {
+        String storedRows = "SELECT " + COLUMNS + " FROM thread_summary";
+        return count(db, storedRows + " EXCEPT " + SELECT_ALL) + count(db, SELECT_ALL + " EXCEPT " + storedRows);
+    }
+
+    static void rebuild(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM thread_summary");
+        db.execSQL("INSERT INTO thread_summary (" + COLUMNS + ") " + SELECT_ALL);
+    }
+
+    private static int count(SQLiteDatabase db, String query) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM (" + query + ")", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.fsck.k9.mailstore.migrations;
+
+
+import android.database.sqlite.SQLiteDatabase;
+
+
+class MigrationTo61 {
+    /**
+     * Address lists of existing messages are converted to the current packed format by
+     * {@code LocalStore.repackAddressLists()} in the background. This only records where to start.
+     */
+    static void scheduleAddressListRepacking(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS address_repack_progress");
+        db.execSQL("CREATE TABLE address_repack_progress (last_message_id INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO address_repack_progress (last_message_id) VALUES (0)");
+    }
+}
@@ -0,0 +1,108 @@
+package com.fsck.k9.mailstore.migrations;
+
+
+import android.database.sqlite.SQLiteDatabase;
+
+
+class MigrationTo62 {
+    private static final String COLUMNS = "folder_id, root, message_count, date, internal_date, attachment_count, " +
+            "read, flagged, answered, forwarded, latest_message_id";
+
+    private static final String AGGREGATES = "m.folder_id, t.root, COUNT(t.root), MAX(m.date), " +
+            "MAX(m.internal_date), SUM(m.attachment_count), MIN(m.read), MAX(m.flagged), MIN(m.answered), " +
+            "MIN(m.forwarded), " +
+            "(SELECT m2.id FROM threads t2 JOIN messages m2 ON (m2.id = t2.message_id) " +
+            "WHERE t2.root = t.root AND m2.folder_id = m.folder_id AND m2.empty = 0 AND m2.deleted = 0 " +
+            "ORDER BY m2.date DESC, m2.id DESC LIMIT 1)";
+
+
+    static void createThreadSummaryTable(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS thread_summary");
+        db.execSQL("CREATE TABLE thread_summary (" +
+                "folder_id INTEGER NOT NULL, " +
+                "root INTEGER NOT NULL, " +
+                "message_count INTEGER NOT NULL, " +
+                "date INTEGER, " +
+                "internal_date INTEGER, " +
+                "attachment_count INTEGER, " +
+                "read INTEGER, " +
+                "flagged INTEGER, " +
+                "answered INTEGER, " +
+                "forwarded INTEGER, " +
+                "latest_message_id INTEGER" +
+                ")");
+
+        db.execSQL("DROP INDEX IF EXISTS thread_summary_folder_root");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS thread_summary_folder_root ON thread_summary (folder_id, root)");
+
+        db.execSQL("DROP INDEX IF EXISTS thread_summary_folder_date");
+        db.execSQL("CREATE INDEX IF NOT EXISTS thread_summary_folder_date ON thread_summary (folder_id, date)");
+
+        db.execSQL("INSERT INTO thread_summary (" + COLUMNS + ") " +
+                "SELECT " + AGGREGATES + " " +
+                "FROM threads t JOIN messages m ON (m.id = t.message_id) " +
+                "WHERE m.empty = 0 AND m.deleted = 0 " +
+                "GROUP BY m.folder_id, t.root");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_insert_thread");
+        db.execSQL("CREATE TRIGGER thread_summary_insert_thread " +
+                "AFTER INSERT ON threads " +
+                "WHEN NEW.root IS NOT NULL " +
+                "BEGIN " +
+                refreshThreadSummary("(SELECT folder_id FROM messages WHERE id = NEW.message_id)", "= NEW.root") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_update_thread");
+        db.execSQL("CREATE TRIGGER thread_summary_update_thread " +
+                "AFTER UPDATE OF root ON threads " +
+                "WHEN OLD.root IS NOT NEW.root " +
+                "BEGIN " +
+                refreshThreadSummary("(SELECT folder_id FROM messages WHERE id = OLD.message_id)", "= OLD.root") +
+                refreshThreadSummary("(SELECT folder_id FROM messages WHERE id = NEW.message_id)", "= NEW.root") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_delete_thread");
+        db.execSQL("CREATE TRIGGER thread_summary_delete_thread " +
+                "AFTER DELETE ON threads " +
+                "BEGIN " +
+                refreshThreadSummary("(SELECT folder_id FROM messages WHERE id = OLD.message_id)", "= OLD.root") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_update_message");
+        db.execSQL("CREATE TRIGGER thread_summary_update_message " +
+                "AFTER UPDATE OF folder_id, date, internal_date, attachment_count, read, flagged, answered, " +
+                "forwarded, deleted, empty ON messages " +
+                "WHEN OLD.folder_id IS NOT NEW.folder_id OR OLD.date IS NOT NEW.date OR " +
+                "OLD.internal_date IS NOT NEW.internal_date OR OLD.attachment_count IS NOT NEW.attachment_count OR " +
+                "OLD.read IS NOT NEW.read OR OLD.flagged IS NOT NEW.flagged OR OLD.answered IS NOT NEW.answered OR " +
+                "OLD.forwarded IS NOT NEW.forwarded OR OLD.deleted IS NOT NEW.deleted OR OLD.empty IS NOT NEW.empty " +
+                "BEGIN " +
+                refreshThreadSummary("NEW.folder_id", "IN (SELECT root FROM threads WHERE message_id = NEW.id)") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_move_message");
+        db.execSQL("CREATE TRIGGER thread_summary_move_message " +
+                "AFTER UPDATE OF folder_id ON messages " +
+                "WHEN OLD.folder_id IS NOT NEW.folder_id " +
+                "BEGIN " +
+                refreshThreadSummary("OLD.folder_id", "IN (SELECT root FROM threads WHERE message_id = OLD.id)") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS thread_summary_delete_message");
+        db.execSQL("CREATE TRIGGER thread_summary_delete_message " +
+                "AFTER DELETE ON messages " +
+                "BEGIN " +
+                refreshThreadSummary("OLD.folder_id", "IN (SELECT root FROM threads WHERE message_id = OLD.id)") +
+                "END");
+    }
+
+    private static String refreshThreadSummary(String folderId, String rootCondition) {
+        return "DELETE FROM thread_summary WHERE folder_id = " + folderId + " AND root " + rootCondition + "; " +
+                "INSERT INTO thread_summary (" + COLUMNS + ") " +
+                "SELECT " + AGGREGATES + " " +
+                "FROM threads t JOIN messages m ON (m.id = t.message_id) " +
+                "WHERE m.folder_id = " + folderId + " AND t.root " + rootCondition + " " +
+                "AND m.empty = 0 AND m.deleted = 0 " +
+                "GROUP BY m.folder_id, t.root; ";
+    }
+}
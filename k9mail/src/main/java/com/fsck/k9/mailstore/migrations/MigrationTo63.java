@@ -0,0 +1,53 @@
+package com.fsck.k9.mailstore.migrations;
+
+
+import android.database.sqlite.SQLiteDatabase;
+
+
+class MigrationTo63 {
+    static void addFolderCounts(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE folders ADD message_count INTEGER default 0");
+
+        db.execSQL("UPDATE folders SET " +
+                "message_count = (SELECT COUNT(id) FROM messages " +
+                "WHERE folder_id = folders.id AND empty = 0 AND deleted = 0), " +
+                "unread_count = (SELECT COUNT(id) FROM messages " +
+                "WHERE folder_id = folders.id AND empty = 0 AND deleted = 0 AND read = 0), " +
+                "flagged_count = (SELECT COUNT(id) FROM messages " +
+                "WHERE folder_id = folders.id AND empty = 0 AND deleted = 0 AND flagged = 1)");
+
+        db.execSQL("DROP TRIGGER IF EXISTS folder_counts_insert_message");
+        db.execSQL("CREATE TRIGGER folder_counts_insert_message " +
+                "AFTER INSERT ON messages " +
+                "WHEN NEW.empty IS 0 AND NEW.deleted IS 0 " +
+                "BEGIN " +
+                updateFolderCounts("+", "NEW") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS folder_counts_update_message");
+        db.execSQL("CREATE TRIGGER folder_counts_update_message " +
+                "AFTER UPDATE OF folder_id, empty, deleted, read, flagged ON messages " +
+                "WHEN OLD.folder_id IS NOT NEW.folder_id OR OLD.empty IS NOT NEW.empty OR " +
+                "OLD.deleted IS NOT NEW.deleted OR OLD.read IS NOT NEW.read OR OLD.flagged IS NOT NEW.flagged " +
+                "BEGIN " +
+                updateFolderCounts("-", "OLD") +
+                updateFolderCounts("+", "NEW") +
+                "END");
+
+        db.execSQL("DROP TRIGGER IF EXISTS folder_counts_delete_message");
+        db.execSQL("CREATE TRIGGER folder_counts_delete_message " +
+                "AFTER DELETE ON messages " +
+                "WHEN OLD.empty IS 0 AND OLD.deleted IS 0 " +
+                "BEGIN " +
+                updateFolderCounts("-", "OLD") +
+                "END");
+    }
+
+    private static String updateFolderCounts(String operator, String row) {
+        return "UPDATE folders SET " +
+                "message_count = COALESCE(message_count, 0) " + operator + " 1, " +
+                "unread_count = COALESCE(unread_count, 0) " + operator + " (" + row + ".read IS 0), " +
+                "flagged_count = COALESCE(flagged_count, 0) " + operator + " (" + row + ".flagged IS 1) " +
+                "WHERE id = " + row + ".folder_id AND " + row + ".empty IS 0 AND " + row + ".deleted IS 0; ";
+    }
+}
@@ -0,0 +1,34 @@
+package com.fsck.k9.mailstore.migrations;
+
+
+import android.database.sqlite.SQLiteDatabase;
+
+
+class MigrationTo64 {
+    /**
+     * Messages are added to the fulltext index by {@code LocalStore.indexFulltextBacklog()} in the background. This
+     * queues all messages that aren't in the index yet.
+     */
+    static void createFulltextBacklog(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS fulltext_backlog");
+        db.execSQL("CREATE TABLE fulltext_backlog (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "message_id INTEGER NOT NULL" +
+                ")");
+
+        db.execSQL("DROP INDEX IF EXISTS fulltext_backlog_message_id");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS fulltext_backlog_message_id ON fulltext_backlog (message_id)");
+
+        db.execSQL("DROP TRIGGER IF EXISTS fulltext_backlog_delete_message");
+        db.execSQL("CREATE TRIGGER fulltext_backlog_delete_message " +
+                "AFTER DELETE ON messages " +
+                "BEGIN " +
+                "DELETE FROM fulltext_backlog WHERE message_id = OLD.id; " +
+                "END");
+
+        db.execSQL("INSERT INTO fulltext_backlog (message_id) " +
+                "SELECT id FROM messages " +
+                "WHERE empty = 0 AND deleted = 0 AND id NOT IN (SELECT docid FROM messages_fulltext) " +
+                "ORDER BY id");
+    }
+}
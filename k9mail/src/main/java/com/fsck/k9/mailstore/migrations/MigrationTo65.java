@@ -0,0 +1,52 @@
+package com.fsck.k9.mailstore.migrations;
+
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+
+class MigrationTo65 {
+    /**
+     * Replaces the body-only {@code messages_fulltext} table with {@code messages_search}, which indexes subject,
+     * sender, To and Cc recipients and body in separate columns. The new index starts out empty; all messages are
+     * queued in the fulltext backlog and indexed in the background.
+     */
+    static void createMessageSearchTable(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS delete_message");
+        db.execSQL("CREATE TRIGGER delete_message " +
+                "BEFORE DELETE ON messages " +
+                "BEGIN " +
+                "DELETE FROM message_parts WHERE root = OLD.message_part_id; " +
+                "DELETE FROM messages_search WHERE docid = OLD.id; " +
+                "DELETE FROM message_search_text WHERE id = OLD.id; " +
+                "END");
+
+        db.execSQL("DROP TABLE IF EXISTS messages_fulltext");
+
+        db.execSQL("DROP TABLE IF EXISTS message_search_text");
+        db.execSQL("CREATE TABLE message_search_text (" +
+                "id INTEGER PRIMARY KEY, " +
+                "subject TEXT, " +
+                "sender TEXT, " +
+                "to_recipients TEXT, " +
+                "cc_recipients TEXT, " +
+                "body TEXT" +
+                ")");
+
+        db.execSQL("DROP TABLE IF EXISTS messages_search");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            db.execSQL("CREATE VIRTUAL TABLE messages_search USING fts4 (" +
+                    "subject, sender, to_recipients, cc_recipients, body, " +
+                    "content=\"message_search_text\", prefix=\"2,3\")");
+        } else {
+            db.execSQL("CREATE VIRTUAL TABLE messages_search USING fts4 (" +
+                    "subject, sender, to_recipients, cc_recipients, body)");
+        }
+
+        db.execSQL("DELETE FROM fulltext_backlog");
+        db.execSQL("INSERT INTO fulltext_backlog (message_id) " +
+                "SELECT id FROM messages " +
+                "WHERE empty = 0 AND deleted = 0 " +
+                "ORDER BY id");
+    }
+}
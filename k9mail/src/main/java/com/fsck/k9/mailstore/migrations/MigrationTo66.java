@@ -0,0 +1,85 @@
+package com.fsck.k9.mailstore.migrations;
+
+
+import java.util.Locale;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import com.fsck.k9.mail.Address;
+
+
+class MigrationTo66 {
+    // Index in this array = value of DatabaseAddressRole at the time of this migration
+    private static final String[] ADDRESS_LIST_COLUMNS = {
+            "sender_list", "to_list", "cc_list", "bcc_list", "reply_to_list"
+    };
+
+
+    /**
+     * Creates the {@code message_addresses} table used to search messages by sender or recipient address and fills it
+     * from the packed address lists of existing messages.
+     */
+    static void createMessageAddressesTable(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS message_addresses");
+        db.execSQL("CREATE TABLE message_addresses (" +
+                "message_id INTEGER NOT NULL, " +
+                "role INTEGER NOT NULL, " +
+                "address_lower TEXT NOT NULL, " +
+                "domain TEXT NOT NULL" +
+                ")");
+
+        db.execSQL("DROP INDEX IF EXISTS message_addresses_address");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS message_addresses_address " +
+                "ON message_addresses (address_lower, role, message_id)");
+
+        db.execSQL("DROP INDEX IF EXISTS message_addresses_domain");
+        db.execSQL("CREATE INDEX IF NOT EXISTS message_addresses_domain ON message_addresses (domain, role, message_id)");
+
+        db.execSQL("DROP INDEX IF EXISTS message_addresses_message_id");
+        db.execSQL("CREATE INDEX IF NOT EXISTS message_addresses_message_id ON message_addresses (message_id)");
+
+        db.execSQL("DROP TRIGGER IF EXISTS message_addresses_delete_message");
+        db.execSQL("CREATE TRIGGER message_addresses_delete_message " +
+                "AFTER DELETE ON messages " +
+                "BEGIN " +
+                "DELETE FROM message_addresses WHERE message_id = OLD.id; " +
+                "END");
+
+        fillMessageAddressesTable(db);
+    }
+
+    private static void fillMessageAddressesTable(SQLiteDatabase db) {
+        SQLiteStatement insertAddress = db.compileStatement("INSERT OR IGNORE INTO message_addresses " +
+                "(message_id, role, address_lower, domain) VALUES (?, ?, ?, ?)");
+        Cursor cursor = db.rawQuery("SELECT id, " + TextUtils.join(", ", ADDRESS_LIST_COLUMNS) + " " +
+                "FROM messages WHERE empty = 0", null);
+        try {
+            while (cursor.moveToNext()) {
+                long messageId = cursor.getLong(0);
+                for (int role = 0; role < ADDRESS_LIST_COLUMNS.length; role++) {
+                    for (Address address : Address.unpack(cursor.getString(role + 1))) {
+                        if (address.getAddress() == null) {
+                            continue;
+                        }
+
+                        String addressLower = address.getAddress().toLowerCase(Locale.US);
+                        int domainStart = addressLower.lastIndexOf('@');
+                        String domain = (domainStart != -1) ? addressLower.substring(domainStart + 1) : "";
+
+                        insertAddress.bindLong(1, messageId);
+                        insertAddress.bindLong(2, role);
+                        insertAddress.bindString(3, addressLower);
+                        insertAddress.bindString(4, domain);
+                        insertAddress.executeInsert();
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+            insertAddress.close();
+        }
+    }
+}
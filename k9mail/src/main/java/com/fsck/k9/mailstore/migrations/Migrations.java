@@ -63,7 +63,7 @@ public class Migrations {
             case 53:
                 MigrationTo54.addPreviewTypeColumn(db);
             case 54:
-                MigrationTo55.createFtsSearchTable(db, migrationsHelper);
+                MigrationTo55.createFtsSearchTable(db);
             case 55:
                 MigrationTo56.cleanUpFtsTable(db);
             case 56:
@@ -75,6 +75,18 @@ public class Migrations {
                 MigrationTo59.addMissingIndexes(db);
             case 59:
                 MigrationTo60.migratePendingCommands(db);
+            case 60:
+                MigrationTo61.scheduleAddressListRepacking(db);
+            case 61:
+                MigrationTo62.createThreadSummaryTable(db);
+            case 62:
+                MigrationTo63.addFolderCounts(db);
+            case 63:
+                MigrationTo64.createFulltextBacklog(db);
+            case 64:
+                MigrationTo65.createMessageSearchTable(db);
+            case 65:
+                MigrationTo66.createMessageAddressesTable(db);
         }
     }
 }
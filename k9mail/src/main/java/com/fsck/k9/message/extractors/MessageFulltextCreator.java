@@ -43,7 +43,7 @@ public class MessageFulltextCreator {
             return null;
         }
 
-        String text = MessageExtractor.getTextFromPart(textPart, MAX_CHARACTERS_CHECKED_FOR_FTS);
+        String text = MessageExtractor.getTextPrefixFromPart(textPart, MAX_CHARACTERS_CHECKED_FOR_FTS);
         String mimeType = textPart.getMimeType();
         if (!MimeUtility.isSameMimeType(mimeType, "text/html")) {
             return text;
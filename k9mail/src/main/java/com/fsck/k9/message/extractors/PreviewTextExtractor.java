@@ -17,7 +17,7 @@ class PreviewTextExtractor {
 
     @NonNull
     public String extractPreview(@NonNull Part textPart) throws PreviewExtractionException {
-        String text = MessageExtractor.getTextFromPart(textPart, MAX_CHARACTERS_CHECKED_FOR_PREVIEW);
+        String text = MessageExtractor.getTextPrefixFromPart(textPart, MAX_CHARACTERS_CHECKED_FOR_PREVIEW);
         if (text == null) {
             throw new PreviewExtractionException("Couldn't get text from part");
         }
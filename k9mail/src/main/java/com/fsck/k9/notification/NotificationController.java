@@ -77,8 +77,8 @@ public class NotificationController {
         authenticationErrorNotifications.clearAuthenticationErrorNotification(account, incoming);
     }
 
-    public void showSendingNotification(Account account) {
-        syncNotifications.showSendingNotification(account);
+    public void showSendingNotification(Account account, int sentCount, int totalCount) {
+        syncNotifications.showSendingNotification(account, sentCount, totalCount);
     }
 
     public void clearSendingNotification(Account account) {
@@ -26,7 +26,16 @@ class SyncNotifications {
         this.actionBuilder = actionBuilder;
     }
 
-    public void showSendingNotification(Account account) {
+    public void showSendingNotification(Account account, int sentCount, int totalCount) {
+        NotificationCompat.Builder builder = createSendingNotificationBuilder(account)
+                .setOnlyAlertOnce(true)
+                .setProgress(totalCount, sentCount, false);
+
+        int notificationId = NotificationIds.getFetchingMailNotificationId(account);
+        getNotificationManager().notify(notificationId, builder.build());
+    }
+
+    private NotificationCompat.Builder createSendingNotificationBuilder(Account account) {
         Context context = controller.getContext();
         String accountName = controller.getAccountName(account);
         String title = context.getString(R.string.notification_bg_send_title);
@@ -53,7 +62,7 @@ class SyncNotifications {
                     NOTIFICATION_LED_BLINK_FAST, true);
         }
 
-        getNotificationManager().notify(notificationId, builder.build());
+        return builder;
     }
 
     public void clearSendingNotification(Account account) {
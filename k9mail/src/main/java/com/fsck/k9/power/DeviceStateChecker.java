@@ -0,0 +1,41 @@
+package com.fsck.k9.power;
+
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+
+public class DeviceStateChecker {
+    private final Context context;
+    private final PowerManager powerManager;
+
+
+    public DeviceStateChecker(Context context) {
+        this.context = context.getApplicationContext();
+        powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    public boolean isCharging() {
+        Intent batteryStatus = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    @SuppressWarnings("deprecation")
+    public boolean isInUse() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH) {
+            return powerManager.isInteractive();
+        }
+        return powerManager.isScreenOn();
+    }
+
+    /**
+     * Returns {@code true} if background work that isn't urgent won't compete with the user or drain the battery.
+     */
+    public boolean isIdleOrCharging() {
+        return isCharging() || !isInUse();
+    }
+}
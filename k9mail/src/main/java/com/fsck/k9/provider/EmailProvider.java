@@ -2,9 +2,13 @@ package com.fsck.k9.provider;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import android.content.ContentProvider;
 import android.content.ContentResolver;
@@ -15,6 +19,7 @@ import android.database.Cursor;
 import android.database.CursorWrapper;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
 import android.text.TextUtils;
 
 import com.fsck.k9.Account;
@@ -50,6 +55,12 @@ public class EmailProvider extends ContentProvider {
 
     public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY);
 
+    /**
+     * Key of the {@link Cursor#getExtras() extra} of fulltext search results that holds the number of messages that
+     * haven't been added to the search index yet.
+     */
+    public static final String EXTRA_FULLTEXT_BACKLOG = "fulltext_backlog";
+
 
     /*
      * Constants that are used for the URI matching.
@@ -109,8 +120,34 @@ public class EmailProvider extends ContentProvider {
             FolderColumns.DISPLAY_CLASS
     };
 
+    /**
+     * Columns a selection may refer to for the account stats to be read from the counts stored in the
+     * {@code folders} table. Note that {@link FolderColumns#ID} would refer to the message ID.
+     */
+    private static final Set<String> FOLDER_SELECTION_COLUMNS = new HashSet<String>(Arrays.asList(
+            MessageColumns.FOLDER_ID,
+            FolderColumns.NAME,
+            FolderColumns.INTEGRATE,
+            FolderColumns.TOP_GROUP,
+            FolderColumns.POLL_CLASS,
+            FolderColumns.PUSH_CLASS,
+            FolderColumns.DISPLAY_CLASS
+    ));
+
+    private static final Set<String> SELECTION_KEYWORDS = new HashSet<String>(Arrays.asList(
+            "AND", "OR", "NOT", "IN", "IS", "NULL", "LIKE"
+    ));
+
     private static final String THREADS_TABLE = "threads";
 
+    private static final String THREAD_SUMMARY_TABLE = "thread_summary";
+
+    /**
+     * The selection used for the message list of a single folder. The threaded list of a folder can be read from
+     * {@link #THREAD_SUMMARY_TABLE} instead of being aggregated from all of the folder's messages.
+     */
+    private static final String SINGLE_FOLDER_SELECTION = MessageColumns.FOLDER_ID + " = ?";
+
     static {
         UriMatcher matcher = URI_MATCHER;
 
@@ -246,6 +283,11 @@ public class EmailProvider extends ContentProvider {
                     throw new RuntimeException("Not implemented");
                 }
 
+                if (match != MESSAGES_THREAD && selection != null &&
+                        selection.contains(SqlQueryBuilder.BODY_SEARCH_CONDITION)) {
+                    cursor = new FulltextBacklogCursor(cursor, getFulltextBacklogCount(accountUuid));
+                }
+
                 Uri notificationUri = Uri.withAppendedPath(CONTENT_URI, "account/" + accountUuid + "/messages");
                 cursor.setNotificationUri(contentResolver, notificationUri);
 
@@ -361,6 +403,11 @@ public class EmailProvider extends ContentProvider {
                 public Cursor doDbWork(SQLiteDatabase db) throws WrappedException,
                         UnavailableStorageException {
 
+                    if (SINGLE_FOLDER_SELECTION.equals(selection) && selectionArgs != null &&
+                            selectionArgs.length == 1) {
+                        return getThreadSummaries(db, projection, selectionArgs, sortOrder);
+                    }
+
                     StringBuilder query = new StringBuilder();
 
                     query.append("SELECT ");
@@ -424,6 +471,61 @@ public class EmailProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Reads the threaded message list of a single folder from the {@code thread_summary} table. The aggregated values
+     * come from the summary; all other columns from the newest message of the thread.
+     * <p>
+     * Only used when the selection is exactly {@link #SINGLE_FOLDER_SELECTION}, i.e. a plain folder view. Searches,
+     * unified views and lists that keep the active message visible add conditions the summary can't answer and use
+     * the aggregating query instead.
+     * </p>
+     */
+    private Cursor getThreadSummaries(SQLiteDatabase db, String[] projection, String[] selectionArgs,
+            String sortOrder) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT ");
+        boolean first = true;
+        for (String columnName : projection) {
+            if (!first) {
+                query.append(",");
+            } else {
+                first = false;
+            }
+
+            if (MessageColumns.ID.equals(columnName)) {
+                query.append("m." + MessageColumns.ID + " AS " + MessageColumns.ID);
+            } else if (SpecialColumns.THREAD_COUNT.equals(columnName)) {
+                query.append("s.message_count AS " + SpecialColumns.THREAD_COUNT);
+            } else if (THREAD_AGGREGATION_FUNCS.containsKey(columnName) ||
+                    ThreadColumns.ROOT.equals(columnName) || MessageColumns.FOLDER_ID.equals(columnName)) {
+                query.append("s.");
+                query.append(columnName);
+                query.append(" AS ");
+                query.append(columnName);
+            } else {
+                query.append(columnName);
+            }
+        }
+
+        query.append(" FROM " + THREAD_SUMMARY_TABLE + " s " +
+                "JOIN " + MESSAGES_TABLE + " m ON (m." + MessageColumns.ID + " = s.latest_message_id) ");
+
+        if (Utility.arrayContainsAny(projection, (Object[]) FOLDERS_COLUMNS)) {
+            query.append("JOIN " + FOLDERS_TABLE + " f " +
+                    "ON (s." + MessageColumns.FOLDER_ID + " = f." + FolderColumns.ID + ") ");
+        }
+
+        query.append("WHERE s." + MessageColumns.FOLDER_ID + " = ?");
+
+        if (!TextUtils.isEmpty(sortOrder)) {
+            query.append(" ORDER BY ");
+            query.append(SqlQueryBuilder.addPrefixToSelection(FIXUP_AGGREGATED_MESSAGES_COLUMNS, "s.", sortOrder));
+        }
+
+        return db.rawQuery(query.toString(), selectionArgs);
+    }
+
     private void createThreadedSubQuery(String[] projection, String selection, StringBuilder query) {
         query.append("SELECT t." + ThreadColumns.ROOT + " AS thread_root");
         for (String columnName : projection) {
@@ -540,13 +642,37 @@ public class EmailProvider extends ContentProvider {
         String[] sourceProjection = (columns == null) ? STATS_DEFAULT_PROJECTION : columns;
 
         // Create SQL query string
-        final StringBuilder sql = new StringBuilder();
+        final String sql;
+        if (isFolderSelection(selection)) {
+            sql = createFolderStatsQuery(sourceProjection, createFolderSelection(selection));
+        } else {
+            sql = createMessageStatsQuery(sourceProjection, selection);
+        }
+
+        // Query the database and return the result cursor
+        try {
+            return database.execute(false, new DbCallback<Cursor>() {
+                @Override
+                public Cursor doDbWork(SQLiteDatabase db) throws WrappedException,
+                        UnavailableStorageException {
+                    return db.rawQuery(sql, selectionArgs);
+                }
+            });
+        } catch (UnavailableStorageException e) {
+            throw new RuntimeException("Storage not available", e);
+        } catch (MessagingException e) {
+            throw new RuntimeException("messaging exception", e);
+        }
+    }
+
+    private static String createMessageStatsQuery(String[] projection, String selection) {
+        StringBuilder sql = new StringBuilder();
         sql.append("SELECT ");
 
         // Append projection for the database query
         // e.g. "SUM(read=0) AS unread_count, SUM(flagged) AS flagged_count"
         boolean first = true;
-        for (String columnName : sourceProjection) {
+        for (String columnName : projection) {
             if (!first) {
                 sql.append(',');
             } else {
@@ -577,20 +703,157 @@ public class EmailProvider extends ContentProvider {
             sql.append(")");
         }
 
-        // Query the database and return the result cursor
-        try {
-            return database.execute(false, new DbCallback<Cursor>() {
-                @Override
-                public Cursor doDbWork(SQLiteDatabase db) throws WrappedException,
-                        UnavailableStorageException {
-                    return db.rawQuery(sql.toString(), selectionArgs);
+        return sql.toString();
+    }
+
+    /**
+     * Creates a query that adds up the counts stored for each folder. Only used if the selection is limited to
+     * columns of the {@code folders} table, so the {@code messages} table doesn't need to be scanned.
+     *
+     * @param folderSelection A selection returned by {@link #createFolderSelection(String)}, or {@code null}.
+     */
+    private static String createFolderStatsQuery(String[] projection, String folderSelection) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ");
+
+        boolean first = true;
+        for (String columnName : projection) {
+            if (!first) {
+                sql.append(',');
+            } else {
+                first = false;
+            }
+
+            if (StatsColumns.UNREAD_COUNT.equals(columnName)) {
+                sql.append("SUM(" + FolderColumns.UNREAD_COUNT + ") AS " + StatsColumns.UNREAD_COUNT);
+            } else if (StatsColumns.FLAGGED_COUNT.equals(columnName)) {
+                sql.append("SUM(" + FolderColumns.FLAGGED_COUNT + ") AS " + StatsColumns.FLAGGED_COUNT);
+            } else {
+                throw new IllegalArgumentException("Column name not allowed: " + columnName);
+            }
+        }
+
+        sql.append(" FROM " + FOLDERS_TABLE);
+
+        if (!TextUtils.isEmpty(folderSelection)) {
+            sql.append(" WHERE (");
+            sql.append(folderSelection);
+            sql.append(")");
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Checks whether a selection only refers to the folder a message is in, e.g. the one
+     * {@link Account#getStats(Context)} uses to limit the counts to displayable folders.
+     */
+    static boolean isFolderSelection(String selection) {
+        return selection == null || createFolderSelection(selection) != null;
+    }
+
+    /**
+     * Converts a selection on messages that only refers to the folder a message is in to a selection on the
+     * {@code folders} table.
+     * <p>
+     * String literals are copied unchanged and never taken for column names. Quoted identifiers
+     * ({@code "name"}, {@code `name`}, {@code [name]}) are treated like unquoted ones.
+     * </p>
+     *
+     * @return The selection with {@link MessageColumns#FOLDER_ID} replaced by {@link FolderColumns#ID}, or
+     *         {@code null} if it refers to anything else than the columns in {@link #FOLDER_SELECTION_COLUMNS} or
+     *         can't be parsed.
+     */
+    static String createFolderSelection(String selection) {
+        if (selection == null) {
+            return null;
+        }
+
+        StringBuilder folderSelection = new StringBuilder(selection.length());
+        int length = selection.length();
+        int i = 0;
+        while (i < length) {
+            char c = selection.charAt(i);
+            if (c == '\'') {
+                int end = findClosingQuote(selection, i, '\'');
+                if (end == -1) {
+                    return null;
                 }
-            });
-        } catch (UnavailableStorageException e) {
-            throw new RuntimeException("Storage not available", e);
-        } catch (MessagingException e) {
-            throw new RuntimeException("messaging exception", e);
+                folderSelection.append(selection, i, end + 1);
+                i = end + 1;
+            } else if (c == '"' || c == '`' || c == '[') {
+                int end = findClosingQuote(selection, i, (c == '[') ? ']' : c);
+                if (end == -1 || !appendFolderColumn(folderSelection, selection.substring(i + 1, end))) {
+                    return null;
+                }
+                i = end + 1;
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = findIdentifierEnd(selection, i);
+                String identifier = selection.substring(i, end);
+                if (SELECTION_KEYWORDS.contains(identifier.toUpperCase(Locale.US))) {
+                    folderSelection.append(identifier);
+                } else if (!appendFolderColumn(folderSelection, identifier)) {
+                    return null;
+                }
+                i = end;
+            } else if (Character.isDigit(c)) {
+                // A number, possibly followed by letters as in 1e5 or 0x1F
+                int end = findIdentifierEnd(selection, i);
+                folderSelection.append(selection, i, end);
+                i = end;
+            } else if (c == '-' && i + 1 < length && selection.charAt(i + 1) == '-' ||
+                    c == '/' && i + 1 < length && selection.charAt(i + 1) == '*') {
+                // Don't bother with comments
+                return null;
+            } else {
+                folderSelection.append(c);
+                i++;
+            }
+        }
+
+        return folderSelection.toString();
+    }
+
+    private static boolean appendFolderColumn(StringBuilder folderSelection, String identifier) {
+        if (!FOLDER_SELECTION_COLUMNS.contains(identifier)) {
+            return false;
+        }
+
+        folderSelection.append(MessageColumns.FOLDER_ID.equals(identifier) ? FolderColumns.ID : identifier);
+        return true;
+    }
+
+    /**
+     * @return The index of the quote that closes the one at {@code start}, or {@code -1} if there is none. A doubled
+     *         quote character is an escaped quote, except for {@code ]}.
+     */
+    private static int findClosingQuote(String selection, int start, char quote) {
+        int i = start + 1;
+        while (i < selection.length()) {
+            if (selection.charAt(i) == quote) {
+                if (quote != ']' && i + 1 < selection.length() && selection.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i;
+            }
+            i++;
         }
+
+        return -1;
+    }
+
+    private static int findIdentifierEnd(String selection, int start) {
+        int i = start + 1;
+        while (i < selection.length()) {
+            char c = selection.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '.') {
+                break;
+            }
+            i++;
+        }
+
+        return i;
     }
 
     private Account getAccount(String accountUuid) {
@@ -608,6 +871,14 @@ public class EmailProvider extends ContentProvider {
         return account;
     }
 
+    private int getFulltextBacklogCount(String accountUuid) {
+        try {
+            return getAccount(accountUuid).getLocalStore().getFulltextBacklogCount();
+        } catch (MessagingException e) {
+            throw new RuntimeException("Couldn't read fulltext backlog", e);
+        }
+    }
+
     private LockableDatabase getDatabase(Account account) {
         LocalStore localStore;
         try {
@@ -655,6 +926,26 @@ public class EmailProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Reports the number of messages missing from the search index in {@link #getExtras()}, so the search results can
+     * tell the user that they might be incomplete.
+     */
+    static class FulltextBacklogCursor extends CursorWrapper {
+        private final Bundle extras;
+
+        public FulltextBacklogCursor(Cursor cursor, int backlogCount) {
+            super(cursor);
+
+            extras = new Bundle();
+            extras.putInt(EXTRA_FULLTEXT_BACKLOG, backlogCount);
+        }
+
+        @Override
+        public Bundle getExtras() {
+            return extras;
+        }
+    }
+
     static class SpecialColumnsCursor extends CursorWrapper {
         private int[] mColumnMapping;
         private String[] mSpecialColumnValues;
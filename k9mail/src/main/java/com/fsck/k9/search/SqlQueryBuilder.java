@@ -1,12 +1,14 @@
 package com.fsck.k9.search;
 
 import java.util.List;
+import java.util.Locale;
 
 import timber.log.Timber;
 
 import com.fsck.k9.Account;
 import com.fsck.k9.mail.MessagingException;
 import com.fsck.k9.mail.Folder;
+import com.fsck.k9.mailstore.DatabaseAddressRole;
 import com.fsck.k9.mailstore.LocalFolder;
 import com.fsck.k9.mailstore.LocalStore;
 import com.fsck.k9.search.SearchSpecification.Attribute;
@@ -15,6 +17,14 @@ import com.fsck.k9.search.SearchSpecification.SearchField;
 
 
 public class SqlQueryBuilder {
+    /**
+     * The condition created for {@link SearchField#MESSAGE_CONTENTS}. Only messages whose body has already been
+     * indexed can match it.
+     */
+    public static final String BODY_SEARCH_CONDITION =
+            "m.id IN (SELECT docid FROM messages_search WHERE body MATCH ?)";
+
+
     public static void buildWhereClause(Account account, ConditionsTreeNode node,
             StringBuilder query, List<String> selectionArgs) {
         buildWhereClauseInternal(account, node, query, selectionArgs);
@@ -79,10 +89,34 @@ public class SqlQueryBuilder {
                     if (condition.attribute != Attribute.CONTAINS) {
                         Timber.e("message contents can only be matched!");
                     }
-                    query.append("m.id IN (SELECT docid FROM messages_fulltext WHERE fulltext MATCH ?)");
+                    query.append(BODY_SEARCH_CONDITION);
                     selectionArgs.add(fulltextQueryString);
                     break;
                 }
+                case SENDER:
+                case TO:
+                case CC:
+                case BCC:
+                case REPLY_TO: {
+                    if (condition.attribute == Attribute.EQUALS || condition.attribute == Attribute.NOT_EQUALS) {
+                        appendAddressCondition(condition, query, selectionArgs);
+                        break;
+                    }
+                }
+                //$FALL-THROUGH$
+                case SUBJECT: {
+                    String matchQuery = null;
+                    if (condition.attribute == Attribute.CONTAINS && isInSearchIndex(condition.field)) {
+                        matchQuery = createSearchIndexQuery(condition.value);
+                    }
+
+                    if (matchQuery != null) {
+                        appendHeaderSearchCondition(condition, matchQuery, query, selectionArgs);
+                    } else {
+                        appendCondition(condition, query, selectionArgs);
+                    }
+                    break;
+                }
                 default: {
                     appendCondition(condition, query, selectionArgs);
                 }
@@ -98,6 +132,173 @@ public class SqlQueryBuilder {
         }
     }
 
+    /**
+     * Uses the search index to narrow down the messages that have to be checked with {@code LIKE}. Only the candidates
+     * found in the index are read, so the result is the same as that of {@code LIKE} alone. Messages that are still in
+     * the fulltext backlog may not have been indexed yet, e.g. right after the index was created, so those are always
+     * checked.
+     */
+    private static void appendHeaderSearchCondition(SearchCondition condition, String matchQuery, StringBuilder query,
+            List<String> selectionArgs) {
+        query.append("((m.id IN (SELECT docid FROM messages_search WHERE ");
+        query.append(getSearchIndexColumnName(condition.field));
+        query.append(" MATCH ?) OR m.id IN (SELECT message_id FROM fulltext_backlog)) AND ");
+        selectionArgs.add(matchQuery);
+        appendCondition(condition, query, selectionArgs);
+        query.append(")");
+    }
+
+    /**
+     * Looks up an address in the {@code message_addresses} table. The value is interpreted as follows:
+     * <ul>
+     * <li>{@code alice@example.com} matches that address.</li>
+     * <li>{@code @example.com} or {@code example.com} (no {@code @}, but a dot) match all addresses of that
+     * domain.</li>
+     * <li>{@code alice@} or {@code alice} (neither {@code @} nor a dot) match that local part in any domain.</li>
+     * <li>A blank value, or one that's only {@code @}, doesn't match any address.</li>
+     * </ul>
+     */
+    private static void appendAddressCondition(SearchCondition condition, StringBuilder query,
+            List<String> selectionArgs) {
+        boolean exclude = condition.attribute == Attribute.NOT_EQUALS;
+        String address = condition.value.trim().toLowerCase(Locale.US);
+        int domainStart = address.lastIndexOf('@');
+
+        String domain = null;
+        String localPart = null;
+        if (domainStart == -1) {
+            if (address.indexOf('.') != -1) {
+                domain = address;
+            } else {
+                localPart = address;
+            }
+        } else if (domainStart == 0) {
+            domain = address.substring(1);
+        } else if (domainStart == address.length() - 1) {
+            localPart = address.substring(0, domainStart);
+        }
+
+        if ((domain != null && domain.isEmpty()) || (localPart != null && localPart.isEmpty())) {
+            query.append(exclude ? "1" : "0");
+            return;
+        }
+
+        query.append(exclude ? "m.id NOT IN " : "m.id IN ");
+        if (domain != null) {
+            query.append("(SELECT message_id FROM message_addresses WHERE domain = ? AND role = ");
+            selectionArgs.add(domain);
+        } else if (localPart != null) {
+            // All addresses starting with "alice@". '@' + 1 is 'A', which never occurs in the lowercase addresses.
+            query.append("(SELECT message_id FROM message_addresses " +
+                    "WHERE address_lower >= ? AND address_lower < ? AND role = ");
+            selectionArgs.add(localPart + '@');
+            selectionArgs.add(localPart + (char) ('@' + 1));
+        } else {
+            query.append("(SELECT message_id FROM message_addresses WHERE address_lower = ? AND role = ");
+            selectionArgs.add(address);
+        }
+        query.append(getAddressRole(condition.field).getDatabaseValue());
+        query.append(")");
+    }
+
+    private static DatabaseAddressRole getAddressRole(SearchField field) {
+        switch (field) {
+            case SENDER: {
+                return DatabaseAddressRole.FROM;
+            }
+            case TO: {
+                return DatabaseAddressRole.TO;
+            }
+            case CC: {
+                return DatabaseAddressRole.CC;
+            }
+            case BCC: {
+                return DatabaseAddressRole.BCC;
+            }
+            case REPLY_TO: {
+                return DatabaseAddressRole.REPLY_TO;
+            }
+            default: {
+                throw new IllegalArgumentException("Not an address field: " + field);
+            }
+        }
+    }
+
+    private static boolean isInSearchIndex(SearchField field) {
+        switch (field) {
+            case SUBJECT:
+            case SENDER:
+            case TO:
+            case CC: {
+                return true;
+            }
+            default: {
+                return false;
+            }
+        }
+    }
+
+    private static String getSearchIndexColumnName(SearchField field) {
+        switch (field) {
+            case SUBJECT: {
+                return "subject";
+            }
+            case SENDER: {
+                return "sender";
+            }
+            case TO: {
+                return "to_recipients";
+            }
+            case CC: {
+                return "cc_recipients";
+            }
+            default: {
+                throw new IllegalArgumentException("Field is not in the search index: " + field);
+            }
+        }
+    }
+
+    /**
+     * Creates a fulltext query that finds every text containing {@code value}, plus possibly some that don't. The
+     * index only knows whole words, so only the words of {@code value} that must be whole words or word beginnings in
+     * such a text can be used: {@code "hello world"} requires a word starting with "world", but "hello" may be the end
+     * of "Othello". A word is a run of letters and digits, like the index's tokenizer splits text, so
+     * {@code alice@example.com} requires the word "example" and a word starting with "com".
+     *
+     * @return The query, or {@code null} if {@code value} contains no usable words, e.g. "ello" or "alice".
+     */
+    static String createSearchIndexQuery(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        StringBuilder matchQuery = new StringBuilder();
+        int length = value.length();
+        int wordStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && isIndexedWordChar(value.charAt(i));
+            if (wordChar && wordStart == -1) {
+                wordStart = i;
+            } else if (!wordChar && wordStart != -1) {
+                if (wordStart > 0) {
+                    matchQuery.append(matchQuery.length() > 0 ? " " : "").append('"');
+                    matchQuery.append(value, wordStart, i).append(i == length ? "*\"" : "\"");
+                }
+                wordStart = -1;
+            }
+        }
+
+        return matchQuery.length() > 0 ? matchQuery.toString() : null;
+    }
+
+    /**
+     * Letters and digits as seen by SQLite's "simple" tokenizer, which treats all non-ASCII characters as part of a
+     * word.
+     */
+    private static boolean isIndexedWordChar(char c) {
+        return c >= 0x80 || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
     private static void appendCondition(SearchCondition condition, StringBuilder query,
             List<String> selectionArgs) {
         query.append(getColumnName(condition));
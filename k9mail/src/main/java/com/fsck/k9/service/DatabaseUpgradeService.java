@@ -15,6 +15,7 @@ import com.fsck.k9.Account;
 import com.fsck.k9.K9;
 import com.fsck.k9.Preferences;
 import com.fsck.k9.activity.UpgradeDatabases;
+import com.fsck.k9.controller.MessagingController;
 import com.fsck.k9.mail.power.TracingPowerManager;
 import com.fsck.k9.mail.power.TracingPowerManager.TracingWakeLock;
 import com.fsck.k9.mailstore.UnavailableStorageException;
@@ -204,6 +205,9 @@ public class DatabaseUpgradeService extends Service {
 
         K9.setDatabasesUpToDate(true);
         sendUpgradeCompleteBroadcast();
+
+        MessagingController.getInstance(this).repackAddressListsInBackground();
+        MessagingController.getInstance(this).indexFulltextBacklogInBackground();
     }
 
     private void sendProgressBroadcast(String accountUuid, int progress, int progressEnd) {
@@ -3,6 +3,7 @@ package com.fsck.k9.controller;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -33,6 +34,7 @@ import com.fsck.k9.mailstore.LocalMessage;
 import com.fsck.k9.mailstore.LocalStore;
 import com.fsck.k9.mailstore.UnavailableStorageException;
 import com.fsck.k9.notification.NotificationController;
+import com.fsck.k9.power.DeviceStateChecker;
 import com.fsck.k9.search.LocalSearch;
 import org.junit.After;
 import org.junit.Before;
@@ -851,6 +853,46 @@ public class MessagingControllerTest {
         assertEquals(FetchProfile.Item.BODY_SANE, fetchProfileCaptor.getAllValues().get(3).get(0));
     }
 
+    @Test
+    public void indexFulltextBacklog_shouldIndexBatchesUntilBacklogIsEmpty() throws Exception {
+        DeviceStateChecker deviceStateChecker = createDeviceStateChecker(true);
+        when(localStore.indexFulltextBacklog(anyInt())).thenReturn(true, true, false);
+
+        controller.indexFulltextBacklog(Collections.singletonList(account), deviceStateChecker);
+
+        verify(localStore, times(3)).indexFulltextBacklog(anyInt());
+    }
+
+    @Test
+    public void indexFulltextBacklog_whenDeviceIsInUse_shouldStop() throws Exception {
+        DeviceStateChecker deviceStateChecker = mock(DeviceStateChecker.class);
+        when(deviceStateChecker.isIdleOrCharging()).thenReturn(true, false);
+        when(localStore.indexFulltextBacklog(anyInt())).thenReturn(true);
+
+        controller.indexFulltextBacklog(Collections.singletonList(account), deviceStateChecker);
+
+        verify(localStore, times(1)).indexFulltextBacklog(anyInt());
+    }
+
+    @Test
+    public void indexFulltextBacklog_withFailingAccount_shouldContinueWithNextAccount() throws Exception {
+        DeviceStateChecker deviceStateChecker = createDeviceStateChecker(true);
+        Account otherAccount = mock(Account.class);
+        LocalStore otherLocalStore = mock(LocalStore.class);
+        when(otherAccount.getLocalStore()).thenReturn(otherLocalStore);
+        when(localStore.indexFulltextBacklog(anyInt())).thenThrow(new MessagingException("Test"));
+
+        controller.indexFulltextBacklog(Arrays.asList(account, otherAccount), deviceStateChecker);
+
+        verify(otherLocalStore).indexFulltextBacklog(anyInt());
+    }
+
+    private DeviceStateChecker createDeviceStateChecker(boolean idleOrCharging) {
+        DeviceStateChecker deviceStateChecker = mock(DeviceStateChecker.class);
+        when(deviceStateChecker.isIdleOrCharging()).thenReturn(idleOrCharging);
+        return deviceStateChecker;
+    }
+
     private void setupAccountWithMessageToSend() throws MessagingException {
         when(account.getOutboxFolderName()).thenReturn(FOLDER_NAME);
         when(account.hasSentFolder()).thenReturn(true);
@@ -0,0 +1,229 @@
+package com.fsck.k9.controller;
+
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.fsck.k9.Account;
+import com.fsck.k9.Clock;
+import com.fsck.k9.K9RobolectricTestRunner;
+import com.fsck.k9.controller.OutboxDeliveryScheduler.DeliveryHandler;
+import com.fsck.k9.controller.OutboxDeliveryScheduler.DeliveryResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+import static com.fsck.k9.controller.OutboxDeliveryScheduler.INITIAL_BACKOFF_MILLIS;
+import static com.fsck.k9.controller.OutboxDeliveryScheduler.MAX_BACKOFF_MILLIS;
+import static com.fsck.k9.controller.OutboxDeliveryScheduler.UNAVAILABLE_ACCOUNT_RETRY_DELAY_MILLIS;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+
+@RunWith(K9RobolectricTestRunner.class)
+public class OutboxDeliverySchedulerTest {
+    private static final String TRANSPORT_URI = "smtp://user:password:PLAIN@smtp.example.com:465";
+    private static final long NOW = 1000000L;
+
+
+    private ScheduledExecutorService executor;
+    private DeliveryHandler deliveryHandler;
+    private Clock clock;
+    private OutboxDeliveryScheduler scheduler;
+
+
+    @Before
+    public void setUp() throws Exception {
+        executor = mock(ScheduledExecutorService.class);
+        deliveryHandler = mock(DeliveryHandler.class);
+        clock = mock(Clock.class);
+        when(clock.getTime()).thenReturn(NOW);
+
+        scheduler = new OutboxDeliveryScheduler(executor, deliveryHandler, clock);
+    }
+
+    @Test
+    public void schedule_shouldRunDeliveryWithoutDelay() throws Exception {
+        Account account = createAccount("account1", TRANSPORT_URI);
+        when(deliveryHandler.deliver(account)).thenReturn(DeliveryResult.DELIVERED);
+
+        scheduler.schedule(account);
+        runScheduledTask(0);
+
+        verify(deliveryHandler).deliver(account);
+    }
+
+    @Test
+    public void schedule_withDifferentAccounts_shouldScheduleIndependentDeliveries() throws Exception {
+        Account account1 = createAccount("account1", TRANSPORT_URI);
+        Account account2 = createAccount("account2", "smtp://user:password:PLAIN@mail.example.org:587");
+
+        scheduler.schedule(account1);
+        scheduler.schedule(account2);
+
+        verify(executor, times(2)).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void schedule_whilePending_shouldNotScheduleAgain() throws Exception {
+        Account account = createAccount("account1", TRANSPORT_URI);
+
+        scheduler.schedule(account);
+        scheduler.schedule(account);
+
+        verify(executor, times(1)).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void schedule_whileRunning_shouldRunAgainAfterDeliveryFinished() throws Exception {
+        final Account account = createAccount("account1", TRANSPORT_URI);
+        when(deliveryHandler.deliver(account)).thenAnswer(new org.mockito.stubbing.Answer<DeliveryResult>() {
+            @Override
+            public DeliveryResult answer(org.mockito.invocation.InvocationOnMock invocation) throws Throwable {
+                scheduler.schedule(account);
+                return DeliveryResult.DELIVERED;
+            }
+        });
+        scheduler.schedule(account);
+        Runnable firstRun = captureScheduledTask(0);
+        reset(executor);
+
+        firstRun.run();
+
+        verify(executor).schedule(any(Runnable.class), eq(0L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void deliver_withTransientFailure_shouldBackOffFromServer() throws Exception {
+        Account account = createAccount("account1", TRANSPORT_URI);
+        when(deliveryHandler.deliver(account)).thenReturn(DeliveryResult.TRANSIENT_FAILURE);
+        scheduler.schedule(account);
+        runScheduledTask(0);
+        reset(executor);
+
+        scheduler.schedule(account);
+
+        verify(executor).schedule(any(Runnable.class), eq(INITIAL_BACKOFF_MILLIS), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void deliver_withTransientFailure_shouldBackOffForOtherAccountsUsingSameServer() throws Exception {
+        Account account1 = createAccount("account1", TRANSPORT_URI);
+        Account account2 = createAccount("account2", TRANSPORT_URI);
+        when(deliveryHandler.deliver(account1)).thenReturn(DeliveryResult.TRANSIENT_FAILURE);
+        scheduler.schedule(account1);
+        runScheduledTask(0);
+        reset(executor);
+
+        scheduler.schedule(account2);
+
+        verify(executor).schedule(any(Runnable.class), eq(INITIAL_BACKOFF_MILLIS), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void deliver_withRepeatedTransientFailures_shouldIncreaseBackoffUpToMaximum() throws Exception {
+        Account account = createAccount("account1", TRANSPORT_URI);
+        when(deliveryHandler.deliver(account)).thenReturn(DeliveryResult.TRANSIENT_FAILURE);
+        String serverKey = OutboxDeliveryScheduler.getServerKey(account);
+
+        scheduler.schedule(account);
+        runScheduledTask(0);
+        assertEquals(INITIAL_BACKOFF_MILLIS, scheduler.getRemainingBackoff(serverKey));
+
+        scheduler.schedule(account);
+        runScheduledTask(INITIAL_BACKOFF_MILLIS);
+        assertEquals(2 * INITIAL_BACKOFF_MILLIS, scheduler.getRemainingBackoff(serverKey));
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.schedule(account);
+            runScheduledTask(scheduler.getRemainingBackoff(serverKey));
+        }
+        assertEquals(MAX_BACKOFF_MILLIS, scheduler.getRemainingBackoff(serverKey));
+    }
+
+    @Test
+    public void deliver_withSuccessAfterFailure_shouldResetBackoff() throws Exception {
+        Account account = createAccount("account1", TRANSPORT_URI);
+        when(deliveryHandler.deliver(account)).thenReturn(DeliveryResult.TRANSIENT_FAILURE,
+                DeliveryResult.DELIVERED);
+        scheduler.schedule(account);
+        runScheduledTask(0);
+        scheduler.schedule(account);
+        runScheduledTask(INITIAL_BACKOFF_MILLIS);
+
+        assertEquals(0, scheduler.getRemainingBackoff(OutboxDeliveryScheduler.getServerKey(account)));
+    }
+
+    @Test
+    public void deliver_withUnavailableAccount_shouldRetryLater() throws Exception {
+        Account account = createAccount("account1", TRANSPORT_URI);
+        when(deliveryHandler.deliver(account)).thenReturn(DeliveryResult.ACCOUNT_UNAVAILABLE);
+        scheduler.schedule(account);
+        Runnable firstRun = captureScheduledTask(0);
+        reset(executor);
+
+        firstRun.run();
+
+        verify(executor).schedule(any(Runnable.class), eq(UNAVAILABLE_ACCOUNT_RETRY_DELAY_MILLIS),
+                eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void deliver_withRuntimeException_shouldNotPropagate() throws Exception {
+        Account account = createAccount("account1", TRANSPORT_URI);
+        when(deliveryHandler.deliver(account)).thenThrow(new IllegalStateException("Test"));
+        scheduler.schedule(account);
+
+        runScheduledTask(0);
+
+        assertEquals(INITIAL_BACKOFF_MILLIS,
+                scheduler.getRemainingBackoff(OutboxDeliveryScheduler.getServerKey(account)));
+    }
+
+    @Test
+    public void getServerKey_withInvalidTransportUri_shouldFallBackToAccountUuid() throws Exception {
+        Account account = createAccount("account1", "invalid");
+
+        String serverKey = OutboxDeliveryScheduler.getServerKey(account);
+
+        assertEquals("account1", serverKey);
+    }
+
+    @Test
+    public void shutdown_shouldStopExecutor() throws Exception {
+        scheduler.shutdown();
+
+        verify(executor).shutdownNow();
+        verifyZeroInteractions(deliveryHandler);
+    }
+
+
+    private Account createAccount(String uuid, String transportUri) {
+        Account account = mock(Account.class);
+        when(account.getUuid()).thenReturn(uuid);
+        when(account.getDescription()).thenReturn(uuid);
+        when(account.getTransportUri()).thenReturn(transportUri);
+        return account;
+    }
+
+    private Runnable captureScheduledTask(long expectedDelay) {
+        ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).schedule(taskCaptor.capture(), eq(expectedDelay), eq(TimeUnit.MILLISECONDS));
+        return taskCaptor.getValue();
+    }
+
+    private void runScheduledTask(long expectedDelay) {
+        Runnable task = captureScheduledTask(expectedDelay);
+        reset(executor);
+        task.run();
+    }
+}
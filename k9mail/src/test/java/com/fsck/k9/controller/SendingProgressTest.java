@@ -0,0 +1,107 @@
+package com.fsck.k9.controller;
+
+
+import java.util.Collections;
+import java.util.Set;
+
+import com.fsck.k9.Account;
+import com.fsck.k9.controller.SendingProgress.ProgressObserver;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+
+public class SendingProgressTest {
+    private ProgressObserver observer;
+    private SendingProgress sendingProgress;
+    private Set<MessagingListener> listeners;
+
+
+    @Before
+    public void setUp() throws Exception {
+        observer = mock(ProgressObserver.class);
+        sendingProgress = new SendingProgress(observer);
+        listeners = Collections.singleton(mock(MessagingListener.class));
+    }
+
+    @Test
+    public void start_shouldReportNothingSentYet() throws Exception {
+        Account account = createAccount("account1");
+
+        sendingProgress.start(account, listeners, 3);
+
+        verify(observer).onSendingProgress(account, listeners, 0, 3);
+    }
+
+    @Test
+    public void messageSent_shouldReportProgressToListenersOfDelivery() throws Exception {
+        Account account = createAccount("account1");
+        sendingProgress.start(account, listeners, 3);
+
+        sendingProgress.messageSent(account);
+        sendingProgress.messageSent(account);
+
+        verify(observer).onSendingProgress(account, listeners, 1, 3);
+        verify(observer).onSendingProgress(account, listeners, 2, 3);
+    }
+
+    @Test
+    public void messageSent_withDifferentAccounts_shouldCountSeparately() throws Exception {
+        Account account1 = createAccount("account1");
+        Account account2 = createAccount("account2");
+        Set<MessagingListener> otherListeners = Collections.singleton(mock(MessagingListener.class));
+        sendingProgress.start(account1, listeners, 2);
+        sendingProgress.start(account2, otherListeners, 5);
+
+        sendingProgress.messageSent(account2);
+
+        verify(observer).onSendingProgress(account2, otherListeners, 1, 5);
+    }
+
+    @Test
+    public void messageSent_withoutStart_shouldNotReport() throws Exception {
+        Account account = createAccount("account1");
+
+        sendingProgress.messageSent(account);
+
+        verifyZeroInteractions(observer);
+    }
+
+    @Test
+    public void finish_shouldReportFinishedOnce() throws Exception {
+        Account account = createAccount("account1");
+        sendingProgress.start(account, listeners, 1);
+
+        sendingProgress.finish(account);
+        sendingProgress.finish(account);
+
+        verify(observer).onSendingProgress(account, listeners, 0, 1);
+        verify(observer).onSendingFinished(account);
+        verifyNoMoreInteractions(observer);
+    }
+
+    @Test
+    public void messageSent_afterFinish_shouldNotReport() throws Exception {
+        Account account = createAccount("account1");
+        sendingProgress.start(account, listeners, 1);
+        sendingProgress.finish(account);
+
+        sendingProgress.messageSent(account);
+
+        verify(observer).onSendingProgress(account, listeners, 0, 1);
+        verify(observer).onSendingFinished(account);
+        verifyNoMoreInteractions(observer);
+    }
+
+
+    private Account createAccount(String uuid) {
+        Account account = mock(Account.class);
+        when(account.getUuid()).thenReturn(uuid);
+        return account;
+    }
+}
@@ -0,0 +1,50 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class DatabaseLockStatisticsTest {
+    private final DatabaseLockStatistics statistics = new DatabaseLockStatistics();
+
+
+    @Test
+    public void recordTransactionWait_shouldUpdateCountTotalAndMax() throws Exception {
+        statistics.recordTransactionWait(TimeUnit.MILLISECONDS.toNanos(5));
+        statistics.recordTransactionWait(TimeUnit.MILLISECONDS.toNanos(20));
+        statistics.recordTransactionWait(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertEquals(3, statistics.getTransactionCount());
+        assertEquals(35, statistics.getTotalTransactionWaitMillis());
+        assertEquals(20, statistics.getMaxTransactionWaitMillis());
+        assertEquals(0, statistics.getQueryCount());
+    }
+
+    @Test
+    public void recordQueryDuration_shouldUpdateCountTotalAndMax() throws Exception {
+        statistics.recordQueryDuration(TimeUnit.MILLISECONDS.toNanos(7));
+        statistics.recordQueryDuration(TimeUnit.MILLISECONDS.toNanos(3));
+
+        assertEquals(2, statistics.getQueryCount());
+        assertEquals(10, statistics.getTotalQueryMillis());
+        assertEquals(7, statistics.getMaxQueryMillis());
+        assertEquals(0, statistics.getTransactionCount());
+    }
+
+    @Test
+    public void reset_shouldClearAllValues() throws Exception {
+        statistics.recordTransactionWait(TimeUnit.MILLISECONDS.toNanos(5));
+        statistics.recordQueryDuration(TimeUnit.MILLISECONDS.toNanos(7));
+
+        statistics.reset();
+
+        assertEquals(0, statistics.getTransactionCount());
+        assertEquals(0, statistics.getMaxTransactionWaitMillis());
+        assertEquals(0, statistics.getQueryCount());
+        assertEquals(0, statistics.getTotalQueryMillis());
+    }
+}
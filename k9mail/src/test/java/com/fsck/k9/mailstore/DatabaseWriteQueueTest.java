@@ -0,0 +1,214 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.fsck.k9.mail.MessagingException;
+import com.fsck.k9.mailstore.LockableDatabase.DbCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class DatabaseWriteQueueTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+
+    private LockableDatabase database;
+    private DatabaseWriteQueue writeQueue;
+    private final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        database = mock(LockableDatabase.class);
+        when(database.execute(eq(true), any(DbCallback.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                DbCallback<?> callback = (DbCallback<?>) invocation.getArguments()[1];
+                return callback.doDbWork(null);
+            }
+        });
+
+        writeQueue = new DatabaseWriteQueue(database, "test");
+    }
+
+    @Test
+    public void submit_shouldCompleteFutureWithResult() throws Exception {
+        Future<Integer> future = writeQueue.submit(new RecordingWrite(42));
+
+        assertEquals(42, (int) future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(future.isDone());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void submit_withWritesQueuedTogether_shouldCommitThemInOneTransaction() throws Exception {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(writeQueue.submit(new RecordingWrite(i)));
+        }
+
+        futures.get(9).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        verify(database, times(1)).execute(eq(true), any(DbCallback.class));
+        assertEquals(createRange(10), executed);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void submit_withMoreWritesThanBatchSize_shouldSplitThemIntoSeveralTransactions() throws Exception {
+        Future<Integer> last = null;
+        for (int i = 0; i < DatabaseWriteQueue.MAX_BATCH_SIZE + 1; i++) {
+            last = writeQueue.submit(new RecordingWrite(i));
+        }
+
+        last.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        verify(database, atLeast(2)).execute(eq(true), any(DbCallback.class));
+        assertEquals(createRange(DatabaseWriteQueue.MAX_BATCH_SIZE + 1), executed);
+    }
+
+    @Test
+    public void submit_withFailingWrite_shouldOnlyFailItsOwnFuture() throws Exception {
+        final MessagingException exception = new MessagingException("failure");
+        Future<Integer> first = writeQueue.submit(new RecordingWrite(1));
+        Future<Integer> failing = writeQueue.submit(new DbCallback<Integer>() {
+            @Override
+            public Integer doDbWork(SQLiteDatabase db) throws MessagingException {
+                throw exception;
+            }
+        });
+        Future<Integer> last = writeQueue.submit(new RecordingWrite(3));
+
+        assertEquals(1, (int) first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(3, (int) last.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        try {
+            failing.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    @Test
+    public void submit_withWriteThrowingError_shouldFailItsFutureAndKeepWriting() throws Exception {
+        final Error error = new Error("failure");
+        Future<Integer> failing = writeQueue.submit(new DbCallback<Integer>() {
+            @Override
+            public Integer doDbWork(SQLiteDatabase db) {
+                throw error;
+            }
+        });
+
+        try {
+            failing.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+        Future<Integer> next = writeQueue.submit(new RecordingWrite(2));
+        assertEquals(2, (int) next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void flush_shouldCompleteAfterPreviouslySubmittedWrites() throws Exception {
+        Future<Integer> write = writeQueue.submit(new RecordingWrite(1));
+
+        writeQueue.flush().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue(write.isDone());
+        assertEquals(0, writeQueue.getPendingCount());
+    }
+
+    @Test
+    public void awaitWrites_shouldReturnAfterPreviouslySubmittedWritesWereCommitted() throws Exception {
+        Future<Integer> write = writeQueue.submit(new RecordingWrite(1));
+
+        writeQueue.awaitWrites();
+
+        assertTrue(write.isDone());
+        assertEquals(Collections.singletonList(1), executed);
+    }
+
+    @Test
+    public void awaitWrites_withFailedWrite_shouldReturn() throws Exception {
+        Future<Integer> failing = writeQueue.submit(new DbCallback<Integer>() {
+            @Override
+            public Integer doDbWork(SQLiteDatabase db) {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        writeQueue.awaitWrites();
+
+        assertTrue(failing.isDone());
+    }
+
+    @Test
+    public void awaitWrites_withoutQueuedWrites_shouldNotStartTransaction() throws Exception {
+        writeQueue.awaitWrites();
+
+        verify(database, never()).execute(anyBoolean(), any(DbCallback.class));
+    }
+
+    @Test
+    public void awaitWrites_calledFromQueuedWrite_shouldNotWaitForItself() throws Exception {
+        Future<Integer> write = writeQueue.submit(new DbCallback<Integer>() {
+            @Override
+            public Integer doDbWork(SQLiteDatabase db) {
+                writeQueue.awaitWrites();
+                return 1;
+            }
+        });
+
+        assertEquals(Integer.valueOf(1), write.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private static List<Integer> createRange(int count) {
+        List<Integer> range = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+
+    private class RecordingWrite implements DbCallback<Integer> {
+        private final int value;
+
+
+        RecordingWrite(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer doDbWork(SQLiteDatabase db) {
+            executed.add(value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.fsck.k9.mail.Message;
+import com.fsck.k9.mail.MessagingException;
+import com.fsck.k9.message.extractors.AttachmentCounter;
+import com.fsck.k9.message.extractors.MessagePreviewCreator;
+import com.fsck.k9.message.extractors.PreviewResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class DerivedMessageDataTest {
+    private LocalStore localStore;
+    private MessagePreviewCreator previewCreator;
+    private AttachmentCounter attachmentCounter;
+
+
+    @Before
+    public void setUp() throws Exception {
+        previewCreator = mock(MessagePreviewCreator.class);
+        attachmentCounter = mock(AttachmentCounter.class);
+        localStore = mock(LocalStore.class);
+        when(localStore.getMessagePreviewCreator()).thenReturn(previewCreator);
+        when(localStore.getAttachmentCounter()).thenReturn(attachmentCounter);
+    }
+
+    @Test
+    public void create_shouldReturnPreviewAndAttachmentCount() throws Exception {
+        Message message = mock(Message.class);
+        PreviewResult previewResult = PreviewResult.text("preview");
+        when(previewCreator.createPreview(message)).thenReturn(previewResult);
+        when(attachmentCounter.getAttachmentCount(message)).thenReturn(2);
+
+        DerivedMessageData result = DerivedMessageData.create(localStore, message);
+
+        assertSame(previewResult, result.previewResult);
+        assertEquals(2, result.attachmentCount);
+    }
+
+    @Test
+    public void create_withFailingExtractor_shouldThrowMessagingException() throws Exception {
+        Message message = mock(Message.class);
+        when(message.getSubject()).thenReturn("subject");
+        RuntimeException exception = new IllegalStateException("broken message");
+        when(previewCreator.createPreview(message)).thenThrow(exception);
+
+        try {
+            DerivedMessageData.create(localStore, message);
+            fail("Expected exception");
+        } catch (MessagingException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    @Test
+    public void createAll_shouldReturnDataInOrderOfMessages() throws Exception {
+        Message first = mock(Message.class);
+        Message second = mock(Message.class);
+        when(previewCreator.createPreview(first)).thenReturn(PreviewResult.text("first"));
+        when(previewCreator.createPreview(second)).thenReturn(PreviewResult.text("second"));
+        when(attachmentCounter.getAttachmentCount(first)).thenReturn(0);
+        when(attachmentCounter.getAttachmentCount(second)).thenReturn(1);
+
+        List<DerivedMessageData> result = DerivedMessageData.createAll(localStore, Arrays.asList(first, second));
+
+        assertEquals(2, result.size());
+        assertEquals("first", result.get(0).previewResult.getPreviewText());
+        assertEquals(0, result.get(0).attachmentCount);
+        assertEquals("second", result.get(1).previewResult.getPreviewText());
+        assertEquals(1, result.get(1).attachmentCount);
+    }
+}
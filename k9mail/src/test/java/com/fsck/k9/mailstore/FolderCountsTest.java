@@ -0,0 +1,101 @@
+package com.fsck.k9.mailstore;
+
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class FolderCountsTest {
+    private SQLiteDatabase database;
+
+
+    @Before
+    public void setUp() throws Exception {
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE folders (" +
+                "id INTEGER PRIMARY KEY, " +
+                "unread_count INTEGER, " +
+                "flagged_count INTEGER default 0, " +
+                "message_count INTEGER default 0" +
+                ")");
+        database.execSQL("CREATE TABLE messages (" +
+                "id INTEGER PRIMARY KEY, " +
+                "deleted INTEGER default 0, " +
+                "folder_id INTEGER, " +
+                "empty INTEGER default 0, " +
+                "read INTEGER default 0, " +
+                "flagged INTEGER default 0" +
+                ")");
+        database.execSQL("INSERT INTO folders (id) VALUES (1)");
+        database.execSQL("INSERT INTO folders (id) VALUES (2)");
+    }
+
+    @Test
+    public void read_shouldReturnStoredCount() throws Exception {
+        database.execSQL("UPDATE folders SET message_count = 5, unread_count = 3, flagged_count = 1 WHERE id = 1");
+
+        assertEquals(5, FolderCounts.read(database, 1, FolderCounts.MESSAGE_COUNT));
+        assertEquals(3, FolderCounts.read(database, 1, FolderCounts.UNREAD_COUNT));
+        assertEquals(1, FolderCounts.read(database, 1, FolderCounts.FLAGGED_COUNT));
+    }
+
+    @Test
+    public void read_withNullCount_shouldReturnZero() throws Exception {
+        assertEquals(0, FolderCounts.read(database, 1, FolderCounts.UNREAD_COUNT));
+    }
+
+    @Test
+    public void read_withUnknownFolder_shouldReturnZero() throws Exception {
+        assertEquals(0, FolderCounts.read(database, 3, FolderCounts.MESSAGE_COUNT));
+    }
+
+    @Test
+    public void countMismatches_withCorrectCounts_shouldReturnZero() throws Exception {
+        insertMessage(1, 0, 0, 0, 1);
+        insertMessage(1, 1, 0, 0, 0);
+        database.execSQL("UPDATE folders SET message_count = 1, unread_count = 1, flagged_count = 1 WHERE id = 1");
+
+        assertEquals(0, FolderCounts.countMismatches(database));
+    }
+
+    @Test
+    public void countMismatches_withWrongCounts_shouldReturnNumberOfFolders() throws Exception {
+        insertMessage(1, 0, 0, 1, 0);
+        insertMessage(2, 0, 0, 0, 0);
+        database.execSQL("UPDATE folders SET unread_count = 0");
+
+        assertEquals(2, FolderCounts.countMismatches(database));
+    }
+
+    @Test
+    public void recount_shouldOnlyCountVisibleMessages() throws Exception {
+        insertMessage(1, 0, 0, 0, 0);
+        insertMessage(1, 0, 0, 1, 1);
+        insertMessage(1, 1, 0, 0, 1);
+        insertMessage(1, 0, 1, 0, 1);
+        database.execSQL("UPDATE folders SET message_count = 9, unread_count = 9, flagged_count = 9");
+
+        FolderCounts.recount(database);
+
+        assertEquals(2, FolderCounts.read(database, 1, FolderCounts.MESSAGE_COUNT));
+        assertEquals(1, FolderCounts.read(database, 1, FolderCounts.UNREAD_COUNT));
+        assertEquals(1, FolderCounts.read(database, 1, FolderCounts.FLAGGED_COUNT));
+        assertEquals(0, FolderCounts.read(database, 2, FolderCounts.MESSAGE_COUNT));
+        assertEquals(0, FolderCounts.countMismatches(database));
+    }
+
+
+    private void insertMessage(long folderId, int empty, int deleted, int read, int flagged) {
+        database.execSQL("INSERT INTO messages (folder_id, empty, deleted, read, flagged) VALUES (?, ?, ?, ?, ?)",
+                new Object[] { folderId, empty, deleted, read, flagged });
+    }
+}
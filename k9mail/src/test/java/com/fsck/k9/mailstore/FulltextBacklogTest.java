@@ -0,0 +1,191 @@
+package com.fsck.k9.mailstore;
+
+
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.fsck.k9.mail.Address;
+import com.fsck.k9.mail.Message;
+import com.fsck.k9.mail.Message.RecipientType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class FulltextBacklogTest {
+    private SQLiteDatabase database;
+
+
+    @Before
+    public void setUp() throws Exception {
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE messages (" +
+                "id INTEGER PRIMARY KEY, " +
+                "deleted INTEGER default 0, " +
+                "empty INTEGER default 0" +
+                ")");
+        database.execSQL("CREATE TABLE fulltext_backlog (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "message_id INTEGER NOT NULL" +
+                ")");
+        database.execSQL("CREATE UNIQUE INDEX fulltext_backlog_message_id ON fulltext_backlog (message_id)");
+        database.execSQL("CREATE TABLE message_search_text (" +
+                "id INTEGER PRIMARY KEY, " +
+                "subject TEXT, " +
+                "sender TEXT, " +
+                "to_recipients TEXT, " +
+                "cc_recipients TEXT, " +
+                "body TEXT" +
+                ")");
+        database.execSQL("CREATE VIRTUAL TABLE messages_search USING fts4 (" +
+                "subject, sender, to_recipients, cc_recipients, body, content=\"message_search_text\")");
+    }
+
+    @Test
+    public void count_shouldReturnNumberOfQueuedMessages() throws Exception {
+        queue(1);
+        queue(2);
+
+        assertEquals(2, FulltextBacklog.count(database));
+    }
+
+    @Test
+    public void readBatch_shouldReturnMostRecentlyQueuedFirst() throws Exception {
+        insertMessage(1, 0, 0);
+        insertMessage(2, 0, 0);
+        insertMessage(3, 0, 0);
+        queue(2);
+        queue(1);
+        queue(3);
+
+        List<FulltextBacklog.Entry> entries = FulltextBacklog.readBatch(database, 2);
+
+        assertEquals(2, entries.size());
+        assertEquals(3, entries.get(0).messageId);
+        assertEquals(1, entries.get(1).messageId);
+    }
+
+    @Test
+    public void readBatch_shouldOnlyMarkVisibleMessagesIndexable() throws Exception {
+        insertMessage(1, 0, 0);
+        insertMessage(2, 1, 0);
+        insertMessage(3, 0, 1);
+        queue(1);
+        queue(2);
+        queue(3);
+        queue(4);
+
+        List<FulltextBacklog.Entry> entries = FulltextBacklog.readBatch(database, 10);
+
+        assertEquals(4, entries.size());
+        assertFalse(entries.get(0).indexable);
+        assertFalse(entries.get(1).indexable);
+        assertFalse(entries.get(2).indexable);
+        assertTrue(entries.get(3).indexable);
+    }
+
+    @Test
+    public void complete_shouldAddFulltextToIndex() throws Exception {
+        insertMessage(1, 0, 0);
+        queue(1);
+        FulltextBacklog.Entry entry = FulltextBacklog.readBatch(database, 1).get(0);
+
+        FulltextBacklog.complete(database, entry, createMessage("Subject"), "message body");
+
+        assertEquals(0, FulltextBacklog.count(database));
+        assertEquals(1, countMatches("body:body"));
+        assertEquals(1, countMatches("subject:subject"));
+    }
+
+    @Test
+    public void complete_withoutMessage_shouldRemoveIndexEntry() throws Exception {
+        insertMessage(1, 0, 0);
+        MessageSearchIndex.put(database, 1, createMessage("Subject"), null);
+        queue(1);
+        FulltextBacklog.Entry entry = FulltextBacklog.readBatch(database, 1).get(0);
+
+        FulltextBacklog.complete(database, entry, null, null);
+
+        assertEquals(0, FulltextBacklog.count(database));
+        assertEquals(0, countMatches("subject:subject"));
+    }
+
+    @Test
+    public void complete_withMessageQueuedAgain_shouldKeepNewEntry() throws Exception {
+        insertMessage(1, 0, 0);
+        queue(1);
+        FulltextBacklog.Entry entry = FulltextBacklog.readBatch(database, 1).get(0);
+        queue(1);
+
+        FulltextBacklog.complete(database, entry, createMessage("Subject"), "message body");
+
+        assertEquals(1, FulltextBacklog.count(database));
+        assertEquals(0, countMatches("body:body"));
+    }
+
+    @Test
+    public void remove_shouldKeepIndexEntry() throws Exception {
+        insertMessage(1, 0, 0);
+        MessageSearchIndex.put(database, 1, createMessage("Subject"), null);
+        queue(1);
+        FulltextBacklog.Entry entry = FulltextBacklog.readBatch(database, 1).get(0);
+
+        boolean removed = FulltextBacklog.remove(database, entry);
+
+        assertTrue(removed);
+        assertEquals(0, FulltextBacklog.count(database));
+        assertEquals(1, countMatches("subject:subject"));
+    }
+
+    @Test
+    public void remove_withRemovedEntry_shouldReturnFalse() throws Exception {
+        queue(1);
+        FulltextBacklog.Entry entry = FulltextBacklog.readBatch(database, 1).get(0);
+        FulltextBacklog.remove(database, entry);
+
+        boolean removed = FulltextBacklog.remove(database, entry);
+
+        assertFalse(removed);
+    }
+
+
+    private void insertMessage(long id, int empty, int deleted) {
+        database.execSQL("INSERT INTO messages (id, empty, deleted) VALUES (?, ?, ?)",
+                new Object[] { id, empty, deleted });
+    }
+
+    private void queue(long messageId) {
+        database.execSQL("INSERT OR REPLACE INTO fulltext_backlog (message_id) VALUES (?)", new Object[] { messageId });
+    }
+
+    private Message createMessage(String subject) {
+        Message message = mock(Message.class);
+        when(message.getSubject()).thenReturn(subject);
+        when(message.getFrom()).thenReturn(new Address[] { new Address("alice@example.com") });
+        when(message.getRecipients(RecipientType.TO)).thenReturn(new Address[0]);
+        when(message.getRecipients(RecipientType.CC)).thenReturn(new Address[0]);
+        return message;
+    }
+
+    private int countMatches(String query) {
+        Cursor cursor = database.rawQuery("SELECT COUNT(docid) FROM messages_search WHERE messages_search MATCH ?",
+                new String[] { query });
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.fsck.k9.mailstore;
+
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.fsck.k9.Account;
+import com.fsck.k9.K9RobolectricTestRunner;
+import com.fsck.k9.Preferences;
+import com.fsck.k9.mail.Folder.FolderType;
+import com.fsck.k9.mail.Message;
+import com.fsck.k9.mail.internet.BinaryTempFileBody;
+import com.fsck.k9.mail.internet.MimeMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowSQLiteConnection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Measures how many messages per second {@link LocalFolder#appendMessages(List)} stores, both when it's called with
+ * one message at a time, the way synchronization stores downloaded messages, and with batches, the way messages are
+ * copied between local folders.
+ * <p>
+ * The messages are a mix of plain text messages, replies and multipart messages with an attachment. This runs on
+ * Robolectric's SQLite, so results are only comparable between runs on the same machine. It's skipped unless the
+ * {@code K9_BENCHMARK} environment variable is set:
+ * </p>
+ * <pre>
+ * K9_BENCHMARK=1 ./gradlew :k9mail:testDebugUnitTest --tests com.fsck.k9.mailstore.MessageStorageBenchmark
+ * </pre>
+ */
+@RunWith(K9RobolectricTestRunner.class)
+public class MessageStorageBenchmark {
+    private static final int MESSAGE_COUNT = 1000;
+    private static final int BATCH_SIZE = 50;
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 3;
+
+
+    private LocalStore localStore;
+
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(System.getenv("K9_BENCHMARK") != null);
+
+        ShadowSQLiteConnection.reset();
+        BinaryTempFileBody.setTempDirectory(RuntimeEnvironment.application.getCacheDir());
+
+        Preferences preferences = Preferences.getPreferences(RuntimeEnvironment.application);
+        preferences.loadAccounts();
+        Account account = preferences.newAccount();
+        localStore = LocalStore.getInstance(account, RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void appendMessages_oneAtATime() throws Exception {
+        measureAppendMessages("single", 1);
+    }
+
+    @Test
+    public void appendMessages_inBatches() throws Exception {
+        measureAppendMessages("batch", BATCH_SIZE);
+    }
+
+    private void measureAppendMessages(String name, int batchSize) throws Exception {
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            LocalFolder folder = localStore.getFolder(name + round);
+            folder.create(FolderType.HOLDS_MESSAGES);
+            List<Message> messages = createMessages(round);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < messages.size(); i += batchSize) {
+                folder.appendMessages(messages.subList(i, Math.min(i + batchSize, messages.size())));
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            assertEquals(MESSAGE_COUNT, folder.getMessageCount());
+
+            if (round >= WARMUP_ROUNDS) {
+                System.out.println(String.format(Locale.US,
+                        "appendMessages (%d per call): %d messages in %d ms, %.0f messages/s",
+                        batchSize, MESSAGE_COUNT, elapsedNanos / 1000000, MESSAGE_COUNT * 1e9 / elapsedNanos));
+            }
+        }
+    }
+
+    private List<Message> createMessages(int round) throws Exception {
+        List<Message> messages = new ArrayList<>(MESSAGE_COUNT);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            String source = createMessageSource(round, i);
+            MimeMessage message = MimeMessage.parseMimeMessage(new ByteArrayInputStream(source.getBytes("UTF-8")),
+                    false);
+            message.setUid(Integer.toString(i + 1));
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    private static String createMessageSource(int round, int index) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("From: Sender ").append(index % 37).append(" <sender").append(index % 37).append("@example.com>\r\n");
+        sb.append("To: Recipient <recipient@example.org>\r\n");
+        sb.append("Subject: Message ").append(index).append("\r\n");
+        sb.append("Date: Mon, 2 Jan 2017 10:").append(String.format(Locale.US, "%02d", index % 60))
+                .append(":00 +0100\r\n");
+        sb.append("Message-ID: <").append(round).append('.').append(index).append("@example.com>\r\n");
+        if (index % 3 == 1) {
+            sb.append("In-Reply-To: <").append(round).append('.').append(index - 1).append("@example.com>\r\n");
+        }
+        sb.append("MIME-Version: 1.0\r\n");
+
+        if (index % 4 == 3) {
+            sb.append("Content-Type: multipart/mixed; boundary=\"boundary\"\r\n\r\n");
+            sb.append("--boundary\r\n");
+            sb.append("Content-Type: text/html; charset=utf-8\r\n\r\n");
+            sb.append("<html><body><p>Message ").append(index).append(" with an attachment.</p>");
+            appendText(sb, 20);
+            sb.append("</body></html>\r\n");
+            sb.append("--boundary\r\n");
+            sb.append("Content-Type: application/octet-stream; name=\"data.bin\"\r\n");
+            sb.append("Content-Disposition: attachment; filename=\"data.bin\"\r\n");
+            sb.append("Content-Transfer-Encoding: base64\r\n\r\n");
+            for (int line = 0; line < 40; line++) {
+                sb.append("QUJDREVGR0hJSktMTU5PUFFSU1RVVldYWVphYmNkZWZnaGlqa2xtbm9wcXJzdHV2d3h5\r\n");
+            }
+            sb.append("--boundary--\r\n");
+        } else {
+            sb.append("Content-Type: text/plain; charset=utf-8\r\n\r\n");
+            appendText(sb, 30);
+        }
+
+        return sb.toString();
+    }
+
+    private static void appendText(StringBuilder sb, int lines) {
+        for (int line = 0; line < lines; line++) {
+            sb.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.\r\n");
+        }
+    }
+}
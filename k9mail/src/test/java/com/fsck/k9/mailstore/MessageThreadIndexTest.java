@@ -0,0 +1,221 @@
+package com.fsck.k9.mailstore;
+
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.fsck.k9.K9RobolectricTestRunner;
+import com.fsck.k9.mailstore.LockableDatabase.TransactionListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+@RunWith(K9RobolectricTestRunner.class)
+public class MessageThreadIndexTest {
+    private static final long FOLDER_ID = 1;
+    private static final String[] LOAD_COLUMNS = { "message_id", "thread_id", "id", "root", "parent", "empty" };
+    private static final String[] QUERY_COLUMNS = { "thread_id", "id", "root", "parent", "empty" };
+
+
+    private LockableDatabase database;
+    private SQLiteDatabase db;
+    private Object[][] folderRows = new Object[0][];
+
+
+    @Before
+    public void setUp() throws Exception {
+        database = mock(LockableDatabase.class);
+        db = mock(SQLiteDatabase.class);
+        when(db.rawQuery(startsWith("SELECT COUNT(id)"), any(String[].class))).thenAnswer(new Answer<Cursor>() {
+            @Override
+            public Cursor answer(InvocationOnMock invocation) {
+                MatrixCursor cursor = new MatrixCursor(new String[] { "count" });
+                cursor.addRow(new Object[] { folderRows.length });
+                return cursor;
+            }
+        });
+        when(db.rawQuery(startsWith("SELECT m.message_id"), any(String[].class))).thenAnswer(new Answer<Cursor>() {
+            @Override
+            public Cursor answer(InvocationOnMock invocation) {
+                MatrixCursor cursor = new MatrixCursor(LOAD_COLUMNS);
+                for (Object[] row : folderRows) {
+                    cursor.addRow(row);
+                }
+                return cursor;
+            }
+        });
+        when(db.rawQuery(startsWith("SELECT t.id"), any(String[].class))).thenAnswer(new Answer<Cursor>() {
+            @Override
+            public Cursor answer(InvocationOnMock invocation) {
+                String messageId = ((String[]) invocation.getArguments()[1])[1];
+                MatrixCursor cursor = new MatrixCursor(QUERY_COLUMNS);
+                for (Object[] row : folderRows) {
+                    if (row[0].equals(messageId)) {
+                        cursor.addRow(new Object[] { row[1], row[2], row[3], row[4], row[5] });
+                        break;
+                    }
+                }
+                return cursor;
+            }
+        });
+    }
+
+    @Test
+    public void get_withCompleteIndex_shouldLoadFolderOnce() throws Exception {
+        folderRows = new Object[][] { { "<a@example.org>", 10, 100, 10, null, 0 } };
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID);
+
+        ThreadInfo threadInfo = threadIndex.get(db, "<a@example.org>", false);
+        ThreadInfo missing = threadIndex.get(db, "<b@example.org>", false);
+
+        assertThreadInfo(threadInfo, 10, 100, 10, -1);
+        assertNull(missing);
+        verify(db, times(2)).rawQuery(anyString(), any(String[].class));
+    }
+
+    @Test
+    public void get_afterEntriesWereEvicted_shouldQueryMissingEntries() throws Exception {
+        folderRows = new Object[][] {
+                { "<a@example.org>", 10, 100, 10, null, 0 },
+                { "<b@example.org>", 11, 101, 11, null, 0 }
+        };
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID, 1);
+
+        ThreadInfo threadInfo = threadIndex.get(db, "<b@example.org>", false);
+
+        assertThreadInfo(threadInfo, 11, 101, 11, -1);
+        verify(db).rawQuery(startsWith("SELECT t.id"), any(String[].class));
+    }
+
+    @Test
+    public void addMessage_withCompleteIndex_shouldBeFoundWithoutQuery() throws Exception {
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID);
+        threadIndex.get(db, "<a@example.org>", false);
+
+        threadIndex.addMessage("<new@example.org>", 200, 20, -1, -1);
+        ThreadInfo threadInfo = threadIndex.get(db, "<new@example.org>", false);
+
+        assertThreadInfo(threadInfo, 20, 200, 20, -1);
+        verify(db, times(2)).rawQuery(anyString(), any(String[].class));
+    }
+
+    @Test
+    public void transactionRolledBack_shouldResetIndex() throws Exception {
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID);
+        threadIndex.get(db, "<a@example.org>", false);
+        threadIndex.addMessage("<new@example.org>", 200, 20, -1, -1);
+
+        endTransaction(false);
+        ThreadInfo threadInfo = threadIndex.get(db, "<new@example.org>", false);
+
+        assertNull(threadInfo);
+        verify(db, times(2)).rawQuery(startsWith("SELECT COUNT(id)"), any(String[].class));
+    }
+
+    @Test
+    public void transactionCommitted_shouldKeepEntries() throws Exception {
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID);
+        threadIndex.get(db, "<a@example.org>", false);
+        threadIndex.addMessage("<new@example.org>", 200, 20, -1, -1);
+
+        endTransaction(true);
+        ThreadInfo threadInfo = threadIndex.get(db, "<new@example.org>", false);
+
+        assertThreadInfo(threadInfo, 20, 200, 20, -1);
+        verify(db).rawQuery(startsWith("SELECT COUNT(id)"), any(String[].class));
+    }
+
+    @Test
+    public void reset_shouldReloadOnNextGet() throws Exception {
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID);
+        threadIndex.get(db, "<a@example.org>", false);
+
+        threadIndex.reset();
+        folderRows = new Object[][] { { "<a@example.org>", 10, 100, 10, null, 0 } };
+        ThreadInfo threadInfo = threadIndex.get(db, "<a@example.org>", false);
+
+        assertThreadInfo(threadInfo, 10, 100, 10, -1);
+    }
+
+    @Test
+    public void changeRoot_shouldOnlyUpdateEntriesOfThatThread() throws Exception {
+        folderRows = new Object[][] {
+                { "<a@example.org>", 10, 100, 10, null, 0 },
+                { "<b@example.org>", 11, 101, 10, 10, 0 },
+                { "<c@example.org>", 12, 102, 12, null, 0 }
+        };
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID);
+        threadIndex.get(db, "<a@example.org>", false);
+
+        threadIndex.changeRoot(10, 12);
+
+        assertThreadInfo(threadIndex.get(db, "<a@example.org>", false), 10, 100, 12, -1);
+        assertThreadInfo(threadIndex.get(db, "<b@example.org>", false), 11, 101, 12, 10);
+        assertThreadInfo(threadIndex.get(db, "<c@example.org>", false), 12, 102, 12, -1);
+    }
+
+    @Test
+    public void changeRoot_followedByMoveThread_shouldUpdateMovedEntry() throws Exception {
+        folderRows = new Object[][] {
+                { "<a@example.org>", 10, 100, 10, null, 0 },
+                { "<b@example.org>", 11, 101, 10, 10, 0 },
+                { "<c@example.org>", 12, 102, 12, null, 0 }
+        };
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID);
+        threadIndex.get(db, "<a@example.org>", false);
+
+        threadIndex.changeRoot(10, 12);
+        threadIndex.moveThread(10, 12, 12);
+        threadIndex.changeRoot(12, 13);
+
+        assertThreadInfo(threadIndex.get(db, "<a@example.org>", false), 10, 100, 13, 12);
+        assertThreadInfo(threadIndex.get(db, "<b@example.org>", false), 11, 101, 13, 10);
+        assertThreadInfo(threadIndex.get(db, "<c@example.org>", false), 12, 102, 13, -1);
+    }
+
+    @Test
+    public void changeRoot_afterEntryWasEvicted_shouldNotRestoreIt() throws Exception {
+        MessageThreadIndex threadIndex = new MessageThreadIndex(database, FOLDER_ID, 1);
+        threadIndex.get(db, "<a@example.org>", false);
+        threadIndex.addMessage("<a@example.org>", 100, 10, -1, -1);
+        threadIndex.addPlaceholder("<b@example.org>", 101, 11, 10, 10);
+
+        threadIndex.changeRoot(10, 12);
+        ThreadInfo threadInfo = threadIndex.get(db, "<a@example.org>", false);
+
+        assertNull(threadInfo);
+        assertThreadInfo(threadIndex.get(db, "<b@example.org>", false), 11, 101, 12, 10);
+    }
+
+
+    private void endTransaction(boolean committed) {
+        ArgumentCaptor<TransactionListener> captor = ArgumentCaptor.forClass(TransactionListener.class);
+        verify(database).addTransactionListener(captor.capture());
+        captor.getValue().onTransactionEnd(committed);
+    }
+
+    private static void assertThreadInfo(ThreadInfo threadInfo, long threadId, long msgId, long rootId,
+            long parentId) {
+        assertNotNull(threadInfo);
+        assertEquals(threadId, threadInfo.threadId);
+        assertEquals(msgId, threadInfo.msgId);
+        assertEquals(rootId, threadInfo.rootId);
+        assertEquals(parentId, threadInfo.parentId);
+    }
+}
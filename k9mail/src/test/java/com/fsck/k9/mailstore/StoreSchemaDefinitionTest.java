@@ -135,6 +135,22 @@ public class StoreSchemaDefinitionTest {
         assertDatabaseIndexesEquals(newDatabase, upgradedDatabase);
     }
 
+    @Test
+    public void doDbUpgrade_withEmptyDatabase_shouldMaintainFolderCounts() {
+        SQLiteDatabase database = createNewDatabase();
+
+        assertFolderCountsMaintained(database);
+    }
+
+    @Test
+    public void doDbUpgrade_fromV29_shouldMaintainFolderCounts() {
+        SQLiteDatabase database = createV29Database();
+
+        storeSchemaDefinition.doDbUpgrade(database);
+
+        assertFolderCountsMaintained(database);
+    }
+
 
     private SQLiteDatabase createV29Database() {
         SQLiteDatabase database = SQLiteDatabase.create(null);
@@ -330,6 +346,65 @@ public class StoreSchemaDefinitionTest {
         assertNotEquals(-1, rowId);
     }
 
+    private void assertFolderCountsMaintained(SQLiteDatabase database) {
+        long inbox = insertFolder(database, "Inbox");
+        long archive = insertFolder(database, "Archive");
+
+        long unreadMessage = insertMessage(database, inbox, 0, 0, 0, 0);
+        long flaggedMessage = insertMessage(database, inbox, 0, 0, 1, 1);
+        insertMessage(database, inbox, 1, 0, 0, 1);
+        insertMessage(database, inbox, 0, 1, 0, 0);
+        assertFolderCounts(database, inbox, 2, 1, 1);
+
+        updateMessage(database, unreadMessage, "read", 1);
+        assertFolderCounts(database, inbox, 2, 0, 1);
+
+        updateMessage(database, flaggedMessage, "folder_id", archive);
+        assertFolderCounts(database, inbox, 1, 0, 0);
+        assertFolderCounts(database, archive, 1, 0, 1);
+
+        updateMessage(database, unreadMessage, "deleted", 1);
+        assertFolderCounts(database, inbox, 0, 0, 0);
+
+        database.delete("messages", "id = ?", new String[] { Long.toString(flaggedMessage) });
+        assertFolderCounts(database, archive, 0, 0, 0);
+
+        assertEquals(0, FolderCounts.countMismatches(database));
+    }
+
+    private long insertFolder(SQLiteDatabase database, String name) {
+        ContentValues data = new ContentValues();
+        data.put("name", name);
+        long rowId = database.insert("folders", null, data);
+        assertNotEquals(-1, rowId);
+        return rowId;
+    }
+
+    private long insertMessage(SQLiteDatabase database, long folderId, int empty, int deleted, int read, int flagged) {
+        ContentValues data = new ContentValues();
+        data.put("folder_id", folderId);
+        data.put("empty", empty);
+        data.put("deleted", deleted);
+        data.put("read", read);
+        data.put("flagged", flagged);
+        long rowId = database.insert("messages", null, data);
+        assertNotEquals(-1, rowId);
+        return rowId;
+    }
+
+    private void updateMessage(SQLiteDatabase database, long messageId, String column, long value) {
+        ContentValues data = new ContentValues();
+        data.put(column, value);
+        database.update("messages", data, "id = ?", new String[] { Long.toString(messageId) });
+    }
+
+    private void assertFolderCounts(SQLiteDatabase database, long folderId, int messageCount, int unreadCount,
+            int flaggedCount) {
+        assertEquals(messageCount, FolderCounts.read(database, folderId, FolderCounts.MESSAGE_COUNT));
+        assertEquals(unreadCount, FolderCounts.read(database, folderId, FolderCounts.UNREAD_COUNT));
+        assertEquals(flaggedCount, FolderCounts.read(database, folderId, FolderCounts.FLAGGED_COUNT));
+    }
+
     private StoreSchemaDefinition createStoreSchemaDefinition() throws MessagingException {
         Context context = createContext();
         Account account = createAccount();
@@ -0,0 +1,146 @@
+package com.fsck.k9.mailstore.migrations;
+
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MigrationTo63Test {
+    private SQLiteDatabase database;
+
+
+    @Before
+    public void setUp() throws Exception {
+        database = createV62Database();
+    }
+
+    @Test
+    public void addFolderCounts_shouldCountExistingMessages() throws Exception {
+        insertMessage(1, 0, 0, 0, 0);
+        insertMessage(1, 0, 0, 1, 1);
+        insertMessage(1, 1, 0, 0, 0);
+        insertMessage(1, 0, 1, 0, 1);
+        insertMessage(2, 0, 0, 0, 1);
+
+        MigrationTo63.addFolderCounts(database);
+
+        assertFolderCounts(1, 2, 1, 1);
+        assertFolderCounts(2, 1, 1, 1);
+    }
+
+    @Test
+    public void addFolderCounts_shouldReplaceWrongCounts() throws Exception {
+        database.execSQL("UPDATE folders SET unread_count = 10, flagged_count = 10");
+        insertMessage(1, 0, 0, 0, 0);
+
+        MigrationTo63.addFolderCounts(database);
+
+        assertFolderCounts(1, 1, 1, 0);
+        assertFolderCounts(2, 0, 0, 0);
+    }
+
+    @Test
+    public void addFolderCounts_shouldCountInsertedMessages() throws Exception {
+        MigrationTo63.addFolderCounts(database);
+
+        insertMessage(1, 0, 0, 0, 1);
+        insertMessage(1, 1, 0, 0, 1);
+
+        assertFolderCounts(1, 1, 1, 1);
+    }
+
+    @Test
+    public void addFolderCounts_shouldCountUpdatedMessages() throws Exception {
+        long messageId = insertMessage(1, 0, 0, 0, 0);
+        MigrationTo63.addFolderCounts(database);
+
+        updateMessage(messageId, "flagged", 1);
+        assertFolderCounts(1, 1, 1, 1);
+
+        updateMessage(messageId, "folder_id", 2);
+        assertFolderCounts(1, 0, 0, 0);
+        assertFolderCounts(2, 1, 1, 1);
+
+        updateMessage(messageId, "deleted", 1);
+        assertFolderCounts(2, 0, 0, 0);
+    }
+
+    @Test
+    public void addFolderCounts_shouldCountDeletedMessages() throws Exception {
+        long messageId = insertMessage(1, 0, 0, 0, 1);
+        long emptyMessageId = insertMessage(1, 1, 0, 0, 1);
+        MigrationTo63.addFolderCounts(database);
+
+        deleteMessage(emptyMessageId);
+        assertFolderCounts(1, 1, 1, 1);
+
+        deleteMessage(messageId);
+        assertFolderCounts(1, 0, 0, 0);
+    }
+
+
+    private SQLiteDatabase createV62Database() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE folders (" +
+                "id INTEGER PRIMARY KEY, " +
+                "name TEXT, " +
+                "unread_count INTEGER, " +
+                "flagged_count INTEGER default 0" +
+                ")");
+        database.execSQL("CREATE TABLE messages (" +
+                "id INTEGER PRIMARY KEY, " +
+                "deleted INTEGER default 0, " +
+                "folder_id INTEGER, " +
+                "empty INTEGER default 0, " +
+                "read INTEGER default 0, " +
+                "flagged INTEGER default 0" +
+                ")");
+        database.execSQL("INSERT INTO folders (id, name) VALUES (1, 'Inbox')");
+        database.execSQL("INSERT INTO folders (id, name) VALUES (2, 'Archive')");
+        return database;
+    }
+
+    private long insertMessage(long folderId, int empty, int deleted, int read, int flagged) {
+        ContentValues values = new ContentValues();
+        values.put("folder_id", folderId);
+        values.put("empty", empty);
+        values.put("deleted", deleted);
+        values.put("read", read);
+        values.put("flagged", flagged);
+        return database.insert("messages", null, values);
+    }
+
+    private void updateMessage(long messageId, String column, long value) {
+        ContentValues values = new ContentValues();
+        values.put(column, value);
+        database.update("messages", values, "id = ?", new String[] { Long.toString(messageId) });
+    }
+
+    private void deleteMessage(long messageId) {
+        database.delete("messages", "id = ?", new String[] { Long.toString(messageId) });
+    }
+
+    private void assertFolderCounts(long folderId, int messageCount, int unreadCount, int flaggedCount) {
+        Cursor cursor = database.rawQuery("SELECT message_count, unread_count, flagged_count FROM folders " +
+                "WHERE id = ?", new String[] { Long.toString(folderId) });
+        try {
+            cursor.moveToFirst();
+            assertEquals(messageCount, cursor.getInt(0));
+            assertEquals(unreadCount, cursor.getInt(1));
+            assertEquals(flaggedCount, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.fsck.k9.mailstore.migrations;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MigrationTo64Test {
+    private SQLiteDatabase database;
+
+
+    @Before
+    public void setUp() throws Exception {
+        database = createV63Database();
+    }
+
+    @Test
+    public void createFulltextBacklog_shouldQueueMessagesMissingFromIndex() throws Exception {
+        insertMessage(1, 0, 0, true);
+        insertMessage(2, 0, 0, false);
+        insertMessage(3, 0, 0, false);
+
+        MigrationTo64.createFulltextBacklog(database);
+
+        assertEquals(asList(2L, 3L), getQueuedMessageIds());
+    }
+
+    @Test
+    public void createFulltextBacklog_shouldSkipEmptyAndDeletedMessages() throws Exception {
+        insertMessage(1, 1, 0, false);
+        insertMessage(2, 0, 1, false);
+
+        MigrationTo64.createFulltextBacklog(database);
+
+        assertEquals(0, getQueuedMessageIds().size());
+    }
+
+    @Test
+    public void createFulltextBacklog_shouldRemoveDeletedMessagesFromBacklog() throws Exception {
+        insertMessage(1, 0, 0, false);
+        insertMessage(2, 0, 0, false);
+        MigrationTo64.createFulltextBacklog(database);
+
+        database.execSQL("DELETE FROM messages WHERE id = 1");
+
+        assertEquals(asList(2L), getQueuedMessageIds());
+    }
+
+    @Test
+    public void createFulltextBacklog_withMultipleRuns_shouldQueueMessagesOnce() throws Exception {
+        insertMessage(1, 0, 0, false);
+        MigrationTo64.createFulltextBacklog(database);
+
+        MigrationTo64.createFulltextBacklog(database);
+
+        assertEquals(asList(1L), getQueuedMessageIds());
+    }
+
+
+    private SQLiteDatabase createV63Database() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE messages (" +
+                "id INTEGER PRIMARY KEY, " +
+                "deleted INTEGER default 0, " +
+                "empty INTEGER default 0" +
+                ")");
+        database.execSQL("CREATE VIRTUAL TABLE messages_fulltext USING fts4 (fulltext)");
+        return database;
+    }
+
+    private void insertMessage(long id, int empty, int deleted, boolean indexed) {
+        database.execSQL("INSERT INTO messages (id, empty, deleted) VALUES (?, ?, ?)",
+                new Object[] { id, empty, deleted });
+        if (indexed) {
+            database.execSQL("INSERT INTO messages_fulltext (docid, fulltext) VALUES (?, 'text')",
+                    new Object[] { id });
+        }
+    }
+
+    private List<Long> getQueuedMessageIds() {
+        List<Long> messageIds = new ArrayList<>();
+        Cursor cursor = database.rawQuery("SELECT message_id FROM fulltext_backlog ORDER BY message_id", null);
+        try {
+            while (cursor.moveToNext()) {
+                messageIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return messageIds;
+    }
+}
@@ -56,7 +56,7 @@ public class SyncNotificationsTest {
     public void testShowSendingNotification() throws Exception {
         int notificationId = NotificationIds.getFetchingMailNotificationId(account);
 
-        syncNotifications.showSendingNotification(account);
+        syncNotifications.showSendingNotification(account, 2, 5);
 
         verify(notificationManager).notify(eq(notificationId), any(Notification.class));
         verify(builder).setSmallIcon(R.drawable.ic_notify_check_mail);
@@ -65,6 +65,8 @@ public class SyncNotificationsTest {
         verify(builder).setContentText(ACCOUNT_NAME);
         verify(builder).setContentIntent(contentIntent);
         verify(builder).setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+        verify(builder).setOnlyAlertOnce(true);
+        verify(builder).setProgress(5, 2, false);
     }
 
     @Test
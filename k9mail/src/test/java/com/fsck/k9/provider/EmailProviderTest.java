@@ -0,0 +1,91 @@
+package com.fsck.k9.provider;
+
+
+import com.fsck.k9.K9RobolectricTestRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+@RunWith(K9RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class EmailProviderTest {
+
+    @Test
+    public void isFolderSelection_withNull_shouldReturnTrue() throws Exception {
+        assertTrue(EmailProvider.isFolderSelection(null));
+    }
+
+    @Test
+    public void isFolderSelection_withStatsSelection_shouldReturnTrue() throws Exception {
+        String selection = "(folder_id != ? AND folder_id != ?) AND (display_class = ? OR display_class = ?)";
+
+        assertTrue(EmailProvider.isFolderSelection(selection));
+    }
+
+    @Test
+    public void isFolderSelection_withKeywordsInAnyCase_shouldReturnTrue() throws Exception {
+        assertTrue(EmailProvider.isFolderSelection("name like ? and not push_class is null"));
+    }
+
+    @Test
+    public void isFolderSelection_withMessageColumn_shouldReturnFalse() throws Exception {
+        assertFalse(EmailProvider.isFolderSelection("folder_id = ? AND read = 0"));
+    }
+
+    @Test
+    public void isFolderSelection_withQuotedFolderName_shouldReturnTrue() throws Exception {
+        assertTrue(EmailProvider.isFolderSelection("name = 'INBOX'"));
+    }
+
+    @Test
+    public void isFolderSelection_withMessageColumnNameInLiteral_shouldReturnTrue() throws Exception {
+        assertTrue(EmailProvider.isFolderSelection("name = 'read' OR name = 'it''s flagged'"));
+    }
+
+    @Test
+    public void isFolderSelection_withQuotedMessageColumn_shouldReturnFalse() throws Exception {
+        assertFalse(EmailProvider.isFolderSelection("\"read\" = 0"));
+        assertFalse(EmailProvider.isFolderSelection("`flagged` = 1"));
+        assertFalse(EmailProvider.isFolderSelection("[deleted] = 0"));
+    }
+
+    @Test
+    public void isFolderSelection_withQuotedFolderColumn_shouldReturnTrue() throws Exception {
+        assertTrue(EmailProvider.isFolderSelection("\"display_class\" = ? AND [folder_id] IN (1, 2)"));
+    }
+
+    @Test
+    public void isFolderSelection_withUnterminatedLiteral_shouldReturnFalse() throws Exception {
+        assertFalse(EmailProvider.isFolderSelection("name = 'INBOX"));
+    }
+
+    @Test
+    public void isFolderSelection_withComment_shouldReturnFalse() throws Exception {
+        assertFalse(EmailProvider.isFolderSelection("name = ? -- AND read = 0"));
+    }
+
+    @Test
+    public void createFolderSelection_shouldReplaceFolderIdColumn() throws Exception {
+        String folderSelection = EmailProvider.createFolderSelection("folder_id = 1 OR \"folder_id\" = 2");
+
+        assertEquals("id = 1 OR id = 2", folderSelection);
+    }
+
+    @Test
+    public void createFolderSelection_shouldKeepLiterals() throws Exception {
+        String folderSelection = EmailProvider.createFolderSelection("folder_id = ? AND name != 'folder_id'");
+
+        assertEquals("id = ? AND name != 'folder_id'", folderSelection);
+    }
+
+    @Test
+    public void createFolderSelection_withMessageColumn_shouldReturnNull() throws Exception {
+        assertNull(EmailProvider.createFolderSelection("folder_id = ? AND messages.read = 0"));
+    }
+}
@@ -0,0 +1,205 @@
+package com.fsck.k9.search;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.fsck.k9.search.SearchSpecification.Attribute;
+import com.fsck.k9.search.SearchSpecification.SearchCondition;
+import com.fsck.k9.search.SearchSpecification.SearchField;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class SqlQueryBuilderTest {
+    @Test
+    public void createSearchIndexQuery_withSingleWord_shouldReturnNull() {
+        assertNull(SqlQueryBuilder.createSearchIndexQuery("ello"));
+    }
+
+    @Test
+    public void createSearchIndexQuery_withMultipleWords_shouldSkipFirstWord() {
+        String result = SqlQueryBuilder.createSearchIndexQuery("lo wonderful wor");
+
+        assertEquals("\"wonderful\" \"wor*\"", result);
+    }
+
+    @Test
+    public void createSearchIndexQuery_withTrailingSpace_shouldMatchWholeLastWord() {
+        String result = SqlQueryBuilder.createSearchIndexQuery(" alice ");
+
+        assertEquals("\"alice\"", result);
+    }
+
+    @Test
+    public void createSearchIndexQuery_withEmailAddress_shouldUseDomainParts() {
+        String result = SqlQueryBuilder.createSearchIndexQuery("alice@example.com");
+
+        assertEquals("\"example\" \"com*\"", result);
+    }
+
+    @Test
+    public void createSearchIndexQuery_withQuotesAndOperators_shouldQuoteWords() {
+        String result = SqlQueryBuilder.createSearchIndexQuery("\"alice\" OR\"bob-");
+
+        assertEquals("\"alice\" \"OR\" \"bob\"", result);
+    }
+
+    @Test
+    public void createSearchIndexQuery_withNonAsciiCharacters_shouldKeepThemInWords() {
+        String result = SqlQueryBuilder.createSearchIndexQuery("x Grüße");
+
+        assertEquals("\"Grüße*\"", result);
+    }
+
+    @Test
+    public void createSearchIndexQuery_withBlankValue_shouldReturnNull() {
+        assertNull(SqlQueryBuilder.createSearchIndexQuery(" \" "));
+    }
+
+    @Test
+    public void buildWhereClause_withSenderEqualsAddress_shouldLookUpAddress() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.SENDER, Attribute.EQUALS,
+                " Alice@Example.com"), query, selectionArgs);
+
+        assertEquals("m.id IN (SELECT message_id FROM message_addresses WHERE address_lower = ? AND role = 0)",
+                query.toString());
+        assertEquals(Collections.singletonList("alice@example.com"), selectionArgs);
+    }
+
+    @Test
+    public void buildWhereClause_withCcNotEqualsDomain_shouldExcludeDomain() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.CC, Attribute.NOT_EQUALS,
+                "@Example.com"), query, selectionArgs);
+
+        assertEquals("m.id NOT IN (SELECT message_id FROM message_addresses WHERE domain = ? AND role = 2)",
+                query.toString());
+        assertEquals(Collections.singletonList("example.com"), selectionArgs);
+    }
+
+    @Test
+    public void buildWhereClause_withToEqualsDomainWithoutAt_shouldLookUpDomain() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.TO, Attribute.EQUALS, "example.com"),
+                query, selectionArgs);
+
+        assertEquals("m.id IN (SELECT message_id FROM message_addresses WHERE domain = ? AND role = 1)",
+                query.toString());
+        assertEquals(Collections.singletonList("example.com"), selectionArgs);
+    }
+
+    @Test
+    public void buildWhereClause_withSenderEqualsLocalPart_shouldLookUpAddressesWithLocalPart() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.SENDER, Attribute.EQUALS, "Alice"),
+                query, selectionArgs);
+
+        assertEquals("m.id IN (SELECT message_id FROM message_addresses " +
+                "WHERE address_lower >= ? AND address_lower < ? AND role = 0)", query.toString());
+        assertEquals(Arrays.asList("alice@", "aliceA"), selectionArgs);
+    }
+
+    @Test
+    public void buildWhereClause_withSenderEqualsLocalPartWithAt_shouldLookUpAddressesWithLocalPart() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.SENDER, Attribute.EQUALS, "alice@"),
+                query, selectionArgs);
+
+        assertEquals(Arrays.asList("alice@", "aliceA"), selectionArgs);
+    }
+
+    @Test
+    public void buildWhereClause_withSenderEqualsBlankValue_shouldMatchNothing() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.SENDER, Attribute.EQUALS, " "),
+                query, selectionArgs);
+
+        assertEquals("0", query.toString());
+        assertEquals(0, selectionArgs.size());
+    }
+
+    @Test
+    public void buildWhereClause_withSenderNotEqualsAt_shouldMatchEverything() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.SENDER, Attribute.NOT_EQUALS, "@"),
+                query, selectionArgs);
+
+        assertEquals("1", query.toString());
+        assertEquals(0, selectionArgs.size());
+    }
+
+    @Test
+    public void buildWhereClause_withSubjectContainsSingleWord_shouldUseLike() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.SUBJECT, Attribute.CONTAINS, "ello"),
+                query, selectionArgs);
+
+        assertEquals("subject LIKE ?", query.toString());
+        assertEquals(Collections.singletonList("%ello%"), selectionArgs);
+    }
+
+    @Test
+    public void buildWhereClause_withSubjectContainsWords_shouldCheckIndexCandidatesWithLike() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.SUBJECT, Attribute.CONTAINS, "ello wor"),
+                query, selectionArgs);
+
+        assertEquals("((m.id IN (SELECT docid FROM messages_search WHERE subject MATCH ?) OR " +
+                "m.id IN (SELECT message_id FROM fulltext_backlog)) AND subject LIKE ?)", query.toString());
+        assertEquals(Arrays.asList("\"wor*\"", "%ello wor%"), selectionArgs);
+    }
+
+    @Test
+    public void buildWhereClause_withToContainsAddress_shouldUseToColumn() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.TO, Attribute.CONTAINS, "@example.com"),
+                query, selectionArgs);
+
+        assertEquals("((m.id IN (SELECT docid FROM messages_search WHERE to_recipients MATCH ?) OR " +
+                "m.id IN (SELECT message_id FROM fulltext_backlog)) AND to_list LIKE ?)", query.toString());
+        assertEquals(Arrays.asList("\"example\" \"com*\"", "%@example.com%"), selectionArgs);
+    }
+
+    @Test
+    public void buildWhereClause_withCcContainsAddress_shouldUseCcColumn() {
+        StringBuilder query = new StringBuilder();
+        List<String> selectionArgs = new ArrayList<>();
+
+        SqlQueryBuilder.buildWhereClause(null, createCondition(SearchField.CC, Attribute.CONTAINS, "@example.com"),
+                query, selectionArgs);
+
+        assertEquals("((m.id IN (SELECT docid FROM messages_search WHERE cc_recipients MATCH ?) OR " +
+                "m.id IN (SELECT message_id FROM fulltext_backlog)) AND cc_list LIKE ?)", query.toString());
+        assertEquals(Arrays.asList("\"example\" \"com*\"", "%@example.com%"), selectionArgs);
+    }
+
+    private static ConditionsTreeNode createCondition(SearchField field, Attribute attribute, String value) {
+        return new ConditionsTreeNode(new SearchCondition(field, attribute, value));
+    }
+}